@@ -2,6 +2,7 @@ package org.iotacontrolcenter.iccr.agent;
 
 import org.iotacontrolcenter.dto.ActionResponse;
 import org.iotacontrolcenter.dto.IccrPropertyListDto;
+import org.iotacontrolcenter.iota.agent.ActionExecutor;
 import org.iotacontrolcenter.properties.locale.Localizer;
 import org.iotacontrolcenter.properties.source.PropertySource;
 
@@ -32,7 +33,9 @@ public class IccrAgent {
             throw new IllegalArgumentException(localizer.getFixedWithLocalText("IccrAgent (" + cmd + "): ", "unsupportedAction"));
         }
 
-        return IccrActionFactory.getAction(cmd).execute(actionProps);
+        // Queued behind, and never run alongside, IRI lifecycle actions
+        return ActionExecutor.getInstance().run("iccr " + cmd, false,
+                () -> IccrActionFactory.getAction(cmd).execute(actionProps));
     }
 
 }
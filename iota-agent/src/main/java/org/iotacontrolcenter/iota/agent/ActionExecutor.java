@@ -0,0 +1,249 @@
+package org.iotacontrolcenter.iota.agent;
+
+import org.iotacontrolcenter.dto.ActionJobResponse;
+import org.iotacontrolcenter.dto.ActionResponse;
+import org.iotacontrolcenter.properties.locale.Localizer;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs IRI and ICCR actions off the request threads.
+ *
+ * Actions that change IRI or ICCR (install, start, stop, neighbor
+ * changes, ...) run one at a time, in submission order, on a single
+ * lifecycle thread, so two clients can never start and install at once.
+ * Read only actions run in parallel on a small worker pool. Both have a
+ * bounded queue; a submission that does not fit is refused.
+ *
+ * Submitted actions are jobs with an id the REST layer hands out and
+ * clients poll. Finished jobs are kept for JOB_RETENTION_MS.
+ */
+public class ActionExecutor {
+
+    public static final int READ_WORKERS = 4;
+    public static final int READ_QUEUE_SIZE = 64;
+    public static final int LIFECYCLE_QUEUE_SIZE = 16;
+    public static final long JOB_RETENTION_MS = TimeUnit.MINUTES.toMillis(10);
+    public static final int MAX_FINISHED_JOBS = 100;
+
+    private static final String LIFECYCLE_THREAD = "iccr-action-lifecycle";
+
+    private static ActionExecutor instance;
+    private static Object SYNC_INST = new Object();
+    public static ActionExecutor getInstance() {
+        synchronized (SYNC_INST) {
+            if(ActionExecutor.instance == null) {
+                ActionExecutor.instance = new ActionExecutor();
+            }
+            return ActionExecutor.instance;
+        }
+    }
+
+    private static class Job {
+        final ActionJobResponse state = new ActionJobResponse();
+        final CompletableFuture<ActionResponse> future = new CompletableFuture<>();
+    }
+
+    private final Localizer localizer;
+    private final ThreadPoolExecutor lifecycle;
+    private final ThreadPoolExecutor readers;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    // Not private so tests get an executor of their own
+    ActionExecutor() {
+        System.out.println("new ActionExecutor");
+        localizer = Localizer.getInstance();
+
+        lifecycle = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(LIFECYCLE_QUEUE_SIZE),
+                r -> daemon(r, LIFECYCLE_THREAD));
+
+        AtomicInteger readerNum = new AtomicInteger();
+        readers = new ThreadPoolExecutor(READ_WORKERS, READ_WORKERS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(READ_QUEUE_SIZE),
+                r -> daemon(r, "iccr-action-read-" + readerNum.incrementAndGet()));
+        readers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queue an action and return its job at once.
+     *
+     * @throws IllegalStateException if the queue is full
+     */
+    public ActionJobResponse submit(String action, boolean readOnly, Callable<ActionResponse> task) {
+        return snapshot(enqueue(action, readOnly, task));
+    }
+
+    /**
+     * Queue an action, the future completes when it has run.
+     *
+     * @throws IllegalStateException if the queue is full
+     */
+    public CompletableFuture<ActionResponse> submitForResult(String action, boolean readOnly,
+                                                             Callable<ActionResponse> task) {
+        return enqueue(action, readOnly, task).future;
+    }
+
+    /**
+     * Run an action on the calling thread and wait for it. A read only action
+     * runs right away, a lifecycle action waits its turn. Exceptions thrown
+     * by the action are rethrown as they are.
+     */
+    public ActionResponse run(String action, boolean readOnly, Callable<ActionResponse> task) {
+        if(readOnly || LIFECYCLE_THREAD.equals(Thread.currentThread().getName())) {
+            // Read only, or already on the lifecycle thread (an action running another)
+            return call(task);
+        }
+        try {
+            return enqueue(action, readOnly, task).future.get();
+        }
+        catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(localizer.getLocalTextWithFixed("actionInterrupted", ": " + action));
+        }
+        catch(ExecutionException ee) {
+            if(ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)ee.getCause();
+            }
+            throw new IllegalStateException(ee.getCause());
+        }
+    }
+
+    /**
+     * The job's current state, null if there is no such job or it was
+     * finished long enough ago to be forgotten.
+     */
+    public ActionJobResponse getJob(String id) {
+        Job job = id == null ? null : jobs.get(id);
+        return job == null ? null : snapshot(job);
+    }
+
+    public String getQueueStats() {
+        return "lifecycle queued: " + lifecycle.getQueue().size() +
+                ", read active: " + readers.getActiveCount() +
+                ", read queued: " + readers.getQueue().size() +
+                ", jobs: " + jobs.size();
+    }
+
+    private Job enqueue(String action, boolean readOnly, Callable<ActionResponse> task) {
+        pruneJobs();
+
+        Job job = new Job();
+        synchronized(job) {
+            job.state.setId(UUID.randomUUID().toString());
+            job.state.setAction(action);
+            job.state.setState(ActionJobResponse.QUEUED);
+            job.state.setSubmitted(System.currentTimeMillis());
+        }
+        jobs.put(job.state.getId(), job);
+
+        try {
+            (readOnly ? readers : lifecycle).execute(() -> runJob(job, task));
+        }
+        catch(RejectedExecutionException ree) {
+            jobs.remove(job.state.getId());
+            System.out.println("ActionExecutor, queue full, refusing " + action + ", " + getQueueStats());
+            throw new IllegalStateException(localizer.getLocalTextWithFixed("actionQueueFull", ": " + action));
+        }
+        return job;
+    }
+
+    private void runJob(Job job, Callable<ActionResponse> task) {
+        synchronized(job) {
+            job.state.setState(ActionJobResponse.RUNNING);
+            job.state.setStarted(System.currentTimeMillis());
+        }
+        try {
+            ActionResponse resp = call(task);
+            synchronized(job) {
+                job.state.setResult(resp);
+                job.state.setSuccess(resp != null && resp.isSuccess());
+                job.state.setMsg(resp == null ? "" : resp.getMsg());
+                job.state.setState(ActionJobResponse.DONE);
+                job.state.setFinished(System.currentTimeMillis());
+            }
+            job.future.complete(resp);
+        }
+        catch(RuntimeException e) {
+            System.out.println("ActionExecutor, " + job.state.getAction() + " failed: " + e.getLocalizedMessage());
+            synchronized(job) {
+                job.state.setSuccess(false);
+                // Action exception messages are already localized
+                job.state.setMsg(e.getMessage());
+                job.state.setState(ActionJobResponse.FAILED);
+                job.state.setFinished(System.currentTimeMillis());
+            }
+            job.future.completeExceptionally(e);
+        }
+    }
+
+    private ActionResponse call(Callable<ActionResponse> task) {
+        try {
+            return task.call();
+        }
+        catch(RuntimeException e) {
+            throw e;
+        }
+        catch(Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ActionJobResponse snapshot(Job job) {
+        synchronized(job) {
+            ActionJobResponse copy = new ActionJobResponse(job.state.isSuccess(), job.state.getMsg());
+            copy.setId(job.state.getId());
+            copy.setAction(job.state.getAction());
+            copy.setState(job.state.getState());
+            copy.setSubmitted(job.state.getSubmitted());
+            copy.setStarted(job.state.getStarted());
+            copy.setFinished(job.state.getFinished());
+            copy.setResult(job.state.getResult());
+            return copy;
+        }
+    }
+
+    private void pruneJobs() {
+        long cutoff = System.currentTimeMillis() - JOB_RETENTION_MS;
+        int finished = 0;
+        for(Iterator<Job> it = jobs.values().iterator(); it.hasNext(); ) {
+            Job job = it.next();
+            synchronized(job) {
+                if(!job.state.isDone()) {
+                    continue;
+                }
+                if(job.state.getFinished() < cutoff) {
+                    it.remove();
+                }
+                else {
+                    finished++;
+                }
+            }
+        }
+        if(finished > MAX_FINISHED_JOBS) {
+            // Over the cap before they age out, forget the oldest
+            jobs.values().stream()
+                    .filter(j -> { synchronized(j) { return j.state.isDone(); } })
+                    .sorted((a, b) -> Long.compare(a.state.getFinished(), b.state.getFinished()))
+                    .limit(finished - MAX_FINISHED_JOBS)
+                    .forEach(j -> jobs.remove(j.state.getId()));
+        }
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -33,6 +33,13 @@ public class ActionFactory {
             REMOVENEIGHBORS
     };
 
+    // Actions that only read IRI state, they may run in parallel with anything
+    private static final String[] readOnlyCmdList = {
+            STATUS,
+            NODEINFO,
+            NEIGHBORS
+    };
+
     public static IotaAction getAction(String cmd) {
         if(INSTALL.equals(cmd)) {
             return new InstallIotaAction();
@@ -70,6 +77,15 @@ public class ActionFactory {
         throw new IllegalArgumentException(Localizer.getInstance().getFixedWithLocalText("ActionFactory (" + cmd + "): ", "unsupportedAction"));
     }
 
+    public static boolean isReadOnlyAction(String cmd) {
+        for(String s : readOnlyCmdList) {
+            if(s.equals(cmd)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static boolean isValidAction(String cmd) {
         if(cmd != null && !cmd.isEmpty()) {
             for(String s : cmdList) {
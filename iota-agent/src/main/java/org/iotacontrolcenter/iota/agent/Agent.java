@@ -1,10 +1,17 @@
 package org.iotacontrolcenter.iota.agent;
 
+import org.iotacontrolcenter.dto.ActionJobResponse;
 import org.iotacontrolcenter.dto.ActionResponse;
 import org.iotacontrolcenter.dto.IccrPropertyListDto;
+import org.iotacontrolcenter.iota.agent.http.SharedHttpClient;
 import org.iotacontrolcenter.properties.locale.Localizer;
 import org.iotacontrolcenter.properties.source.PropertySource;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
 public class Agent {
 
     private static Agent instance;
@@ -18,6 +25,10 @@ public class Agent {
         }
     }
 
+    public static final int DEFAULT_QUERY_CACHE_TTL_MS = 2000;
+
+    private ReadActionCache cache;
+    private ActionExecutor executor;
     private Localizer localizer;
     private PropertySource propSource;
 
@@ -25,14 +36,116 @@ public class Agent {
         System.out.println("new Iota Agent");
         propSource = PropertySource.getInstance();
         localizer = Localizer.getInstance();
+        executor = ActionExecutor.getInstance();
+        cache = new ReadActionCache(() -> (long)propSource.getIotaQueryCacheTtl(DEFAULT_QUERY_CACHE_TTL_MS));
     }
 
+    /**
+     * Run the action and wait for it. Actions that change IRI wait for any
+     * other such action to finish first.
+     */
     public ActionResponse action(String cmd, IccrPropertyListDto actionProps) {
+        validateAction(cmd);
+
+        if(ActionFactory.isReadOnlyAction(cmd)) {
+            return query(cmd, actionProps);
+        }
+        return executor.run(cmd, false, () -> lifecycle(cmd, actionProps));
+    }
+
+    /**
+     * As action, but the caller does not wait: read only IRI API calls are
+     * made with the non-blocking client, other actions are queued. The future
+     * completes when the action is done. Invalid commands still throw.
+     */
+    public CompletableFuture<ActionResponse> actionAsync(String cmd, IccrPropertyListDto actionProps) {
+        validateAction(cmd);
+
+        if(ActionFactory.isReadOnlyAction(cmd)) {
+            if(!isCacheable(actionProps)) {
+                return ActionFactory.getAction(cmd).executeAsync(actionProps);
+            }
+            return cache.get(cmd, () -> ActionFactory.getAction(cmd).executeAsync(actionProps));
+        }
+        return executor.submitForResult(cmd, false, () -> lifecycle(cmd, actionProps));
+    }
+
+    /**
+     * Queue the action as a job and return at once, poll the job with getJob.
+     * onDone, if given, is called with the action's response before the job
+     * is marked done.
+     */
+    public ActionJobResponse submit(String cmd, IccrPropertyListDto actionProps, Consumer<ActionResponse> onDone) {
+        validateAction(cmd);
+
+        boolean readOnly = ActionFactory.isReadOnlyAction(cmd);
+        return executor.submit(cmd, readOnly, () -> {
+            ActionResponse resp = readOnly ? query(cmd, actionProps) : lifecycle(cmd, actionProps);
+            if(onDone != null) {
+                onDone.accept(resp);
+            }
+            return resp;
+        });
+    }
+
+    /**
+     * Where callers of actionAsync should do their own work on the result,
+     * so it holds up neither the HTTP client's I/O threads nor the
+     * lifecycle thread.
+     */
+    public Executor getCallbackExecutor() {
+        return SharedHttpClient.getInstance().getCallbackExecutor();
+    }
+
+    public ActionJobResponse getJob(String id) {
+        return executor.getJob(id);
+    }
+
+    /**
+     * Drop cached query answers, for callers that changed IRI other than
+     * through a lifecycle action.
+     */
+    public void invalidateQueries() {
+        cache.invalidate();
+    }
+
+    // Identical queries share one IRI call and its answer for a short while
+    private ActionResponse query(String cmd, IccrPropertyListDto actionProps) {
+        if(!isCacheable(actionProps)) {
+            return ActionFactory.getAction(cmd).execute(actionProps);
+        }
+        try {
+            return cache.get(cmd,
+                    () -> CompletableFuture.completedFuture(ActionFactory.getAction(cmd).execute(actionProps)))
+                    .join();
+        }
+        catch(CompletionException ce) {
+            if(ce.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)ce.getCause();
+            }
+            throw ce;
+        }
+    }
+
+    private ActionResponse lifecycle(String cmd, IccrPropertyListDto actionProps) {
+        try {
+            return ActionFactory.getAction(cmd).execute(actionProps);
+        }
+        finally {
+            // IRI state changed, or may have
+            cache.invalidate();
+        }
+    }
+
+    // Queries with properties are rare and not worth keying on
+    private boolean isCacheable(IccrPropertyListDto actionProps) {
+        return actionProps == null || actionProps.getProperties() == null || actionProps.getProperties().isEmpty();
+    }
+
+    private void validateAction(String cmd) {
         if(!ActionFactory.isValidAction(cmd)) {
             throw new IllegalArgumentException(localizer.getFixedWithLocalText("IotaAgent (" + cmd + "): ", "unsupportedAction"));
         }
-
-        return ActionFactory.getAction(cmd).execute(actionProps);
     }
 
 
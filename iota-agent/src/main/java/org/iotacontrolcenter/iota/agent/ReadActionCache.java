@@ -0,0 +1,97 @@
+package org.iotacontrolcenter.iota.agent;
+
+import org.iotacontrolcenter.dto.ActionResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Shares read only IRI queries between callers. While a query is in flight
+ * every identical request waits on the same call, and a successful answer
+ * is served to later requests for ttlMs, so the load ICCR puts on IRI does
+ * not grow with the number of dashboards open.
+ *
+ * Failed answers are not kept. Lifecycle actions clear the cache, IRI may
+ * have changed under it. Cached responses are shared and must not be
+ * modified.
+ */
+public class ReadActionCache {
+
+    private static class Entry {
+        final CompletableFuture<ActionResponse> future;
+        volatile long completedAt = 0;
+
+        Entry(CompletableFuture<ActionResponse> future) {
+            this.future = future;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Supplier<Long> ttlMs;
+
+    /**
+     * @param ttlMs how long an answer is served, read per lookup so a config
+     *              change applies at once; 0 still shares calls in flight
+     */
+    public ReadActionCache(Supplier<Long> ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * The in-flight or fresh answer for cmd, or a new one from query.
+     */
+    public CompletableFuture<ActionResponse> get(String cmd, Supplier<CompletableFuture<ActionResponse>> query) {
+        while(true) {
+            Entry e = entries.get(cmd);
+            if(e != null && isUsable(e)) {
+                return e.future;
+            }
+
+            CompletableFuture<ActionResponse> mine = new CompletableFuture<>();
+            Entry fresh = new Entry(mine);
+            boolean won = e == null ? entries.putIfAbsent(cmd, fresh) == null : entries.replace(cmd, e, fresh);
+            if(!won) {
+                // Another caller started the query first, share theirs
+                continue;
+            }
+
+            CompletableFuture<ActionResponse> call;
+            try {
+                call = query.get();
+            }
+            catch(RuntimeException re) {
+                entries.remove(cmd, fresh);
+                mine.completeExceptionally(re);
+                throw re;
+            }
+            call.whenComplete((resp, t) -> {
+                if(t != null || resp == null || !resp.isSuccess()) {
+                    entries.remove(cmd, fresh);
+                }
+                else {
+                    fresh.completedAt = System.currentTimeMillis();
+                }
+                if(t != null) {
+                    mine.completeExceptionally(t);
+                }
+                else {
+                    mine.complete(resp);
+                }
+            });
+            return mine;
+        }
+    }
+
+    public void invalidate() {
+        entries.clear();
+    }
+
+    private boolean isUsable(Entry e) {
+        if(!e.future.isDone()) {
+            return true;
+        }
+        long completedAt = e.completedAt;
+        return completedAt > 0 && System.currentTimeMillis() - completedAt < ttlMs.get();
+    }
+}
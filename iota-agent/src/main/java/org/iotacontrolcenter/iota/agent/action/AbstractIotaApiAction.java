@@ -0,0 +1,153 @@
+package org.iotacontrolcenter.iota.agent.action;
+
+import org.iotacontrolcenter.dto.ActionResponse;
+import org.iotacontrolcenter.dto.IccrPropertyDto;
+import org.iotacontrolcenter.dto.IccrPropertyListDto;
+import org.iotacontrolcenter.iota.agent.action.util.AgentUtil;
+import org.iotacontrolcenter.iota.agent.http.HttpMethod;
+import org.iotacontrolcenter.iota.agent.http.SharedHttpClient;
+import org.iotacontrolcenter.properties.source.PropertySource;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An action that is a single call to the local IRI API. Subclasses build the
+ * request and handle the result, this runs it either blocking (execute) or
+ * on the non-blocking client (executeAsync), both giving the same response.
+ * An async response is handled on the HTTP callback pool, not on the
+ * client's I/O thread.
+ */
+public abstract class AbstractIotaApiAction extends AbstractAction implements IotaAction {
+
+    private final String actionProp;
+
+    protected AbstractIotaApiAction(String actionProp) {
+        super(new String[]{PropertySource.IOTA_APP_DIR_PROP});
+        this.actionProp = actionProp;
+    }
+
+    @Override
+    protected void validatePreconditions() {
+
+        if (!AgentUtil.dirExists(propSource.getIotaAppDir())) {
+            throw new IllegalStateException(localizer.getLocalText("missingDirectory") +
+                    ": " + propSource.getIotaAppDir());
+        }
+    }
+
+    @Override
+    public ActionResponse execute(IccrPropertyListDto actionProps) {
+        preExecute();
+
+        ActionResponse resp = new ActionResponse();
+        HttpMethod request = prepare(actionProps, resp);
+        if(request == null) {
+            return resp;
+        }
+
+        try {
+            request.execute();
+        }
+        catch(IllegalStateException ise) {
+            return startFailed(request, resp, ise);
+        }
+        return done(request, resp);
+    }
+
+    @Override
+    public CompletableFuture<ActionResponse> executeAsync(IccrPropertyListDto actionProps) {
+        preExecute();
+
+        ActionResponse resp = new ActionResponse();
+        HttpMethod request = prepare(actionProps, resp);
+        if(request == null) {
+            return CompletableFuture.completedFuture(resp);
+        }
+
+        try {
+            return request.executeAsync().thenApplyAsync(r -> done(request, resp),
+                    SharedHttpClient.getInstance().getCallbackExecutor());
+        }
+        catch(IllegalStateException ise) {
+            return CompletableFuture.completedFuture(startFailed(request, resp, ise));
+        }
+    }
+
+    /**
+     * Build the IRI request, or complete resp and return null when there is
+     * nothing to send.
+     */
+    protected HttpMethod prepare(IccrPropertyListDto actionProps, ActionResponse resp) {
+        if (!AgentUtil.isIotaActive()) {
+            resp.addProperty(new IccrPropertyDto(actionProp, "false"));
+            resp.setSuccess(false);
+            resp.setMsg(localizer.getLocalText("iotaNotActive"));
+            return null;
+        }
+        return newRequest(actionProps, resp);
+    }
+
+    /**
+     * Build the request once IRI is known to be running, same contract as prepare.
+     */
+    protected abstract HttpMethod newRequest(IccrPropertyListDto actionProps, ActionResponse resp);
+
+    /**
+     * Called with the response content already set on resp.
+     */
+    protected void onSuccess(ActionResponse resp) {
+    }
+
+    protected void onFailure(String msg) {
+    }
+
+    private ActionResponse done(HttpMethod request, ActionResponse resp) {
+        String msg;
+        boolean rval = true;
+
+        try {
+            if(request.isResponseSuccess()) {
+                msg = "success";
+                resp.addProperty(new IccrPropertyDto(actionProp, "true"));
+                resp.setContent(request.responseAsString());
+
+                onSuccess(resp);
+
+                System.out.println(request.getName() + " " +
+                        localizer.getLocalText("httpRequestSuccess"));
+            }
+            else {
+                rval = false;
+                msg = request.getResponseReason();
+                if(msg == null || msg.isEmpty()) {
+                    msg = request.getStartError();
+                }
+                resp.addProperty(new IccrPropertyDto(actionProp, "false"));
+
+                onFailure(msg);
+            }
+        }
+        catch(IllegalStateException ise) {
+            return startFailed(request, resp, ise);
+        }
+        finally {
+            request.release();
+        }
+
+        resp.setSuccess(rval);
+        resp.setMsg(msg);
+        return resp;
+    }
+
+    private ActionResponse startFailed(HttpMethod request, ActionResponse resp, IllegalStateException ise) {
+        // Message is already localized
+        System.out.println(request.getName() + " " +
+                localizer.getLocalTextWithFixed("startHttpException", ise.getMessage()));
+        request.release();
+
+        resp.addProperty(new IccrPropertyDto(actionProp, "false"));
+        resp.setSuccess(false);
+        resp.setMsg(ise.getMessage());
+        return resp;
+    }
+}
@@ -1,124 +1,87 @@
 package org.iotacontrolcenter.iota.agent.action;
 
 import org.iotacontrolcenter.dto.*;
-import org.iotacontrolcenter.iota.agent.action.util.AgentUtil;
 import org.iotacontrolcenter.iota.agent.http.AddIotaNeighbors;
+import org.iotacontrolcenter.iota.agent.http.HttpMethod;
 import org.iotacontrolcenter.persistence.PersistenceService;
-import org.iotacontrolcenter.properties.source.PropertySource;
 
-public class AddNeighborsIotaAction extends AbstractAction implements IotaAction {
+public class AddNeighborsIotaAction extends AbstractIotaApiAction {
 
     public static final String ACTION_PROP = "addIotaNeighbors";
 
     public AddNeighborsIotaAction() {
-        super(new String[]{PropertySource.IOTA_APP_DIR_PROP});
+        super(ACTION_PROP);
     }
 
     @Override
-    protected void validatePreconditions() {
+    protected HttpMethod newRequest(IccrPropertyListDto actionProps, ActionResponse resp) {
+        AddIotaNeighbors request = new AddIotaNeighbors(propSource.getLocalIotaUrl());
 
-        if (!AgentUtil.dirExists(propSource.getIotaAppDir())) {
-            throw new IllegalStateException(localizer.getLocalText("missingDirectory") +
-                    ": " + propSource.getIotaAppDir());
-        }
-    }
-
-    @Override
-    public ActionResponse execute(IccrPropertyListDto actionProps) {
-        preExecute();
-
-        ActionResponse resp = new ActionResponse();
-        String msg = "";
-        boolean rval = true;
+        if(actionProps != null && actionProps.getProperties() != null &&
+                !actionProps.getProperties().isEmpty()) {
+            // Adding only the specified nbrs:
+            IotaAddNeighborsCommandDto payload = new IotaAddNeighborsCommandDto();
+            for(IccrPropertyDto nbr : actionProps.getProperties()) {
+                payload.addUri(nbr.getValue());
+            }
+            System.out.println(ACTION_PROP + ", " + payload);
 
-        if (!AgentUtil.isIotaActive()) {
-            resp.addProperty(new IccrPropertyDto(ACTION_PROP, "false"));
-            resp.setSuccess(false);
-            resp.setMsg(localizer.getLocalText("iotaNotActive"));
+            request.setPayload(payload);
+            return request;
         }
-        else {
-            AddIotaNeighbors request = new AddIotaNeighbors(propSource.getLocalIotaUrl());
 
-            IccrIotaNeighborsPropertyDto nbrs = propSource.getIotaNeighbors();
+        // Adding all the currently configured active nbrs:
+        IccrIotaNeighborsPropertyDto nbrs = propSource.getIotaNeighbors();
 
-            if(nbrs == null || nbrs.getNbrs() == null || nbrs.getNbrs().isEmpty()) {
-                System.out.println(ACTION_PROP + ", neighbors property is empty");
-                resp.setSuccess(true);
-                resp.setMsg("Neighbors was empty, nothing to add");
-                resp.addProperty(new IccrPropertyDto(ACTION_PROP, "true"));
-                resp.setContent("Neighbors was empty, nothing to add");
+        if(nbrs == null || nbrs.getNbrs() == null || nbrs.getNbrs().isEmpty()) {
+            System.out.println(ACTION_PROP + ", neighbors property is empty");
+            resp.setSuccess(true);
+            resp.setMsg("Neighbors was empty, nothing to add");
+            resp.addProperty(new IccrPropertyDto(ACTION_PROP, "true"));
+            resp.setContent("Neighbors was empty, nothing to add");
 
-                persister.logIotaAction(PersistenceService.IOTA_ADD_NBRS_FAIL,
-                        "",
-                        "Neighbors configuration is empty");
+            persister.logIotaAction(PersistenceService.IOTA_ADD_NBRS_FAIL,
+                    "",
+                    "Neighbors configuration is empty");
 
-                return resp;
-            }
+            return null;
+        }
 
-            IotaAddNeighborsCommandDto payload = new IotaAddNeighborsCommandDto();
-            nbrs.getNbrs().forEach((nbr) -> {
-                if(nbr.isActive()) {
-                    payload.addUri(nbr.getUri());
-                }
-            });
-
-            if(payload.getUris().isEmpty()) {
-                resp.setSuccess(true);
-                resp.setMsg("No active neighbors, nothing to add");
-                resp.addProperty(new IccrPropertyDto(ACTION_PROP, "true"));
-                resp.setContent("No active neighbors, nothing to add");
-
-                persister.logIotaAction(PersistenceService.IOTA_ADD_NBRS_FAIL,
-                        "",
-                        "No active neighbors, nothing to add");
-
-                return resp;
+        IotaAddNeighborsCommandDto payload = new IotaAddNeighborsCommandDto();
+        nbrs.getNbrs().forEach((nbr) -> {
+            if(nbr.isActive()) {
+                payload.addUri(nbr.getUri());
             }
+        });
 
-            request.setPayload(payload);
+        if(payload.getUris().isEmpty()) {
+            resp.setSuccess(true);
+            resp.setMsg("No active neighbors, nothing to add");
+            resp.addProperty(new IccrPropertyDto(ACTION_PROP, "true"));
+            resp.setContent("No active neighbors, nothing to add");
 
-            try {
-                request.execute();
+            persister.logIotaAction(PersistenceService.IOTA_ADD_NBRS_FAIL,
+                    "",
+                    "No active neighbors, nothing to add");
 
-                if(request.isResponseSuccess()) {
-
-                    msg = "success";
-                    resp.addProperty(new IccrPropertyDto(ACTION_PROP, "true"));
-                    resp.setContent(request.responseAsString());
-
-                    System.out.println(request.getName() + " " +
-                            localizer.getLocalText("httpRequestSuccess"));
-
-                    persister.logIotaAction(PersistenceService.IOTA_ADD_NBRS);
-                }
-                else {
-                    System.out.println(request.getName() + " addNeighbors response was not successful");
+            return null;
+        }
 
-                    rval = false;
-                    msg = request.getResponseReason();
-                    if(msg == null || msg.isEmpty()) {
-                        msg = request.getStartError();
-                    }
-                    resp.addProperty(new IccrPropertyDto(ACTION_PROP, "false"));
+        request.setPayload(payload);
+        return request;
+    }
 
-                    persister.logIotaAction(PersistenceService.IOTA_ADD_NBRS_FAIL,
-                            "",
-                            resp.getMsg());
-                }
-            }
-            catch(IllegalStateException ise) {
-                // Message is already localized
-                System.out.println(request.getName() + " " +
-                        localizer.getLocalTextWithFixed("startHttpException", ise.getMessage()));
-                rval = false;
-                msg = ise.getMessage();
-                resp.addProperty(new IccrPropertyDto(ACTION_PROP, "false"));
-            }
+    @Override
+    protected void onSuccess(ActionResponse resp) {
+        persister.logIotaAction(PersistenceService.IOTA_ADD_NBRS);
+    }
 
-            resp.setSuccess(rval);
-            resp.setMsg(msg);
-        }
+    @Override
+    protected void onFailure(String msg) {
+        System.out.println(ACTION_PROP + ", addNeighbors response was not successful");
 
-        return resp;
+        persister.logIotaAction(PersistenceService.IOTA_ADD_NBRS_FAIL,
+                "",
+                msg);
     }
 }
@@ -101,17 +101,6 @@ public class DeleteDbIotaAction extends AbstractAction implements IotaAction  {
         if(wasIotaActive) {
             System.out.println(ACTION_PROP + ", restarting IOTA");
 
-            if(rval) {
-
-                // Pause for a sec to let it spin up
-                try {
-                    Thread.sleep(2000);
-                }
-                catch(Exception e) {
-                }
-
-            }
-
             boolean started = AgentUtil.startIotaBoolean();
             if(started) {
                 // The start action is logging this event
@@ -1,23 +1,30 @@
 package org.iotacontrolcenter.iota.agent.action;
 
-import org.apache.commons.io.FileUtils;
 import org.iotacontrolcenter.dto.ActionResponse;
 import org.iotacontrolcenter.dto.IccrPropertyDto;
 import org.iotacontrolcenter.dto.IccrPropertyListDto;
 import org.iotacontrolcenter.iota.agent.action.util.AgentUtil;
-import org.iotacontrolcenter.iota.agent.http.GetIotaLibrary;
+import org.iotacontrolcenter.iota.agent.http.DownloadCache;
+import org.iotacontrolcenter.iota.agent.http.DownloadManager;
 import org.iotacontrolcenter.iota.agent.process.IotaBakupAndInstallProcess;
 import org.iotacontrolcenter.iota.agent.process.OsProcess;
 import org.iotacontrolcenter.persistence.PersistenceService;
 import org.iotacontrolcenter.properties.source.PropertySource;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 public class InstallIotaAction extends AbstractAction implements IotaAction {
 
     public static final String ACTION_PROP = "installIota";
+    // Optional action property, the expected SHA-256 (hex) of the downloaded jar
+    public static final String DLD_SHA256_PROP = "iotaDownloadSha256";
     private boolean wasIotaActive = false;
+    private String sha256;
 
     public InstallIotaAction() {
         super(new String[] { PropertySource.IOTA_DLD_LINK_PROP, PropertySource.IOTA_APP_DIR_PROP });
@@ -56,16 +63,24 @@ public class InstallIotaAction extends AbstractAction implements IotaAction {
 
         // client may have provided the desired download link and filename:
         if(actionProps != null && actionProps.getProperties() != null && !actionProps.getProperties().isEmpty()) {
-            for(IccrPropertyDto prop : actionProps.getProperties()) {
-                System.out.println("installIota, using " + prop);
-                propSource.setProperty(prop.getKey(), prop.getValue());
-            }
+            propSource.update(editor -> {
+                for(IccrPropertyDto prop : actionProps.getProperties()) {
+                    System.out.println("installIota, using " + prop);
+                    if(DLD_SHA256_PROP.equals(prop.getKey())) {
+                        // Belongs to this download only, not saved in the config
+                        sha256 = prop.getValue();
+                    }
+                    else {
+                        editor.set(prop.getKey(), prop.getValue());
+                    }
+                }
+            });
         }
 
         System.out.println("installIota, from: " + propSource.getIotaDownloadUrl());
 
         // Download new IRI.jar:
-        GetIotaLibrary iotaDld = new GetIotaLibrary(propSource.getIotaDownloadUrl());
+        DownloadManager iotaDld = new DownloadManager(Paths.get(propSource.getIccrDownloadDir()));
         String dldFilePath = null;
         String iriJarFilePath = null;
         String iriJarFile= null;
@@ -98,96 +113,66 @@ public class InstallIotaAction extends AbstractAction implements IotaAction {
                 }
             }
 
-            // Now do the download while it is stopping
-            iotaDld.execute();
-
-            if(iotaDld.isResponseSuccess()) {
-                msg = "success";
-                resp.addProperty(new IccrPropertyDto(ACTION_PROP, "true"));
-
-                System.out.println(iotaDld.getName() + " " +
-                        localizer.getLocalText("httpRequestSuccess"));
-
-                String dldUrl = propSource.getIotaDownloadUrl();
-                String dldFileName = dldUrl.substring(dldUrl.lastIndexOf("/")+1);
-
-                // Store it in an ICCR download dir with timestamped suffix:
-                dldFilePath = propSource.getIccrDownloadDir() + "/" + dldFileName + "." + propSource.getNowDateTimestamp();
-
-                // And will be copied to the IRI jar file name specified in the iotaDir and iotaStartCmd props:
-                iriJarFilePath = propSource.getIriJarFilePath();
-
-                iriJarFile = propSource.getIriJarFileInStartCmd();
-
-                byte[] jarBytes = iotaDld.responseAsByteArray();
+            String dldUrl = propSource.getIotaDownloadUrl();
+            String dldFileName = dldUrl.substring(dldUrl.lastIndexOf("/")+1);
 
-                if(!storeJar(dldFilePath, jarBytes)) {
-                    resp.addProperty(new IccrPropertyDto(ACTION_PROP, "false"));
-                    resp.setSuccess(false);
-                    resp.setMsg(localizer.getLocalText("storeIotaFail"));
+            // Store it in an ICCR download dir with timestamped suffix:
+            dldFilePath = propSource.getIccrDownloadDir() + "/" + dldFileName + "." + propSource.getNowDateTimestamp();
 
-                    persister.logIotaAction(PersistenceService.IOTA_DLD_FAIL, dldFilePath,
-                            localizer.getLocalText("storeIotaFail"));
+            // And will be copied to the IRI jar file name specified in the iotaDir and iotaStartCmd props:
+            iriJarFilePath = propSource.getIriJarFilePath();
 
-                    return resp;
-                }
+            iriJarFile = propSource.getIriJarFileInStartCmd();
 
-                persister.logIotaAction(PersistenceService.IOTA_DLD,
-                        propSource.getIotaDownloadUrl(),
-                        dldFilePath + " (" + jarBytes.length + " bytes)");
+            // Now do the download while it is stopping, resuming an earlier partial download of the same jar
+            long jarSize = iotaDld.download(dldUrl, Paths.get(dldFilePath), sha256);
 
+            msg = "success";
+            resp.addProperty(new IccrPropertyDto(ACTION_PROP, "true"));
 
+            System.out.println("downloadIota " +
+                    localizer.getLocalText("httpRequestSuccess"));
 
-                // Now copy into place the newly downloaded file, from download dir to the iota iri.jar file
-                // that was specified in the start iota cmd:
-                boolean installed = installNewIota(dldFilePath, iriJarFilePath, iriJarFile);
-                if(installed) {
-                    persister.logIotaAction(PersistenceService.IOTA_INSTALL,
-                            dldFilePath,
-                            iriJarFilePath);
-                }
-                else {
-                    System.out.println(ACTION_PROP + " " +
-                            localizer.getLocalText("installIotaFail"));
+            persister.logIotaAction(PersistenceService.IOTA_DLD,
+                    propSource.getIotaDownloadUrl(),
+                    dldFilePath + " (" + jarSize + " bytes)");
 
-                    resp.addProperty(new IccrPropertyDto(ACTION_PROP, "false"));
-                    resp.setSuccess(false);
-                    resp.setMsg(localizer.getLocalText("installIotaFail"));
+            // Now link into place the newly downloaded file, from download dir to the iota iri.jar file
+            // that was specified in the start iota cmd:
+            boolean installed = installNewIota(dldFilePath, iriJarFilePath, iriJarFile, iotaDld.getCache());
+            if(installed) {
+                persister.logIotaAction(PersistenceService.IOTA_INSTALL,
+                        dldFilePath,
+                        iriJarFilePath);
+            }
+            else {
+                System.out.println(ACTION_PROP + " " +
+                        localizer.getLocalText("installIotaFail"));
 
-                    persister.logIotaAction(PersistenceService.IOTA_INSTALL_FAIL,
-                            dldFilePath,
-                            resp.getMsg());
+                resp.addProperty(new IccrPropertyDto(ACTION_PROP, "false"));
+                resp.setSuccess(false);
+                resp.setMsg(localizer.getLocalText("installIotaFail"));
 
-                    return resp;
-                }
+                persister.logIotaAction(PersistenceService.IOTA_INSTALL_FAIL,
+                        dldFilePath,
+                        resp.getMsg());
 
-                boolean started = AgentUtil.startIotaBoolean();
-                if(started) {
-                    // The start action is logging this event
-                }
-                else {
-                    System.out.println(ACTION_PROP + " " +
-                            localizer.getLocalText("startIotaFail"));
-
-                    resp.addProperty(new IccrPropertyDto(ACTION_PROP, "false"));
-                    resp.setSuccess(false);
-                    resp.setMsg(localizer.getLocalText("startIotaFail"));
+                return resp;
+            }
 
-                    return resp;
-                }
+            boolean started = AgentUtil.startIotaBoolean();
+            if(started) {
+                // The start action is logging this event
             }
             else {
-                rval = false;
-                msg = iotaDld.getResponseReason();
-                if(msg == null || msg.isEmpty()) {
-                    msg = iotaDld.getStartError();
-                }
-                resp.addProperty(new IccrPropertyDto(ACTION_PROP, "false"));
+                System.out.println(ACTION_PROP + " " +
+                        localizer.getLocalText("startIotaFail"));
 
-                persister.logIotaAction(PersistenceService.IOTA_DLD_FAIL, propSource.getIotaDownloadUrl(), msg);
+                resp.addProperty(new IccrPropertyDto(ACTION_PROP, "false"));
+                resp.setSuccess(false);
+                resp.setMsg(localizer.getLocalText("startIotaFail"));
 
-                // Adding url to msg to send back to client after the action was logged
-                msg = propSource.getIotaDownloadUrl() + " " + msg;
+                return resp;
             }
         }
         catch(IllegalStateException ise) {
@@ -195,7 +180,7 @@ public class InstallIotaAction extends AbstractAction implements IotaAction {
             persister.logIotaAction(PersistenceService.IOTA_DLD_FAIL, propSource.getIotaDownloadUrl(), ise.getMessage());
 
             // Message is already localized
-            System.out.println(iotaDld.getName() + " " +
+            System.out.println("downloadIota " +
                     localizer.getLocalTextWithFixed("startHttpException", ise.getMessage()));
             rval = false;
             msg = ise.getMessage();
@@ -208,11 +193,10 @@ public class InstallIotaAction extends AbstractAction implements IotaAction {
         return resp;
     }
 
-    private boolean installNewIota(String dldFilePath, String iriJarFilePath, String iriJarFile) {
-        boolean rval = true;
-
+    private boolean installNewIota(String dldFilePath, String iriJarFilePath, String iriJarFile,
+                                   DownloadCache cache) {
         System.out.println("installing new iri jar from " + dldFilePath +
-                ", copying to " + iriJarFilePath);
+                ", linking to " + iriJarFilePath);
 
         // General preconditions were already validated (i.e. iotaDir exists)
         if(!AgentUtil.fileExists(dldFilePath)) {
@@ -223,34 +207,79 @@ public class InstallIotaAction extends AbstractAction implements IotaAction {
             return false;
         }
 
+        Path dld = Paths.get(dldFilePath);
+        Path iriJar = Paths.get(iriJarFilePath);
+        Path staged = Paths.get(iriJarFilePath + ".new");
+
+        // Stage the new jar next to the installed one, a hard link when the download dir is on the same
+        // file system, so the install is a rename rather than another copy of the bytes
+        try {
+            Files.deleteIfExists(staged);
+            try {
+                Files.createLink(staged, dld);
+            }
+            catch(IOException | UnsupportedOperationException e) {
+                System.out.println("installNewIota cannot link " + dldFilePath + " (" + e.getLocalizedMessage() +
+                        "), copying instead");
+                Files.copy(dld, staged);
+            }
+        }
+        catch(IOException ioe) {
+            System.out.println(ACTION_PROP + " " +
+                    localizer.getLocalText("installIotaFail") +
+                    ": (" + dldFilePath + " -> " + staged + "): " + ioe.getLocalizedMessage());
+            return false;
+        }
+
+        Path backup = null;
         if(AgentUtil.fileExists(iriJarFilePath)) {
-            String iriBackupFilePath = propSource.getIccrBakDir() + "/" +
-                    iriJarFile + "." + propSource.getNowDateTimestamp();
+            backup = Paths.get(propSource.getIccrBakDir() + "/" +
+                    iriJarFile + "." + propSource.getNowDateTimestamp());
 
             System.out.println("installNewIota make backup: " +
-                    "copy " + iriJarFilePath + " to " + iriBackupFilePath);
+                    "move " + iriJarFilePath + " to " + backup);
 
             try {
-                FileUtils.copyFile(new File(iriJarFilePath), new File(iriBackupFilePath));
+                Files.move(iriJar, backup);
             }
             catch(IOException ioe) {
                 System.out.println(ACTION_PROP + " " +
                         localizer.getLocalText("backupIotaFail") +
-                        ": (" + iriJarFilePath + ")");
+                        ": (" + iriJarFilePath + "): " + ioe.getLocalizedMessage());
+                deleteQuietly(staged);
                 return false;
             }
+
+            // Backups of a version that is also a download share its bytes, and can be reinstalled by checksum
+            try {
+                cache.dedupe(backup);
+            }
+            catch(IOException ioe) {
+                System.out.println("installNewIota, failed to add backup " + backup + " to the download cache: " +
+                        ioe.getLocalizedMessage());
+            }
         }
 
         System.out.println("installNewIota installing: " +
-                "copy " + dldFilePath + " to " + iriJarFilePath);
+                "move " + staged + " to " + iriJarFilePath);
 
         try {
-            FileUtils.copyFile(new File(dldFilePath), new File(iriJarFilePath));
+            moveIntoPlace(staged, iriJar);
         }
         catch(IOException ioe) {
             System.out.println(ACTION_PROP + " " +
                     localizer.getLocalText("installIotaFail") +
-                    ": (" + dldFilePath + " -> " + iriJarFilePath + ")");
+                    ": (" + dldFilePath + " -> " + iriJarFilePath + "): " + ioe.getLocalizedMessage());
+            deleteQuietly(staged);
+            if(backup != null) {
+                // Put the previous version back so IRI can still be started
+                try {
+                    Files.move(backup, iriJar);
+                }
+                catch(IOException e) {
+                    System.out.println(ACTION_PROP + ", failed to restore " + backup + ": " + e.getLocalizedMessage());
+                }
+            }
             return false;
         }
         return true;
@@ -295,21 +324,22 @@ public class InstallIotaAction extends AbstractAction implements IotaAction {
         return rval;
     }
 
-    private boolean storeJar(String filePath, byte[] jarBytes) {
-        boolean rval = true;
-
-        System.out.println("storing downloaded iri jar bytes in " + filePath);
+    private void moveIntoPlace(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 
+    private void deleteQuietly(Path file) {
         try {
-            FileUtils.writeByteArrayToFile(new File(filePath), jarBytes);
+            Files.deleteIfExists(file);
         }
         catch(IOException ioe) {
-            System.out.println(ACTION_PROP + " " +
-                    localizer.getLocalText("storeIotaFail") +
-                    ": " + ioe.getLocalizedMessage());
-            rval = false;
+            System.out.println(ACTION_PROP + ", failed to delete " + file + ": " + ioe.getLocalizedMessage());
         }
-        return rval;
     }
 
 }
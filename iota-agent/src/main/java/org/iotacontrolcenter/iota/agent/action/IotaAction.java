@@ -3,6 +3,16 @@ package org.iotacontrolcenter.iota.agent.action;
 import org.iotacontrolcenter.dto.ActionResponse;
 import org.iotacontrolcenter.dto.IccrPropertyListDto;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface IotaAction {
     ActionResponse execute(IccrPropertyListDto actionProps);
+
+    /**
+     * Execute without waiting on IRI. Actions that only work locally run on
+     * the calling thread and return a completed future.
+     */
+    default CompletableFuture<ActionResponse> executeAsync(IccrPropertyListDto actionProps) {
+        return CompletableFuture.completedFuture(execute(actionProps));
+    }
 }
@@ -52,13 +52,6 @@ public class RestartIotaAction extends AbstractAction implements IotaAction {
             }
         }
 
-        // Pause for a sec to let it stop...
-        try {
-            Thread.sleep(1000);
-        }
-        catch(Exception e) {
-        }
-
         System.out.println("restartIota, starting...");
 
         ActionResponse startResp = AgentUtil.startIota();
@@ -5,8 +5,8 @@ import org.iotacontrolcenter.dto.IccrIotaNeighborsPropertyDto;
 import org.iotacontrolcenter.dto.IccrPropertyDto;
 import org.iotacontrolcenter.dto.IccrPropertyListDto;
 import org.iotacontrolcenter.iota.agent.action.util.AgentUtil;
-import org.iotacontrolcenter.iota.agent.process.IotaStartProcess;
-import org.iotacontrolcenter.iota.agent.process.OsProcess;
+import org.iotacontrolcenter.iota.agent.process.IotaReadinessProbe;
+import org.iotacontrolcenter.iota.agent.process.IotaSupervisor;
 import org.iotacontrolcenter.persistence.PersistenceService;
 import org.iotacontrolcenter.properties.source.PropertySource;
 
@@ -57,42 +57,40 @@ public class StartIotaAction extends AbstractAction implements IotaAction {
             return resp;
         }
 
-        OsProcess proc = new IotaStartProcess();
-        boolean rval = proc.start();
+        // Before the start, so only what this IRI logs is looked at
+        IotaReadinessProbe probe = new IotaReadinessProbe();
+        IotaSupervisor supervisor = IotaSupervisor.getInstance();
+        boolean rval = supervisor.start();
         String msg = localizer.getLocalText("processSuccess");
         int rc = 0;
         if (!rval) {
-            if (proc.isStartError()) {
-                System.out.println(proc.getStartError());
-                msg = proc.getStartError();
+            msg = supervisor.getStartError();
+        }
+        else if(!probe.awaitReady()) {
+            rval = false;
+            rc = 1;
+            if(!supervisor.isRunning()) {
+                // Exited straight away, e.g. a bad jar or the port is in use, see console.log
+                msg = localizer.getLocalText("startIotaFail") + ", exit code: " + supervisor.getExitCode();
             }
             else {
-                msg = localizer.getLocalText("processFail");
+                msg = localizer.getLocalText("iotaReadyTimeout");
             }
-        } else {
-            rc = proc.getResultCode();
-            System.out.println(proc.getName() + " " +
-                    localizer.getLocalText("processSuccess") + ", " +
-                    localizer.getLocalText("resultCode") + ": " + rc);
+            System.out.println(msg);
         }
 
         if(rval) {
-            // Pause for a sec to let it spin up
-            try {
-                Thread.sleep(2000);
-            }
-            catch(Exception e) {
-            }
-
             boolean ok = addNeighbors();
+            long backoff = IotaReadinessProbe.INITIAL_BACKOFF_MS;
             int nbrTry = 0;
             while(!ok && nbrTry++ < 5) {
                 System.out.println("Failed to add neighbors, trying again...");
                 try {
-                    Thread.sleep(2000);
+                    Thread.sleep(backoff);
                 }
                 catch(Exception e) {
                 }
+                backoff = Math.min(backoff * 2, IotaReadinessProbe.MAX_BACKOFF_MS);
                 ok = addNeighbors();
             }
         }
@@ -6,6 +6,7 @@ import org.iotacontrolcenter.dto.IccrPropertyListDto;
 import org.iotacontrolcenter.iota.agent.http.GetIotaNodeInfo;
 import org.iotacontrolcenter.iota.agent.http.HttpGet;
 import org.iotacontrolcenter.iota.agent.process.IotaStatusProcess;
+import org.iotacontrolcenter.iota.agent.process.IotaSupervisor;
 import org.iotacontrolcenter.iota.agent.process.OsProcess;
 import org.iotacontrolcenter.properties.source.PropertySource;
 
@@ -26,7 +27,19 @@ public class StatusIotaAction extends AbstractAction implements IotaAction {
         boolean rval = true;
         String msg = null;
 
-        if(propSource.osIsWindows()) {
+        IotaSupervisor supervisor = IotaSupervisor.getInstance();
+        if(supervisor.isSupervising()) {
+            // Started by this ICCR, the supervisor knows without asking the OS
+            boolean running = supervisor.isRunning();
+            resp.setSuccess(true);
+            resp.setMsg(localizer.getLocalText("processSuccess"));
+            resp.addProperty(new IccrPropertyDto("resultCode", running ? "0" : "1"));
+            if(!running && supervisor.getExitCode() != null) {
+                resp.addProperty(new IccrPropertyDto("exitCode", Integer.toString(supervisor.getExitCode())));
+            }
+            resp.addProperty(new IccrPropertyDto(ACTION_PROP, running ? "true" : "false"));
+        }
+        else if(propSource.osIsWindows()) {
             GetIotaNodeInfo nodeInfoReq = new GetIotaNodeInfo(propSource.getLocalIotaUrl());
 
             try {
@@ -57,6 +70,9 @@ public class StatusIotaAction extends AbstractAction implements IotaAction {
                 msg = ise.getMessage();
                 resp.addProperty(new IccrPropertyDto(ACTION_PROP, "false"));
             }
+            finally {
+                nodeInfoReq.release();
+            }
 
             resp.setSuccess(rval);
             resp.setMsg(msg);
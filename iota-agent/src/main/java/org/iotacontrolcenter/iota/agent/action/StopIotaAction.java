@@ -3,8 +3,9 @@ package org.iotacontrolcenter.iota.agent.action;
 import org.iotacontrolcenter.dto.ActionResponse;
 import org.iotacontrolcenter.dto.IccrPropertyDto;
 import org.iotacontrolcenter.dto.IccrPropertyListDto;
-import org.iotacontrolcenter.iota.agent.action.util.AgentUtil;
+import org.iotacontrolcenter.iota.agent.process.IotaReadinessProbe;
 import org.iotacontrolcenter.iota.agent.process.IotaStopProcess;
+import org.iotacontrolcenter.iota.agent.process.IotaSupervisor;
 import org.iotacontrolcenter.iota.agent.process.OsProcess;
 import org.iotacontrolcenter.persistence.PersistenceService;
 
@@ -44,19 +45,27 @@ public class StopIotaAction extends AbstractAction implements IotaAction {
         }
         */
 
-        ActionResponse resp = doStop();
-
-        if(resp.isSuccess()) {
-            int maxTry = 0;
-            while(AgentUtil.isIotaActive() && maxTry < 3) {
-                // Pause for a bit to let it spin down
-                try {
-                    Thread.sleep(2000);
-                } catch (Exception e) {
-                }
-                maxTry++;
+        ActionResponse resp;
+        IotaSupervisor supervisor = IotaSupervisor.getInstance();
+        if(supervisor.isSupervising()) {
+            // Started by this ICCR, stop returns once IRI has exited so there is nothing to poll
+            resp = doSupervisedStop(supervisor);
+        }
+        else {
+            resp = doStop();
+        }
 
+        if(resp.isSuccess() && !supervisor.isSupervising()) {
+            // The stop script only signals IRI, wait for it to exit. Bounded by the stop timeout,
+            // not the much longer ready timeout: this holds the single lifecycle thread
+            if(!new IotaReadinessProbe(IotaSupervisor.STOP_TIMEOUT_MS).awaitStopped()) {
                 resp = doStop();
+                if(resp.isSuccess() && !new IotaReadinessProbe(IotaSupervisor.STOP_TIMEOUT_MS).awaitStopped()) {
+                    resp = new ActionResponse();
+                    resp.setSuccess(false);
+                    resp.setMsg(localizer.getLocalText("stopIotaFail"));
+                    resp.addProperty(new IccrPropertyDto(ACTION_PROP, "false"));
+                }
             }
         }
 
@@ -84,6 +93,18 @@ public class StopIotaAction extends AbstractAction implements IotaAction {
         return resp;
     }
 
+    private ActionResponse doSupervisedStop(IotaSupervisor supervisor) {
+        ActionResponse resp = new ActionResponse();
+        boolean stopped = supervisor.stop(IotaSupervisor.STOP_TIMEOUT_MS);
+        resp.setSuccess(stopped);
+        resp.setMsg(localizer.getLocalText(stopped ? "processSuccess" : "stopIotaFail"));
+        if(supervisor.getExitCode() != null) {
+            resp.addProperty(new IccrPropertyDto("resultCode", Integer.toString(supervisor.getExitCode())));
+        }
+        resp.addProperty(new IccrPropertyDto(ACTION_PROP, stopped ? "true" : "false"));
+        return resp;
+    }
+
     private ActionResponse  doStop() {
         ActionResponse resp = new ActionResponse();
         OsProcess proc = new IotaStopProcess();
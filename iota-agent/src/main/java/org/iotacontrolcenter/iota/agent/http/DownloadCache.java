@@ -0,0 +1,372 @@
+package org.iotacontrolcenter.iota.agent.http;
+
+import org.iotacontrolcenter.properties.locale.Localizer;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Content addressed store of downloaded files: each distinct file is kept
+ * once, named by its SHA-256, and an index remembers which blob a URL last
+ * resolved to together with the ETag and Last-Modified the server sent, for
+ * conditional requests.
+ *
+ * Downloads, installed jars and backups are hard links to the blobs where
+ * the file system allows, so keeping another copy of a version costs no
+ * space and reinstalling one costs no download.
+ *
+ * prune keeps the cache from growing without bound: a blob something else
+ * still links to costs nothing and stays, of the others only the most
+ * recently used are kept. Use times are kept in the index, not in the blob's
+ * mtime, which it shares with every link to it.
+ */
+public class DownloadCache {
+
+    public static final int DEFAULT_KEEP_UNLINKED = 3;
+
+    private static final String INDEX_FILE = "index.properties";
+    private static final String USED_PREFIX = "blob.";
+    private static final String USED_SUFFIX = ".used";
+    private static final String BLOB_PATTERN = "[0-9a-f]{64}";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static class Entry {
+        public final String url;
+        public final String sha256;
+        public final String etag;
+        public final String lastModified;
+        public final Path blob;
+
+        Entry(String url, String sha256, String etag, String lastModified, Path blob) {
+            this.url = url;
+            this.sha256 = sha256;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.blob = blob;
+        }
+    }
+
+    private final Path dir;
+    private final Path indexFile;
+    private final Localizer localizer;
+
+    public DownloadCache(Path dir) {
+        this.dir = dir;
+        this.indexFile = dir.resolve(INDEX_FILE);
+        this.localizer = Localizer.getInstance();
+        try {
+            Files.createDirectories(dir);
+        }
+        catch(IOException ioe) {
+            System.out.println("DownloadCache, exception creating " + dir + ": " + ioe.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * The blob url last resolved to, null if it was never downloaded or the
+     * blob is gone.
+     */
+    public synchronized Entry lookup(String url) {
+        Properties index = loadIndex();
+        String sha256 = index.getProperty(url + ".sha256");
+        if(sha256 == null) {
+            return null;
+        }
+        Path blob = blobOf(sha256);
+        if(!Files.exists(blob)) {
+            return null;
+        }
+        return new Entry(url, sha256, index.getProperty(url + ".etag"),
+                index.getProperty(url + ".lastModified"), blob);
+    }
+
+    /**
+     * The blob with this content, null if it is not in the cache.
+     */
+    public Path find(String sha256) {
+        if(sha256 == null || !sha256.trim().matches("[0-9a-fA-F]{64}")) {
+            return null;
+        }
+        Path blob = blobOf(sha256.trim());
+        return Files.exists(blob) ? blob : null;
+    }
+
+    /**
+     * Move a completed download into the cache and record it for url.
+     * If expectedSha256 is given and does not match, the file is deleted and
+     * IllegalStateException is thrown.
+     *
+     * @return the blob now holding the content
+     */
+    public synchronized Path store(String url, Path file, String etag, String lastModified,
+                                   String expectedSha256) throws IOException {
+        String sha256 = sha256Of(file);
+        if(expectedSha256 != null && !expectedSha256.trim().isEmpty() &&
+                !sha256.equalsIgnoreCase(expectedSha256.trim())) {
+            System.out.println("DownloadCache, " + url + " SHA-256 mismatch, expected: " +
+                    expectedSha256 + ", actual: " + sha256);
+            Files.deleteIfExists(file);
+            throw new IllegalStateException(localizer.getLocalTextWithFixed("downloadChecksumMismatch",
+                    ": " + url));
+        }
+
+        Path blob = addBlob(file, sha256);
+
+        Properties index = loadIndex();
+        index.setProperty(url + ".sha256", sha256);
+        setOrRemove(index, url + ".etag", etag);
+        setOrRemove(index, url + ".lastModified", lastModified);
+        setUsed(index, sha256);
+        saveIndex(index);
+        return blob;
+    }
+
+    /**
+     * Share file's content with the cache: file ends up a link to the blob
+     * with the same content, which is created from file if there is none.
+     */
+    public synchronized Path dedupe(Path file) throws IOException {
+        String sha256 = sha256Of(file);
+        Path blob = blobOf(sha256);
+        if(Files.exists(blob)) {
+            if(!Files.isSameFile(blob, file)) {
+                // Replace file with a link to the blob, through a temp name so it is never missing
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.deleteIfExists(tmp);
+                if(link(blob, tmp)) {
+                    move(tmp, file);
+                }
+            }
+        }
+        else if(!link(file, blob)) {
+            Files.copy(file, blob);
+        }
+        markUsed(blob);
+        return blob;
+    }
+
+    /**
+     * Make target a hard link to blob, or a copy of it where links are not possible.
+     */
+    public synchronized void linkOrCopy(Path blob, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        if(!link(blob, target)) {
+            Files.copy(blob, target);
+        }
+        markUsed(blob);
+    }
+
+    /**
+     * Delete the blobs nothing else links to, except the keep most recently
+     * used, and forget the URLs that resolved to them. Where link counts are
+     * not available every blob counts as unlinked.
+     *
+     * @return the number of blobs deleted
+     */
+    public synchronized int prune(int keep) {
+        List<Path> unlinked = new ArrayList<>();
+        try(DirectoryStream<Path> blobs = Files.newDirectoryStream(dir)) {
+            for(Path blob : blobs) {
+                if(blob.getFileName().toString().matches(BLOB_PATTERN) && !isLinked(blob)) {
+                    unlinked.add(blob);
+                }
+            }
+        }
+        catch(IOException ioe) {
+            System.out.println("DownloadCache, exception listing " + dir + ": " + ioe.getLocalizedMessage());
+            return 0;
+        }
+        if(unlinked.size() <= keep) {
+            return 0;
+        }
+
+        Properties index = loadIndex();
+        Map<Path, Long> used = new HashMap<>();
+        for(Path blob : unlinked) {
+            used.put(blob, usedOf(index, blob));
+        }
+        unlinked.sort((a, b) -> Long.compare(used.get(b), used.get(a)));
+
+        Set<String> deleted = new HashSet<>();
+        for(Path blob : unlinked.subList(Math.max(keep, 0), unlinked.size())) {
+            try {
+                Files.deleteIfExists(blob);
+                deleted.add(blob.getFileName().toString());
+                System.out.println("DownloadCache, pruned " + blob.getFileName());
+            }
+            catch(IOException ioe) {
+                System.out.println("DownloadCache, exception deleting " + blob + ": " + ioe.getLocalizedMessage());
+            }
+        }
+        if(deleted.isEmpty()) {
+            return 0;
+        }
+
+        for(String key : index.stringPropertyNames()) {
+            if(key.endsWith(".sha256") && deleted.contains(index.getProperty(key))) {
+                String url = key.substring(0, key.length() - ".sha256".length());
+                index.remove(key);
+                index.remove(url + ".etag");
+                index.remove(url + ".lastModified");
+            }
+        }
+        for(String sha256 : deleted) {
+            index.remove(USED_PREFIX + sha256 + USED_SUFFIX);
+        }
+        try {
+            saveIndex(index);
+        }
+        catch(IOException ioe) {
+            System.out.println("DownloadCache, exception writing " + indexFile + ": " + ioe.getLocalizedMessage());
+        }
+        return deleted.size();
+    }
+
+    public static String sha256Of(Path file) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buf = new byte[BUFFER_SIZE];
+        try(InputStream in = new FileInputStream(file.toFile())) {
+            int n;
+            while((n = in.read(buf)) > 0) {
+                md.update(buf, 0, n);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for(byte b : md.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private Path addBlob(Path file, String sha256) throws IOException {
+        Path blob = blobOf(sha256);
+        if(Files.exists(blob)) {
+            System.out.println("DownloadCache, " + sha256 + " already cached, dropping the duplicate");
+            Files.deleteIfExists(file);
+        }
+        else {
+            move(file, blob);
+        }
+        return blob;
+    }
+
+    private void markUsed(Path blob) {
+        Properties index = loadIndex();
+        setUsed(index, blob.getFileName().toString());
+        try {
+            saveIndex(index);
+        }
+        catch(IOException ioe) {
+            System.out.println("DownloadCache, exception writing " + indexFile + ": " + ioe.getLocalizedMessage());
+        }
+    }
+
+    private void setUsed(Properties index, String sha256) {
+        index.setProperty(USED_PREFIX + sha256.toLowerCase() + USED_SUFFIX, String.valueOf(System.currentTimeMillis()));
+    }
+
+    private long usedOf(Properties index, Path blob) {
+        String used = index.getProperty(USED_PREFIX + blob.getFileName() + USED_SUFFIX);
+        if(used != null) {
+            try {
+                return Long.parseLong(used);
+            }
+            catch(NumberFormatException e) {
+                // Fall back to the file time
+            }
+        }
+        try {
+            return Files.getLastModifiedTime(blob).toMillis();
+        }
+        catch(IOException ioe) {
+            return 0L;
+        }
+    }
+
+    private boolean isLinked(Path blob) {
+        try {
+            Object links = Files.getAttribute(blob, "unix:nlink");
+            return links instanceof Integer && (Integer)links > 1;
+        }
+        catch(IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private Path blobOf(String sha256) {
+        return dir.resolve(sha256.toLowerCase());
+    }
+
+    private boolean link(Path existing, Path link) {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        }
+        catch(IOException | UnsupportedOperationException e) {
+            System.out.println("DownloadCache, cannot link " + link + " to " + existing + ": " + e.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    private void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void setOrRemove(Properties index, String key, String value) {
+        if(value == null) {
+            index.remove(key);
+        }
+        else {
+            index.setProperty(key, value);
+        }
+    }
+
+    private Properties loadIndex() {
+        Properties index = new Properties();
+        if(Files.exists(indexFile)) {
+            try(InputStream in = new FileInputStream(indexFile.toFile())) {
+                index.load(in);
+            }
+            catch(IOException ioe) {
+                System.out.println("DownloadCache, exception reading " + indexFile + ": " + ioe.getLocalizedMessage());
+            }
+        }
+        return index;
+    }
+
+    private void saveIndex(Properties index) throws IOException {
+        Path tmp = indexFile.resolveSibling(INDEX_FILE + ".tmp");
+        try(FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            index.store(out, "ICCR download cache");
+            out.getFD().sync();
+        }
+        move(tmp, indexFile);
+    }
+}
@@ -0,0 +1,562 @@
+package org.iotacontrolcenter.iota.agent.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.iotacontrolcenter.properties.locale.Localizer;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads a file with HTTP Range requests, split into segments fetched in
+ * parallel over the shared client, and resumable: progress is kept next to
+ * the partial file in the work dir, so a failed or interrupted download picks
+ * up where it stopped the next time the same URL is downloaded.
+ *
+ * A first ranged request probes the size and range support; only the
+ * probe, which carries no body, is retried as a whole. A server that ignores
+ * ranges answers it with the whole file, which is then read from that same
+ * response; it can not be resumed, so a failure there fails the download.
+ * Each segment is retried with backoff from where it stopped, and If-Range
+ * makes sure all parts come from the same version of the file. The result
+ * can be checked against a SHA-256 before it is linked to the target.
+ *
+ * Completed downloads go into a DownloadCache. A URL that was downloaded
+ * before is only requested if modified since, and a file whose SHA-256 is
+ * given and already cached is not requested at all. After each new download
+ * the cache is pruned to keepBlobs blobs that nothing else links to.
+ */
+public class DownloadManager {
+
+    public static final int DEFAULT_SEGMENTS = 4;
+    public static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    public static final int MAX_RETRIES = 3;
+    public static final long RETRY_BACKOFF_MS = 1000L;
+
+    private static final String CACHE_DIR = "cache";
+    private static final String PART_SUFFIX = ".part";
+    private static final String STATE_SUFFIX = ".part.state";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Progress is saved, after forcing the file, at least this often per segment
+    private static final long SAVE_INTERVAL = 4 * 1024 * 1024;
+
+    private final Path workDir;
+    private final int maxSegments;
+    private final int keepBlobs = DownloadCache.DEFAULT_KEEP_UNLINKED;
+    private final DownloadCache cache;
+    private final Localizer localizer;
+
+    public DownloadManager(Path workDir) {
+        this(workDir, DEFAULT_SEGMENTS);
+    }
+
+    public DownloadManager(Path workDir, int maxSegments) {
+        if(maxSegments <= 0) {
+            throw new IllegalArgumentException("Invalid number of download segments: " + maxSegments);
+        }
+        this.workDir = workDir;
+        this.maxSegments = maxSegments;
+        this.cache = new DownloadCache(workDir.resolve(CACHE_DIR));
+        this.localizer = Localizer.getInstance();
+    }
+
+    public DownloadCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Download url to target, resuming an earlier partial download of the same
+     * url, and verify it against sha256 (hex) if one is given. The target is
+     * a link to the cached file.
+     *
+     * @return the size of the downloaded file
+     * @throws IllegalStateException with a localized message if the download
+     * failed, partial progress is kept unless the file failed verification
+     */
+    public long download(String url, Path target, String sha256) {
+        if(url == null || url.isEmpty()) {
+            throw new IllegalStateException(localizer.getFixedWithLocalText("downloadIota: ", "emptyHttpRequestUrl"));
+        }
+        String fileName = url.substring(url.lastIndexOf("/") + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+        if(fileName.isEmpty()) {
+            fileName = "download";
+        }
+        Path part = workDir.resolve(fileName + PART_SUFFIX);
+        Path state = workDir.resolve(fileName + STATE_SUFFIX);
+
+        try {
+            // Content addressing: a known checksum that is already cached needs no request at all
+            Path blob = cache.find(sha256);
+            if(blob != null) {
+                System.out.println("DownloadManager, " + url + " SHA-256 " + sha256 + " is cached, not downloading");
+                cache.linkOrCopy(blob, target);
+                return Files.size(blob);
+            }
+
+            DownloadCache.Entry cached = cache.lookup(url);
+            Download dld = new Download(url, part, state, cached);
+            long size = dld.run();
+
+            if(dld.notModified) {
+                if(sha256 != null && !sha256.trim().isEmpty() && !sha256.trim().equalsIgnoreCase(cached.sha256)) {
+                    throw new IllegalStateException(localizer.getLocalTextWithFixed("downloadChecksumMismatch",
+                            ": " + url));
+                }
+                System.out.println("DownloadManager, " + url + " not modified, using cached " + cached.sha256);
+                cache.linkOrCopy(cached.blob, target);
+                return Files.size(cached.blob);
+            }
+
+            try {
+                blob = cache.store(url, part, dld.etag, dld.lastModified, sha256);
+            }
+            finally {
+                // Verified or rejected, either way the partial download is finished
+                Files.deleteIfExists(state);
+            }
+            cache.linkOrCopy(blob, target);
+            cache.prune(keepBlobs);
+            return size;
+        }
+        catch(IOException ioe) {
+            System.out.println("DownloadManager, " + url + " failed: " + ioe.getLocalizedMessage());
+            throw new IllegalStateException(localizer.getLocalTextWithFixed("httpRequestException",
+                    " (name: downloadIota, URL: " + url + "): " + ioe.getLocalizedMessage()));
+        }
+    }
+
+    private static class Segment {
+        final long start;
+        final long end;
+        // Next byte to fetch, the segment is done when pos > end
+        final AtomicLong pos;
+
+        Segment(long start, long end, long pos) {
+            this.start = start;
+            this.end = end;
+            this.pos = new AtomicLong(pos);
+        }
+
+        boolean isDone() {
+            return pos.get() > end;
+        }
+    }
+
+    // The server no longer serves the version the partial file was started from
+    private static class ResourceChangedException extends IOException {
+        ResourceChangedException(String msg) {
+            super(msg);
+        }
+    }
+
+    private class Download {
+        private final String url;
+        private final Path part;
+        private final Path state;
+        private final DownloadCache.Entry cached;
+
+        private long length = -1;
+        private String validator;
+        private String etag;
+        private String lastModified;
+        private boolean notModified = false;
+        private List<Segment> segments = new ArrayList<>();
+        private FileChannel channel;
+        private volatile boolean failed = false;
+
+        Download(String url, Path part, Path state, DownloadCache.Entry cached) {
+            this.url = url;
+            this.part = part;
+            this.state = state;
+            this.cached = cached;
+        }
+
+        long run() throws IOException {
+            HttpGet whole;
+            int attempt = 0;
+            while(true) {
+                try {
+                    whole = probe();
+                    break;
+                }
+                catch(IOException e) {
+                    attempt++;
+                    if(attempt > MAX_RETRIES) {
+                        throw e;
+                    }
+                    backoff(attempt, "probe", e);
+                }
+            }
+            if(notModified) {
+                return -1L;
+            }
+            if(whole != null) {
+                // No ranges, the probe's response is the file; no retry, it would start over from byte 0
+                try {
+                    return whole.responseToFile(part);
+                }
+                finally {
+                    whole.release();
+                }
+            }
+
+            if(length < 0) {
+                // Ranges without a known total size, nothing to split
+                return single();
+            }
+
+            boolean resumed = loadState();
+            if(!resumed) {
+                plan();
+            }
+
+            try(RandomAccessFile raf = new RandomAccessFile(part.toFile(), "rw")) {
+                if(!resumed) {
+                    raf.setLength(length);
+                }
+                channel = raf.getChannel();
+                saveState();
+
+                long remaining = 0;
+                for(Segment seg : segments) {
+                    remaining += seg.end - seg.pos.get() + 1;
+                }
+                System.out.println("DownloadManager, " + url + ": " + length + " bytes, " +
+                        (resumed ? "resuming " + remaining + " bytes" : "starting") +
+                        " in " + segments.size() + " segments");
+
+                fetchAll();
+                channel.force(true);
+            }
+            finally {
+                channel = null;
+            }
+            return length;
+        }
+
+        // Learn size, range support and validators. Returns the probe, its body not read yet, if the
+        // server ignored the range and is sending the whole file; the caller reads and releases it
+        private HttpGet probe() throws IOException {
+            HttpGet probe = new HttpGet("downloadIota", url);
+            probe.addHeader("Range", "bytes=0-0");
+            if(cached != null) {
+                // Conditional on the version in the cache, a 304 means there is nothing to download
+                if(cached.etag != null) {
+                    probe.addHeader("If-None-Match", cached.etag);
+                }
+                if(cached.lastModified != null) {
+                    probe.addHeader("If-Modified-Since", cached.lastModified);
+                }
+            }
+            boolean keep = false;
+            try {
+                probe.execute();
+                if(probe.isStartError()) {
+                    throw new IOException(probe.getStartError());
+                }
+                int status = probe.response.getStatusLine().getStatusCode();
+                if(status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+                    notModified = true;
+                    return null;
+                }
+                etag = headerOf(probe, "ETag");
+                lastModified = headerOf(probe, "Last-Modified");
+                if(status == HttpStatus.SC_OK) {
+                    System.out.println("DownloadManager, " + url + " does not support ranges, downloading as one stream");
+                    Files.deleteIfExists(state);
+                    keep = true;
+                    return probe;
+                }
+                if(status != HttpStatus.SC_PARTIAL_CONTENT) {
+                    throw new IOException(status + " " + probe.getResponseReason());
+                }
+                length = totalLength(probe.response.getFirstHeader("Content-Range"));
+                validator = ifRangeValidator();
+            }
+            finally {
+                if(!keep) {
+                    probe.release();
+                }
+            }
+            return null;
+        }
+
+        private long single() throws IOException {
+            Files.deleteIfExists(state);
+            HttpGet get = new HttpGet("downloadIota", url);
+            try {
+                get.execute();
+                if(!get.isResponseSuccess()) {
+                    throw new IOException(get.isStartError() ? get.getStartError() : get.getResponseReason());
+                }
+                return get.responseToFile(part);
+            }
+            finally {
+                get.release();
+            }
+        }
+
+        private void plan() {
+            int n = (int)Math.max(1, Math.min(maxSegments, length / MIN_SEGMENT_SIZE));
+            long size = length / n;
+            segments = new ArrayList<>();
+            for(int i = 0; i < n; i++) {
+                long start = i * size;
+                long end = i == n - 1 ? length - 1 : start + size - 1;
+                segments.add(new Segment(start, end, start));
+            }
+        }
+
+        private void fetchAll() throws IOException {
+            List<Segment> todo = new ArrayList<>();
+            for(Segment seg : segments) {
+                if(!seg.isDone()) {
+                    todo.add(seg);
+                }
+            }
+            if(todo.isEmpty()) {
+                return;
+            }
+
+            AtomicInteger threadNum = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(todo.size(), r -> {
+                Thread t = new Thread(r, "iccr-download-" + threadNum.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for(Segment seg : todo) {
+                    futures.add(pool.submit(() -> {
+                        fetchSegment(seg);
+                        return null;
+                    }));
+                }
+
+                IOException error = null;
+                for(Future<?> f : futures) {
+                    try {
+                        f.get();
+                    }
+                    catch(ExecutionException e) {
+                        if(error == null) {
+                            error = e.getCause() instanceof IOException ? (IOException)e.getCause()
+                                    : new IOException(e.getCause());
+                        }
+                    }
+                    catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        failed = true;
+                        error = new IOException("interrupted");
+                    }
+                }
+                if(error instanceof ResourceChangedException) {
+                    // Start over next time rather than mixing two versions of the file
+                    Files.deleteIfExists(state);
+                    Files.deleteIfExists(part);
+                }
+                if(error != null) {
+                    throw error;
+                }
+            }
+            finally {
+                pool.shutdownNow();
+            }
+        }
+
+        private void fetchSegment(Segment seg) throws IOException {
+            int attempt = 0;
+            while(true) {
+                try {
+                    fetchRange(seg);
+                    return;
+                }
+                catch(ResourceChangedException e) {
+                    failed = true;
+                    throw e;
+                }
+                catch(IOException e) {
+                    attempt++;
+                    if(attempt > MAX_RETRIES || failed) {
+                        failed = true;
+                        throw e;
+                    }
+                    backoff(attempt, "bytes " + seg.pos.get() + "-" + seg.end, e);
+                }
+            }
+        }
+
+        private void backoff(int attempt, String what, IOException e) throws IOException {
+            long backoff = RETRY_BACKOFF_MS << (attempt - 1);
+            System.out.println("DownloadManager, " + url + " " + what +
+                    " failed (" + e.getLocalizedMessage() + "), retry " + attempt + " in " + backoff + " ms");
+            try {
+                Thread.sleep(backoff);
+            }
+            catch(InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+        }
+
+        private void fetchRange(Segment seg) throws IOException {
+            if(seg.isDone()) {
+                return;
+            }
+            HttpGet get = new HttpGet("downloadIota", url);
+            get.addHeader("Range", "bytes=" + seg.pos.get() + "-" + seg.end);
+            if(validator != null) {
+                get.addHeader("If-Range", validator);
+            }
+            try {
+                get.execute();
+                if(get.isStartError()) {
+                    throw new IOException(get.getStartError());
+                }
+                int status = get.response.getStatusLine().getStatusCode();
+                if(status == HttpStatus.SC_OK) {
+                    throw new ResourceChangedException(url + " changed on the server");
+                }
+                if(status != HttpStatus.SC_PARTIAL_CONTENT) {
+                    throw new IOException(status + " " + get.getResponseReason());
+                }
+
+                byte[] buf = new byte[BUFFER_SIZE];
+                long unsaved = 0;
+                try(InputStream in = get.response.getEntity().getContent()) {
+                    while(!seg.isDone() && !failed) {
+                        long p = seg.pos.get();
+                        int n = in.read(buf, 0, (int)Math.min(buf.length, seg.end - p + 1));
+                        if(n < 0) {
+                            break;
+                        }
+                        ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+                        while(bb.hasRemaining()) {
+                            p += channel.write(bb, p);
+                        }
+                        seg.pos.set(p);
+                        unsaved += n;
+                        if(unsaved >= SAVE_INTERVAL) {
+                            saveState();
+                            unsaved = 0;
+                        }
+                    }
+                }
+                if(!seg.isDone()) {
+                    throw new IOException("connection closed at byte " + seg.pos.get());
+                }
+            }
+            finally {
+                get.release();
+                saveState();
+            }
+        }
+
+        private boolean loadState() {
+            if(!Files.exists(state) || !Files.exists(part)) {
+                return false;
+            }
+            Properties props = new Properties();
+            try(InputStream in = new FileInputStream(state.toFile())) {
+                props.load(in);
+
+                boolean same = url.equals(props.getProperty("url")) &&
+                        Long.toString(length).equals(props.getProperty("length")) &&
+                        String.valueOf(validator).equals(props.getProperty("validator", "null")) &&
+                        Files.size(part) == length;
+                if(!same) {
+                    System.out.println("DownloadManager, " + url + " partial download is out of date, starting over");
+                    return false;
+                }
+
+                int n = Integer.parseInt(props.getProperty("segments"));
+                List<Segment> loaded = new ArrayList<>();
+                for(int i = 0; i < n; i++) {
+                    String[] v = props.getProperty("segment." + i).split(",");
+                    loaded.add(new Segment(Long.parseLong(v[0]), Long.parseLong(v[1]), Long.parseLong(v[2])));
+                }
+                segments = loaded;
+                return true;
+            }
+            catch(IOException | RuntimeException e) {
+                System.out.println("DownloadManager, cannot read " + state + ", starting over: " + e.getLocalizedMessage());
+                return false;
+            }
+        }
+
+        // Force the bytes first so the saved progress never runs ahead of what is on disk
+        private synchronized void saveState() {
+            Properties props = new Properties();
+            props.setProperty("url", url);
+            props.setProperty("length", Long.toString(length));
+            props.setProperty("validator", String.valueOf(validator));
+            props.setProperty("segments", Integer.toString(segments.size()));
+            for(int i = 0; i < segments.size(); i++) {
+                Segment seg = segments.get(i);
+                props.setProperty("segment." + i, seg.start + "," + seg.end + "," + seg.pos.get());
+            }
+
+            Path tmp = state.resolveSibling(state.getFileName() + ".tmp");
+            try {
+                if(channel != null && channel.isOpen()) {
+                    channel.force(false);
+                }
+                try(FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+                    props.store(out, "ICCR partial download");
+                }
+                Files.move(tmp, state, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch(IOException ioe) {
+                System.out.println("DownloadManager, exception saving " + state + ": " + ioe.getLocalizedMessage());
+            }
+        }
+
+        // Content-Range: bytes 0-0/12345, the total may be * when unknown
+        private long totalLength(Header contentRange) {
+            if(contentRange == null) {
+                return -1;
+            }
+            String v = contentRange.getValue();
+            int slash = v.lastIndexOf('/');
+            if(slash < 0) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(v.substring(slash + 1).trim());
+            }
+            catch(NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        // A strong ETag, or else Last-Modified, for If-Range
+        private String ifRangeValidator() {
+            if(etag != null && !etag.startsWith("W/")) {
+                return etag;
+            }
+            return lastModified;
+        }
+
+        private String headerOf(HttpMethod method, String name) {
+            Header h = method.response.getFirstHeader(name);
+            return h == null ? null : h.getValue();
+        }
+    }
+}
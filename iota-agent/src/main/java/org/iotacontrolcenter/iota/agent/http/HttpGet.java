@@ -1,11 +1,8 @@
 package org.iotacontrolcenter.iota.agent.http;
 
 import org.apache.http.client.config.RequestConfig;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.client.methods.HttpRequestBase;
 
-import java.io.IOException;
 import java.util.Map;
 
 public class HttpGet extends HttpMethod {
@@ -23,7 +20,7 @@ public class HttpGet extends HttpMethod {
     }
 
     @Override
-    public void execute() {
+    protected HttpRequestBase createRequest() {
         if(name == null || name.isEmpty()) {
             throw new IllegalStateException(localizer.getLocalText("emptyHttpRequestName"));
         }
@@ -35,38 +32,21 @@ public class HttpGet extends HttpMethod {
         System.out.println(localizer.getLocalTextWithFixed("executingHttpRequest", " (" + name + "): " + url));
 
         org.apache.http.client.methods.HttpGet get = new org.apache.http.client.methods.HttpGet(url);
-        try {
 
-            RequestConfig getConfig = RequestConfig.custom()
-                    .setSocketTimeout(timeOutSec * 1000)
-                    .setConnectTimeout(timeOutSec * 1000)
-                    .setConnectionRequestTimeout(timeOutSec * 1000)
-                    .build();
+        RequestConfig getConfig = RequestConfig.custom()
+                .setSocketTimeout(timeOutSec * 1000)
+                .setConnectTimeout(timeOutSec * 1000)
+                .setConnectionRequestTimeout(timeOutSec * 1000)
+                .build();
 
-            get.setConfig(getConfig);
+        get.setConfig(getConfig);
 
-            if(headers != null && !headers.isEmpty()) {
-                headers.forEach((k,v) -> {
-                    get.setHeader(k, v);
-                });
-            }
-
-            CloseableHttpClient client = HttpClientBuilder.create().disableAutomaticRetries().build();
-
-            response = client.execute(get);
-
-            // For releasigng connection in calls from the base:
-            httpRequestBase = get;
-        }
-        catch(IOException ioe) {
-            System.out.println("httpget io exe:");
-            ioe.printStackTrace();
-
-            System.out.println("startError:");
-            startError = localizer.getLocalTextWithFixed("httpRequestException",
-                    " (name: " + name + ", URL: " + url + "): " + ioe.getLocalizedMessage());
-            System.out.println(startError);
+        if(headers != null && !headers.isEmpty()) {
+            headers.forEach((k,v) -> {
+                get.setHeader(k, v);
+            });
         }
+        return get;
     }
 
 }
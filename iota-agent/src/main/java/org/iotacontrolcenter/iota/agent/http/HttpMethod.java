@@ -1,24 +1,36 @@
 package org.iotacontrolcenter.iota.agent.http;
 
 
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.util.EntityUtils;
 import org.iotacontrolcenter.properties.locale.Localizer;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public abstract class HttpMethod {
 
+    // Size of the buffer responseToFile copies the body through
+    private static final int TRANSFER_CHUNK = 64 * 1024;
+
     protected Map<String, String> headers;
     protected HttpRequestBase httpRequestBase;
     protected Localizer localizer;
     protected String name;
-    public CloseableHttpResponse response;
+    public HttpResponse response;
     protected String startError;
     protected int timeOutSec = 30;
     protected String url;
@@ -95,17 +107,42 @@ public abstract class HttpMethod {
         }
     }
 
-    public byte[] responseAsByteArray() {
-        try {
-            byte[] bytes = EntityUtils.toByteArray(response.getEntity());
-            if(httpRequestBase != null) {
-                httpRequestBase.releaseConnection();
-                httpRequestBase = null;
+    /**
+     * Stream the response body into file, replacing its content, without
+     * holding the body in memory. The file is forced to disk and the
+     * connection released before returning the number of bytes written.
+     * A body that ends before its Content-Length is an error.
+     */
+    public long responseToFile(Path file) {
+        if(response == null || response.getEntity() == null) {
+            throw new IllegalStateException(localizer.getLocalTextWithFixed("emptyHttpResponse",
+                    " (name: " + name + ", URL: " + url));
+        }
+        long expected = response.getEntity().getContentLength();
+        try(InputStream in = response.getEntity().getContent();
+            ReadableByteChannel src = Channels.newChannel(in);
+            FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            // Not transferFrom: it returns a short count instead of the error when the connection drops
+            ByteBuffer buf = ByteBuffer.allocate(TRANSFER_CHUNK);
+            long total = 0;
+            while(src.read(buf) >= 0) {
+                buf.flip();
+                while(buf.hasRemaining()) {
+                    total += out.write(buf);
+                }
+                buf.clear();
             }
-            return bytes;
+            if(expected >= 0 && total != expected) {
+                throw new IOException("body ended after " + total + " of " + expected + " bytes");
+            }
+            out.force(true);
+            release();
+            return total;
         }
         catch(IOException ioe) {
-            System.out.println("to byte array ioe:");
+            System.out.println("to file ioe:");
             ioe.printStackTrace();
             throw new IllegalStateException(localizer.getLocalTextWithFixed("httpResponseException",
                     " (name: " + name + ", URL: " + url + "): " + ioe.getLocalizedMessage()));
@@ -132,7 +169,89 @@ public abstract class HttpMethod {
         }
     }
 
-    public abstract void execute();
+    /**
+     * Discard whatever is left of the response, returning the connection to the
+     * shared pool. Safe to call more than once, and after the response was read.
+     */
+    public void release() {
+        if(response instanceof Closeable) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            try {
+                ((Closeable)response).close();
+            }
+            catch(IOException ioe) {
+                System.out.println("release, exception closing response (name: " + name + "): " + ioe.getLocalizedMessage());
+            }
+        }
+        if(httpRequestBase != null) {
+            httpRequestBase.releaseConnection();
+            httpRequestBase = null;
+        }
+    }
+
+    /**
+     * Send the request and wait for the response. An I/O failure is reported
+     * through isStartError, an invalid request throws IllegalStateException.
+     */
+    public void execute() {
+        HttpRequestBase request = createRequest();
+        try {
+            response = SharedHttpClient.getInstance().getClient().execute(request);
+
+            // For releasing connection in calls from the base:
+            httpRequestBase = request;
+        }
+        catch(IOException ioe) {
+            startFailed(ioe);
+        }
+    }
+
+    /**
+     * Send the request without blocking, the future completes with this
+     * method once the response has been received, or once the request has
+     * failed, reported the same way as by execute.
+     * An invalid request throws IllegalStateException right away.
+     */
+    public CompletableFuture<HttpMethod> executeAsync() {
+        HttpRequestBase request = createRequest();
+        CompletableFuture<HttpMethod> done = new CompletableFuture<>();
+
+        SharedHttpClient.getInstance().getAsyncClient().execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse result) {
+                // The async client hands over a fully read response, its connection is already back in the pool
+                response = result;
+                done.complete(HttpMethod.this);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                startFailed(e);
+                done.complete(HttpMethod.this);
+            }
+
+            @Override
+            public void cancelled() {
+                startError = localizer.getLocalTextWithFixed("httpRequestCancelled",
+                        " (name: " + name + ", URL: " + url + ")");
+                System.out.println(startError);
+                done.complete(HttpMethod.this);
+            }
+        });
+        return done;
+    }
+
+    private void startFailed(Exception e) {
+        startError = localizer.getLocalTextWithFixed("httpRequestException",
+                " (name: " + name + ", URL: " + url + "): " + e.getLocalizedMessage());
+        System.out.println(startError);
+    }
+
+    /**
+     * Validate and build the request, throws IllegalStateException if the
+     * method is not complete.
+     */
+    protected abstract HttpRequestBase createRequest();
 
 }
 
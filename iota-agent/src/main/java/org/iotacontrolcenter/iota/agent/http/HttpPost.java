@@ -4,13 +4,10 @@ package org.iotacontrolcenter.iota.agent.http;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
 
-import java.io.IOException;
 import java.util.Map;
 
 public class HttpPost extends HttpMethod  {
@@ -36,7 +33,7 @@ public class HttpPost extends HttpMethod  {
     }
 
     @Override
-    public void execute() {
+    protected HttpRequestBase createRequest() {
         if(name == null || name.isEmpty()) {
             throw new IllegalStateException(localizer.getLocalText("emptyHttpRequestName"));
         }
@@ -53,49 +50,35 @@ public class HttpPost extends HttpMethod  {
         System.out.println(localizer.getLocalTextWithFixed("executingHttpRequest", " (" + name + "): " + url));
 
         org.apache.http.client.methods.HttpPost post = new org.apache.http.client.methods.HttpPost(url);
-        try {
-
-            RequestConfig conf = RequestConfig.custom()
-                    .setSocketTimeout(timeOutSec * 1000)
-                    .setConnectTimeout(timeOutSec * 1000)
-                    .setConnectionRequestTimeout(timeOutSec * 1000)
-                    .build();
-
-            post.setConfig(conf);
-
-            if(headers != null && !headers.isEmpty()) {
-                headers.forEach((k,v) -> {
-                    post.setHeader(k, v);
-                });
-            }
-
-            StringEntity entity = null;
-            if(payload instanceof  String) {
-                entity = new StringEntity((String)payload, ContentType.create("application/json", "UTF-8"));
-                post.setEntity(entity);
-
-                System.out.println("Post string payload entity: '" + EntityUtils.toString(entity) + "'" +
-                        ", len: " + entity.getContentLength());
-            }
-            else {
-                Gson gson = new GsonBuilder().create();
-                entity = new StringEntity(gson.toJson(payload), ContentType.create("application/json", "UTF-8"));
-                post.setEntity(entity);
-
-                System.out.println("Post object payload entity: '" + EntityUtils.toString(entity) + "'" +
-                        ", len: " + entity.getContentLength());
-            }
-            CloseableHttpClient client = HttpClientBuilder.create().disableAutomaticRetries().build();
-
-            response = client.execute(post);
-
-            // For releasing connection in calls from the base:
-            httpRequestBase = post;
+
+        RequestConfig conf = RequestConfig.custom()
+                .setSocketTimeout(timeOutSec * 1000)
+                .setConnectTimeout(timeOutSec * 1000)
+                .setConnectionRequestTimeout(timeOutSec * 1000)
+                .build();
+
+        post.setConfig(conf);
+
+        if(headers != null && !headers.isEmpty()) {
+            headers.forEach((k,v) -> {
+                post.setHeader(k, v);
+            });
         }
-        catch(IOException ioe) {
-            startError = localizer.getLocalTextWithFixed("httpRequestException",
-                    " (name: " + name + ", URL: " + url + "): " + ioe.getLocalizedMessage());
-            System.out.println(startError);
+
+        String json;
+        if(payload instanceof  String) {
+            json = (String)payload;
+            System.out.println("Post string payload entity: '" + json + "'");
+        }
+        else {
+            Gson gson = new GsonBuilder().create();
+            json = gson.toJson(payload);
+            System.out.println("Post object payload entity: '" + json + "'");
         }
+        StringEntity entity = new StringEntity(json, ContentType.create("application/json", "UTF-8"));
+        post.setEntity(entity);
+        System.out.println("Post payload len: " + entity.getContentLength());
+
+        return post;
     }
 }
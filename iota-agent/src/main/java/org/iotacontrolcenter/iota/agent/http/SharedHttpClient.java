@@ -0,0 +1,193 @@
+package org.iotacontrolcenter.iota.agent.http;
+
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+
+import org.iotacontrolcenter.properties.locale.Localizer;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The one HTTP client used for IRI API calls and downloads. Connections are
+ * pooled and kept alive between requests (most go to the local IRI), with a
+ * per-route limit, and a background evictor closes expired and idle ones.
+ *
+ * Alongside it runs a non-blocking client for asynchronous IRI calls: a couple
+ * of I/O reactor threads serve all requests in flight, so no thread waits on
+ * a slow IRI. It has its own, smaller, pool with the same keep alive.
+ * Responses are handed to a callback pool, work done on them (parsing,
+ * logging, updating ICCR state) never holds up a reactor thread.
+ *
+ * Both are started at ICCR startup, or on first use, and closed at shutdown.
+ * A request must consume or release its response to return its connection
+ * to the pool.
+ */
+public class SharedHttpClient {
+
+    public static final int MAX_CONNECTIONS = 20;
+    public static final int MAX_CONNECTIONS_PER_ROUTE = 10;
+    public static final long KEEP_ALIVE_MS = TimeUnit.SECONDS.toMillis(30);
+    public static final long MAX_IDLE_MS = TimeUnit.SECONDS.toMillis(30);
+    public static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+    public static final int ASYNC_IO_THREADS = 2;
+    public static final int ASYNC_MAX_CONNECTIONS = 10;
+    public static final int CALLBACK_THREADS = 2;
+
+    private static SharedHttpClient instance;
+    private static Object SYNC_INST = new Object();
+    public static SharedHttpClient getInstance() {
+        synchronized (SYNC_INST) {
+            if(SharedHttpClient.instance == null) {
+                SharedHttpClient.instance = new SharedHttpClient();
+            }
+            return SharedHttpClient.instance;
+        }
+    }
+
+    private CloseableHttpClient client;
+    private PoolingHttpClientConnectionManager connManager;
+    private CloseableHttpAsyncClient asyncClient;
+    private PoolingNHttpClientConnectionManager asyncConnManager;
+    private boolean shutdownHookAdded = false;
+    private final ExecutorService callbacks;
+
+    private SharedHttpClient() {
+        System.out.println("new SharedHttpClient");
+
+        // Not bounded: each task is the answer to a request already in flight, and those are bounded by the pool
+        AtomicInteger callbackNum = new AtomicInteger();
+        callbacks = new ThreadPoolExecutor(CALLBACK_THREADS, CALLBACK_THREADS, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "iccr-http-callback-" + callbackNum.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    public synchronized void start() {
+        if(client != null) {
+            return;
+        }
+
+        connManager = new PoolingHttpClientConnectionManager();
+        connManager.setMaxTotal(MAX_CONNECTIONS);
+        connManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+        // IRI may have been restarted since a connection was last used
+        connManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+
+        // Use the server's keep alive if it sends one, but never keep a connection longer than KEEP_ALIVE_MS
+        ConnectionKeepAliveStrategy keepAlive = (response, context) -> {
+            long ms = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return ms > 0 ? Math.min(ms, KEEP_ALIVE_MS) : KEEP_ALIVE_MS;
+        };
+
+        // The client owns the connection manager and its evictor thread, closing it stops both
+        client = HttpClientBuilder.create()
+                .setConnectionManager(connManager)
+                .setKeepAliveStrategy(keepAlive)
+                .evictExpiredConnections()
+                .evictIdleConnections(MAX_IDLE_MS, TimeUnit.MILLISECONDS)
+                .disableAutomaticRetries()
+                .build();
+
+        try {
+            DefaultConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(IOReactorConfig.custom()
+                    .setIoThreadCount(ASYNC_IO_THREADS)
+                    .build());
+            asyncConnManager = new PoolingNHttpClientConnectionManager(ioReactor);
+            asyncConnManager.setMaxTotal(ASYNC_MAX_CONNECTIONS);
+            asyncConnManager.setDefaultMaxPerRoute(ASYNC_MAX_CONNECTIONS);
+
+            asyncClient = HttpAsyncClients.custom()
+                    .setConnectionManager(asyncConnManager)
+                    .setKeepAliveStrategy(keepAlive)
+                    .build();
+            asyncClient.start();
+        }
+        catch(IOReactorException ioe) {
+            System.out.println("SharedHttpClient, exception starting async client: " + ioe.getLocalizedMessage());
+            asyncClient = null;
+            asyncConnManager = null;
+        }
+
+        if(!shutdownHookAdded) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "iccr-http-shutdown"));
+            shutdownHookAdded = true;
+        }
+        System.out.println("SharedHttpClient started, max connections: " + MAX_CONNECTIONS +
+                ", per route: " + MAX_CONNECTIONS_PER_ROUTE);
+    }
+
+    public synchronized void shutdown() {
+        if(client == null) {
+            return;
+        }
+        try {
+            client.close();
+        }
+        catch(IOException ioe) {
+            System.out.println("SharedHttpClient, exception closing client: " + ioe.getLocalizedMessage());
+        }
+        if(asyncClient != null) {
+            try {
+                asyncClient.close();
+            }
+            catch(IOException ioe) {
+                System.out.println("SharedHttpClient, exception closing async client: " + ioe.getLocalizedMessage());
+            }
+        }
+        client = null;
+        connManager = null;
+        asyncClient = null;
+        asyncConnManager = null;
+        System.out.println("SharedHttpClient shutdown");
+    }
+
+    public synchronized CloseableHttpClient getClient() {
+        if(client == null) {
+            start();
+        }
+        return client;
+    }
+
+    public synchronized CloseableHttpAsyncClient getAsyncClient() {
+        if(client == null) {
+            start();
+        }
+        if(asyncClient == null) {
+            throw new IllegalStateException(Localizer.getInstance().getLocalText("httpAsyncClientUnavailable"));
+        }
+        return asyncClient;
+    }
+
+    /**
+     * Where to run work on an async response, off the reactor threads.
+     */
+    public Executor getCallbackExecutor() {
+        return callbacks;
+    }
+
+    public synchronized String getPoolStats() {
+        if(connManager == null) {
+            return "not started";
+        }
+        return connManager.getTotalStats() +
+                (asyncConnManager == null ? "" : ", async: " + asyncConnManager.getTotalStats());
+    }
+}
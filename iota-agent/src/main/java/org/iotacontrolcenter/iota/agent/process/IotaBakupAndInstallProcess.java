@@ -1,6 +1,7 @@
 package org.iotacontrolcenter.iota.agent.process;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
 
 public class IotaBakupAndInstallProcess extends OsProcess {
 
@@ -14,5 +15,7 @@ public class IotaBakupAndInstallProcess extends OsProcess {
         setArgs(new String[] { propSource.getIccrBinDir() + "/" + runScript, dldFilePath, iriFile });
 
         setDir(new File(propSource.getIccrBinDir()));
+
+        setTimeoutMs(TimeUnit.SECONDS.toMillis(120));
     }
 }
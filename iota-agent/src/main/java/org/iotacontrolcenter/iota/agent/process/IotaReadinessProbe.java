@@ -0,0 +1,255 @@
+package org.iotacontrolcenter.iota.agent.process;
+
+import org.iotacontrolcenter.iota.agent.action.util.AgentUtil;
+import org.iotacontrolcenter.iota.agent.http.GetIotaNodeInfo;
+import org.iotacontrolcenter.properties.source.PropertySource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Waits for IRI to come up, or go down, without fixed sleeps.
+ *
+ * Readiness is IRI answering getNodeInfo. The API is polled with an
+ * exponentially growing interval, and between polls console.log is watched
+ * for the line IRI logs once it is initialised; when it appears the API is
+ * polled again straight away. An IRI this ICCR started that exits while
+ * starting fails the wait at once instead of at the deadline.
+ *
+ * Create the probe before starting IRI: only console.log lines written
+ * after that are looked at.
+ */
+public class IotaReadinessProbe {
+
+    public static final int DEFAULT_TIMEOUT_SEC = 120;
+    public static final String DEFAULT_READY_LOG_PATTERN = "Node initialised correctly";
+    public static final long INITIAL_BACKOFF_MS = 100;
+    public static final long MAX_BACKOFF_MS = 2000;
+    private static final int PROBE_TIMEOUT_SEC = 5;
+
+    private final long deadlineNanos;
+    private final Path consoleLog;
+    private final Pattern readyPattern;
+    private long logOffset;
+    private String partialLine = "";
+
+    public IotaReadinessProbe() {
+        this(TimeUnit.SECONDS.toMillis(
+                PropertySource.getInstance().getIotaReadyTimeout(DEFAULT_TIMEOUT_SEC)));
+    }
+
+    public IotaReadinessProbe(long timeoutMs) {
+        PropertySource propSource = PropertySource.getInstance();
+        deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        consoleLog = Paths.get(propSource.getIotaAppDir(), IotaSupervisor.CONSOLE_LOG);
+        readyPattern = compile(propSource.getIotaReadyLogPattern(DEFAULT_READY_LOG_PATTERN));
+        try {
+            logOffset = Files.exists(consoleLog) ? Files.size(consoleLog) : 0;
+        }
+        catch(IOException ioe) {
+            logOffset = 0;
+        }
+    }
+
+    /**
+     * @return true as soon as the IRI API answers, false if the deadline
+     * passed or the supervised IRI exited first
+     */
+    public boolean awaitReady() {
+        IotaSupervisor supervisor = IotaSupervisor.getInstance();
+        long started = System.currentTimeMillis();
+        long backoff = INITIAL_BACKOFF_MS;
+
+        try(WatchService watcher = watchConsoleLog()) {
+            while(true) {
+                if(supervisor.isSupervising() && !supervisor.isRunning()) {
+                    System.out.println("IotaReadinessProbe, IRI exited while starting, exit code: " +
+                            supervisor.getExitCode());
+                    return false;
+                }
+                if(isReachable()) {
+                    System.out.println("IotaReadinessProbe, IRI ready after " +
+                            (System.currentTimeMillis() - started) + " ms");
+                    return true;
+                }
+                long left = remainingMs();
+                if(left <= 0) {
+                    System.out.println("IotaReadinessProbe, IRI not ready after " +
+                            (System.currentTimeMillis() - started) + " ms");
+                    return false;
+                }
+                if(waitForReadyLine(watcher, Math.min(backoff, left))) {
+                    System.out.println("IotaReadinessProbe, IRI logged it is ready");
+                    backoff = INITIAL_BACKOFF_MS;
+                }
+                else {
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+                }
+            }
+        }
+        catch(IOException ioe) {
+            // Only from closing the watcher
+            return isReachable();
+        }
+        catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return true as soon as IRI is no longer active, false if it still is
+     * at the deadline
+     */
+    public boolean awaitStopped() {
+        long backoff = INITIAL_BACKOFF_MS;
+        while(AgentUtil.isIotaActive()) {
+            long left = remainingMs();
+            if(left <= 0) {
+                System.out.println("IotaReadinessProbe, IRI still active at the deadline");
+                return false;
+            }
+            try {
+                Thread.sleep(Math.min(backoff, left));
+            }
+            catch(InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+        return true;
+    }
+
+    public static boolean isReachable() {
+        GetIotaNodeInfo nodeInfoReq = new GetIotaNodeInfo(PropertySource.getInstance().getLocalIotaUrl());
+        nodeInfoReq.setTimeOutSec(PROBE_TIMEOUT_SEC);
+        try {
+            nodeInfoReq.execute();
+            return nodeInfoReq.isResponseSuccess();
+        }
+        catch(IllegalStateException ise) {
+            return false;
+        }
+        finally {
+            nodeInfoReq.release();
+        }
+    }
+
+    private long remainingMs() {
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * Wait up to waitMs, returning early with true if the ready line shows up
+     * in console.log. Without a watcher it sleeps, then looks at console.log.
+     */
+    private boolean waitForReadyLine(WatchService watcher, long waitMs) throws InterruptedException {
+        if(watcher == null) {
+            Thread.sleep(waitMs);
+            return scanConsoleLog();
+        }
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs);
+        long left = waitMs;
+        while(left > 0) {
+            WatchKey key;
+            try {
+                key = watcher.poll(left, TimeUnit.MILLISECONDS);
+            }
+            catch(ClosedWatchServiceException e) {
+                return false;
+            }
+            if(key != null) {
+                // Other files in the IOTA dir change too, only console.log matters
+                boolean logChanged = key.pollEvents().stream()
+                        .anyMatch(ev -> consoleLog.getFileName().equals(ev.context()));
+                key.reset();
+                if(logChanged && scanConsoleLog()) {
+                    return true;
+                }
+            }
+            left = TimeUnit.NANOSECONDS.toMillis(until - System.nanoTime());
+        }
+        return scanConsoleLog();
+    }
+
+    /**
+     * Look at what was appended to console.log since the last scan.
+     */
+    private boolean scanConsoleLog() {
+        if(readyPattern == null) {
+            return false;
+        }
+        try(FileChannel ch = FileChannel.open(consoleLog, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if(size < logOffset) {
+                // Truncated, start over
+                logOffset = 0;
+                partialLine = "";
+            }
+            if(size == logOffset) {
+                return false;
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int)Math.min(size - logOffset, Integer.MAX_VALUE));
+            ch.read(buf, logOffset);
+            logOffset += buf.position();
+
+            String text = partialLine + new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8);
+            int lastNl = text.lastIndexOf('\n');
+            partialLine = text.substring(lastNl + 1);
+            for(String line : text.substring(0, lastNl + 1).split("\n")) {
+                if(readyPattern.matcher(line).find()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        catch(IOException ioe) {
+            return false;
+        }
+    }
+
+    private WatchService watchConsoleLog() {
+        if(readyPattern == null) {
+            return null;
+        }
+        try {
+            WatchService watcher = FileSystems.getDefault().newWatchService();
+            consoleLog.getParent().register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            return watcher;
+        }
+        catch(IOException | UnsupportedOperationException e) {
+            System.out.println("IotaReadinessProbe, not watching " + consoleLog + ": " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private static Pattern compile(String regex) {
+        if(regex == null || regex.isEmpty()) {
+            return null;
+        }
+        try {
+            return Pattern.compile(regex);
+        }
+        catch(PatternSyntaxException pse) {
+            System.out.println("IotaReadinessProbe, invalid " + PropertySource.IOTA_READY_LOG_PATTERN_PROP +
+                    ": " + pse.getLocalizedMessage());
+            return null;
+        }
+    }
+}
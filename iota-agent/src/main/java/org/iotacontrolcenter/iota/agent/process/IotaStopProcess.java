@@ -1,6 +1,7 @@
 package org.iotacontrolcenter.iota.agent.process;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
 
 public class IotaStopProcess extends OsProcess {
 
@@ -14,5 +15,7 @@ public class IotaStopProcess extends OsProcess {
         setArgs(new String[] { propSource.getIccrBinDir() + "/" + runScript });
 
         setDir(new File(propSource.getIccrBinDir()));
+
+        setTimeoutMs(TimeUnit.SECONDS.toMillis(30));
     }
 }
@@ -0,0 +1,208 @@
+package org.iotacontrolcenter.iota.agent.process;
+
+import org.iotacontrolcenter.properties.locale.Localizer;
+import org.iotacontrolcenter.properties.source.PropertySource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs IRI as a child process of ICCR and keeps hold of it, so whether IRI
+ * is running is known from memory instead of by forking the status script.
+ *
+ * IRI is launched with the configured start command and port in the IOTA
+ * directory, its output appended to console.log. A watcher thread waits on
+ * the process and records its exit as soon as it happens. On Unix the
+ * command is exec'd from a shell that first writes iota.pid, so the stop
+ * script still finds an IRI this ICCR started after ICCR itself restarts.
+ *
+ * An IRI this ICCR did not start (started before an ICCR restart or by
+ * hand) is not supervised; status and stop fall back to the scripts.
+ */
+public class IotaSupervisor {
+
+    public static final String CONSOLE_LOG = "console.log";
+    public static final String PID_FILE = "iota.pid";
+    public static final long STOP_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(20);
+    public static final long KILL_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(5);
+
+    private static IotaSupervisor instance;
+    private static Object SYNC_INST = new Object();
+    public static IotaSupervisor getInstance() {
+        synchronized (SYNC_INST) {
+            if(IotaSupervisor.instance == null) {
+                IotaSupervisor.instance = new IotaSupervisor();
+            }
+            return IotaSupervisor.instance;
+        }
+    }
+
+    private final Localizer localizer;
+    private final PropertySource propSource;
+    private Process process;
+    private volatile boolean running = false;
+    private volatile boolean stopRequested = false;
+    private volatile Integer exitCode;
+    private volatile long startedAt;
+    private String startError;
+
+    private IotaSupervisor() {
+        System.out.println("new IotaSupervisor");
+        localizer = Localizer.getInstance();
+        propSource = PropertySource.getInstance();
+    }
+
+    /**
+     * Launch IRI unless the one this ICCR started is still running.
+     *
+     * @return false if the process could not be launched, see getStartError
+     */
+    public synchronized boolean start() {
+        if(running) {
+            return true;
+        }
+        startError = null;
+
+        File iotaDir = new File(propSource.getIotaAppDir());
+        List<String> cmd = buildCommand(iotaDir);
+        ProcessBuilder pb = new ProcessBuilder(cmd)
+                .directory(iotaDir)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(new File(iotaDir, CONSOLE_LOG)));
+
+        System.out.println(localizer.getLocalTextWithFixed("executingCmd", " (iotasupervisor): " + String.join(" ", cmd)));
+        Process p;
+        try {
+            p = pb.start();
+        }
+        catch(IOException ioe) {
+            startError = localizer.getLocalTextWithFixed("startActionException",
+                    " (name: iotasupervisor, cmd: " + String.join(" ", cmd) + "): " + ioe.getLocalizedMessage());
+            System.out.println(startError);
+            return false;
+        }
+        try {
+            // IRI reads nothing from stdin
+            p.getOutputStream().close();
+        }
+        catch(IOException ioe) {
+        }
+
+        process = p;
+        exitCode = null;
+        stopRequested = false;
+        startedAt = System.currentTimeMillis();
+        running = true;
+
+        Thread watcher = new Thread(() -> watch(p), "iccr-iri-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+        return true;
+    }
+
+    /**
+     * Stop the supervised IRI: ask it to terminate, and kill it if it has not
+     * exited within timeoutMs.
+     *
+     * @return true if IRI is no longer running
+     */
+    public boolean stop(long timeoutMs) {
+        Process p;
+        synchronized(this) {
+            p = process;
+            if(p == null || !running) {
+                return true;
+            }
+            stopRequested = true;
+        }
+
+        System.out.println("IotaSupervisor, stopping IRI");
+        p.destroy();
+        try {
+            if(!p.waitFor(timeoutMs, TimeUnit.MILLISECONDS)) {
+                System.out.println("IotaSupervisor, IRI did not exit within " + timeoutMs + " ms, killing it");
+                p.destroyForcibly();
+                p.waitFor(KILL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return !p.isAlive();
+    }
+
+    /**
+     * True if this ICCR started IRI; from then on status is answered from
+     * memory, even after IRI has exited.
+     */
+    public synchronized boolean isSupervising() {
+        return process != null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Exit code of the last supervised IRI, null if it is still running or
+     * was never started.
+     */
+    public Integer getExitCode() {
+        return exitCode;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public synchronized String getStartError() {
+        return startError;
+    }
+
+    private List<String> buildCommand(File iotaDir) {
+        List<String> cmd = new ArrayList<>();
+        if(!propSource.osIsWindows()) {
+            // exec keeps the shell's pid, so the pid written is IRI's
+            cmd.add("/bin/sh");
+            cmd.add("-c");
+            cmd.add("echo $$ > \"$0\"; exec \"$@\"");
+            cmd.add(new File(iotaDir, PID_FILE).getAbsolutePath());
+        }
+        for(String s : propSource.getIotaStartCmd().trim().split("\\s+")) {
+            cmd.add(s);
+        }
+        cmd.add(propSource.getString(PropertySource.IOTA_PORT_NUMBER_PROP));
+        return cmd;
+    }
+
+    private void watch(Process p) {
+        int rc;
+        try {
+            rc = p.waitFor();
+        }
+        catch(InterruptedException ie) {
+            return;
+        }
+        synchronized(this) {
+            if(process != p) {
+                return;
+            }
+            exitCode = rc;
+            running = false;
+            if(!propSource.osIsWindows()) {
+                new File(propSource.getIotaAppDir(), PID_FILE).delete();
+            }
+        }
+        long upSecs = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - startedAt);
+        if(stopRequested) {
+            System.out.println("IotaSupervisor, IRI stopped, exit code: " + rc + ", up " + upSecs + "s");
+        }
+        else {
+            System.out.println("IotaSupervisor, " + localizer.getLocalText("iotaExitedUnexpectedly") +
+                    ", exit code: " + rc + ", up " + upSecs + "s");
+        }
+    }
+}
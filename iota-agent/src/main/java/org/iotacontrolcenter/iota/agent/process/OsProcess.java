@@ -5,24 +5,43 @@ import org.iotacontrolcenter.properties.locale.Localizer;
 import org.iotacontrolcenter.properties.source.PropertySource;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Runs a script to completion. Its stdout and stderr are drained by pump
+ * threads while it runs, so a chatty script never blocks on a full pipe,
+ * and only the last MAX_CAPTURE_LINES lines of each are kept. A script
+ * still running after its timeout is destroyed, forcibly if it has to be,
+ * so no caller waits on it forever.
+ */
 public abstract class OsProcess {
 
+    public static final long DEFAULT_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(60);
+    public static final int MAX_CAPTURE_LINES = 200;
+    public static final int MAX_LINE_LENGTH = 1024;
+    private static final long DESTROY_GRACE_MS = TimeUnit.SECONDS.toMillis(5);
+    // A child the script left in the background can hold the pipes open
+    private static final long PUMP_JOIN_MS = 1000;
+
     protected String[] args;
     protected File dir;
-    protected InputStream errorStream;
     protected Map<String,String> env;
     protected String exeCmd;
     protected Localizer localizer;
     protected String name;
-    protected InputStream outputStream;
     protected ProcessBuilder pb;
     protected Process p;
     protected PropertySource propSource;
     protected int resultCode;
     protected String startError;
+    protected long timeoutMs = DEFAULT_TIMEOUT_MS;
+    private StreamPump stdErr;
+    private StreamPump stdOut;
+    private boolean timedOut;
 
     protected OsProcess(String name) {
         this.name = name;
@@ -48,6 +67,10 @@ public abstract class OsProcess {
         this.dir = dir;
     }
 
+    public void setTimeoutMs(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
     public String getProcessActionName() {
         return getClass().getSimpleName() + " " + name;
     }
@@ -58,12 +81,11 @@ public abstract class OsProcess {
         }
 
         startError = null;
+        timedOut = false;
         boolean rval = true;
         System.out.println(localizer.getLocalTextWithFixed("executingCmd", " (" + getName() + "): " + exeCmd));
         try {
             p = pb.start();
-            errorStream = p.getErrorStream();
-            outputStream = p.getInputStream();
         }
         catch(IOException ioe) {
             startError = localizer.getLocalTextWithFixed("startActionException",
@@ -73,16 +95,47 @@ public abstract class OsProcess {
         }
         if(rval) {
             try {
-                resultCode = p.waitFor();
+                // Scripts read nothing from stdin
+                p.getOutputStream().close();
+            }
+            catch(IOException ioe) {
+            }
+            stdOut = new StreamPump(p.getInputStream(), "iccr-proc-" + getName() + "-out");
+            stdErr = new StreamPump(p.getErrorStream(), "iccr-proc-" + getName() + "-err");
+
+            try {
+                if(p.waitFor(timeoutMs, TimeUnit.MILLISECONDS)) {
+                    resultCode = p.exitValue();
+                }
+                else {
+                    timedOut = true;
+                    destroy();
+                    startError = localizer.getLocalTextWithFixed("processTimeout",
+                            " (name: " + getName() + ", cmd: " + exeCmd + "): " + timeoutMs + " ms");
+                    System.out.println(startError);
+                    rval = false;
+                }
             } catch (InterruptedException ie) {
                 System.out.println(localizer.getLocalTextWithFixed("actionException",
                         " (name: " + getName() + ", cmd: " + exeCmd + "): " + ie.getLocalizedMessage()));
+                destroy();
+                Thread.currentThread().interrupt();
                 rval = false;
             }
+            stdOut.join(PUMP_JOIN_MS);
+            stdErr.join(PUMP_JOIN_MS);
+
+            if(rval && resultCode != 0 && !stdErr.isEmpty()) {
+                System.out.println(getName() + " stderr:\n" + stdErr.text());
+            }
         }
         return rval;
     }
 
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
     public boolean isStartError() {
         return startError != null && !startError.isEmpty();
     }
@@ -95,28 +148,94 @@ public abstract class OsProcess {
         return resultCode;
     }
 
+    /**
+     * The last MAX_CAPTURE_LINES lines the script wrote to stderr.
+     */
     public String getStdErr() {
-        return loadStream(errorStream);
+        return stdErr == null ? "" : stdErr.text();
     }
 
+    /**
+     * The last MAX_CAPTURE_LINES lines the script wrote to stdout.
+     */
     public String getStdOut() {
-        return loadStream(outputStream);
+        return stdOut == null ? "" : stdOut.text();
     }
 
-    private String loadStream(InputStream s)  {
-        BufferedReader br = new BufferedReader(new InputStreamReader(s));
-        StringBuilder sb = new StringBuilder();
-        String line;
+    private void destroy() {
+        p.destroy();
         try {
-            while ((line = br.readLine()) != null) {
+            if(!p.waitFor(DESTROY_GRACE_MS, TimeUnit.MILLISECONDS)) {
+                p.destroyForcibly();
+            }
+        }
+        catch(InterruptedException ie) {
+            p.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads a stream to its end on its own thread, keeping the last lines.
+     */
+    private class StreamPump implements Runnable {
+        private final InputStream in;
+        private final ArrayDeque<String> lines = new ArrayDeque<>();
+        private final Thread thread;
+        private int dropped = 0;
+
+        StreamPump(InputStream in, String threadName) {
+            this.in = in;
+            thread = new Thread(this, threadName);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try(BufferedReader br = new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    add(line.length() > MAX_LINE_LENGTH ? line.substring(0, MAX_LINE_LENGTH) + "..." : line);
+                }
+            }
+            catch(IOException ioe) {
+                System.out.println(localizer.getLocalTextWithFixed("actionOutputException",
+                        " (name: " + getName() + ", cmd: " + exeCmd + "): " + ioe.getLocalizedMessage()));
+            }
+        }
+
+        private synchronized void add(String line) {
+            if(lines.size() == MAX_CAPTURE_LINES) {
+                lines.removeFirst();
+                dropped++;
+            }
+            lines.addLast(line);
+        }
+
+        synchronized boolean isEmpty() {
+            return lines.isEmpty();
+        }
+
+        synchronized String text() {
+            StringBuilder sb = new StringBuilder();
+            if(dropped > 0) {
+                sb.append("[").append(dropped).append(" lines dropped]\n");
+            }
+            for(String line : lines) {
                 sb.append(line).append("\n");
             }
+            return sb.toString();
         }
-        catch(IOException ioe) {
-            System.out.println(localizer.getLocalTextWithFixed("actionOutputException",
-                    " (name: " + getName() + ", cmd: " + exeCmd + "): " + ioe.getLocalizedMessage()));
+
+        void join(long ms) {
+            try {
+                thread.join(ms);
+            }
+            catch(InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
         }
-        return sb.toString();
     }
 
     protected void generateExeCmd() {
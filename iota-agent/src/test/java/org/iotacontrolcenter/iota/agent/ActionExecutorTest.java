@@ -0,0 +1,195 @@
+package org.iotacontrolcenter.iota.agent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.iotacontrolcenter.dto.ActionJobResponse;
+import org.iotacontrolcenter.dto.ActionResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ActionExecutorTest {
+
+    ActionExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new ActionExecutor();
+    }
+
+    @Test
+    public void testLifecycleActionsRunOneAtATimeInOrder() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<ActionResponse>> futures = new ArrayList<>();
+
+        for(int i = 0; i < 5; i++) {
+            int n = i;
+            futures.add(executor.submitForResult("action" + i, false, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                order.add(n);
+                running.decrementAndGet();
+                return new ActionResponse(true, "done " + n);
+            }));
+        }
+        for(CompletableFuture<ActionResponse> f : futures) {
+            assertTrue(f.get(5, TimeUnit.SECONDS).isSuccess());
+        }
+
+        assertEquals(1, maxRunning.get());
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), order);
+    }
+
+    @Test
+    public void testReadActionsRunInParallel() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        List<CompletableFuture<ActionResponse>> futures = new ArrayList<>();
+
+        for(int i = 0; i < 2; i++) {
+            futures.add(executor.submitForResult("read" + i, true, () -> {
+                bothStarted.countDown();
+                // Only returns true if the other read runs at the same time
+                return new ActionResponse(bothStarted.await(5, TimeUnit.SECONDS), "");
+            }));
+        }
+        for(CompletableFuture<ActionResponse> f : futures) {
+            assertTrue(f.get(10, TimeUnit.SECONDS).isSuccess());
+        }
+    }
+
+    @Test
+    public void testActionRunningAnotherRunsItInline() throws Exception {
+        CompletableFuture<ActionResponse> outer = executor.submitForResult("install", false, () -> {
+            String outerThread = Thread.currentThread().getName();
+            // Queued behind ourselves this would never run
+            ActionResponse inner = executor.run("start", false,
+                    () -> new ActionResponse(true, Thread.currentThread().getName()));
+            return new ActionResponse(inner.isSuccess() && outerThread.equals(inner.getMsg()), inner.getMsg());
+        });
+
+        ActionResponse resp = outer.get(5, TimeUnit.SECONDS);
+        assertTrue(resp.getMsg(), resp.isSuccess());
+    }
+
+    @Test
+    public void testRunRethrowsTheActionsException() {
+        try {
+            executor.run("start", false, () -> {
+                throw new IllegalArgumentException("bad start");
+            });
+            fail("expected the action's exception");
+        }
+        catch(IllegalArgumentException e) {
+            assertEquals("bad start", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFullQueueIsRefused() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit("block", false, () -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return new ActionResponse(true, "");
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<ActionJobResponse> queued = new ArrayList<>();
+        for(int i = 0; i < ActionExecutor.LIFECYCLE_QUEUE_SIZE; i++) {
+            queued.add(executor.submit("queued" + i, false, () -> new ActionResponse(true, "")));
+        }
+        try {
+            executor.submit("oneTooMany", false, () -> new ActionResponse(true, ""));
+            fail("expected the full queue to refuse the action");
+        }
+        catch(IllegalStateException e) {
+            // Refused
+        }
+        release.countDown();
+
+        for(ActionJobResponse job : queued) {
+            assertEquals(ActionJobResponse.QUEUED, job.getState());
+            assertTrue(awaitDone(job.getId()).isSuccess());
+        }
+    }
+
+    @Test
+    public void testJobStates() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ActionJobResponse ok = executor.submit("ok", false, () -> {
+            release.await(10, TimeUnit.SECONDS);
+            return new ActionResponse(true, "fine");
+        });
+        ActionJobResponse bad = executor.submit("bad", false, () -> {
+            throw new IllegalStateException("broken");
+        });
+
+        assertFalse(executor.getJob(ok.getId()).isDone());
+        release.countDown();
+
+        ActionJobResponse okDone = awaitDone(ok.getId());
+        assertEquals(ActionJobResponse.DONE, okDone.getState());
+        assertEquals("fine", okDone.getResult().getMsg());
+
+        ActionJobResponse badDone = awaitDone(bad.getId());
+        assertEquals(ActionJobResponse.FAILED, badDone.getState());
+        assertFalse(badDone.isSuccess());
+        assertEquals("broken", badDone.getMsg());
+
+        assertNull(executor.getJob("no-such-job"));
+    }
+
+    @Test
+    public void testFinishedJobsArePrunedOverTheCap() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for(int i = 0; i < ActionExecutor.MAX_FINISHED_JOBS + 10; i++) {
+            String id = executor.submit("job" + i, false, () -> new ActionResponse(true, "")).getId();
+            // Each submit may prune, wait before the next one
+            awaitDone(id);
+            ids.add(id);
+        }
+
+        // Pruning happens on submit
+        String last = executor.submit("last", false, () -> new ActionResponse(true, "")).getId();
+        awaitDone(last);
+
+        // Jobs finishing in the same millisecond are equally old, so only count them
+        int forgotten = 0;
+        for(String id : ids) {
+            if(executor.getJob(id) == null) {
+                forgotten++;
+            }
+        }
+        assertEquals(10, forgotten);
+        assertNotNull(executor.getJob(last));
+    }
+
+    private ActionJobResponse awaitDone(String id) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(System.currentTimeMillis() < deadline) {
+            ActionJobResponse job = executor.getJob(id);
+            if(job != null && job.isDone()) {
+                return job;
+            }
+            Thread.sleep(5);
+        }
+        fail("job " + id + " not done in time");
+        return null;
+    }
+}
@@ -0,0 +1,110 @@
+package org.iotacontrolcenter.iota.agent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.iotacontrolcenter.dto.ActionResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class ReadActionCacheTest {
+
+    static final String CMD = "nodeInfo";
+
+    long ttlMs;
+    ReadActionCache cache;
+    AtomicInteger calls;
+
+    @Before
+    public void setUp() {
+        ttlMs = 60000;
+        cache = new ReadActionCache(() -> ttlMs);
+        calls = new AtomicInteger();
+    }
+
+    @Test
+    public void testCallsInFlightAreShared() {
+        CompletableFuture<ActionResponse> call = new CompletableFuture<>();
+
+        CompletableFuture<ActionResponse> first = cache.get(CMD, counted(() -> call));
+        CompletableFuture<ActionResponse> second = cache.get(CMD, counted(() -> call));
+        assertEquals(1, calls.get());
+
+        ActionResponse resp = new ActionResponse(true, "ok");
+        call.complete(resp);
+        assertSame(resp, first.join());
+        assertSame(resp, second.join());
+    }
+
+    @Test
+    public void testAnswerIsServedForTheTtl() {
+        cache.get(CMD, counted(() -> done(true))).join();
+        cache.get(CMD, counted(() -> done(true))).join();
+        assertEquals(1, calls.get());
+
+        // Read per lookup, the old answer is now too old
+        ttlMs = 0;
+        cache.get(CMD, counted(() -> done(true))).join();
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testCommandsAreCachedApart() {
+        cache.get(CMD, counted(() -> done(true))).join();
+        cache.get("getNeighbors", counted(() -> done(true))).join();
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testFailedAnswersAreNotKept() {
+        assertFalse(cache.get(CMD, counted(() -> done(false))).join().isSuccess());
+        assertTrue(cache.get(CMD, counted(() -> done(true))).join().isSuccess());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testExceptionsAreNotKept() {
+        CompletableFuture<ActionResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("IRI down"));
+        assertTrue(cache.get(CMD, counted(() -> failed)).isCompletedExceptionally());
+
+        try {
+            cache.get(CMD, counted(() -> {
+                throw new IllegalStateException("no such action");
+            }));
+            fail("expected the query's exception");
+        }
+        catch(IllegalStateException e) {
+            assertEquals("no such action", e.getMessage());
+        }
+
+        assertTrue(cache.get(CMD, counted(() -> done(true))).join().isSuccess());
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.get(CMD, counted(() -> done(true))).join();
+        cache.invalidate();
+        cache.get(CMD, counted(() -> done(true))).join();
+        assertEquals(2, calls.get());
+    }
+
+    private Supplier<CompletableFuture<ActionResponse>> counted(Supplier<CompletableFuture<ActionResponse>> query) {
+        return () -> {
+            calls.incrementAndGet();
+            return query.get();
+        };
+    }
+
+    private static CompletableFuture<ActionResponse> done(boolean success) {
+        return CompletableFuture.completedFuture(new ActionResponse(success, success ? "ok" : "failed"));
+    }
+}
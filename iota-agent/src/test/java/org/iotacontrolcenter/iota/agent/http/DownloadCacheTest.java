@@ -0,0 +1,100 @@
+package org.iotacontrolcenter.iota.agent.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class DownloadCacheTest {
+
+    Path dir;
+    DownloadCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("cache");
+        cache = new DownloadCache(dir.resolve("cache"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void testStoreAndLookup() throws Exception {
+        Path blob = store("http://host/a.jar", "a", "\"e1\"");
+
+        DownloadCache.Entry entry = cache.lookup("http://host/a.jar");
+        assertEquals(blob, entry.blob);
+        assertEquals("\"e1\"", entry.etag);
+        assertEquals(DownloadCache.sha256Of(blob), entry.sha256);
+        assertEquals(blob, cache.find(entry.sha256.toUpperCase()));
+        assertNull(cache.lookup("http://host/b.jar"));
+    }
+
+    @Test
+    public void testSameContentIsKeptOnce() throws Exception {
+        Path first = store("http://host/a.jar", "same", null);
+        Path second = store("http://mirror/a.jar", "same", null);
+
+        assertEquals(first, second);
+        assertEquals(first, cache.lookup("http://mirror/a.jar").blob);
+    }
+
+    @Test
+    public void testPruneKeepsLinkedBlobs() throws Exception {
+        Path linked = store("http://host/a.jar", "a", null);
+        Path b = store("http://host/b.jar", "b", null);
+        Path c = store("http://host/c.jar", "c", null);
+        // An installed jar is a link to its blob
+        Path installed = dir.resolve("iri.jar");
+        cache.linkOrCopy(linked, installed);
+
+        assertEquals(2, cache.prune(0));
+
+        assertTrue(Files.exists(linked));
+        assertFalse(Files.exists(b));
+        assertFalse(Files.exists(c));
+        assertNotNull(cache.lookup("http://host/a.jar"));
+        assertNull(cache.lookup("http://host/b.jar"));
+        assertNull(cache.lookup("http://host/c.jar"));
+    }
+
+    @Test
+    public void testPruneKeepsTheMostRecentlyUsed() throws Exception {
+        Path a = store("http://host/a.jar", "a", null);
+        Path b = store("http://host/b.jar", "b", null);
+        Path c = store("http://host/c.jar", "c", null);
+        // Copied out and the copy removed, a is now the most recently used and still unlinked
+        Path tmp = dir.resolve("tmp.jar");
+        Thread.sleep(5);
+        cache.linkOrCopy(a, tmp);
+        Files.delete(tmp);
+
+        assertEquals(0, cache.prune(3));
+        assertEquals(1, cache.prune(2));
+
+        assertTrue(Files.exists(a));
+        assertFalse(Files.exists(b));
+        assertTrue(Files.exists(c));
+    }
+
+    private Path store(String url, String content, String etag) throws Exception {
+        Path file = dir.resolve("download.part");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        // Use times are in milliseconds, keep each store apart
+        Thread.sleep(5);
+        return cache.store(url, file, etag, null, null);
+    }
+}
@@ -0,0 +1,307 @@
+package org.iotacontrolcenter.iota.agent.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DownloadManagerTest {
+
+    static final String PROBE = "bytes=0-0";
+
+    Path workDir;
+    HttpServer server;
+    ExecutorService serverThreads;
+    String url;
+
+    // What the server serves, and how
+    volatile byte[] content;
+    volatile String etag;
+    volatile boolean rangesSupported;
+    volatile byte[] contentAfterProbe;
+    final AtomicInteger drops = new AtomicInteger();
+    volatile int dropAfter;
+
+    // "status range" of every request, in order
+    List<String> requests;
+
+    @Before
+    public void setUp() throws Exception {
+        workDir = Files.createTempDirectory("download");
+        content = random(4 * (int)DownloadManager.MIN_SEGMENT_SIZE + 100, 1);
+        etag = "\"v1\"";
+        rangesSupported = true;
+        requests = Collections.synchronizedList(new ArrayList<>());
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/iri.jar", this::serve);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/iri.jar";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        serverThreads.shutdownNow();
+        FileUtils.deleteDirectory(workDir.toFile());
+    }
+
+    @Test
+    public void testParallelRangedDownload() throws Exception {
+        Path target = workDir.resolve("iri.jar");
+        String sha256 = sha256Of(content);
+
+        long size = new DownloadManager(workDir).download(url, target, sha256);
+
+        assertEquals(content.length, size);
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(PROBE, rangeOf(requests.get(0)));
+        assertEquals(1 + DownloadManager.DEFAULT_SEGMENTS, requests.size());
+        for(String req : requests) {
+            assertTrue(req, req.startsWith("206 "));
+        }
+        assertNoPartialFiles();
+        assertNotNull(new DownloadManager(workDir).getCache().find(sha256));
+    }
+
+    @Test
+    public void testDroppedConnectionIsResumed() throws Exception {
+        drops.set(1);
+        dropAfter = 100000;
+        Path target = workDir.resolve("iri.jar");
+
+        new DownloadManager(workDir, 1).download(url, target, null);
+
+        assertArrayEquals(content, Files.readAllBytes(target));
+        int last = content.length - 1;
+        assertEquals(Arrays.asList("206 " + PROBE, "206 bytes=0-" + last, "206 bytes=" + dropAfter + "-" + last),
+                requests);
+        assertNoPartialFiles();
+    }
+
+    @Test
+    public void testPartialDownloadIsResumed() throws Exception {
+        int half = content.length / 2;
+        int last = content.length - 1;
+        // A previous run got the first half before it stopped
+        try(RandomAccessFile raf = new RandomAccessFile(workDir.resolve("iri.jar.part").toFile(), "rw")) {
+            raf.setLength(content.length);
+            raf.write(content, 0, half);
+        }
+        Properties state = new Properties();
+        state.setProperty("url", url);
+        state.setProperty("length", Integer.toString(content.length));
+        state.setProperty("validator", etag);
+        state.setProperty("segments", "1");
+        state.setProperty("segment.0", "0," + last + "," + half);
+        try(OutputStream out = new FileOutputStream(workDir.resolve("iri.jar.part.state").toFile())) {
+            state.store(out, null);
+        }
+        Path target = workDir.resolve("iri.jar");
+
+        new DownloadManager(workDir).download(url, target, sha256Of(content));
+
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(Arrays.asList("206 " + PROBE, "206 bytes=" + half + "-" + last), requests);
+        assertNoPartialFiles();
+    }
+
+    @Test
+    public void testServerIgnoringRangesSendsTheWholeFile() throws Exception {
+        rangesSupported = false;
+        Path target = workDir.resolve("iri.jar");
+
+        long size = new DownloadManager(workDir).download(url, target, sha256Of(content));
+
+        assertEquals(content.length, size);
+        assertArrayEquals(content, Files.readAllBytes(target));
+        // The probe's response is the download
+        assertEquals(Collections.singletonList("200 " + PROBE), requests);
+        assertNoPartialFiles();
+    }
+
+    @Test
+    public void testChangedFileStartsOver() throws Exception {
+        // Changes on the server between the probe and the ranges, If-Range no longer matches
+        contentAfterProbe = random(content.length, 2);
+        byte[] changed = contentAfterProbe;
+        Path target = workDir.resolve("iri.jar");
+
+        try {
+            new DownloadManager(workDir, 1).download(url, target, null);
+            fail("expected the download to fail on the changed file");
+        }
+        catch(IllegalStateException e) {
+            // Failed
+        }
+        assertEquals("200 bytes=0-" + (content.length - 1), requests.get(1));
+        assertNoPartialFiles();
+
+        requests.clear();
+        new DownloadManager(workDir, 1).download(url, target, null);
+        assertArrayEquals(changed, Files.readAllBytes(target));
+        assertEquals(Arrays.asList("206 " + PROBE, "206 bytes=0-" + (content.length - 1)), requests);
+    }
+
+    @Test
+    public void testChecksumMismatchDeletesTheFile() throws Exception {
+        Path target = workDir.resolve("iri.jar");
+        String wrong = sha256Of(new byte[] { 1 });
+
+        try {
+            new DownloadManager(workDir).download(url, target, wrong);
+            fail("expected the checksum mismatch to fail the download");
+        }
+        catch(IllegalStateException e) {
+            // Failed
+        }
+        assertFalse(Files.exists(target));
+        assertNoPartialFiles();
+        DownloadCache cache = new DownloadManager(workDir).getCache();
+        assertNull(cache.find(sha256Of(content)));
+        assertNull(cache.lookup(url));
+    }
+
+    @Test
+    public void testNotModifiedIsServedFromTheCache() throws Exception {
+        new DownloadManager(workDir).download(url, workDir.resolve("iri.jar"), null);
+        requests.clear();
+
+        Path again = workDir.resolve("iri-again.jar");
+        long size = new DownloadManager(workDir).download(url, again, null);
+
+        assertEquals(content.length, size);
+        assertArrayEquals(content, Files.readAllBytes(again));
+        assertEquals(Collections.singletonList("304 " + PROBE), requests);
+    }
+
+    @Test
+    public void testChangedFileIsDownloadedAgain() throws Exception {
+        new DownloadManager(workDir).download(url, workDir.resolve("iri.jar"), null);
+        requests.clear();
+        content = random(content.length, 3);
+        etag = "\"v2\"";
+
+        Path again = workDir.resolve("iri-again.jar");
+        new DownloadManager(workDir).download(url, again, null);
+
+        assertArrayEquals(content, Files.readAllBytes(again));
+        assertEquals(1 + DownloadManager.DEFAULT_SEGMENTS, requests.size());
+    }
+
+    @Test
+    public void testCachedChecksumIsNotRequested() throws Exception {
+        String sha256 = sha256Of(content);
+        new DownloadManager(workDir).download(url, workDir.resolve("iri.jar"), sha256);
+        requests.clear();
+
+        Path again = workDir.resolve("iri-again.jar");
+        new DownloadManager(workDir).download(url + "?mirror", again, sha256);
+
+        assertArrayEquals(content, Files.readAllBytes(again));
+        assertTrue(requests.isEmpty());
+    }
+
+    private void serve(HttpExchange ex) throws IOException {
+        try {
+            byte[] body = content;
+            String tag = etag;
+            String range = ex.getRequestHeaders().getFirst("Range");
+            String ifRange = ex.getRequestHeaders().getFirst("If-Range");
+
+            if(tag.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                requests.add("304 " + range);
+                ex.sendResponseHeaders(304, -1);
+                return;
+            }
+            ex.getResponseHeaders().set("ETag", tag);
+
+            if(range == null || !rangesSupported || (ifRange != null && !ifRange.equals(tag))) {
+                requests.add("200 " + range);
+                ex.sendResponseHeaders(200, body.length);
+                ex.getResponseBody().write(body);
+                return;
+            }
+
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = Math.min(Integer.parseInt(bounds[1]), body.length - 1);
+            int n = end - start + 1;
+            requests.add("206 " + range);
+            ex.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+            ex.sendResponseHeaders(206, n);
+
+            if(PROBE.equals(range) && contentAfterProbe != null) {
+                content = contentAfterProbe;
+                etag = "\"v2\"";
+                contentAfterProbe = null;
+            }
+            if(n > dropAfter && drops.getAndDecrement() > 0) {
+                // Cut the connection part way through the body
+                ex.getResponseBody().write(body, start, dropAfter);
+                ex.getResponseBody().flush();
+                throw new IOException("dropped");
+            }
+            ex.getResponseBody().write(body, start, n);
+        }
+        finally {
+            ex.close();
+        }
+    }
+
+    private void assertNoPartialFiles() {
+        assertFalse(Files.exists(workDir.resolve("iri.jar.part")));
+        assertFalse(Files.exists(workDir.resolve("iri.jar.part.state")));
+    }
+
+    static String rangeOf(String request) {
+        return request.substring(request.indexOf(' ') + 1);
+    }
+
+    static byte[] random(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    static String sha256Of(byte[] bytes) throws IOException {
+        Path tmp = Files.createTempFile("sha", null);
+        try {
+            Files.write(tmp, bytes);
+            return DownloadCache.sha256Of(tmp);
+        }
+        finally {
+            Files.delete(tmp);
+        }
+    }
+}
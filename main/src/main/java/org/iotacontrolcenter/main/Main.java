@@ -2,6 +2,7 @@ package org.iotacontrolcenter.main;
 
 import java.io.File;
 
+import org.iotacontrolcenter.iota.agent.http.SharedHttpClient;
 import org.iotacontrolcenter.properties.source.PropertySource;
 import org.iotacontrolcenter.rest.resource.IccrServiceImpl;
 import org.iotacontrolcenter.rest.resource.NotFoundExceptionMapper;
@@ -66,6 +67,8 @@ public class Main {
         }
 
         propertySource = PropertySource.getInstance();
+        // Pooled client for IRI calls, closed by its shutdown hook
+        SharedHttpClient.getInstance().start();
         if(!noSsl) {
             System.out.println("Setting up SSL");
             swarm.fraction(new ManagementFraction()
@@ -1,15 +1,39 @@
 package org.iotacontrolcenter.persistence;
 
-import org.apache.commons.io.FileUtils;
+import org.iotacontrolcenter.dto.ActivityDto;
+import org.iotacontrolcenter.dto.EventLogResponse;
 import org.iotacontrolcenter.dto.LogLinesResponse;
+import org.iotacontrolcenter.dto.NeighborDto;
+import org.iotacontrolcenter.dto.NeighborTrafficDto;
+import org.iotacontrolcenter.dto.NeighborTrafficResponse;
+import org.iotacontrolcenter.persistence.activity.ActivityStore;
+import org.iotacontrolcenter.persistence.event.EventLogWriter;
+import org.iotacontrolcenter.persistence.event.EventPage;
+import org.iotacontrolcenter.persistence.event.EventQuery;
+import org.iotacontrolcenter.persistence.event.EventStore;
+import org.iotacontrolcenter.persistence.event.FsyncPolicy;
+import org.iotacontrolcenter.persistence.log.IndexedLogReader;
+import org.iotacontrolcenter.persistence.log.LogChunk;
+import org.iotacontrolcenter.persistence.log.LogFileStreamer;
+import org.iotacontrolcenter.persistence.log.LogTailReader;
+import org.iotacontrolcenter.persistence.traffic.TrafficStore;
 import org.iotacontrolcenter.properties.locale.Localizer;
 import org.iotacontrolcenter.properties.source.PropertySource;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class PersistenceService {
 
@@ -47,16 +71,31 @@ public class PersistenceService {
     }
 
     private static final String ICCR_IOTA_EVENT_FILE = "iota-event.csv";
+    private static final String ICCR_EVENT_DIR = "events";
+    private static final String ICCR_ACTIVITY_DIR = "activity";
+    private static final String ICCR_TRAFFIC_DIR = "traffic";
     private static final String ICCR_LOG_FILE = "iccr.log";
     private static final String IOTA_LOG_FILE = "console.log";
     private static final String HEAD_DIRECTIVE = "head";
     private static final String TAIL_DIRECTIVE = "tail";
+    private static final String LINE_DIRECTIVE = "line";
+    private static final String PAGE_DIRECTIVE = "page";
+    private static final long DEFAULT_NUM_LINES = 500L;
+    // Lines returned when no fileDirection is given, the whole log is at /iota/log/stream
+    private static final int MAX_ALL_LINES = 10000;
+    private static final int DEFAULT_EVENT_SEGMENT_SIZE_MB = 16;
+    private static final int DEFAULT_EVENT_SEGMENT_AGE_HOURS = 24;
 
     private Localizer localizer;
     private PropertySource propSource;
     private String iccrEventFilepath;
     private String iotaLogFilepath;
     private String iccrLogFilepath;
+    private IndexedLogReader iotaLogReader;
+    private EventStore eventStore;
+    private EventLogWriter eventLogWriter;
+    private ActivityStore activityStore;
+    private TrafficStore trafficStore;
 
     private PersistenceService() {
         System.out.println("new PersistenceService");
@@ -65,14 +104,47 @@ public class PersistenceService {
         iccrEventFilepath = propSource.getIccrDataDir() + "/" + ICCR_IOTA_EVENT_FILE;
         iotaLogFilepath = propSource.getIotaAppDir() + "/" + IOTA_LOG_FILE;
         iccrLogFilepath = propSource.getIccrLogDir() + "/" + ICCR_LOG_FILE;
+        iotaLogReader = new IndexedLogReader(iotaLogFilepath);
+
+        eventStore = new EventStore(propSource.getIccrDataDir() + "/" + ICCR_EVENT_DIR, iccrEventFilepath,
+                propSource.getIccrEventLogMaxSegmentSize(DEFAULT_EVENT_SEGMENT_SIZE_MB) * 1024L * 1024L,
+                TimeUnit.HOURS.toMillis(propSource.getIccrEventLogMaxSegmentAge(DEFAULT_EVENT_SEGMENT_AGE_HOURS)),
+                propSource.getIccrEventLogRetentionDays(0));
+        eventLogWriter = new EventLogWriter(eventStore,
+                propSource.getIccrEventLogQueueSize(EventLogWriter.DEFAULT_QUEUE_CAPACITY),
+                FsyncPolicy.fromString(propSource.getIccrEventLogFsync(), FsyncPolicy.INTERVAL),
+                propSource.getIccrEventLogFsyncInterval(EventLogWriter.DEFAULT_FSYNC_INTERVAL_MS));
+        eventLogWriter.start();
+
+        activityStore = new ActivityStore(propSource.getIccrDataDir() + "/" + ICCR_ACTIVITY_DIR);
+        migrateNeighborActivity();
+        trafficStore = new TrafficStore(propSource.getIccrDataDir() + "/" + ICCR_TRAFFIC_DIR);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "iccr-persistence-shutdown"));
 
         //iotaLogFilepath = iccrLogFilepath;
     }
 
+    public void shutdown() {
+        System.out.println("PersistenceService shutdown");
+        eventLogWriter.close();
+        eventStore.close();
+        trafficStore.flush();
+    }
+
     public LogLinesResponse getIotaLog(String fileDirection,
                                        Long lastFilePosition,
                                        Long lastFileLength,
                                        Long numLines) throws IOException {
+        return getIotaLog(fileDirection, lastFilePosition, lastFileLength, numLines, null, null);
+    }
+
+    public LogLinesResponse getIotaLog(String fileDirection,
+                                       Long lastFilePosition,
+                                       Long lastFileLength,
+                                       Long numLines,
+                                       Long firstLine,
+                                       Long page) throws IOException {
 
         if(fileDirection == null || fileDirection.isEmpty()) {
             return getAllIotaLogLines();
@@ -83,6 +155,12 @@ public class PersistenceService {
         else if(fileDirection.equalsIgnoreCase(TAIL_DIRECTIVE)) {
             return getIotaLogFromTail(lastFilePosition, lastFileLength, numLines);
         }
+        else if(fileDirection.equalsIgnoreCase(LINE_DIRECTIVE)) {
+            return getIotaLogLines(firstLine, numLines);
+        }
+        else if(fileDirection.equalsIgnoreCase(PAGE_DIRECTIVE)) {
+            return getIotaLogPage(page, numLines);
+        }
         else {
             System.out.println("Unrecognized file direction: " + fileDirection);
             LogLinesResponse resp = new LogLinesResponse(false, "Unsupported fileDirection parameter: '" + fileDirection + "'");
@@ -97,49 +175,17 @@ public class PersistenceService {
                 ", numLines: "  + numLines);
 
         if(numLines == null) {
-            numLines = 500L;
-        }
-
-        LogLinesResponse resp = new LogLinesResponse();
-
-        File f = new File(iotaLogFilepath);
-        RandomAccessFile raf = new RandomAccessFile(f, "r");
-        long curFileLen = raf.length();
-
-        System.out.println("getIotaLogFromHead curFileLen: " + curFileLen);
-
-        /*
-        if(lastFileLength != null && lastFileLength == curFileLen) {
-            resp.setLastFilePosition(curFileLen);
-            resp.setLastFileSize(curFileLen);
-            raf.close();
-            return resp;
+            numLines = DEFAULT_NUM_LINES;
         }
-        */
 
-        if(lastFilePosition != null && lastFilePosition > 0) {
-            if(lastFilePosition <= curFileLen) {
-                raf.seek(lastFilePosition);
-            }
-        }
-        else {
-            raf.seek(0L);
-        }
+        LogChunk chunk = iotaLogReader.readFrom(lastFilePosition == null ? 0L : lastFilePosition,
+                toLineCount(numLines));
 
-        long lineNum = 0;
-        String curLine = null;
-        while(lineNum < numLines && (curLine = raf.readLine()) != null) {
-            lineNum++;
-            resp.addLine(curLine);
-        }
-        System.out.println("getIotaLogFromHead, read " + lineNum + " lines" +
-                ", curFileLength: " + curFileLen +
-                ", lastFilePosition: " + raf.getFilePointer());
-        resp.setLastFilePosition(raf.getFilePointer());
-        resp.setLastFileSize(curFileLen);
+        System.out.println("getIotaLogFromHead, read " + chunk.getLines().size() + " lines" +
+                ", curFileLength: " + chunk.getFileSize() +
+                ", lastFilePosition: " + chunk.getEndPosition());
 
-        raf.close();
-        return resp;
+        return toLogLinesResponse(chunk);
     }
 
     private LogLinesResponse getIotaLogFromTail(Long lastFilePosition, Long lastFileLength, Long numLines) throws IOException {
@@ -149,100 +195,88 @@ public class PersistenceService {
                 ", numLines: "  + numLines);
 
         if(numLines == null) {
-            numLines = 500L;
+            numLines = DEFAULT_NUM_LINES;
         }
 
-        LogLinesResponse resp = new LogLinesResponse();
-
-        File f = new File(iotaLogFilepath);
-        RandomAccessFile raf = new RandomAccessFile(f, "r");
-        long curFileLen = raf.length();
+        // On first query lastFilePosition will be null, scan backward from the bottom of
+        // the file for exactly the desired number of lines:
+        if(lastFilePosition == null) {
+            LogChunk chunk = new LogTailReader(iotaLogFilepath).tail(numLines);
 
-        System.out.println("getIotaLogFromTail curFileLen: " + curFileLen);
+            System.out.println("getIotaLogFromTail, first tail query, read " + chunk.getLines().size() + " lines" +
+                    ", fileLength: " + chunk.getFileSize() +
+                    ", startPosition: " + chunk.getStartPosition());
 
-        /*
-        if(lastFileLength != null && lastFileLength == curFileLen) {
-            resp.setLastFilePosition(curFileLen);
-            resp.setLastFileSize(curFileLen);
-            raf.close();
-            return resp;
+            return toLogLinesResponse(chunk);
         }
-        */
 
+        LogChunk chunk = iotaLogReader.readFrom(lastFilePosition, toLineCount(numLines));
 
-        // On first query lastFilePosition will be null, but no easy way to determine the desired number
-        // of lines backward from bottom of file:
-        long firstSeekPosition = 0L;
-        long firstSeekOffset = 0L;
-        if(lastFilePosition == null) {
-            firstSeekOffset = numLines * 132;
-            firstSeekPosition = curFileLen - firstSeekOffset;
-            if(firstSeekPosition < 0) {
-                firstSeekPosition = 0L;
-            }
-            System.out.println("first seek offset: " + firstSeekOffset + ", first seek position: " + firstSeekPosition);
-            raf.seek(firstSeekPosition);
-        }
-        else if(lastFilePosition != null && lastFilePosition > 0) {
-            if(lastFilePosition <= curFileLen) {
-                raf.seek(lastFilePosition);
-            }
-        }
+        System.out.println("getIotaLogFromTail, read " + chunk.getLines().size() + " lines" +
+                ", fileLength: " + chunk.getFileSize() +
+                ", lastFilePosition: " + chunk.getEndPosition());
+
+        return toLogLinesResponse(chunk);
+    }
 
-        long lineNum = 0;
-        String curLine = null;
-        while(lineNum < numLines && (curLine = raf.readLine()) != null) {
-            lineNum++;
-            resp.addLine(curLine);
+    private LogLinesResponse getIotaLogLines(Long firstLine, Long numLines) throws IOException {
+        if(numLines == null) {
+            numLines = DEFAULT_NUM_LINES;
+        }
+        if(firstLine == null || firstLine < 0) {
+            return new LogLinesResponse(false, "Invalid firstLine parameter: '" + firstLine + "'");
         }
 
-        // On first time through, try to correct if we got it badly wrong:
-        if(lastFilePosition ==  null) {
+        LogChunk chunk = iotaLogReader.readLines(firstLine, toLineCount(numLines));
 
-            System.out.println("getIotaLogFromTail, first tail query, read " + lineNum + " lines, " +
-                    ", fileLength: " + curFileLen +
-                    ", lastFilePosition: " + raf.getFilePointer());
+        LogLinesResponse resp = toLogLinesResponse(chunk);
+        resp.setFirstLine(firstLine);
+        resp.setTotalLines(iotaLogReader.getLineCount());
+        return resp;
+    }
 
-            if(lineNum != numLines && firstSeekPosition > 0) {
-                System.out.println("getIotaLogFromTail, first tail query, correcting seek offset");
-                firstSeekOffset =  (firstSeekOffset / lineNum) * numLines;
-                firstSeekPosition = curFileLen - firstSeekOffset;
-                if(firstSeekPosition < 0) {
-                    firstSeekPosition = 0L;
-                }
-                System.out.println("corrected first seek offset: " + firstSeekOffset + ", first seek position: " + firstSeekPosition);
-                raf.seek(firstSeekPosition);
-                lineNum = 0;
-                curLine = null;
-                resp.getLines().clear();
-                while(lineNum < numLines && (curLine = raf.readLine()) != null) {
-                    lineNum++;
-                    resp.addLine(curLine);
-                }
-            }
+    private LogLinesResponse getIotaLogPage(Long page, Long numLines) throws IOException {
+        if(numLines == null) {
+            numLines = DEFAULT_NUM_LINES;
+        }
+        if(page == null || page < 0 || numLines <= 0) {
+            return new LogLinesResponse(false, "Invalid page parameter: '" + page + "'");
         }
 
-        System.out.println("getIotaLogFromTail, read " + lineNum + " lines" +
-                ", fileLength: " + curFileLen +
-                ", lastFilePosition: " + raf.getFilePointer());
-
-        resp.setLastFilePosition(raf.getFilePointer());
-        resp.setLastFileSize(curFileLen);
+        int pageSize = toLineCount(numLines);
+        LogChunk chunk = iotaLogReader.readPage(page, pageSize);
 
-        raf.close();
+        LogLinesResponse resp = toLogLinesResponse(chunk);
+        resp.setFirstLine(page * pageSize);
+        resp.setTotalLines(iotaLogReader.getLineCount());
         return resp;
     }
 
-    private LogLinesResponse getAllIotaLogLines() {
+    private LogLinesResponse toLogLinesResponse(LogChunk chunk) {
         LogLinesResponse resp = new LogLinesResponse();
+        resp.setLines(chunk.getLines());
+        resp.setLastFilePosition(chunk.getEndPosition());
+        resp.setLastFileSize(chunk.getFileSize());
+        return resp;
+    }
+
+    private int toLineCount(Long numLines) {
+        return (int)Math.min(Integer.MAX_VALUE, Math.max(0L, numLines));
+    }
 
-        File f = new File(iotaLogFilepath);
-        //if(f.exists()) {
+    // The first MAX_ALL_LINES lines, continue from lastFilePosition with the head directive
+    private LogLinesResponse getAllIotaLogLines() {
+        LogLinesResponse resp;
         try {
-            resp.setLines(FileUtils.readLines(f));
-            resp.setLastFilePosition(f.length());
-            resp.setLastFileSize(f.length());
+            LogChunk chunk = iotaLogReader.readLines(0L, MAX_ALL_LINES);
+            resp = toLogLinesResponse(chunk);
+            resp.setFirstLine(0L);
+            resp.setTotalLines(iotaLogReader.getLineCount());
+            if(resp.getTotalLines() > chunk.getLines().size()) {
+                resp.setMsg(localizer.getLocalText("iotaLogTruncated"));
+            }
         } catch (Exception e) {
+            resp = new LogLinesResponse();
             resp.setSuccess(false);
             resp.setMsg(e.getLocalizedMessage());
         }
@@ -251,50 +285,234 @@ public class PersistenceService {
     }
 
     public List<String> getEventLog() throws IOException {
-        File f = new File(iccrEventFilepath);
+        eventLogWriter.flush();
 
-        //if(f.exists()) {
         try {
-            return FileUtils.readLines(f);
+            return eventStore.readAll();
         }
         catch(Exception e) {
             return new ArrayList<>();
         }
     }
 
+    /**
+     * Events between since and until (inclusive, either may be null) of the given type,
+     * at most limit of them, continuing from cursor when paging.
+     * Times are ISO local date-times, ISO dates (start of day) or epoch milliseconds;
+     * the type is an event key (e.g. "start") or its localized text.
+     */
+    public EventLogResponse queryEventLog(String since,
+                                          String until,
+                                          String type,
+                                          Integer limit,
+                                          String cursor) throws IOException {
+        EventQuery query = new EventQuery().setLimit(limit).setCursor(cursor);
+        try {
+            query.setSince(toEventTime(since, false));
+            query.setUntil(toEventTime(until, true));
+        }
+        catch(IllegalArgumentException iae) {
+            return new EventLogResponse(false, iae.getLocalizedMessage());
+        }
+        if(type != null && !type.isEmpty()) {
+            query.setType(localizer.getLocalText(type));
+        }
+
+        boolean complete = eventLogWriter.flush();
+
+        EventPage page;
+        try {
+            page = eventStore.query(query);
+        }
+        catch(IllegalArgumentException iae) {
+            return new EventLogResponse(false, iae.getLocalizedMessage());
+        }
+
+        EventLogResponse resp = new EventLogResponse();
+        resp.setEvents(page.getEvents());
+        resp.setNextCursor(page.getNextCursor());
+        if(!complete) {
+            // The events are still returned, but recent ones may be missing
+            resp.setMsg(localizer.getLocalText("eventLogNotWritten"));
+        }
+        return resp;
+    }
+
+    private LocalDateTime toEventTime(String time, boolean endOfDay) {
+        if(time == null || time.isEmpty()) {
+            return null;
+        }
+        try {
+            if(time.chars().allMatch(Character::isDigit)) {
+                return LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(time)), ZoneId.systemDefault());
+            }
+            if(time.indexOf('T') < 0) {
+                LocalDate day = LocalDate.parse(time);
+                return endOfDay ? day.plusDays(1).atStartOfDay().minusNanos(1) : day.atStartOfDay();
+            }
+            return LocalDateTime.parse(time);
+        }
+        catch(DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid event time: '" + time + "'");
+        }
+    }
+
+    public long getEventLogSize() throws IOException {
+        eventLogWriter.flush();
+        return eventStore.size();
+    }
+
+    public long streamEventLog(OutputStream out, long start, long length) throws IOException {
+        return eventStore.copyRange(start, length, out);
+    }
+
+    public long getIotaLogSize() throws IOException {
+        return LogFileStreamer.size(Paths.get(iotaLogFilepath));
+    }
+
+    public long streamIotaLog(OutputStream out, long start, long length) throws IOException {
+        return LogFileStreamer.copyRange(Paths.get(iotaLogFilepath), start, length, out);
+    }
+
     public void deleteEventLog() throws IOException {
         System.out.println("deleting Event log");
-        FileUtils.deleteQuietly(new File(iccrEventFilepath));
+        eventLogWriter.delete();
     }
 
-    public void logIotaAction(String event) {
-        this.logIotaAction(event, "", "");
+    /**
+     * Read only view of a neighbor's activity, mapped from the activity store.
+     */
+    public ImmutableRoaringBitmap getNeighborActivity(String nbrKey) {
+        return activityStore.get(nbrKey);
     }
 
-    public void logIotaAction(String event, String data, String msg) {
-        //System.out.println("logIotaAction : " + event);
+    /**
+     * Set each neighbor's activity to a modifiable copy of its stored activity,
+     * with the rolling counts shared by every copy of the neighbor.
+     */
+    public void loadNeighborActivity(Collection<NeighborDto> nbrs) {
+        for(NeighborDto nbr : nbrs) {
+            nbr.setActivity(activityStore.load(nbr.getKey()));
+            nbr.setActivityWindow(activityStore.getWindow(nbr.getKey(), nbr::getActivityWindow));
+        }
+    }
+
+    public void saveNeighborActivity(NeighborDto nbr) {
         try {
-            String line = localizer.getEventTime() + "," +  localizer.getLocalText(event) + "," + data;
-            if(msg != null && !msg.isEmpty()) {
-                line += "," + msg;
+            activityStore.save(nbr.getKey(), nbr.getActivity());
+        }
+        catch(IOException ioe) {
+            System.out.println("saveNeighborActivity, exception saving activity of " +
+                    nbr.getKey() + ": " + ioe.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Drop the activity of neighbors that are no longer configured.
+     */
+    public void retainNeighborActivity(Collection<String> nbrKeys) {
+        activityStore.retain(nbrKeys);
+        trafficStore.retain(nbrKeys);
+    }
+
+    /**
+     * Add the neighbor's current transaction counters to its time series.
+     */
+    public void recordNeighborTraffic(NeighborDto nbr) {
+        trafficStore.record(nbr.getKey(), System.currentTimeMillis(),
+                nbr.getNumAt(), nbr.getNumNt(), nbr.getNumIt());
+    }
+
+    /**
+     * Save the traffic recorded since the last flush, run periodically.
+     */
+    public void flushNeighborTraffic() {
+        trafficStore.flush();
+    }
+
+    /**
+     * The transactions of one neighbor, or every neighbor with history if
+     * nbrKey is null, between since and until. Times are as for
+     * queryEventLog; since defaults to an hour before until, until to now.
+     * Null if the neighbor asked for has no history.
+     */
+    public NeighborTrafficResponse queryNeighborTraffic(String nbrKey, String since, String until) {
+        long untilMs;
+        long sinceMs;
+        try {
+            LocalDateTime untilTime = toEventTime(until, true);
+            untilMs = untilTime == null ? System.currentTimeMillis() : toEpochMs(untilTime);
+            LocalDateTime sinceTime = toEventTime(since, false);
+            sinceMs = sinceTime == null ? untilMs - TimeUnit.HOURS.toMillis(1) : toEpochMs(sinceTime);
+        }
+        catch(IllegalArgumentException iae) {
+            return new NeighborTrafficResponse(false, iae.getLocalizedMessage());
+        }
+        if(sinceMs > untilMs) {
+            return new NeighborTrafficResponse(false, "Invalid traffic window: since is after until");
+        }
+
+        NeighborTrafficResponse resp = new NeighborTrafficResponse();
+        for(String key : nbrKey == null ? trafficStore.keys() : Collections.singletonList(nbrKey)) {
+            NeighborTrafficDto traffic = trafficStore.query(key, sinceMs, untilMs);
+            if(traffic != null) {
+                resp.getNeighbors().add(traffic);
             }
-            line += System.lineSeparator();
+        }
+        if(nbrKey != null && resp.getNeighbors().isEmpty()) {
+            return null;
+        }
+        return resp;
+    }
 
-            //System.out.println(line);
+    private static long toEpochMs(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
 
-            File f = new File(iccrEventFilepath);
-            /*
-            if(!f.exists()) {
-                f.createNewFile();
+    // Activity used to be stored Base64 encoded in iccr.properties, move it to the activity store
+    private void migrateNeighborActivity() {
+        List<String> migrated = new ArrayList<>();
+        for(String id : propSource.getNeighborKeys()) {
+            String key = PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".activity." + id;
+            String legacy = propSource.getString(key);
+            if(legacy == null) {
+                continue;
             }
-            */
+            if(!legacy.isEmpty() && !activityStore.exists(id)) {
+                try {
+                    activityStore.save(id, ActivityDto.deserialize(legacy));
+                }
+                catch(IOException ioe) {
+                    System.out.println("migrateNeighborActivity, exception moving activity of " +
+                            id + ": " + ioe.getLocalizedMessage());
+                    continue;
+                }
+            }
+            migrated.add(key);
+        }
 
-            FileUtils.write(f, line, true);
+        if(!migrated.isEmpty()) {
+            System.out.println("migrateNeighborActivity, moved " + migrated.size() + " neighbors to the activity store");
+            propSource.update(editor -> migrated.forEach(editor::remove));
         }
-        catch(IOException ioe) {
-            System.out.println("logIotaAction, exception writing to file (" +
-                    iccrEventFilepath + "): " +ioe.getLocalizedMessage());
+    }
+
+    public void logIotaAction(String event) {
+        this.logIotaAction(event, "", "");
+    }
+
+    public void logIotaAction(String event, String data, String msg) {
+        //System.out.println("logIotaAction : " + event);
+        String line = localizer.getEventTime() + "," +  localizer.getLocalText(event) + "," + data;
+        if(msg != null && !msg.isEmpty()) {
+            line += "," + msg;
         }
+        line += System.lineSeparator();
+
+        //System.out.println(line);
+
+        // Written and synced by the event log writer thread, off the caller's thread
+        eventLogWriter.append(line);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,164 @@
+package org.iotacontrolcenter.persistence.activity;
+
+import org.iotacontrolcenter.dto.ActivityDto;
+import org.iotacontrolcenter.dto.ActivityWindow;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Neighbor activity history, one binary file per neighbor holding the
+ * RoaringBitmap in its portable serialization format, kept apart from
+ * iccr.properties so activity updates never rewrite the config.
+ *
+ * Reads load the file into a heap buffer and wrap it in an
+ * ImmutableRoaringBitmap without deserializing it; the buffer is cached
+ * until the neighbor's activity is next saved. Files are never memory
+ * mapped: a mapping can not be released in Java 8 and, on Windows, would
+ * keep the rename of a save and the delete of retain from working. A save
+ * writes a temp file and renames it into place.
+ *
+ * Each neighbor's rolling day and week counts are kept here too, shared by
+ * every copy of the neighbor loaded from the store, so the activity
+ * percentages are not recomputed from the bitmap on every request. They
+ * follow the ticks recorded through NeighborDto.
+ */
+public class ActivityStore {
+
+    public static final String FILE_SUFFIX = ".roar";
+
+    private static final ImmutableRoaringBitmap EMPTY = new ImmutableRoaringBitmap(
+            ByteBuffer.wrap(serializeEmpty()));
+
+    private final Path dir;
+    private final ConcurrentHashMap<String, ImmutableRoaringBitmap> cached = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ActivityWindow> windows = new ConcurrentHashMap<>();
+
+    public ActivityStore(String dirPath) {
+        this.dir = Paths.get(dirPath);
+        try {
+            Files.createDirectories(dir);
+        }
+        catch(IOException ioe) {
+            System.out.println("ActivityStore, exception creating " + dir + ": " + ioe.getLocalizedMessage());
+        }
+    }
+
+    public boolean exists(String nbrKey) {
+        return Files.exists(pathOf(nbrKey));
+    }
+
+    /**
+     * Read only view of a neighbor's activity, empty if there is none.
+     */
+    public ImmutableRoaringBitmap get(String nbrKey) {
+        return cached.computeIfAbsent(nbrKey, this::read);
+    }
+
+    /**
+     * A modifiable copy of a neighbor's activity.
+     */
+    public ActivityDto load(String nbrKey) {
+        return new ActivityDto(get(nbrKey));
+    }
+
+    /**
+     * The neighbor's rolling activity counts, made by build the first time.
+     */
+    public ActivityWindow getWindow(String nbrKey, Supplier<ActivityWindow> build) {
+        return windows.computeIfAbsent(nbrKey, k -> build.get());
+    }
+
+    public synchronized void save(String nbrKey, ActivityDto activity) throws IOException {
+        Path target = pathOf(nbrKey);
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+
+        activity.runOptimize();
+        try(FileOutputStream fos = new FileOutputStream(tmp.toFile());
+            DataOutputStream out = new DataOutputStream(fos)) {
+            activity.serialize(out);
+            out.flush();
+            fos.getFD().sync();
+        }
+
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        cached.remove(nbrKey);
+    }
+
+    /**
+     * Delete the activity of every neighbor not in nbrKeys.
+     */
+    public synchronized void retain(Collection<String> nbrKeys) {
+        Set<String> keep = new HashSet<>();
+        for(String k : nbrKeys) {
+            keep.add(pathOf(k).getFileName().toString());
+        }
+        windows.keySet().removeIf(k -> !keep.contains(pathOf(k).getFileName().toString()));
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + FILE_SUFFIX)) {
+            for(Path p : files) {
+                if(!keep.contains(p.getFileName().toString())) {
+                    System.out.println("ActivityStore, removing activity " + p.getFileName());
+                    cached.clear();
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+        catch(IOException ioe) {
+            System.out.println("ActivityStore, exception removing activity: " + ioe.getLocalizedMessage());
+        }
+    }
+
+    private ImmutableRoaringBitmap read(String nbrKey) {
+        try {
+            byte[] bytes = Files.readAllBytes(pathOf(nbrKey));
+            if(bytes.length == 0) {
+                return EMPTY;
+            }
+            return new ImmutableRoaringBitmap(ByteBuffer.wrap(bytes));
+        }
+        catch(NoSuchFileException e) {
+            return EMPTY;
+        }
+        catch(Exception e) {
+            System.out.println("ActivityStore, exception reading activity of " + nbrKey + ": " + e.getLocalizedMessage());
+            return EMPTY;
+        }
+    }
+
+    // Neighbor keys come from the client, keep only file name safe characters
+    private Path pathOf(String nbrKey) {
+        return dir.resolve(nbrKey.replaceAll("[^A-Za-z0-9._-]", "_") + FILE_SUFFIX);
+    }
+
+    private static byte[] serializeEmpty() {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new ActivityDto().serialize(new DataOutputStream(baos));
+            return baos.toByteArray();
+        }
+        catch(IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+    }
+}
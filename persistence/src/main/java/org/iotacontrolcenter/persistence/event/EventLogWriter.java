@@ -0,0 +1,415 @@
+package org.iotacontrolcenter.persistence.event;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single writer, append only pipeline for the event log.
+ *
+ * Callers enqueue formatted lines on a bounded lock-free queue and return
+ * immediately. One background thread drains the queue, writes each group of
+ * pending lines with a single write to a long lived FileChannel, and forces
+ * the channel according to the FsyncPolicy. When the queue is full callers
+ * wait for the writer to make room rather than dropping audit events.
+ *
+ * Each line goes to the EventStore segment for its event time; the channel is
+ * switched to a new segment file when the day rolls over.
+ *
+ * A line counts as written only once its bytes are in the file. When a write
+ * fails the writer cuts off any partial line, keeps the lines it could not
+ * write, reopens the file and retries every RETRY_PARK_NANOS; flush reports
+ * the events as not written until then.
+ */
+public class EventLogWriter {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+    public static final long DEFAULT_FSYNC_INTERVAL_MS = 1000L;
+
+    private static final int BATCH_BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long RETRY_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final EventStore store;
+    private final int capacity;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong enqueuedSeq = new AtomicLong();
+    private volatile long writtenSeq = 0L;
+
+    // Guards the channel between the writer thread and delete()
+    private final Object channelLock = new Object();
+    private final Object flushMonitor = new Object();
+    private final ByteBuffer batchBuf = ByteBuffer.allocateDirect(BATCH_BUFFER_SIZE);
+    private FileChannel channel;
+    private EventStore.Segment segment;
+    // Lines in batchBuf, reported to the store once they are written
+    private final List<String> pending = new ArrayList<>();
+    private long pendingBytes = 0L;
+    // Lines taken from the queue but not written because of a write error, written first
+    private final ArrayDeque<String> unwritten = new ArrayDeque<>();
+    private volatile boolean failing = false;
+    private boolean dirty = false;
+    private long lastFsyncNanos = System.nanoTime();
+
+    private volatile boolean running = false;
+    private Thread writerThread;
+
+    public EventLogWriter(EventStore store, int capacity, FsyncPolicy fsyncPolicy, long fsyncIntervalMs) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("Invalid event log queue capacity: " + capacity);
+        }
+        this.store = store;
+        this.capacity = capacity;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, fsyncIntervalMs));
+    }
+
+    public synchronized void start() {
+        if(running) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::run, "iccr-event-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        System.out.println("EventLogWriter started, " + store.getDir() + ", fsync: " + fsyncPolicy);
+    }
+
+    /**
+     * Stop accepting work, write out everything queued, force it to disk and close the file.
+     */
+    public synchronized void close() {
+        if(!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+        System.out.println("EventLogWriter closed, " + store.getDir());
+    }
+
+    public void append(String line) {
+        while(true) {
+            if(!running) {
+                // Writer is gone (shutting down), nobody would write the line
+                System.out.println("EventLogWriter not running, dropping event: " + line);
+                return;
+            }
+            int n = queued.get();
+            if(n < capacity) {
+                if(queued.compareAndSet(n, n + 1)) {
+                    break;
+                }
+                continue;
+            }
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+
+        queue.offer(line);
+        enqueuedSeq.incrementAndGet();
+        Thread t = writerThread;
+        if(t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Wait until every event appended before this call has been written to the file.
+     *
+     * @return false if some of them are not written yet: the writer is failing,
+     *         it is not running, or the wait timed out
+     */
+    public boolean flush() {
+        long target = enqueuedSeq.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        synchronized(flushMonitor) {
+            while(writtenSeq < target && running) {
+                Thread t = writerThread;
+                if(t != null) {
+                    LockSupport.unpark(t);
+                }
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if(failing) {
+                    System.out.println("EventLogWriter flush, writer is failing, written: " + writtenSeq +
+                            ", target: " + target);
+                    return false;
+                }
+                if(remainingMs <= 0) {
+                    System.out.println("EventLogWriter flush timed out, written: " + writtenSeq + ", target: " + target);
+                    return false;
+                }
+                try {
+                    flushMonitor.wait(Math.min(remainingMs, 100L));
+                }
+                catch(InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return writtenSeq >= target;
+    }
+
+    /**
+     * True while the last write to the file failed, the writer keeps retrying.
+     */
+    public boolean isFailing() {
+        return failing;
+    }
+
+    /**
+     * Delete all event log segments. The writer recreates a segment on the next event.
+     */
+    public void delete() throws IOException {
+        flush();
+        synchronized(channelLock) {
+            closeChannel();
+            segment = null;
+            store.deleteAll();
+        }
+    }
+
+    private void run() {
+        while(running || queued.get() > 0 || !unwritten.isEmpty()) {
+            int n = drain();
+            if(failing) {
+                if(!running) {
+                    // Closing, do not hold up shutdown on a broken disk
+                    System.out.println("EventLogWriter closing, " + (queued.get() + unwritten.size()) +
+                            " events not written");
+                    break;
+                }
+                // Appenders waiting for room unpark the writer, sleep the whole interval anyway
+                long retryAt = System.nanoTime() + RETRY_PARK_NANOS;
+                long left;
+                while(running && (left = retryAt - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(this, left);
+                }
+            }
+            else if(n == 0) {
+                if(fsyncPolicy == FsyncPolicy.INTERVAL) {
+                    syncIfDue();
+                }
+                if(running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        }
+
+        synchronized(channelLock) {
+            if(dirty) {
+                force();
+            }
+            closeChannel();
+        }
+        notifyFlushed();
+    }
+
+    // Write the lines left from a failed write if there are any, otherwise all currently
+    // queued lines, as one group. Returns the number of lines taken.
+    private int drain() {
+        int count = 0;
+        String line = null;
+        synchronized(channelLock) {
+            // While retrying the queue is left alone, so callers wait instead of lines piling up here
+            boolean retrying = !unwritten.isEmpty();
+            try {
+                while((line = nextLine(retrying)) != null) {
+                    count++;
+                    EventStore.Segment seg = store.segmentFor(line);
+                    if(seg != segment) {
+                        writeBatch();
+                        switchSegment(seg);
+                    }
+                    put(line);
+                    line = null;
+                }
+                if(count > 0) {
+                    writeBatch();
+                    if(fsyncPolicy == FsyncPolicy.BATCH) {
+                        force();
+                    }
+                    else if(fsyncPolicy == FsyncPolicy.INTERVAL) {
+                        syncIfDue();
+                    }
+                }
+            }
+            catch(IOException ioe) {
+                if(!failing) {
+                    System.out.println("EventLogWriter, exception writing to file (" +
+                            segmentPath() + "), retrying: " + ioe.getLocalizedMessage());
+                }
+                // Put back, in order, the lines of the failed batch and the one being added
+                if(line != null && (pending.isEmpty() || pending.get(pending.size() - 1) != line)) {
+                    unwritten.addFirst(line);
+                }
+                for(int i = pending.size() - 1; i >= 0; i--) {
+                    unwritten.addFirst(pending.get(i));
+                }
+                batchBuf.clear();
+                pending.clear();
+                pendingBytes = 0L;
+                closeChannel();
+                failing = true;
+            }
+        }
+
+        notifyFlushed();
+        return count;
+    }
+
+    private String nextLine(boolean retrying) {
+        String line = unwritten.poll();
+        if(line == null && !retrying) {
+            line = queue.poll();
+            if(line != null) {
+                queued.decrementAndGet();
+            }
+        }
+        return line;
+    }
+
+    // A line is never split between batches, a failed batch can be cut off and written again whole
+    private void put(String line) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > batchBuf.remaining()) {
+            writeBatch();
+        }
+        pending.add(line);
+        pendingBytes += bytes.length;
+        if(bytes.length > batchBuf.capacity()) {
+            // Larger than the buffer, a batch of its own
+            write(ByteBuffer.wrap(bytes));
+        }
+        else {
+            batchBuf.put(bytes);
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        if(batchBuf.position() == 0) {
+            return;
+        }
+        batchBuf.flip();
+        write(batchBuf);
+        batchBuf.clear();
+    }
+
+    // Write buf and report the pending lines, which are its content, as written
+    private void write(ByteBuffer buf) throws IOException {
+        FileChannel ch = openChannel();
+        long start = ch.size();
+        try {
+            while(buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        }
+        catch(IOException ioe) {
+            // Cut off what made it to the file, the whole batch is written again
+            try {
+                ch.truncate(start);
+            }
+            catch(IOException tioe) {
+                System.out.println("EventLogWriter, exception truncating file (" +
+                        segmentPath() + "): " + tioe.getLocalizedMessage());
+            }
+            throw ioe;
+        }
+        dirty = true;
+        if(failing) {
+            System.out.println("EventLogWriter, writing to file (" + segmentPath() + ") again");
+            failing = false;
+        }
+
+        store.appended(segment, pending, pendingBytes);
+        writtenSeq += pending.size();
+        pending.clear();
+        pendingBytes = 0L;
+    }
+
+    // Finish the current segment file before appending to another, the store can then archive it
+    private void switchSegment(EventStore.Segment seg) {
+        if(channel != null && dirty) {
+            force();
+        }
+        closeChannel();
+        segment = seg;
+        store.archiveClosed();
+    }
+
+    private String segmentPath() {
+        return segment == null ? String.valueOf(store.getDir()) : segment.path.toString();
+    }
+
+    private void syncIfDue() {
+        synchronized(channelLock) {
+            if(dirty && System.nanoTime() - lastFsyncNanos >= fsyncIntervalNanos) {
+                force();
+            }
+        }
+    }
+
+    private void force() {
+        try {
+            if(channel != null) {
+                channel.force(false);
+            }
+        }
+        catch(IOException ioe) {
+            System.out.println("EventLogWriter, exception forcing file (" +
+                    segmentPath() + "): " + ioe.getLocalizedMessage());
+        }
+        dirty = false;
+        lastFsyncNanos = System.nanoTime();
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if(channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(segment.path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    private void closeChannel() {
+        if(channel != null) {
+            try {
+                channel.close();
+            }
+            catch(IOException ioe) {
+                System.out.println("EventLogWriter, exception closing file (" +
+                        segmentPath() + "): " + ioe.getLocalizedMessage());
+            }
+            channel = null;
+        }
+        dirty = false;
+    }
+
+    private void notifyFlushed() {
+        synchronized(flushMonitor) {
+            flushMonitor.notifyAll();
+        }
+    }
+}
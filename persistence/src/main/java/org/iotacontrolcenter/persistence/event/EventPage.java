@@ -0,0 +1,30 @@
+package org.iotacontrolcenter.persistence.event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of event log lines. The next cursor is null when there are no more
+ * matching events.
+ */
+public class EventPage {
+
+    private List<String> events = new ArrayList<>();
+    private String nextCursor;
+
+    public void addEvent(String event) {
+        events.add(event);
+    }
+
+    public List<String> getEvents() {
+        return events;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
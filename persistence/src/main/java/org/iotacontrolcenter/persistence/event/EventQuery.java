@@ -0,0 +1,80 @@
+package org.iotacontrolcenter.persistence.event;
+
+import java.time.LocalDateTime;
+
+/**
+ * Filter and paging parameters for an event log query. Any of the
+ * filters may be null.
+ */
+public class EventQuery {
+
+    public static final int DEFAULT_LIMIT = 1000;
+    public static final int MAX_LIMIT = 10000;
+
+    private LocalDateTime since;
+    private LocalDateTime until;
+    private String type;
+    private int limit = DEFAULT_LIMIT;
+    private String cursor;
+
+    public LocalDateTime getSince() {
+        return since;
+    }
+
+    public EventQuery setSince(LocalDateTime since) {
+        this.since = since;
+        return this;
+    }
+
+    public LocalDateTime getUntil() {
+        return until;
+    }
+
+    public EventQuery setUntil(LocalDateTime until) {
+        this.until = until;
+        return this;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public EventQuery setType(String type) {
+        this.type = type;
+        return this;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public EventQuery setLimit(Integer limit) {
+        if(limit == null || limit <= 0) {
+            this.limit = DEFAULT_LIMIT;
+        }
+        else {
+            this.limit = Math.min(limit, MAX_LIMIT);
+        }
+        return this;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public EventQuery setCursor(String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "EventQuery{" +
+                "since=" + since +
+                ", until=" + until +
+                ", type='" + type + '\'' +
+                ", limit=" + limit +
+                ", cursor='" + cursor + '\'' +
+                '}';
+    }
+}
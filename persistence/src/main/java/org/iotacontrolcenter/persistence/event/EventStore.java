@@ -0,0 +1,1075 @@
+package org.iotacontrolcenter.persistence.event;
+
+import org.apache.commons.io.IOUtils;
+import org.iotacontrolcenter.persistence.log.LogChunk;
+import org.iotacontrolcenter.persistence.log.LogFileStreamer;
+import org.iotacontrolcenter.persistence.log.LogTailReader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Event log stored as time partitioned segment files, at least one per day,
+ * named iota-event-yyyyMMdd[-nnn].csv in the events directory. Each segment
+ * keeps the minimum and maximum event time it holds, so a query only opens the
+ * segments that overlap its time range, and within a live segment the first
+ * event at or after "since" is found by a binary search over byte offsets
+ * rather than a scan. Events are appended in time order by the single
+ * EventLogWriter.
+ *
+ * The active segment is rotated when the day changes, when it reaches the
+ * maximum segment size or when its first event is older than the maximum
+ * segment age. Closed segments are gzip compressed in the background into
+ * .csv.gz archives, read by decompressing on the fly. An archive is a series
+ * of gzip members of about ARCHIVE_BLOCK_SIZE, each starting at a line, so
+ * reading can start at any member. Next to it an .idx file keeps its
+ * uncompressed size, its time range and where each member starts: startup
+ * reads only that, and a query seeks to the member holding "since" and scans
+ * from there. Archives older than the retention period are deleted, a
+ * retention of 0 keeps them forever.
+ *
+ * The event log written before segmenting (iota-event.csv in the data dir) is
+ * kept as the oldest segment.
+ *
+ * A cursor is "segmentKey:byteOffset", the position just past the last event
+ * returned. Offsets are into the uncompressed content, so a cursor stays valid
+ * when its segment is archived.
+ */
+public class EventStore {
+
+    public static final String SEGMENT_PREFIX = "iota-event-";
+    public static final String SEGMENT_SUFFIX = ".csv";
+    public static final String ARCHIVE_SUFFIX = ".csv.gz";
+    public static final String INDEX_SUFFIX = ".idx";
+    public static final int ARCHIVE_BLOCK_SIZE = 1024 * 1024;
+
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 16L * 1024 * 1024;
+    public static final long DEFAULT_MAX_SEGMENT_AGE_MS = TimeUnit.DAYS.toMillis(1);
+
+    private static final String LEGACY_KEY = "00000000";
+    private static final int INDEX_FORMAT_VERSION = 1;
+    private static final DateTimeFormatter KEY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    private static final int PROBE_SIZE = 512;
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    // By day, then by sequence number as a number, so day-1000 follows day-999
+    static final Comparator<String> KEY_ORDER = (a, b) -> {
+        int c = dayOf(a).compareTo(dayOf(b));
+        if(c == 0) {
+            c = Long.compare(seqOf(a), seqOf(b));
+        }
+        return c != 0 ? c : a.compareTo(b);
+    };
+
+    private interface LineHandler {
+        // Return false to stop scanning after this line
+        boolean line(String line, long endPosition);
+    }
+
+    /**
+     * One segment and the range of event times written to it. A null time
+     * means it is unknown (empty segment or unparseable line) and the segment is
+     * never skipped on that bound.
+     *
+     * A segment is live until it is closed by rotation, and then archived.
+     * Size is the uncompressed size in both cases.
+     */
+    static class Segment {
+        final String key;
+        volatile Path path;
+        volatile boolean closed;
+        volatile boolean archived;
+        volatile boolean archiving;
+        volatile long size;
+        volatile LocalDateTime minTime;
+        volatile LocalDateTime maxTime;
+        // Archives only: where each gzip member starts, in the content and in the file
+        volatile long[] blockStarts;
+        volatile long[] blockPositions;
+
+        Segment(String key, Path path) {
+            this.key = key;
+            this.path = path;
+        }
+
+        synchronized void extend(LocalDateTime time) {
+            if(time == null) {
+                return;
+            }
+            if(minTime == null || time.isBefore(minTime)) {
+                minTime = time;
+            }
+            if(maxTime == null || time.isAfter(maxTime)) {
+                maxTime = time;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Segment{" + key + ", " + minTime + " - " + maxTime +
+                    ", " + size + " bytes" + (archived ? ", archived" : closed ? ", closed" : "") + "}";
+        }
+    }
+
+    private final Path dir;
+    private final Path legacyPath;
+    private final long maxSegmentSize;
+    private final long maxSegmentAgeMs;
+    private final int retentionDays;
+    private final TreeMap<String, Segment> segments = new TreeMap<>(KEY_ORDER);
+    private final ExecutorService archiver;
+
+    public EventStore(String dirPath, String legacyFilePath) {
+        this(dirPath, legacyFilePath, DEFAULT_MAX_SEGMENT_SIZE, DEFAULT_MAX_SEGMENT_AGE_MS, 0);
+    }
+
+    public EventStore(String dirPath, String legacyFilePath,
+                      long maxSegmentSize, long maxSegmentAgeMs, int retentionDays) {
+        if(maxSegmentSize <= 0 || maxSegmentAgeMs <= 0 || retentionDays < 0) {
+            throw new IllegalArgumentException("Invalid event log rotation, size: " + maxSegmentSize +
+                    ", age: " + maxSegmentAgeMs + ", retention: " + retentionDays);
+        }
+        this.dir = Paths.get(dirPath);
+        this.legacyPath = legacyFilePath == null ? null : Paths.get(legacyFilePath);
+        this.maxSegmentSize = maxSegmentSize;
+        this.maxSegmentAgeMs = maxSegmentAgeMs;
+        this.retentionDays = retentionDays;
+        this.archiver = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "iccr-event-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        load();
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /**
+     * Stop the archiver, giving queued compressions a little time to finish.
+     * Segments not compressed by then are compressed at the next startup.
+     */
+    public void close() {
+        archiver.shutdown();
+        try {
+            if(!archiver.awaitTermination(10, TimeUnit.SECONDS)) {
+                archiver.shutdownNow();
+            }
+        }
+        catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static String timestampOf(String line) {
+        int comma = line.indexOf(',');
+        return (comma < 0 ? line : line.substring(0, comma)).trim();
+    }
+
+    public static String typeOf(String line) {
+        int first = line.indexOf(',');
+        if(first < 0) {
+            return "";
+        }
+        int second = line.indexOf(',', first + 1);
+        return (second < 0 ? line.substring(first + 1) : line.substring(first + 1, second)).trim();
+    }
+
+    public static LocalDateTime parseTime(String timestamp) {
+        try {
+            return LocalDateTime.parse(timestamp);
+        }
+        catch(DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The segment an event line belongs to: the live segment for the day of its
+     * event time, or a new one if there is none or it is due for rotation.
+     * Creating a segment only adds it to the index, the writer creates the file.
+     * Any other live segment is closed, the writer archives it with archiveClosed()
+     * once it has switched away from it.
+     */
+    synchronized Segment segmentFor(String line) {
+        LocalDateTime time = parseTime(timestampOf(line));
+        String day = (time != null ? time.toLocalDate() : LocalDate.now()).format(KEY_FORMAT);
+
+        Map.Entry<String, Segment> last = segments.floorEntry(day + "-" + Integer.MAX_VALUE);
+        Segment seg = (last != null && last.getKey().startsWith(day)) ? last.getValue() : null;
+        if(seg != null && !seg.closed && !isRotationDue(seg, time)) {
+            return seg;
+        }
+
+        String key = day;
+        if(seg != null) {
+            key = String.format("%s-%03d", day, Math.max(seqOf(seg.key), 0) + 1);
+        }
+        Segment next = new Segment(key, dir.resolve(SEGMENT_PREFIX + key + SEGMENT_SUFFIX));
+        for(Segment s : segments.values()) {
+            s.closed = true;
+        }
+        segments.put(key, next);
+        System.out.println("EventStore, new segment " + key);
+        return next;
+    }
+
+    private boolean isRotationDue(Segment seg, LocalDateTime time) {
+        if(seg.size >= maxSegmentSize) {
+            return true;
+        }
+        return time != null && seg.minTime != null &&
+                Duration.between(seg.minTime, time).toMillis() >= maxSegmentAgeMs;
+    }
+
+    void appended(Segment seg, List<String> lines, long bytes) {
+        seg.size += bytes;
+        for(String line : lines) {
+            seg.extend(parseTime(timestampOf(line)));
+        }
+    }
+
+    /**
+     * Queue every closed segment for compression. Must only be called when the
+     * writer no longer has any of them open.
+     */
+    synchronized void archiveClosed() {
+        for(Segment seg : segments.values()) {
+            if(seg.closed && !seg.archived && !seg.archiving) {
+                seg.archiving = true;
+                try {
+                    archiver.execute(() -> archive(seg));
+                }
+                catch(Exception e) {
+                    // Shutting down, archived at the next startup
+                    seg.archiving = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove every segment and archive, including the pre-segmenting event log.
+     * The caller must make sure nothing is writing to them.
+     */
+    synchronized void deleteAll() throws IOException {
+        for(Segment seg : segments.values()) {
+            Files.deleteIfExists(seg.path);
+            Files.deleteIfExists(archivePath(seg.key));
+            Files.deleteIfExists(indexPath(seg.key));
+        }
+        segments.clear();
+    }
+
+    public List<String> readAll() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for(Segment seg : snapshot(null)) {
+            try(InputStream in = openStream(seg, 0L)) {
+                if(in != null) {
+                    lines.addAll(IOUtils.readLines(in, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Combined uncompressed size of all segments, oldest first, as served by copyRange().
+     */
+    public long size() throws IOException {
+        long total = 0L;
+        for(Segment seg : snapshot(null)) {
+            total += sizeOf(seg);
+        }
+        return total;
+    }
+
+    /**
+     * Copy a byte range of the concatenation of all segments, oldest first,
+     * decompressing archives on the fly.
+     */
+    public long copyRange(long start, long length, OutputStream out) throws IOException {
+        long segStart = 0L;
+        long copied = 0L;
+        for(Segment seg : snapshot(null)) {
+            if(copied >= length) {
+                break;
+            }
+            long segEnd = segStart + sizeOf(seg);
+            long pos = start + copied;
+            if(pos < segEnd) {
+                long n = Math.min(length - copied, segEnd - pos);
+                long done = 0L;
+                Path live = liveFileOf(seg);
+                if(live != null) {
+                    done = LogFileStreamer.copyRange(live, pos - segStart, n, out);
+                }
+                if(done < n && liveFileOf(seg) == null) {
+                    // Archived, possibly while copying: the rest comes from the archive
+                    try(InputStream in = openStream(seg, pos - segStart + done)) {
+                        if(in != null) {
+                            done += IOUtils.copyLarge(in, out, 0L, n - done);
+                        }
+                    }
+                }
+                copied += done;
+            }
+            segStart = segEnd;
+        }
+        out.flush();
+        return copied;
+    }
+
+    public EventPage query(EventQuery query) throws IOException {
+        String fromKey = null;
+        long fromOffset = 0L;
+        if(query.getCursor() != null && !query.getCursor().isEmpty()) {
+            String[] parts = query.getCursor().split(":");
+            try {
+                if(parts.length != 2) {
+                    throw new NumberFormatException();
+                }
+                fromKey = parts[0];
+                fromOffset = Long.parseLong(parts[1]);
+            }
+            catch(NumberFormatException nfe) {
+                throw new IllegalArgumentException("Invalid event log cursor: '" + query.getCursor() + "'");
+            }
+        }
+
+        LocalDateTime since = query.getSince();
+        LocalDateTime until = query.getUntil();
+        String type = query.getType();
+        int limit = query.getLimit();
+        EventPage page = new EventPage();
+
+        for(Segment seg : snapshot(fromKey)) {
+            if(until != null && seg.minTime != null && seg.minTime.isAfter(until)) {
+                // Segments are in time order, nothing later can match
+                break;
+            }
+            if(since != null && seg.maxTime != null && seg.maxTime.isBefore(since)) {
+                continue;
+            }
+
+            long pos = seg.key.equals(fromKey) ? fromOffset : 0L;
+            boolean seek = since != null && (seg.minTime == null || seg.minTime.isBefore(since));
+            boolean[] done = { false };
+            scanSegment(seg, pos, seek ? since : null, (line, end) -> {
+                LocalDateTime time = parseTime(timestampOf(line));
+                if(until != null && time != null && time.isAfter(until)) {
+                    done[0] = true;
+                    return false;
+                }
+                if((since == null || time == null || !time.isBefore(since)) &&
+                        (type == null || type.equalsIgnoreCase(typeOf(line)))) {
+                    page.addEvent(line);
+                    if(page.getEvents().size() >= limit) {
+                        page.setNextCursor(seg.key + ":" + end);
+                        done[0] = true;
+                        return false;
+                    }
+                }
+                return true;
+            });
+            if(done[0]) {
+                break;
+            }
+        }
+        return page;
+    }
+
+    // Segments in key (time) order, starting at fromKey if given
+    private synchronized List<Segment> snapshot(String fromKey) {
+        Map<String, Segment> view = fromKey == null ? segments : segments.tailMap(fromKey, true);
+        return new ArrayList<>(view.values());
+    }
+
+    private static String dayOf(String key) {
+        int sepIdx = key.indexOf('-');
+        return sepIdx < 0 ? key : key.substring(0, sepIdx);
+    }
+
+    // 0 for a day's first segment, -1 if the key has no numeric sequence
+    private static long seqOf(String key) {
+        int sepIdx = key.indexOf('-');
+        if(sepIdx < 0) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(key.substring(sepIdx + 1));
+        }
+        catch(NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Path archivePath(String key) {
+        return dir.resolve(SEGMENT_PREFIX + key + ARCHIVE_SUFFIX);
+    }
+
+    private Path indexPath(String key) {
+        return dir.resolve(SEGMENT_PREFIX + key + ARCHIVE_SUFFIX + INDEX_SUFFIX);
+    }
+
+    private long sizeOf(Segment seg) throws IOException {
+        Path live = liveFileOf(seg);
+        if(live != null) {
+            try {
+                return Files.size(live);
+            }
+            catch(NoSuchFileException e) {
+                if(liveFileOf(seg) != null) {
+                    return 0L;
+                }
+            }
+        }
+        // Uncompressed size of the archive
+        return seg.size;
+    }
+
+    /**
+     * The file of a segment that is not archived, null once it is. archive()
+     * switches the path and the flag together under the store's lock, read
+     * apart a reader could see the archive's path as a live file. Once
+     * archived, path and size no longer change.
+     */
+    private synchronized Path liveFileOf(Segment seg) {
+        return seg.archived ? null : seg.path;
+    }
+
+    /**
+     * Scan the lines of a segment from pos, after seeking to since if given. A live
+     * segment is read through its channel, an archive from the gzip member holding
+     * since; if a live segment is archived meanwhile the scan is retried on the archive.
+     */
+    private void scanSegment(Segment seg, long pos, LocalDateTime since, LineHandler handler) throws IOException {
+        for(int attempt = 0; attempt < 2; attempt++) {
+            Path live = liveFileOf(seg);
+            boolean archived = live == null;
+            try {
+                if(archived) {
+                    long start = pos;
+                    if(since != null) {
+                        start = Math.max(start, seekArchive(seg, since));
+                    }
+                    try(InputStream in = openStream(seg, start)) {
+                        if(in != null) {
+                            scan(in, start, Long.MAX_VALUE, handler);
+                        }
+                    }
+                }
+                else {
+                    try(FileChannel ch = FileChannel.open(live, StandardOpenOption.READ)) {
+                        long size = ch.size();
+                        long start = Math.min(pos, size);
+                        if(since != null) {
+                            start = Math.max(start, seek(ch, since, size));
+                        }
+                        ch.position(start);
+                        scan(Channels.newInputStream(ch), start, size, handler);
+                    }
+                }
+                return;
+            }
+            catch(NoSuchFileException e) {
+                if(archived || liveFileOf(seg) != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Uncompressed content of a segment positioned at offset, or null if the
+     * segment no longer exists. An archive is decompressed from the member
+     * holding offset.
+     */
+    private InputStream openStream(Segment seg, long offset) throws IOException {
+        for(int attempt = 0; attempt < 2; attempt++) {
+            Path live = liveFileOf(seg);
+            boolean archived = live == null;
+            try {
+                InputStream in;
+                long skip = offset;
+                if(archived) {
+                    int block = blockAt(seg.blockStarts, offset);
+                    FileChannel ch = FileChannel.open(seg.path, StandardOpenOption.READ);
+                    try {
+                        ch.position(block < 0 ? 0L : seg.blockPositions[block]);
+                        in = new GZIPInputStream(Channels.newInputStream(ch), SCAN_BUFFER_SIZE);
+                    }
+                    catch(IOException e) {
+                        ch.close();
+                        throw e;
+                    }
+                    skip = block < 0 ? offset : offset - seg.blockStarts[block];
+                }
+                else {
+                    in = Files.newInputStream(live);
+                }
+                try {
+                    IOUtils.skipFully(in, skip);
+                }
+                catch(EOFException e) {
+                    // Offset past the end, nothing to read
+                    in.close();
+                    return new ByteArrayInputStream(new byte[0]);
+                }
+                return in;
+            }
+            catch(NoSuchFileException e) {
+                if(archived || liveFileOf(seg) != null) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void archive(Segment seg) {
+        Path source = seg.path;
+        Path target = archivePath(seg.key);
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        Path index = indexPath(seg.key);
+        Path indexTmp = dir.resolve(index.getFileName() + ".tmp");
+        long size = 0L;
+        try {
+            List<Long> starts = new ArrayList<>();
+            List<Long> positions = new ArrayList<>();
+            try(InputStream in = new BufferedInputStream(Files.newInputStream(source), SCAN_BUFFER_SIZE);
+                FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+                size = compress(in, out, starts, positions);
+            }
+            long[] blockStarts = toArray(starts);
+            long[] blockPositions = toArray(positions);
+
+            // The index is in place before the archive, an archive is never without one
+            writeIndex(indexTmp, size, seg.minTime, seg.maxTime, blockStarts, blockPositions);
+            Files.move(indexTmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            synchronized(this) {
+                if(segments.get(seg.key) != seg) {
+                    // Deleted while compressing
+                    Files.deleteIfExists(target);
+                    Files.deleteIfExists(index);
+                    return;
+                }
+                seg.size = size;
+                seg.blockStarts = blockStarts;
+                seg.blockPositions = blockPositions;
+                seg.path = target;
+                seg.archived = true;
+            }
+            Files.deleteIfExists(source);
+            System.out.println("EventStore, archived " + seg.key + ", " + size + " bytes to " +
+                    Files.size(target));
+        }
+        catch(IOException ioe) {
+            System.out.println("EventStore, exception archiving " + source + ": " + ioe.getLocalizedMessage());
+            try {
+                Files.deleteIfExists(tmp);
+                Files.deleteIfExists(indexTmp);
+            }
+            catch(IOException e) {
+                // Removed at the next startup
+            }
+        }
+        finally {
+            seg.archiving = false;
+        }
+        applyRetention();
+    }
+
+    private void applyRetention() {
+        if(retentionDays == 0) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+        List<Segment> expired = new ArrayList<>();
+        synchronized(this) {
+            for(Segment seg : segments.values()) {
+                if(seg.archived && seg.maxTime != null && seg.maxTime.isBefore(cutoff)) {
+                    expired.add(seg);
+                }
+            }
+            for(Segment seg : expired) {
+                segments.remove(seg.key);
+            }
+        }
+        for(Segment seg : expired) {
+            try {
+                Files.deleteIfExists(seg.path);
+                Files.deleteIfExists(indexPath(seg.key));
+                System.out.println("EventStore, deleted expired archive " + seg.path);
+            }
+            catch(IOException ioe) {
+                System.out.println("EventStore, exception deleting " + seg.path + ": " + ioe.getLocalizedMessage());
+            }
+        }
+    }
+
+    private synchronized void load() {
+        try {
+            Files.createDirectories(dir);
+        }
+        catch(IOException ioe) {
+            System.out.println("EventStore, exception creating " + dir + ": " + ioe.getLocalizedMessage());
+        }
+
+        if(legacyPath != null && Files.exists(legacyPath)) {
+            segments.put(LEGACY_KEY, new Segment(LEGACY_KEY, legacyPath));
+        }
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*")) {
+            for(Path p : files) {
+                String name = p.getFileName().toString();
+                if(name.endsWith(ARCHIVE_SUFFIX)) {
+                    String key = name.substring(SEGMENT_PREFIX.length(), name.length() - ARCHIVE_SUFFIX.length());
+                    Segment seg = new Segment(key, p);
+                    seg.closed = true;
+                    seg.archived = true;
+                    // An archive is complete once renamed into place, drop a leftover source
+                    Segment prev = segments.put(key, seg);
+                    if(prev != null) {
+                        Files.deleteIfExists(prev.path);
+                    }
+                }
+                else if(name.endsWith(SEGMENT_SUFFIX)) {
+                    String key = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                    Segment existing = segments.get(key);
+                    if(existing != null && existing.archived) {
+                        Files.deleteIfExists(p);
+                    }
+                    else {
+                        segments.put(key, new Segment(key, p));
+                    }
+                }
+                else if(name.endsWith(".tmp")) {
+                    // Interrupted compression, the source segment is still there
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+        catch(IOException ioe) {
+            System.out.println("EventStore, exception listing " + dir + ": " + ioe.getLocalizedMessage());
+        }
+
+        for(Segment seg : segments.values()) {
+            try {
+                indexSegment(seg);
+            }
+            catch(IOException ioe) {
+                System.out.println("EventStore, exception indexing " + seg.path + ": " + ioe.getLocalizedMessage());
+            }
+        }
+
+        // Only the newest segment can still be appended to
+        String newest = segments.isEmpty() ? null : segments.lastKey();
+        for(Segment seg : segments.values()) {
+            if(!seg.key.equals(newest)) {
+                seg.closed = true;
+            }
+        }
+        System.out.println("EventStore loaded " + segments.size() + " segments from " + dir);
+
+        archiveClosed();
+        archiver.execute(this::applyRetention);
+    }
+
+    // The time range of a segment is its first and last line, only those two are read
+    private void indexSegment(Segment seg) throws IOException {
+        if(seg.archived) {
+            indexArchive(seg);
+            return;
+        }
+        seg.size = Files.size(seg.path);
+        try(FileChannel ch = FileChannel.open(seg.path, StandardOpenOption.READ)) {
+            scan(Channels.newInputStream(ch), 0L, ch.size(), (line, end) -> {
+                seg.extend(parseTime(timestampOf(line)));
+                return false;
+            });
+        }
+        LogChunk last = new LogTailReader(seg.path.toString()).tail(1);
+        for(String line : last.getLines()) {
+            seg.extend(parseTime(timestampOf(line)));
+        }
+    }
+
+    /**
+     * An archive's size, time range and members come from its index. Archives
+     * written before indexes were kept are one gzip member, they are decompressed
+     * once to find their last line and get an index for the next startup; the
+     * uncompressed size is the gzip trailer (ISIZE, modulo 2^32, segments are far
+     * smaller).
+     */
+    private void indexArchive(Segment seg) throws IOException {
+        if(readIndex(seg)) {
+            return;
+        }
+        seg.blockStarts = new long[] { 0L };
+        seg.blockPositions = new long[] { 0L };
+        try(FileChannel ch = FileChannel.open(seg.path, StandardOpenOption.READ)) {
+            ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            if(ch.size() >= 4) {
+                ch.read(trailer, ch.size() - 4);
+                seg.size = trailer.getInt(0) & 0xFFFFFFFFL;
+            }
+        }
+        String[] lastLine = { null };
+        try(InputStream in = openStream(seg, 0L)) {
+            if(in != null) {
+                scan(in, 0L, Long.MAX_VALUE, (line, end) -> {
+                    if(lastLine[0] == null) {
+                        seg.extend(parseTime(timestampOf(line)));
+                    }
+                    lastLine[0] = line;
+                    return true;
+                });
+            }
+        }
+        if(lastLine[0] != null) {
+            seg.extend(parseTime(timestampOf(lastLine[0])));
+        }
+
+        Path index = indexPath(seg.key);
+        Path indexTmp = dir.resolve(index.getFileName() + ".tmp");
+        writeIndex(indexTmp, seg.size, seg.minTime, seg.maxTime, seg.blockStarts, seg.blockPositions);
+        Files.move(indexTmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private boolean readIndex(Segment seg) {
+        Path index = indexPath(seg.key);
+        if(!Files.exists(index)) {
+            return false;
+        }
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+            int version = in.readInt();
+            if(version != INDEX_FORMAT_VERSION) {
+                throw new IOException("unsupported archive index version: " + version);
+            }
+            long size = in.readLong();
+            LocalDateTime min = parseTime(in.readUTF());
+            LocalDateTime max = parseTime(in.readUTF());
+            int blocks = in.readInt();
+            if(blocks <= 0) {
+                throw new IOException("archive index without blocks");
+            }
+            long[] starts = new long[blocks];
+            long[] positions = new long[blocks];
+            for(int i = 0; i < blocks; i++) {
+                starts[i] = in.readLong();
+                positions[i] = in.readLong();
+            }
+            seg.size = size;
+            seg.extend(min);
+            seg.extend(max);
+            seg.blockStarts = starts;
+            seg.blockPositions = positions;
+            return true;
+        }
+        catch(IOException ioe) {
+            System.out.println("EventStore, exception reading " + index + ", rebuilding it: " + ioe.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    private static void writeIndex(Path path, long size, LocalDateTime min, LocalDateTime max,
+                                   long[] starts, long[] positions) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(INDEX_FORMAT_VERSION);
+            out.writeLong(size);
+            out.writeUTF(min == null ? "" : min.toString());
+            out.writeUTF(max == null ? "" : max.toString());
+            out.writeInt(starts.length);
+            for(int i = 0; i < starts.length; i++) {
+                out.writeLong(starts[i]);
+                out.writeLong(positions[i]);
+            }
+        }
+    }
+
+    /**
+     * Gzip in to out as a series of members, each starting at a line and
+     * holding at least ARCHIVE_BLOCK_SIZE bytes (the last one may hold less).
+     * Adds where each member starts, in the content and in out, to starts and
+     * positions. Returns the uncompressed size.
+     */
+    private static long compress(InputStream in, FileOutputStream out,
+                                 List<Long> starts, List<Long> positions) throws IOException {
+        FileChannel ch = out.getChannel();
+        byte[] buf = new byte[SCAN_BUFFER_SIZE];
+        OutputStream member = null;
+        long size = 0L;
+        long used = 0L;
+        boolean lineStart = true;
+        try {
+            int n;
+            while((n = in.read(buf)) > 0) {
+                int off = 0;
+                while(off < n) {
+                    if(member == null || (used >= ARCHIVE_BLOCK_SIZE && lineStart)) {
+                        if(member != null) {
+                            member.close();
+                        }
+                        starts.add(size);
+                        positions.add(ch.position());
+                        member = new GZIPOutputStream(unclosable(out), SCAN_BUFFER_SIZE);
+                        used = 0L;
+                    }
+                    int end = n;
+                    long room = ARCHIVE_BLOCK_SIZE - used;
+                    if(room <= n - off) {
+                        // The member fills up in this buffer, end it with the line that fills it
+                        int lf = indexOf(buf, LF, off + (int)Math.max(0L, room - 1), n);
+                        if(lf >= 0) {
+                            end = lf + 1;
+                        }
+                    }
+                    member.write(buf, off, end - off);
+                    size += end - off;
+                    used += end - off;
+                    lineStart = buf[end - 1] == LF;
+                    off = end;
+                }
+            }
+            if(member == null) {
+                // Empty segment, still a valid gzip file
+                starts.add(0L);
+                positions.add(ch.position());
+                member = new GZIPOutputStream(unclosable(out), SCAN_BUFFER_SIZE);
+            }
+        }
+        finally {
+            if(member != null) {
+                member.close();
+            }
+        }
+        return size;
+    }
+
+    // Closing a member writes its trailer and leaves the file open for the next one
+    private static OutputStream unclosable(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    private static int indexOf(byte[] buf, byte b, int from, int to) {
+        for(int i = from; i < to; i++) {
+            if(buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long[] toArray(List<Long> values) {
+        long[] a = new long[values.size()];
+        for(int i = 0; i < a.length; i++) {
+            a[i] = values.get(i);
+        }
+        return a;
+    }
+
+    // The member holding offset, -1 if the archive has no index
+    private static int blockAt(long[] starts, long offset) {
+        if(starts == null || starts.length == 0) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(starts, offset);
+        return i >= 0 ? i : Math.max(0, -i - 2);
+    }
+
+    /**
+     * Start of the last archive member whose first event is before since, the
+     * first event at or after since is in it or at the start of the next one.
+     * Each probe decompresses only the start of a member.
+     */
+    private long seekArchive(Segment seg, LocalDateTime since) throws IOException {
+        long[] starts = seg.blockStarts;
+        if(starts == null || starts.length < 2) {
+            return 0L;
+        }
+        int lo = 0;
+        int hi = starts.length - 1;
+        while(lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if(startsBefore(seg, starts[mid], since)) {
+                lo = mid;
+            }
+            else {
+                hi = mid - 1;
+            }
+        }
+        return starts[lo];
+    }
+
+    private boolean startsBefore(Segment seg, long blockStart, LocalDateTime since) throws IOException {
+        try(InputStream in = openStream(seg, blockStart)) {
+            if(in == null) {
+                return true;
+            }
+            byte[] head = new byte[PROBE_SIZE];
+            int len = IOUtils.read(in, head);
+            return isBefore(head, len, since);
+        }
+    }
+
+    /**
+     * Binary search for the start of the first line whose event time is at or
+     * after since. Each probe reads only the line at the probed offset.
+     */
+    private long seek(FileChannel ch, LocalDateTime since, long size) throws IOException {
+        long lo = 0L;
+        long hi = size;
+        while(lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            long lineStart = lineStartAtOrAfter(ch, mid, size);
+            if(lineStart >= size || !isBefore(ch, lineStart, since)) {
+                hi = mid;
+            }
+            else {
+                lo = mid + 1;
+            }
+        }
+        return lineStartAtOrAfter(ch, lo, size);
+    }
+
+    private long lineStartAtOrAfter(FileChannel ch, long pos, long size) throws IOException {
+        if(pos == 0) {
+            return 0L;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(PROBE_SIZE);
+        long p = pos - 1;
+        while(p < size) {
+            buf.clear();
+            int len = read(ch, buf, p, size);
+            byte[] bytes = buf.array();
+            for(int i = 0; i < len; i++) {
+                if(bytes[i] == LF) {
+                    return p + i + 1;
+                }
+            }
+            p += len;
+        }
+        return size;
+    }
+
+    private boolean isBefore(FileChannel ch, long lineStart, LocalDateTime since) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(PROBE_SIZE);
+        int len = read(ch, buf, lineStart, ch.size());
+        return isBefore(buf.array(), len, since);
+    }
+
+    // Whether the line at the start of bytes is before since, or has no event time
+    private static boolean isBefore(byte[] bytes, int len, LocalDateTime since) {
+        String head = new String(bytes, 0, len, StandardCharsets.UTF_8);
+        int nl = head.indexOf('\n');
+        LocalDateTime time = parseTime(timestampOf(nl < 0 ? head : head.substring(0, nl)));
+        return time == null || time.isBefore(since);
+    }
+
+    /**
+     * Scan complete lines from a stream positioned at pos, up to limit, handing
+     * each one to the handler. Returns the offset just past the last line visited.
+     */
+    private long scan(InputStream in, long pos, long limit, LineHandler handler) throws IOException {
+        byte[] buf = new byte[SCAN_BUFFER_SIZE];
+        int len = 0;
+        long bufStart = pos;
+        while(true) {
+            if(len == buf.length) {
+                // A single line longer than the buffer
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            int want = (int)Math.min(buf.length - len, limit - (bufStart + len));
+            int n = want > 0 ? in.read(buf, len, want) : -1;
+            if(n < 0) {
+                // Anything left is a partial line
+                return bufStart;
+            }
+
+            int scanFrom = len;
+            len += n;
+            int lineStart = 0;
+            for(int i = scanFrom; i < len; i++) {
+                if(buf[i] != LF) {
+                    continue;
+                }
+                int to = (i > lineStart && buf[i - 1] == CR) ? i - 1 : i;
+                String line = new String(buf, lineStart, to - lineStart, StandardCharsets.UTF_8);
+                lineStart = i + 1;
+                if(!handler.line(line, bufStart + lineStart)) {
+                    return bufStart + lineStart;
+                }
+            }
+            if(lineStart > 0) {
+                System.arraycopy(buf, lineStart, buf, 0, len - lineStart);
+                len -= lineStart;
+                bufStart += lineStart;
+            }
+        }
+    }
+
+    private static int read(FileChannel ch, ByteBuffer buf, long position, long limit) throws IOException {
+        buf.limit((int)Math.min(buf.capacity(), Math.max(0L, limit - position)));
+        long pos = position;
+        while(buf.hasRemaining()) {
+            int n = ch.read(buf, pos);
+            if(n < 0) {
+                break;
+            }
+            pos += n;
+        }
+        return buf.position();
+    }
+}
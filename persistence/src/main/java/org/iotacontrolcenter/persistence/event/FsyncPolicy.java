@@ -0,0 +1,26 @@
+package org.iotacontrolcenter.persistence.event;
+
+/**
+ * When the event log writer forces appended events to disk.
+ */
+public enum FsyncPolicy {
+    // Leave it to the OS to write back the page cache
+    NONE,
+    // Force after every group of events written together
+    BATCH,
+    // Force at most once per configured interval
+    INTERVAL;
+
+    public static FsyncPolicy fromString(String val, FsyncPolicy def) {
+        if(val == null || val.trim().isEmpty()) {
+            return def;
+        }
+        try {
+            return FsyncPolicy.valueOf(val.trim().toUpperCase());
+        }
+        catch(IllegalArgumentException iae) {
+            System.out.println("Unrecognized fsync policy: " + val + ", using " + def);
+            return def;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package org.iotacontrolcenter.persistence.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * Reads a growing log file through windows read into one reused heap buffer,
+ * and keeps a sparse line offset index: the byte offset of every INDEX_INTERVAL-th line.
+ * Line and page queries seek to the nearest checkpoint and scan at most
+ * INDEX_INTERVAL lines, instead of scanning from the start of the file.
+ *
+ * The index is extended incrementally as the file grows. If the file is
+ * truncated, checkpoints past the new end are dropped and indexing resumes
+ * from the last one that survived. If the file is replaced (rotated), a new
+ * index is started for the new file.
+ *
+ * Only complete (newline terminated) lines are indexed and returned.
+ *
+ * The file is never memory mapped: Java 8 only releases a mapping when it
+ * is garbage collected, and until then, on Windows, IRI could not rotate or
+ * truncate its log.
+ */
+public class IndexedLogReader {
+
+    public static final int INDEX_INTERVAL = 1024;
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024;
+
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final int FINGERPRINT_LEN = 256;
+
+    private interface LineVisitor {
+        // Return false to stop scanning after this line
+        boolean line(ByteBuffer buf, int from, int to);
+    }
+
+    private final Path path;
+    private final int windowSize;
+
+    // checkpoints[k] is the byte offset of line k * INDEX_INTERVAL
+    private long[] checkpoints = new long[16];
+    private int numCheckpoints = 0;
+    private long indexedLines = 0;
+    private long indexedBytes = 0;
+
+    // Reused for every window, bigger only while reading a line longer than windowSize
+    private ByteBuffer window;
+
+    private Object fileKey;
+    private int fingerprint;
+    private int fingerprintLen;
+
+    public IndexedLogReader(String filePath) {
+        this(filePath, DEFAULT_WINDOW_SIZE);
+    }
+
+    public IndexedLogReader(String filePath, int windowSize) {
+        if(windowSize <= 0) {
+            throw new IllegalArgumentException("Invalid map window size: " + windowSize);
+        }
+        this.path = Paths.get(filePath);
+        this.windowSize = windowSize;
+        resetIndex();
+    }
+
+    /**
+     * Number of complete lines in the file as of the last refresh.
+     */
+    public synchronized long getLineCount() throws IOException {
+        try(FileChannel ch = open()) {
+            refresh(ch);
+            return indexedLines;
+        }
+    }
+
+    /**
+     * Read up to count lines starting at the zero based line number firstLine.
+     */
+    public synchronized LogChunk readLines(long firstLine, int count) throws IOException {
+        try(FileChannel ch = open()) {
+            refresh(ch);
+
+            LogChunk chunk = new LogChunk(indexedBytes, indexedBytes, ch.size());
+            if(firstLine < 0 || firstLine >= indexedLines || count <= 0) {
+                return chunk;
+            }
+
+            int k = (int)(firstLine / INDEX_INTERVAL);
+            long skip = firstLine - ((long)k * INDEX_INTERVAL);
+            long pos = skipLines(ch, checkpoints[k], skip);
+
+            return collectLines(ch, pos, indexedBytes, count, chunk);
+        }
+    }
+
+    /**
+     * Read page number page (zero based) where each page holds pageSize lines.
+     */
+    public LogChunk readPage(long page, int pageSize) throws IOException {
+        if(page < 0 || pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page " + page + " of size " + pageSize);
+        }
+        return readLines(page * pageSize, pageSize);
+    }
+
+    /**
+     * Read up to count complete lines starting at byte offset position, which should
+     * be the start of a line (i.e. a previously returned end position).
+     * Reading starts from the beginning of the file if position is past the end.
+     */
+    public synchronized LogChunk readFrom(long position, int count) throws IOException {
+        try(FileChannel ch = open()) {
+            long size = ch.size();
+            long pos = (position < 0 || position > size) ? 0L : position;
+
+            LogChunk chunk = new LogChunk(pos, pos, size);
+            if(count <= 0) {
+                return chunk;
+            }
+            return collectLines(ch, pos, size, count, chunk);
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    private void refresh(FileChannel ch) throws IOException {
+        long size = ch.size();
+
+        if(isReplaced(ch, size)) {
+            System.out.println("IndexedLogReader, " + path + " was replaced, starting new index");
+            resetIndex();
+        }
+        else if(size < indexedBytes) {
+            System.out.println("IndexedLogReader, " + path + " was truncated to " + size +
+                    " bytes, rewinding index from " + indexedBytes);
+            truncateIndex(size);
+        }
+
+        if(size > indexedBytes) {
+            extendIndex(ch, size);
+        }
+        updateIdentity(ch, size);
+    }
+
+    private boolean isReplaced(FileChannel ch, long size) throws IOException {
+        if(indexedBytes == 0) {
+            return false;
+        }
+
+        Object curKey = readFileKey();
+        if(fileKey != null && curKey != null && !fileKey.equals(curKey)) {
+            return true;
+        }
+
+        // Same file, but copy-truncate style rotation rewrites it from the start:
+        return size >= fingerprintLen && fingerprint(ch, fingerprintLen) != fingerprint;
+    }
+
+    private void updateIdentity(FileChannel ch, long size) throws IOException {
+        fileKey = readFileKey();
+        if(fingerprintLen < FINGERPRINT_LEN && size > fingerprintLen) {
+            fingerprintLen = (int)Math.min(FINGERPRINT_LEN, size);
+            fingerprint = fingerprint(ch, fingerprintLen);
+        }
+    }
+
+    private Object readFileKey() throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        }
+        catch(NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private int fingerprint(FileChannel ch, int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+        ByteBuffer buf = read(ch, 0, len);
+        int h = 1;
+        for(int i = 0; i < buf.limit(); i++) {
+            h = 31 * h + buf.get(i);
+        }
+        return h;
+    }
+
+    private void resetIndex() {
+        numCheckpoints = 0;
+        addCheckpoint(0L);
+        indexedLines = 0;
+        indexedBytes = 0;
+        fileKey = null;
+        fingerprint = 0;
+        fingerprintLen = 0;
+    }
+
+    private void truncateIndex(long size) {
+        while(numCheckpoints > 1 && checkpoints[numCheckpoints - 1] > size) {
+            numCheckpoints--;
+        }
+        indexedLines = (long)(numCheckpoints - 1) * INDEX_INTERVAL;
+        indexedBytes = checkpoints[numCheckpoints - 1];
+        if(fingerprintLen > size) {
+            fingerprintLen = 0;
+            fingerprint = 0;
+        }
+    }
+
+    private void extendIndex(FileChannel ch, long size) throws IOException {
+        indexedBytes = scan(ch, indexedBytes, size, (buf, from, to) -> {
+            indexedLines++;
+            return true;
+        }, true);
+    }
+
+    private void addCheckpoint(long offset) {
+        if(numCheckpoints == checkpoints.length) {
+            checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+        }
+        checkpoints[numCheckpoints++] = offset;
+    }
+
+    private long skipLines(FileChannel ch, long pos, long numLines) throws IOException {
+        if(numLines == 0) {
+            return pos;
+        }
+        long[] remaining = { numLines };
+        return scan(ch, pos, indexedBytes, (buf, from, to) -> --remaining[0] > 0, false);
+    }
+
+    private LogChunk collectLines(FileChannel ch, long pos, long limit, int count, LogChunk chunk) throws IOException {
+        int[] remaining = { count };
+        chunk.setStartPosition(pos);
+        long end = scan(ch, pos, limit, (buf, from, to) -> {
+            chunk.addLine(decode(buf, from, to));
+            return --remaining[0] > 0;
+        }, false);
+        chunk.setEndPosition(end);
+        return chunk;
+    }
+
+    /**
+     * Scan complete lines from pos up to limit window by window, handing each
+     * one to the visitor. When indexing, a checkpoint is recorded each time the line
+     * count reaches a multiple of INDEX_INTERVAL.
+     * Returns the offset just past the last line visited.
+     */
+    private long scan(FileChannel ch, long pos, long limit, LineVisitor visitor, boolean indexing) throws IOException {
+        long windowStart = pos;
+        long readLen = windowSize;
+
+        while(windowStart < limit) {
+            ByteBuffer buf = read(ch, windowStart, (int)Math.min(readLen, limit - windowStart));
+            int len = buf.limit();
+            if(len == 0) {
+                // The file shrank under us
+                break;
+            }
+
+            int lineStart = 0;
+            for(int i = 0; i < len; i++) {
+                if(buf.get(i) != LF) {
+                    continue;
+                }
+                boolean more = visitor.line(buf, lineStart, i);
+                lineStart = i + 1;
+
+                if(indexing && indexedLines % INDEX_INTERVAL == 0) {
+                    addCheckpoint(windowStart + lineStart);
+                }
+                if(!more) {
+                    return windowStart + lineStart;
+                }
+            }
+
+            if(lineStart == 0) {
+                if(windowStart + len >= limit) {
+                    // Only a partial line is left
+                    break;
+                }
+                // A single line longer than the window, read a bigger one
+                readLen = Math.min(Integer.MAX_VALUE, readLen * 2);
+                continue;
+            }
+            windowStart += lineStart;
+            readLen = windowSize;
+        }
+        return windowStart;
+    }
+
+    // Up to len bytes from pos into the reused buffer, fewer if the file ends first
+    private ByteBuffer read(FileChannel ch, long pos, int len) throws IOException {
+        if(window == null || window.capacity() < len ||
+                (len <= windowSize && window.capacity() > windowSize)) {
+            // Grown for a long line only until the next normal read
+            window = ByteBuffer.allocate(Math.max(len, windowSize));
+        }
+        window.clear();
+        window.limit(len);
+        while(window.hasRemaining()) {
+            if(ch.read(window, pos + window.position()) < 0) {
+                break;
+            }
+        }
+        window.flip();
+        return window;
+    }
+
+    private static String decode(ByteBuffer buf, int from, int to) {
+        if(to > from && buf.get(to - 1) == CR) {
+            to--;
+        }
+        byte[] bytes = new byte[to - from];
+        ByteBuffer dup = buf.duplicate();
+        dup.position(from);
+        dup.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
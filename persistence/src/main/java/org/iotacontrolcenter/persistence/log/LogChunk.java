@@ -0,0 +1,67 @@
+package org.iotacontrolcenter.persistence.log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A run of complete lines read from a log file, along with the byte range
+ * they were read from and the file size seen when reading.
+ */
+public class LogChunk {
+
+    private List<String> lines = new ArrayList<>();
+    private long startPosition;
+    private long endPosition;
+    private long fileSize;
+
+    public LogChunk() {
+    }
+
+    public LogChunk(long startPosition, long endPosition, long fileSize) {
+        this.startPosition = startPosition;
+        this.endPosition = endPosition;
+        this.fileSize = fileSize;
+    }
+
+    public void addLine(String line) {
+        lines.add(line);
+    }
+
+    public List<String> getLines() {
+        return lines;
+    }
+
+    public long getStartPosition() {
+        return startPosition;
+    }
+
+    public void setStartPosition(long startPosition) {
+        this.startPosition = startPosition;
+    }
+
+    public long getEndPosition() {
+        return endPosition;
+    }
+
+    public void setEndPosition(long endPosition) {
+        this.endPosition = endPosition;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    @Override
+    public String toString() {
+        return "LogChunk{" +
+                "lines=" + lines.size() +
+                ", startPosition=" + startPosition +
+                ", endPosition=" + endPosition +
+                ", fileSize=" + fileSize +
+                '}';
+    }
+}
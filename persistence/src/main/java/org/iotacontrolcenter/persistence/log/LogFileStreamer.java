@@ -0,0 +1,47 @@
+package org.iotacontrolcenter.persistence.log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Copies a byte range of a file to an output stream in fixed size chunks,
+ * letting the channel transfer the bytes without staging the file on the heap.
+ */
+public class LogFileStreamer {
+
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    public static long size(Path path) throws IOException {
+        return Files.exists(path) ? Files.size(path) : 0L;
+    }
+
+    /**
+     * Copy up to length bytes starting at start. Returns the number of bytes copied,
+     * which is less than length if the file is shorter than expected.
+     */
+    public static long copyRange(Path path, long start, long length, OutputStream out) throws IOException {
+        if(length <= 0 || !Files.exists(path)) {
+            return 0L;
+        }
+
+        WritableByteChannel target = Channels.newChannel(out);
+        long copied = 0L;
+        try(FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            while(copied < length) {
+                long n = ch.transferTo(start + copied, Math.min(CHUNK_SIZE, length - copied), target);
+                if(n <= 0) {
+                    break;
+                }
+                copied += n;
+            }
+        }
+        out.flush();
+        return copied;
+    }
+}
@@ -0,0 +1,139 @@
+package org.iotacontrolcenter.persistence.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the last N lines of a log file by scanning backwards from the end
+ * in fixed size blocks, counting newlines until enough lines have been seen.
+ * Only the blocks covering the returned lines are read, so the cost does
+ * not depend on the size of the file.
+ */
+public class LogTailReader {
+
+    public static final int DEFAULT_BLOCK_SIZE = 8192;
+
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    private final int blockSize;
+    private final Path path;
+
+    public LogTailReader(String filePath) {
+        this(filePath, DEFAULT_BLOCK_SIZE);
+    }
+
+    public LogTailReader(String filePath, int blockSize) {
+        if(blockSize <= 0) {
+            throw new IllegalArgumentException("Invalid tail block size: " + blockSize);
+        }
+        this.path = Paths.get(filePath);
+        this.blockSize = blockSize;
+    }
+
+    public LogChunk tail(long numLines) throws IOException {
+        try(FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = ch.size();
+            LogChunk chunk = new LogChunk(fileSize, fileSize, fileSize);
+            if(numLines <= 0 || fileSize == 0) {
+                return chunk;
+            }
+
+            long startPos = findTailStart(ch, fileSize, numLines);
+            if(fileSize - startPos > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Tail of " + numLines + " lines exceeds maximum read size");
+            }
+            int len = (int)(fileSize - startPos);
+            ByteBuffer buf = ByteBuffer.allocate(len);
+            readFully(ch, buf, startPos);
+
+            chunk.setStartPosition(startPos);
+            appendLines(buf.array(), 0, len, chunk);
+            return chunk;
+        }
+    }
+
+    /**
+     * Walk backwards a block at a time, returning the offset of the first
+     * byte of the numLines-th line counted from the end of the file.
+     * A newline as the very last byte terminates the last line rather than
+     * starting an empty one.
+     */
+    private long findTailStart(FileChannel ch, long fileSize, long numLines) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(blockSize);
+        long blockEnd = fileSize;
+        long newlines = 0;
+        boolean skipTrailing = true;
+
+        while(blockEnd > 0) {
+            long blockStart = Math.max(0L, blockEnd - blockSize);
+            int len = (int)(blockEnd - blockStart);
+
+            block.clear();
+            block.limit(len);
+            readFully(ch, block, blockStart);
+
+            byte[] bytes = block.array();
+            for(int i = len - 1; i >= 0; i--) {
+                if(bytes[i] != LF) {
+                    skipTrailing = false;
+                    continue;
+                }
+                if(skipTrailing) {
+                    skipTrailing = false;
+                    continue;
+                }
+                if(++newlines == numLines) {
+                    return blockStart + i + 1;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return 0L;
+    }
+
+    static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while(buf.hasRemaining()) {
+            int n = ch.read(buf, pos);
+            if(n < 0) {
+                break;
+            }
+            pos += n;
+        }
+    }
+
+    /**
+     * Split bytes[off, off+len) into lines, stripping LF and CRLF terminators.
+     * A final line without a terminator is included.
+     */
+    static int appendLines(byte[] bytes, int off, int len, LogChunk chunk) {
+        int end = off + len;
+        int lineStart = off;
+        int count = 0;
+        for(int i = off; i < end; i++) {
+            if(bytes[i] == LF) {
+                chunk.addLine(decode(bytes, lineStart, i));
+                count++;
+                lineStart = i + 1;
+            }
+        }
+        if(lineStart < end) {
+            chunk.addLine(decode(bytes, lineStart, end));
+            count++;
+        }
+        return count;
+    }
+
+    private static String decode(byte[] bytes, int from, int to) {
+        if(to > from && bytes[to - 1] == CR) {
+            to--;
+        }
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+}
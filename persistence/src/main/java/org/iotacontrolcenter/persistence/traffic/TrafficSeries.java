@@ -0,0 +1,257 @@
+package org.iotacontrolcenter.persistence.traffic;
+
+import org.iotacontrolcenter.dto.NeighborTrafficDto;
+import org.iotacontrolcenter.dto.TrafficSampleDto;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One neighbor's transaction counts as time series, in primitive ring
+ * buffers indexed by time.
+ *
+ * IRI reports cumulative counters; each sample stores the increase since
+ * the previous one, spread evenly over the minutes between the two, so a
+ * slot holds the transactions of its minute. After more than
+ * MAX_SPREAD_MINUTES without a sample (ICCR or IRI was down) the increase
+ * can not be placed in time and only becomes the new baseline. Minute
+ * slots cover the last MINUTE_SLOTS minutes, and every sample is also
+ * added to its hour slot, which cover HOUR_SLOTS hours. Each slot keeps the
+ * minute or hour it holds, a slot left over from a previous lap of the
+ * ring is empty.
+ *
+ * Not thread safe, the TrafficStore locks each series.
+ */
+public class TrafficSeries {
+
+    public static final int MINUTE_SLOTS = (int)TimeUnit.DAYS.toMinutes(1);
+    public static final int HOUR_SLOTS = (int)TimeUnit.DAYS.toHours(30);
+    public static final int MAX_SPREAD_MINUTES = 60;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final long NONE = -1;
+
+    // Epoch minute of each minute slot
+    private final long[] minuteAt = new long[MINUTE_SLOTS];
+    private final int[] minuteAll = new int[MINUTE_SLOTS];
+    private final int[] minuteNew = new int[MINUTE_SLOTS];
+    private final int[] minuteInvalid = new int[MINUTE_SLOTS];
+
+    // Epoch hour of each hour slot
+    private final long[] hourAt = new long[HOUR_SLOTS];
+    private final long[] hourAll = new long[HOUR_SLOTS];
+    private final long[] hourNew = new long[HOUR_SLOTS];
+    private final long[] hourInvalid = new long[HOUR_SLOTS];
+
+    private long firstMinute = NONE;
+    private long lastMinute = NONE;
+
+    // The counters IRI reported last, and when, the next sample's increase is against these
+    private long baselineMinute = NONE;
+    private long lastAll = NONE;
+    private long lastNew = NONE;
+    private long lastInvalid = NONE;
+
+    public TrafficSeries() {
+        Arrays.fill(minuteAt, NONE);
+        Arrays.fill(hourAt, NONE);
+    }
+
+    /**
+     * Record the cumulative counters IRI reported at epochMs. The first
+     * sample only sets the baseline. A counter lower than the previous one
+     * was reset (IRI restarted, neighbor reconnected) and counts from 0.
+     */
+    public void record(long epochMs, long all, long newTx, long invalid) {
+        long minute = TimeUnit.MILLISECONDS.toMinutes(epochMs);
+        if(lastAll == NONE || minute < baselineMinute || minute - baselineMinute > MAX_SPREAD_MINUTES) {
+            // First sample, clock went back, or too long since the last one: only move the baseline
+            setBaseline(minute, all, newTx, invalid);
+            return;
+        }
+
+        long dAll = delta(all, lastAll);
+        long dNew = delta(newTx, lastNew);
+        long dInvalid = delta(invalid, lastInvalid);
+        long from = Math.min(baselineMinute + 1, minute);
+        setBaseline(minute, all, newTx, invalid);
+
+        int minutes = (int)(minute - from + 1);
+        for(int i = 0; i < minutes; i++) {
+            add(from + i, share(dAll, minutes, i), share(dNew, minutes, i), share(dInvalid, minutes, i));
+        }
+    }
+
+    private void add(long minute, long dAll, long dNew, long dInvalid) {
+        int m = (int)(minute % MINUTE_SLOTS);
+        if(minuteAt[m] != minute) {
+            minuteAt[m] = minute;
+            minuteAll[m] = 0;
+            minuteNew[m] = 0;
+            minuteInvalid[m] = 0;
+        }
+        minuteAll[m] = saturatedAdd(minuteAll[m], dAll);
+        minuteNew[m] = saturatedAdd(minuteNew[m], dNew);
+        minuteInvalid[m] = saturatedAdd(minuteInvalid[m], dInvalid);
+
+        long hour = minute / 60;
+        int h = (int)(hour % HOUR_SLOTS);
+        if(hourAt[h] != hour) {
+            hourAt[h] = hour;
+            hourAll[h] = 0;
+            hourNew[h] = 0;
+            hourInvalid[h] = 0;
+        }
+        hourAll[h] += dAll;
+        hourNew[h] += dNew;
+        hourInvalid[h] += dInvalid;
+
+        if(firstMinute == NONE) {
+            firstMinute = minute;
+        }
+        lastMinute = minute;
+    }
+
+    /**
+     * The transactions between sinceMs and untilMs, per minute if the whole
+     * window is still in the minute slots, otherwise per hour (the hours
+     * at either end of the window are counted whole).
+     */
+    public NeighborTrafficDto query(String key, long sinceMs, long untilMs, long nowMs) {
+        long fromMinute = TimeUnit.MILLISECONDS.toMinutes(sinceMs);
+        long toMinute = TimeUnit.MILLISECONDS.toMinutes(untilMs);
+        long nowMinute = TimeUnit.MILLISECONDS.toMinutes(nowMs);
+        boolean byMinute = fromMinute > nowMinute - MINUTE_SLOTS;
+
+        NeighborTrafficDto dto = new NeighborTrafficDto(key, sinceMs, untilMs,
+                byMinute ? NeighborTrafficDto.MINUTE : NeighborTrafficDto.HOUR);
+
+        if(byMinute) {
+            for(long minute = Math.max(fromMinute, firstMinute); minute <= toMinute && minute <= lastMinute; minute++) {
+                int m = (int)(minute % MINUTE_SLOTS);
+                if(minuteAt[m] == minute) {
+                    dto.addSample(new TrafficSampleDto(TimeUnit.MINUTES.toMillis(minute),
+                            minuteAll[m], minuteNew[m], minuteInvalid[m]));
+                }
+            }
+        }
+        else {
+            long fromHour = Math.max(fromMinute, nowMinute - TimeUnit.HOURS.toMinutes(HOUR_SLOTS - 1)) / 60;
+            long toHour = toMinute / 60;
+            for(long hour = Math.max(fromHour, firstMinute / 60); hour <= toHour && hour <= lastMinute / 60; hour++) {
+                int h = (int)(hour % HOUR_SLOTS);
+                if(hourAt[h] == hour) {
+                    dto.addSample(new TrafficSampleDto(TimeUnit.HOURS.toMillis(hour),
+                            hourAll[h], hourNew[h], hourInvalid[h]));
+                }
+            }
+        }
+
+        // Rates over the part of the window there is history for
+        long start = Math.max(fromMinute, firstMinute == NONE ? toMinute : firstMinute);
+        long end = Math.min(toMinute, nowMinute);
+        dto.setRates(Math.max(0, end - start + 1));
+        return dto;
+    }
+
+    /**
+     * Write the filled slots only, an idle neighbor takes a few bytes.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(firstMinute);
+        out.writeLong(lastMinute);
+        out.writeLong(baselineMinute);
+        out.writeLong(lastAll);
+        out.writeLong(lastNew);
+        out.writeLong(lastInvalid);
+
+        out.writeInt(countFilled(minuteAt));
+        for(int i = 0; i < MINUTE_SLOTS; i++) {
+            if(minuteAt[i] != NONE) {
+                out.writeLong(minuteAt[i]);
+                out.writeInt(minuteAll[i]);
+                out.writeInt(minuteNew[i]);
+                out.writeInt(minuteInvalid[i]);
+            }
+        }
+
+        out.writeInt(countFilled(hourAt));
+        for(int i = 0; i < HOUR_SLOTS; i++) {
+            if(hourAt[i] != NONE) {
+                out.writeLong(hourAt[i]);
+                out.writeLong(hourAll[i]);
+                out.writeLong(hourNew[i]);
+                out.writeLong(hourInvalid[i]);
+            }
+        }
+    }
+
+    public static TrafficSeries read(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if(version != FORMAT_VERSION) {
+            throw new IOException("unsupported traffic format version: " + version);
+        }
+        TrafficSeries s = new TrafficSeries();
+        s.firstMinute = in.readLong();
+        s.lastMinute = in.readLong();
+        s.baselineMinute = in.readLong();
+        s.lastAll = in.readLong();
+        s.lastNew = in.readLong();
+        s.lastInvalid = in.readLong();
+
+        int minutes = in.readInt();
+        for(int n = 0; n < minutes; n++) {
+            long minute = in.readLong();
+            int m = (int)(minute % MINUTE_SLOTS);
+            s.minuteAt[m] = minute;
+            s.minuteAll[m] = in.readInt();
+            s.minuteNew[m] = in.readInt();
+            s.minuteInvalid[m] = in.readInt();
+        }
+
+        int hours = in.readInt();
+        for(int n = 0; n < hours; n++) {
+            long hour = in.readLong();
+            int h = (int)(hour % HOUR_SLOTS);
+            s.hourAt[h] = hour;
+            s.hourAll[h] = in.readLong();
+            s.hourNew[h] = in.readLong();
+            s.hourInvalid[h] = in.readLong();
+        }
+        return s;
+    }
+
+    private void setBaseline(long minute, long all, long newTx, long invalid) {
+        baselineMinute = minute;
+        lastAll = all;
+        lastNew = newTx;
+        lastInvalid = invalid;
+    }
+
+    // The i-th of n even parts of total, the first ones take the remainder
+    private static long share(long total, int n, int i) {
+        return total / n + (i < total % n ? 1 : 0);
+    }
+
+    private static long delta(long value, long last) {
+        return value >= last ? value - last : value;
+    }
+
+    private static int saturatedAdd(int slot, long delta) {
+        return (int)Math.min(Integer.MAX_VALUE, slot + delta);
+    }
+
+    private static int countFilled(long[] at) {
+        int n = 0;
+        for(long t : at) {
+            if(t != NONE) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,187 @@
+package org.iotacontrolcenter.persistence.traffic;
+
+import org.iotacontrolcenter.dto.NeighborTrafficDto;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per neighbor transaction time series, kept in memory and saved to one
+ * binary file per neighbor next to the activity store.
+ *
+ * All series are loaded when the store is created, queries never touch
+ * the disk. Samples only change memory; changed series are written by
+ * flush, which the owner runs every FLUSH_INTERVAL_MS off the recording
+ * threads and on shutdown, a crash loses at most that much history. A save
+ * writes a temp file and renames it into place.
+ */
+public class TrafficStore {
+
+    public static final String FILE_SUFFIX = ".traffic";
+    public static final long FLUSH_INTERVAL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final Path dir;
+    private final Map<String, TrafficSeries> series = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    public TrafficStore(String dirPath) {
+        this.dir = Paths.get(dirPath);
+        try {
+            Files.createDirectories(dir);
+        }
+        catch(IOException ioe) {
+            System.out.println("TrafficStore, exception creating " + dir + ": " + ioe.getLocalizedMessage());
+        }
+        loadAll();
+    }
+
+    /**
+     * Record a neighbor's cumulative transaction counters as IRI reports them.
+     */
+    public void record(String nbrKey, long epochMs, long all, long newTx, long invalid) {
+        TrafficSeries s = series.computeIfAbsent(nbrKey, k -> new TrafficSeries());
+        synchronized(s) {
+            s.record(epochMs, all, newTx, invalid);
+        }
+        dirty.add(nbrKey);
+    }
+
+    /**
+     * A neighbor's transactions between sinceMs and untilMs, null if it has
+     * no history.
+     */
+    public NeighborTrafficDto query(String nbrKey, long sinceMs, long untilMs) {
+        TrafficSeries s = series.get(nbrKey);
+        if(s == null) {
+            return null;
+        }
+        synchronized(s) {
+            return s.query(nbrKey, sinceMs, untilMs, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Keys of the neighbors with history.
+     */
+    public List<String> keys() {
+        return new ArrayList<>(new TreeSet<>(series.keySet()));
+    }
+
+    /**
+     * Save the series changed since the last flush.
+     */
+    public synchronized void flush() {
+        for(String nbrKey : new ArrayList<>(dirty)) {
+            dirty.remove(nbrKey);
+            TrafficSeries s = series.get(nbrKey);
+            if(s == null) {
+                continue;
+            }
+            try {
+                save(nbrKey, s);
+            }
+            catch(IOException ioe) {
+                System.out.println("TrafficStore, exception saving traffic of " + nbrKey + ": " + ioe.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Delete the history of every neighbor not in nbrKeys.
+     */
+    public synchronized void retain(Collection<String> nbrKeys) {
+        Set<String> keep = new HashSet<>();
+        for(String k : nbrKeys) {
+            keep.add(fileNameOf(k));
+        }
+        series.keySet().removeIf(k -> !keep.contains(fileNameOf(k)));
+        dirty.removeIf(k -> !keep.contains(fileNameOf(k)));
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + FILE_SUFFIX)) {
+            for(Path p : files) {
+                if(!keep.contains(p.getFileName().toString())) {
+                    System.out.println("TrafficStore, removing traffic " + p.getFileName());
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+        catch(IOException ioe) {
+            System.out.println("TrafficStore, exception removing traffic: " + ioe.getLocalizedMessage());
+        }
+    }
+
+    private void save(String nbrKey, TrafficSeries s) throws IOException {
+        Path target = pathOf(nbrKey);
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+
+        try(FileOutputStream fos = new FileOutputStream(tmp.toFile());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeUTF(nbrKey);
+            synchronized(s) {
+                s.write(out);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void loadAll() {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + FILE_SUFFIX)) {
+            for(Path p : files) {
+                try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+                    // The key is kept in the file, no need to decode the name
+                    String nbrKey = in.readUTF();
+                    series.put(nbrKey, TrafficSeries.read(in));
+                }
+                catch(Exception e) {
+                    System.out.println("TrafficStore, exception reading traffic " + p.getFileName() + ", skipped: " +
+                            e.getLocalizedMessage());
+                }
+            }
+        }
+        catch(IOException ioe) {
+            System.out.println("TrafficStore, exception listing " + dir + ": " + ioe.getLocalizedMessage());
+        }
+        System.out.println("TrafficStore, loaded traffic of " + series.size() + " neighbors");
+    }
+
+    private Path pathOf(String nbrKey) {
+        return dir.resolve(fileNameOf(nbrKey));
+    }
+
+    // Neighbor keys come from the client, hex encode them so any key is a safe
+    // file name and no two keys share one, also on case insensitive file systems
+    static String fileNameOf(String nbrKey) {
+        StringBuilder sb = new StringBuilder();
+        for(byte b : nbrKey.getBytes(StandardCharsets.UTF_8)) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.append(FILE_SUFFIX).toString();
+    }
+}
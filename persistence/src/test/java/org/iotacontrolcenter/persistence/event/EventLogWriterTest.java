@@ -0,0 +1,126 @@
+package org.iotacontrolcenter.persistence.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventLogWriterTest {
+
+    Path dir;
+    EventStore store;
+    EventLogWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("events");
+        store = new EventStore(dir.toString(), null);
+        writer = new EventLogWriter(store, 16, FsyncPolicy.BATCH, EventLogWriter.DEFAULT_FSYNC_INTERVAL_MS);
+        writer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        writer.close();
+        store.close();
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void testFlushWritesEverythingAppended() throws Exception {
+        // More than the queue holds, appenders wait for room
+        List<String> lines = lines("2017-12-01T10:00", 100);
+        for(String line : lines) {
+            writer.append(line + "\n");
+        }
+
+        assertTrue(writer.flush());
+        assertEquals(lines, store.readAll());
+    }
+
+    @Test
+    public void testEventsGoToTheSegmentOfTheirDay() throws Exception {
+        List<String> lines = new ArrayList<>(lines("2017-12-01T23:59", 3));
+        lines.addAll(lines("2017-12-02T00:00", 3));
+        for(String line : lines) {
+            writer.append(line + "\n");
+        }
+
+        assertTrue(writer.flush());
+        assertEquals(lines, store.readAll());
+        assertTrue(Files.exists(dir.resolve(EventStore.SEGMENT_PREFIX + "20171202" + EventStore.SEGMENT_SUFFIX)));
+    }
+
+    @Test
+    public void testCloseWritesWhatIsQueued() throws Exception {
+        List<String> lines = lines("2017-12-01T10:00", 10);
+        for(String line : lines) {
+            writer.append(line + "\n");
+        }
+        writer.close();
+
+        assertEquals(lines, store.readAll());
+        // Closed, later events are dropped rather than queued for nobody
+        writer.append("2017-12-01T11:00:00,late,\n");
+        assertEquals(lines, store.readAll());
+    }
+
+    @Test
+    public void testLinesAreKeptWhileWritesFail() throws Exception {
+        // A directory where the segment file should be: every open fails
+        Path segment = dir.resolve(EventStore.SEGMENT_PREFIX + "20171201" + EventStore.SEGMENT_SUFFIX);
+        Files.createDirectory(segment);
+
+        List<String> lines = lines("2017-12-01T10:00", 5);
+        for(String line : lines.subList(0, 3)) {
+            writer.append(line + "\n");
+        }
+        assertFalse(writer.flush());
+        assertTrue(writer.isFailing());
+        // Appended while failing, written after the ones already taken
+        for(String line : lines.subList(3, 5)) {
+            writer.append(line + "\n");
+        }
+        assertFalse(writer.flush());
+
+        Files.delete(segment);
+        long deadline = System.currentTimeMillis() + 10000;
+        while(writer.isFailing() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(writer.isFailing());
+        assertTrue(writer.flush());
+        assertEquals(lines, store.readAll());
+    }
+
+    @Test
+    public void testDeleteRemovesAllSegments() throws Exception {
+        for(String line : lines("2017-12-01T10:00", 3)) {
+            writer.append(line + "\n");
+        }
+        writer.delete();
+        assertTrue(store.readAll().isEmpty());
+
+        // Written to a new segment after the delete
+        writer.append("2017-12-01T11:00:00,start,\n");
+        assertTrue(writer.flush());
+        assertEquals(1, store.readAll().size());
+    }
+
+    static List<String> lines(String minute, int n) {
+        List<String> lines = new ArrayList<>();
+        for(int i = 0; i < n; i++) {
+            lines.add(String.format("%s:%02d,event%d,data %d", minute, i % 60, i % 3, i));
+        }
+        return lines;
+    }
+}
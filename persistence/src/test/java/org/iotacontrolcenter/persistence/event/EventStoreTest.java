@@ -0,0 +1,285 @@
+package org.iotacontrolcenter.persistence.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventStoreTest {
+
+    // A few events per segment
+    static final long SMALL_SEGMENT = 200;
+
+    Path dir;
+    EventStore store;
+    EventLogWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("events");
+        open(new EventStore(dir.toString(), null));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        close();
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void testQueryByTime() throws Exception {
+        List<String> lines = days(3, 10);
+        write(lines);
+
+        EventPage page = store.query(new EventQuery()
+                .setSince(LocalDateTime.parse("2017-12-02T00:05:00"))
+                .setUntil(LocalDateTime.parse("2017-12-03T00:02:00")));
+
+        assertEquals(lines.subList(15, 23), page.getEvents());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void testQueryByType() throws Exception {
+        List<String> lines = days(2, 9);
+        write(lines);
+
+        List<String> expected = new ArrayList<>();
+        for(String line : lines) {
+            if(EventStore.typeOf(line).equals("event1")) {
+                expected.add(line);
+            }
+        }
+        assertEquals(expected, store.query(new EventQuery().setType("EVENT1")).getEvents());
+    }
+
+    @Test
+    public void testCursorRoundTrip() throws Exception {
+        List<String> lines = days(3, 10);
+        write(lines);
+
+        assertEquals(lines, queryAll(new EventQuery().setLimit(7)));
+        assertEquals(lines.subList(12, 30),
+                queryAll(new EventQuery().setSince(LocalDateTime.parse("2017-12-02T00:02:00")).setLimit(4)));
+    }
+
+    @Test
+    public void testInvalidCursor() throws Exception {
+        write(days(1, 3));
+        for(String cursor : new String[] { "20171201", "20171201:x", "a:b:c" }) {
+            try {
+                store.query(new EventQuery().setCursor(cursor));
+                fail("expected cursor " + cursor + " to be refused");
+            }
+            catch(IllegalArgumentException e) {
+                // Refused
+            }
+        }
+    }
+
+    @Test
+    public void testReloadedStoreServesTheSameEvents() throws Exception {
+        List<String> lines = days(3, 10);
+        write(lines);
+        close();
+
+        open(new EventStore(dir.toString(), null));
+        assertEquals(lines, store.readAll());
+        assertEquals(lines.subList(10, 20), store.query(new EventQuery()
+                .setSince(LocalDateTime.parse("2017-12-02T00:00:00"))
+                .setUntil(LocalDateTime.parse("2017-12-02T23:59:59"))).getEvents());
+    }
+
+    @Test
+    public void testLegacyFileComesFirst() throws Exception {
+        close();
+        Path legacy = dir.resolve("iota-event.csv");
+        Files.write(legacy, "2017-11-30T10:00:00,old,\n".getBytes(StandardCharsets.UTF_8));
+        open(new EventStore(dir.resolve("segments").toString(), legacy.toString()));
+
+        List<String> lines = days(1, 3);
+        write(lines);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("2017-11-30T10:00:00,old,");
+        expected.addAll(lines);
+        assertEquals(expected, store.readAll());
+    }
+
+    @Test
+    public void testCopyRangeAcrossSegments() throws Exception {
+        List<String> lines = days(2, 2);
+        write(lines);
+        String all = String.join("\n", lines) + "\n";
+        assertEquals(all.length(), store.size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long start = lines.get(0).length() + 3;
+        store.copyRange(start, 2 * lines.get(0).length(), out);
+        assertEquals(all.substring((int)start, (int)start + 2 * lines.get(0).length()),
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCursorAcrossRotation() throws Exception {
+        reopen(SMALL_SEGMENT, 0);
+        List<String> lines = days(1, 30);
+        writeEach(lines.subList(0, 10));
+
+        EventPage first = store.query(new EventQuery().setLimit(4));
+        assertEquals(lines.subList(0, 4), first.getEvents());
+
+        // Rotated a few more times before the next page is asked for
+        writeEach(lines.subList(10, 30));
+        assertTrue(segmentFiles(EventStore.SEGMENT_SUFFIX) + segmentFiles(EventStore.ARCHIVE_SUFFIX) > 3);
+        assertEquals(lines.subList(4, 30), queryAll(new EventQuery().setCursor(first.getNextCursor()).setLimit(3)));
+    }
+
+    @Test
+    public void testQueryIntoArchivedSegments() throws Exception {
+        reopen(SMALL_SEGMENT, 0);
+        List<String> lines = days(2, 30);
+        writeEach(lines);
+        awaitArchived();
+
+        assertEquals(lines, store.readAll());
+        assertEquals(lines.subList(12, 17), store.query(new EventQuery()
+                .setSince(LocalDateTime.parse("2017-12-01T00:12:00"))
+                .setUntil(LocalDateTime.parse("2017-12-01T00:16:00"))).getEvents());
+        assertEquals(lines.subList(25, 60), queryAll(new EventQuery()
+                .setSince(LocalDateTime.parse("2017-12-01T00:25:00")).setLimit(6)));
+
+        // Served from the archive indexes after a restart
+        reopen(SMALL_SEGMENT, 0);
+        assertEquals(lines, store.readAll());
+        assertEquals(lines.subList(42, 44), store.query(new EventQuery()
+                .setSince(LocalDateTime.parse("2017-12-02T00:12:00"))
+                .setUntil(LocalDateTime.parse("2017-12-02T00:13:00"))).getEvents());
+    }
+
+    @Test
+    public void testRetentionDeletesOldArchives() throws Exception {
+        reopen(SMALL_SEGMENT, 1);
+        writeEach(days(2, 30));
+
+        // A current event closes the old segments, archived and then too old to keep
+        String recent = LocalDateTime.now().withNano(0) + ",start,";
+        write(Collections.singletonList(recent));
+
+        List<String> expected = Collections.singletonList(recent);
+        long deadline = System.currentTimeMillis() + 10000;
+        while((!expected.equals(store.readAll()) || segmentFiles(EventStore.ARCHIVE_SUFFIX) > 0) &&
+                System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, store.readAll());
+        assertEquals(0, segmentFiles(EventStore.ARCHIVE_SUFFIX));
+        assertEquals(0, segmentFiles(EventStore.INDEX_SUFFIX));
+    }
+
+    @Test
+    public void testMoreThan999SegmentsInADay() throws Exception {
+        // Every event rotates
+        reopen(1, 0);
+        List<String> lines = new ArrayList<>();
+        for(int i = 0; i < 1005; i++) {
+            lines.add(String.format("2017-12-01T%02d:%02d:00,event,line %d", i / 60, i % 60, i));
+        }
+        writeEach(lines);
+
+        assertEquals(lines, store.readAll());
+        assertEquals(lines.subList(995, 1005), queryAll(new EventQuery()
+                .setSince(LocalDateTime.parse("2017-12-01T16:35:00")).setLimit(3)));
+        assertTrue(Files.exists(dir.resolve(EventStore.SEGMENT_PREFIX + "20171201-1004" + EventStore.SEGMENT_SUFFIX)) ||
+                Files.exists(dir.resolve(EventStore.SEGMENT_PREFIX + "20171201-1004" + EventStore.ARCHIVE_SUFFIX)));
+
+        reopen(1, 0);
+        assertEquals(lines, store.readAll());
+    }
+
+    void open(EventStore s) {
+        store = s;
+        writer = new EventLogWriter(store, EventLogWriter.DEFAULT_QUEUE_CAPACITY, FsyncPolicy.NONE,
+                EventLogWriter.DEFAULT_FSYNC_INTERVAL_MS);
+        writer.start();
+    }
+
+    void reopen(long maxSegmentSize, int retentionDays) {
+        close();
+        open(new EventStore(dir.toString(), null, maxSegmentSize, EventStore.DEFAULT_MAX_SEGMENT_AGE_MS,
+                retentionDays));
+    }
+
+    void close() {
+        writer.close();
+        store.close();
+    }
+
+    void write(List<String> lines) {
+        for(String line : lines) {
+            writer.append(line + "\n");
+        }
+        assertTrue(writer.flush());
+    }
+
+    // Wait until only the live segment is left uncompressed
+    void awaitArchived() throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while(segmentFiles(EventStore.SEGMENT_SUFFIX) > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, segmentFiles(EventStore.SEGMENT_SUFFIX));
+    }
+
+    int segmentFiles(String suffix) throws Exception {
+        try(Stream<Path> files = Files.list(dir)) {
+            return (int)files.filter(p -> p.getFileName().toString().startsWith(EventStore.SEGMENT_PREFIX) &&
+                    p.getFileName().toString().endsWith(suffix)).count();
+        }
+    }
+
+    // Segments rotate by the size written so far, one event per write rotates as often as possible
+    void writeEach(List<String> lines) {
+        for(String line : lines) {
+            write(Collections.singletonList(line));
+        }
+    }
+
+    List<String> queryAll(EventQuery query) throws Exception {
+        List<String> events = new ArrayList<>();
+        while(true) {
+            EventPage page = store.query(query);
+            events.addAll(page.getEvents());
+            if(page.getNextCursor() == null) {
+                return events;
+            }
+            query.setCursor(page.getNextCursor());
+        }
+    }
+
+    // perDay events a minute apart, from midnight of each day starting 2017-12-01
+    static List<String> days(int days, int perDay) {
+        List<String> lines = new ArrayList<>();
+        for(int d = 0; d < days; d++) {
+            for(int i = 0; i < perDay; i++) {
+                lines.add(String.format("2017-12-%02dT00:%02d:00,event%d,day %d line %d", d + 1, i, i % 3, d, i));
+            }
+        }
+        return lines;
+    }
+}
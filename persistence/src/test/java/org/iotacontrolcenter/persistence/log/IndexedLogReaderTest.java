@@ -0,0 +1,164 @@
+package org.iotacontrolcenter.persistence.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexedLogReaderTest {
+
+    // Small windows, so lines cross window boundaries
+    static final int WINDOW = 100;
+
+    Path file;
+    IndexedLogReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("iri", ".log");
+        reader = new IndexedLogReader(file.toString(), WINDOW);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testReadLinesPastCheckpoints() throws Exception {
+        List<String> lines = lines("a", 3 * IndexedLogReader.INDEX_INTERVAL + 10);
+        append(lines);
+
+        assertEquals(lines.size(), reader.getLineCount());
+        assertEquals(lines.subList(0, 5), reader.readLines(0, 5).getLines());
+        long first = 2 * IndexedLogReader.INDEX_INTERVAL - 2;
+        assertEquals(lines.subList((int)first, (int)first + 5), reader.readLines(first, 5).getLines());
+        assertEquals(lines.subList(lines.size() - 3, lines.size()), reader.readLines(lines.size() - 3, 10).getLines());
+        assertTrue(reader.readLines(lines.size(), 10).getLines().isEmpty());
+        assertEquals(lines.subList(20, 30), reader.readPage(2, 10).getLines());
+    }
+
+    @Test
+    public void testOnlyCompleteLinesAreRead() throws Exception {
+        write("one\ntwo\nthr");
+        assertEquals(2, reader.getLineCount());
+        assertEquals(Arrays.asList("one", "two"), reader.readLines(0, 10).getLines());
+
+        append(Collections.singletonList("ee"));
+        assertEquals(3, reader.getLineCount());
+        assertEquals(Collections.singletonList("three"), reader.readLines(2, 10).getLines());
+    }
+
+    @Test
+    public void testLineLongerThanTheWindow() throws Exception {
+        char[] longLine = new char[5 * WINDOW];
+        Arrays.fill(longLine, 'x');
+        List<String> lines = Arrays.asList("short", new String(longLine), "after");
+        append(lines);
+
+        assertEquals(3, reader.getLineCount());
+        assertEquals(lines, reader.readLines(0, 10).getLines());
+        assertEquals(Collections.singletonList("after"), reader.readLines(2, 1).getLines());
+    }
+
+    @Test
+    public void testReadFromPosition() throws Exception {
+        append(Arrays.asList("one", "two", "three"));
+
+        LogChunk first = reader.readFrom(0, 2);
+        assertEquals(Arrays.asList("one", "two"), first.getLines());
+        assertEquals(8, first.getEndPosition());
+
+        LogChunk next = reader.readFrom(first.getEndPosition(), 10);
+        assertEquals(Collections.singletonList("three"), next.getLines());
+
+        // Past the end, the file was rewritten: start over
+        assertEquals(Arrays.asList("one", "two", "three"), reader.readFrom(1000, 10).getLines());
+    }
+
+    @Test
+    public void testTruncationRewindsTheIndex() throws Exception {
+        List<String> lines = lines("a", 3 * IndexedLogReader.INDEX_INTERVAL);
+        append(lines);
+        assertEquals(lines.size(), reader.getLineCount());
+
+        // Cut back to part way through the second interval
+        int keep = IndexedLogReader.INDEX_INTERVAL + 100;
+        try(FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(offsetOf(lines, keep));
+        }
+        assertEquals(keep, reader.getLineCount());
+        assertEquals(lines.subList(keep - 3, keep), reader.readLines(keep - 3, 10).getLines());
+
+        List<String> more = lines("b", 10);
+        append(more);
+        assertEquals(keep + 10, reader.getLineCount());
+        assertEquals(more.subList(0, 3), reader.readLines(keep, 3).getLines());
+    }
+
+    @Test
+    public void testReplacedFileStartsANewIndex() throws Exception {
+        append(lines("a", 2 * IndexedLogReader.INDEX_INTERVAL));
+        assertEquals(2 * IndexedLogReader.INDEX_INTERVAL, reader.getLineCount());
+
+        // Rotated: a new file moved in under the same name
+        Path rotated = Files.createTempFile(file.getParent(), "iri", ".log");
+        List<String> fresh = lines("b", 50);
+        Files.write(rotated, (String.join("\n", fresh) + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(rotated, file, StandardCopyOption.REPLACE_EXISTING);
+
+        assertEquals(fresh.size(), reader.getLineCount());
+        assertEquals(fresh.subList(0, 3), reader.readLines(0, 3).getLines());
+    }
+
+    @Test
+    public void testRewrittenFileStartsANewIndex() throws Exception {
+        append(lines("a", 100));
+        assertEquals(100, reader.getLineCount());
+
+        // Copy-truncate rotation, then more written than before: same file, new content
+        List<String> fresh = lines("b", 300);
+        write(String.join("\n", fresh) + "\n");
+
+        assertEquals(fresh.size(), reader.getLineCount());
+        assertEquals(fresh.subList(98, 102), reader.readLines(98, 4).getLines());
+    }
+
+    private void write(String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void append(List<String> lines) throws Exception {
+        Files.write(file, (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+    }
+
+    static List<String> lines(String prefix, int n) {
+        List<String> lines = new ArrayList<>();
+        for(int i = 0; i < n; i++) {
+            lines.add("2017-12-01 10:00:00 INFO " + prefix + " line " + i);
+        }
+        return lines;
+    }
+
+    static long offsetOf(List<String> lines, int index) {
+        long offset = 0;
+        for(int i = 0; i < index; i++) {
+            offset += lines.get(i).getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        return offset;
+    }
+}
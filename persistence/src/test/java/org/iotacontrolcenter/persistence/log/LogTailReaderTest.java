@@ -0,0 +1,112 @@
+package org.iotacontrolcenter.persistence.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LogTailReaderTest {
+
+    Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("iri", ".log");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testTailAcrossBlocks() throws Exception {
+        List<String> lines = numbered(200);
+        write(String.join("\n", lines) + "\n");
+
+        // Blocks much smaller than the tail, and not aligned to lines
+        for(int blockSize : new int[] { 1, 7, 16, 100, LogTailReader.DEFAULT_BLOCK_SIZE }) {
+            LogChunk chunk = new LogTailReader(file.toString(), blockSize).tail(50);
+            assertEquals("block size " + blockSize, lines.subList(150, 200), chunk.getLines());
+            assertEquals(Files.size(file), chunk.getEndPosition());
+            assertEquals(Files.size(file), chunk.getFileSize());
+            assertEquals(offsetOf(lines, 150), chunk.getStartPosition());
+        }
+    }
+
+    @Test
+    public void testLastLineWithoutNewline() throws Exception {
+        write("one\ntwo\nthree");
+        assertEquals(Arrays.asList("two", "three"), new LogTailReader(file.toString(), 3).tail(2).getLines());
+    }
+
+    @Test
+    public void testCrLfLines() throws Exception {
+        write("one\r\ntwo\r\nthree\r\n");
+        assertEquals(Arrays.asList("two", "three"), new LogTailReader(file.toString(), 4).tail(2).getLines());
+    }
+
+    @Test
+    public void testEmptyLinesCount() throws Exception {
+        write("one\n\n\ntwo\n");
+        assertEquals(Arrays.asList("", "", "two"), new LogTailReader(file.toString(), 2).tail(3).getLines());
+    }
+
+    @Test
+    public void testMoreLinesThanInTheFile() throws Exception {
+        write("one\ntwo\n");
+        LogChunk chunk = new LogTailReader(file.toString(), 3).tail(10);
+        assertEquals(Arrays.asList("one", "two"), chunk.getLines());
+        assertEquals(0, chunk.getStartPosition());
+    }
+
+    @Test
+    public void testEmptyFileAndNoLines() throws Exception {
+        assertTrue(new LogTailReader(file.toString()).tail(10).getLines().isEmpty());
+        write("one\n");
+        LogChunk chunk = new LogTailReader(file.toString()).tail(0);
+        assertTrue(chunk.getLines().isEmpty());
+        assertEquals(4, chunk.getStartPosition());
+    }
+
+    @Test
+    public void testInvalidBlockSize() {
+        try {
+            new LogTailReader(file.toString(), 0);
+            fail("expected the block size to be refused");
+        }
+        catch(IllegalArgumentException e) {
+            // Refused
+        }
+    }
+
+    private void write(String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static List<String> numbered(int n) {
+        List<String> lines = new ArrayList<>();
+        for(int i = 0; i < n; i++) {
+            lines.add("2017-12-01 10:00:00 INFO line " + i);
+        }
+        return lines;
+    }
+
+    static long offsetOf(List<String> lines, int index) {
+        long offset = 0;
+        for(int i = 0; i < index; i++) {
+            offset += lines.get(i).getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        return offset;
+    }
+}
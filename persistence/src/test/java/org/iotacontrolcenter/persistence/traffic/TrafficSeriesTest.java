@@ -0,0 +1,217 @@
+package org.iotacontrolcenter.persistence.traffic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.iotacontrolcenter.dto.NeighborTrafficDto;
+import org.iotacontrolcenter.dto.TrafficSampleDto;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrafficSeriesTest {
+
+    // An epoch minute at the start of an hour
+    static final long T0 = TimeUnit.HOURS.toMinutes(470000);
+
+    TrafficSeries series;
+
+    @Before
+    public void setUp() {
+        series = new TrafficSeries();
+    }
+
+    static long ms(long minute) {
+        return TimeUnit.MINUTES.toMillis(minute);
+    }
+
+    NeighborTrafficDto query(long fromMinute, long toMinute, long nowMinute) {
+        return series.query("nbr1", ms(fromMinute), ms(toMinute), ms(nowMinute));
+    }
+
+    @Test
+    public void testFirstSampleOnlySetsBaseline() {
+        series.record(ms(T0), 1000, 100, 10);
+
+        NeighborTrafficDto traffic = query(T0 - 60, T0, T0);
+        assertEquals(0, traffic.getSamples().size());
+        assertEquals(0, traffic.getAllTx());
+    }
+
+    @Test
+    public void testIncreaseIsSpreadSinceLastSample() {
+        series.record(ms(T0), 1000, 100, 10);
+        series.record(ms(T0 + 10), 1100, 120, 20);
+
+        NeighborTrafficDto traffic = query(T0, T0 + 10, T0 + 10);
+        assertEquals(NeighborTrafficDto.MINUTE, traffic.getResolution());
+        assertEquals(10, traffic.getSamples().size());
+        assertEquals(ms(T0 + 1), traffic.getSamples().get(0).getTime());
+        for(TrafficSampleDto sample : traffic.getSamples()) {
+            assertEquals(10, sample.getAllTx());
+            assertEquals(2, sample.getNewTx());
+            assertEquals(1, sample.getInvalidTx());
+        }
+        assertEquals(100, traffic.getAllTx());
+        assertEquals(20, traffic.getNewTx());
+        assertEquals(10, traffic.getInvalidTx());
+    }
+
+    @Test
+    public void testRemainderGoesToFirstMinutes() {
+        series.record(ms(T0), 0, 0, 0);
+        series.record(ms(T0 + 3), 7, 0, 0);
+
+        List<TrafficSampleDto> samples = query(T0, T0 + 3, T0 + 3).getSamples();
+        assertEquals(3, samples.size());
+        assertEquals(3, samples.get(0).getAllTx());
+        assertEquals(2, samples.get(1).getAllTx());
+        assertEquals(2, samples.get(2).getAllTx());
+    }
+
+    @Test
+    public void testSamplesInOneMinuteAddUp() {
+        series.record(ms(T0), 0, 0, 0);
+        series.record(ms(T0) + 10000, 5, 0, 0);
+        series.record(ms(T0) + 20000, 8, 0, 0);
+
+        List<TrafficSampleDto> samples = query(T0, T0, T0).getSamples();
+        assertEquals(1, samples.size());
+        assertEquals(8, samples.get(0).getAllTx());
+    }
+
+    @Test
+    public void testCounterResetCountsFromZero() {
+        series.record(ms(T0), 1000, 100, 10);
+        series.record(ms(T0 + 1), 50, 5, 1);
+
+        NeighborTrafficDto traffic = query(T0, T0 + 1, T0 + 1);
+        assertEquals(50, traffic.getAllTx());
+        assertEquals(5, traffic.getNewTx());
+        assertEquals(1, traffic.getInvalidTx());
+    }
+
+    @Test
+    public void testLongGapOnlyMovesBaseline() {
+        long resumed = T0 + TrafficSeries.MAX_SPREAD_MINUTES + 1;
+        series.record(ms(T0), 0, 0, 0);
+        series.record(ms(resumed), 5000, 500, 50);
+        assertEquals(0, query(T0, resumed, resumed).getSamples().size());
+
+        series.record(ms(resumed + 1), 5010, 501, 50);
+        NeighborTrafficDto traffic = query(T0, resumed + 1, resumed + 1);
+        assertEquals(1, traffic.getSamples().size());
+        assertEquals(10, traffic.getAllTx());
+        assertEquals(ms(resumed + 1), traffic.getSamples().get(0).getTime());
+    }
+
+    @Test
+    public void testClockGoingBackOnlyMovesBaseline() {
+        series.record(ms(T0 + 10), 100, 0, 0);
+        series.record(ms(T0 + 5), 200, 0, 0);
+        assertEquals(0, query(T0, T0 + 10, T0 + 10).getSamples().size());
+
+        series.record(ms(T0 + 6), 210, 0, 0);
+        List<TrafficSampleDto> samples = query(T0, T0 + 10, T0 + 10).getSamples();
+        assertEquals(1, samples.size());
+        assertEquals(10, samples.get(0).getAllTx());
+        assertEquals(ms(T0 + 6), samples.get(0).getTime());
+    }
+
+    @Test
+    public void testMinuteRingWrapsAndOldWindowsFallBackToHours() {
+        // One transaction a minute for two days, sampled every hour
+        int hours = 48;
+        for(int h = 0; h <= hours; h++) {
+            series.record(ms(T0 + 60 * h), 60 * h, 0, 0);
+        }
+        long now = T0 + 60 * hours;
+
+        NeighborTrafficDto lastHour = query(now - 59, now, now);
+        assertEquals(NeighborTrafficDto.MINUTE, lastHour.getResolution());
+        assertEquals(60, lastHour.getSamples().size());
+        assertEquals(60, lastHour.getAllTx());
+
+        // More than a day back, the minute slots of the first day are reused
+        NeighborTrafficDto twoDays = query(T0, now, now);
+        assertEquals(NeighborTrafficDto.HOUR, twoDays.getResolution());
+        assertEquals(hours + 1, twoDays.getSamples().size());
+        assertEquals(60 * hours, twoDays.getAllTx());
+        assertEquals(59, twoDays.getSamples().get(0).getAllTx());
+        assertEquals(60, twoDays.getSamples().get(1).getAllTx());
+    }
+
+    @Test
+    public void testHourRingWraps() {
+        int hours = TrafficSeries.HOUR_SLOTS + 24;
+        for(int h = 0; h <= hours; h++) {
+            series.record(ms(T0 + 60 * h), 60 * h, 0, 0);
+        }
+        long now = T0 + 60 * hours;
+
+        NeighborTrafficDto traffic = query(T0, now, now);
+        assertEquals(NeighborTrafficDto.HOUR, traffic.getResolution());
+        assertEquals(TrafficSeries.HOUR_SLOTS, traffic.getSamples().size());
+        assertEquals(ms(now - 60 * (TrafficSeries.HOUR_SLOTS - 1)), traffic.getSamples().get(0).getTime());
+    }
+
+    @Test
+    public void testWriteReadRoundTrip() throws Exception {
+        series.record(ms(T0), 1000, 100, 10);
+        series.record(ms(T0 + 5), 1050, 110, 15);
+        series.record(ms(T0 + 90), 3000, 200, 20);
+
+        TrafficSeries read = roundTrip(series);
+        assertSameTraffic(query(T0, T0 + 120, T0 + 120),
+                read.query("nbr1", ms(T0), ms(T0 + 120), ms(T0 + 120)));
+
+        // The baseline is kept, both continue the same way
+        series.record(ms(T0 + 91), 3010, 201, 20);
+        read.record(ms(T0 + 91), 3010, 201, 20);
+        assertSameTraffic(query(T0, T0 + 120, T0 + 120),
+                read.query("nbr1", ms(T0), ms(T0 + 120), ms(T0 + 120)));
+        assertEquals(60, read.query("nbr1", ms(T0), ms(T0 + 120), ms(T0 + 120)).getAllTx());
+    }
+
+    @Test
+    public void testUnknownVersionIsRefused() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(99);
+        out.flush();
+
+        try {
+            TrafficSeries.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            fail("expected the unknown version to be refused");
+        }
+        catch(IOException e) {
+            // Refused
+        }
+    }
+
+    static TrafficSeries roundTrip(TrafficSeries s) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        s.write(out);
+        out.flush();
+        return TrafficSeries.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    static void assertSameTraffic(NeighborTrafficDto expected, NeighborTrafficDto actual) {
+        assertEquals(expected.getResolution(), actual.getResolution());
+        assertEquals(expected.getAllTx(), actual.getAllTx());
+        assertEquals(expected.getNewTx(), actual.getNewTx());
+        assertEquals(expected.getInvalidTx(), actual.getInvalidTx());
+        assertEquals(expected.getSamples().size(), actual.getSamples().size());
+        for(int i = 0; i < expected.getSamples().size(); i++) {
+            assertEquals(expected.getSamples().get(i).toString(), actual.getSamples().get(i).toString());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.iotacontrolcenter.persistence.traffic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrafficStoreTest {
+
+    // Queries are against the clock, the samples must be recent
+    static final long T0 = TimeUnit.MINUTES.toMillis(TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis()) - 10);
+
+    Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("traffic");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void testFileNamesAreDistinct() {
+        assertFalse(TrafficStore.fileNameOf("a/b").equals(TrafficStore.fileNameOf("a_b")));
+        assertFalse(TrafficStore.fileNameOf("Fred").equals(TrafficStore.fileNameOf("fred")));
+        assertEquals("612f62" + TrafficStore.FILE_SUFFIX, TrafficStore.fileNameOf("a/b"));
+    }
+
+    @Test
+    public void testKeysAreKeptApartOnDisk() {
+        TrafficStore store = new TrafficStore(dir.toString());
+        record(store, "a/b", 100);
+        record(store, "a_b", 200);
+        store.flush();
+
+        TrafficStore reloaded = new TrafficStore(dir.toString());
+        assertEquals(Arrays.asList("a/b", "a_b"), reloaded.keys());
+        assertEquals(100, reloaded.query("a/b", T0, T0 + TimeUnit.MINUTES.toMillis(1)).getAllTx());
+        assertEquals(200, reloaded.query("a_b", T0, T0 + TimeUnit.MINUTES.toMillis(1)).getAllTx());
+    }
+
+    @Test
+    public void testRetainDeletesOtherNeighbors() {
+        TrafficStore store = new TrafficStore(dir.toString());
+        record(store, "a/b", 100);
+        record(store, "a_b", 200);
+        store.flush();
+
+        store.retain(Collections.singletonList("a/b"));
+        assertNull(store.query("a_b", T0, T0 + TimeUnit.MINUTES.toMillis(1)));
+
+        TrafficStore reloaded = new TrafficStore(dir.toString());
+        assertEquals(Collections.singletonList("a/b"), reloaded.keys());
+    }
+
+    private static void record(TrafficStore store, String nbrKey, long all) {
+        store.record(nbrKey, T0, 0, 0, 0);
+        store.record(nbrKey, T0 + TimeUnit.MINUTES.toMillis(1), all, 0, 0);
+    }
+}
@@ -1,18 +1,26 @@
 package org.iotacontrolcenter.properties.source;
 
 import java.io.FileInputStream;
-import java.io.IOException;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import org.apache.commons.configuration.PropertiesConfiguration;
-import org.iotacontrolcenter.dto.ActivityDto;
 import org.iotacontrolcenter.dto.IccrIotaNeighborsPropertyDto;
 import org.iotacontrolcenter.dto.NeighborDto;
 
@@ -39,6 +47,12 @@ public class PropertySource {
     public static final String ICCR_START_IOTA_AT_START_PROP="iccrStartIotaAtStartup";
     public static final String ICCR_STOP_IOTA_AT_SHUTDOWN_PROP="iccrStopIotaAtShutdown";
     public static final String ICCR_PORT_NUMBER_PROP = "iccrPortNumber";
+    public static final String ICCR_EVENT_LOG_FSYNC_PROP = "iccrEventLogFsync";
+    public static final String ICCR_EVENT_LOG_FSYNC_INTERVAL_PROP = "iccrEventLogFsyncInterval";
+    public static final String ICCR_EVENT_LOG_QUEUE_SIZE_PROP = "iccrEventLogQueueSize";
+    public static final String ICCR_EVENT_LOG_MAX_SEGMENT_SIZE_PROP = "iccrEventLogMaxSegmentSize";
+    public static final String ICCR_EVENT_LOG_MAX_SEGMENT_AGE_PROP = "iccrEventLogMaxSegmentAge";
+    public static final String ICCR_EVENT_LOG_RETENTION_PROP = "iccrEventLogRetentionDays";
     public static final String IOTA_DLD_LINK_PROP="iotaDownloadLink";
 
     public static final String IOTA_APP_DIR_PROP = "iotaDir";
@@ -46,6 +60,9 @@ public class PropertySource {
     public static final String IOTA_START_PROP = "iotaStartCmd";
     public static final String IOTA_PORT_NUMBER_PROP = "iotaPortNumber";
     public static final String IOTA_NBR_REFRESH_TIME_PROP = "iotaNeighborRefreshTime";
+    public static final String IOTA_READY_TIMEOUT_PROP = "iotaReadyTimeout";
+    public static final String IOTA_READY_LOG_PATTERN_PROP = "iotaReadyLogPattern";
+    public static final String IOTA_QUERY_CACHE_TTL_PROP = "iotaQueryCacheTtl";
 
     public static final String IOTA_NEIGHBORS_PROP = "iotaNeighbors";
     public static final String IOTA_NEIGHBOR_PROP_PREFIX = "iotaNeighbor";
@@ -54,6 +71,38 @@ public class PropertySource {
     public static final String ICCW_LANG_PREFIX = "iccwlanguage.";
     // The iccw localization properties are in files named: iccw_MessagesBundle_en.properties
     public static final String ICCW_LANG_FILE_PREFIX="iccw_MessagesBundle_";
+
+    /**
+     * Collects the property changes made inside update(), which applies them
+     * together and saves iccr.properties once.
+     */
+    public interface Editor {
+        Editor set(String key, Object value);
+        Editor remove(String key);
+    }
+
+    private static class BatchEditor implements Editor {
+        // Marks a removed key, compared by identity
+        private static final String REMOVED = new String("");
+
+        // In the order made, the last change to a key wins
+        private final Map<String, String> changes = new LinkedHashMap<>();
+
+        @Override
+        public Editor set(String key, Object value) {
+            changes.remove(key);
+            changes.put(key, (String)value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            changes.remove(key);
+            changes.put(key, REMOVED);
+            return this;
+        }
+    }
+
     public static PropertySource getInstance() {
         synchronized (SYNC_INST) {
             if(PropertySource.instance == null) {
@@ -79,6 +128,9 @@ public class PropertySource {
 
     private final Object SET_SYNC_OBJ = new Object();
 
+    // Parsed neighbor config, replaced as a whole when the neighbor properties change and never modified
+    private volatile List<NeighborDto> nbrSnapshot = Collections.emptyList();
+
     private PropertySource() {
         System.out.println("new PropertySource");
 
@@ -130,39 +182,6 @@ public class PropertySource {
         return output;
     }
 
-    public ActivityDto getActivityDto(String key) {
-        String unparsed = getString(key);
-        ActivityDto output = new ActivityDto();
-
-        try {
-            output = ActivityDto.deserialize(unparsed);
-        }
-        catch (IOException e) {
-            System.out
-                    .println("PropertySource IOException loading ActivityDto: "
-                    + e.getLocalizedMessage());
-        }
-
-        return output;
-    }
-
-    public void setActivityDto(String key, ActivityDto activity) {
-        String serialized = "";
-
-        try {
-
-            serialized = activity.serialize();
-        }
-        catch (IOException e) {
-            System.out
-                    .println("PropertySource IOException saving RoaringBitmap: "
-                            + e.getLocalizedMessage());
-        }
-
-        setProperty(key, serialized);
-
-    }
-
     public boolean getBoolean(String key) {
         String val = props.getProperty(key);
         if(val != null) {
@@ -191,6 +210,34 @@ public class PropertySource {
         return confDir;
     }
 
+    public String getIccrEventLogFsync() {
+        return getString(ICCR_EVENT_LOG_FSYNC_PROP);
+    }
+
+    // Time in milliseconds
+    public long getIccrEventLogFsyncInterval(long defaultValue) {
+        return getInteger(ICCR_EVENT_LOG_FSYNC_INTERVAL_PROP, (int)defaultValue);
+    }
+
+    public int getIccrEventLogQueueSize(int defaultValue) {
+        return getInteger(ICCR_EVENT_LOG_QUEUE_SIZE_PROP, defaultValue);
+    }
+
+    // Size in megabytes
+    public int getIccrEventLogMaxSegmentSize(int defaultValue) {
+        return getInteger(ICCR_EVENT_LOG_MAX_SEGMENT_SIZE_PROP, defaultValue);
+    }
+
+    // Time in hours
+    public int getIccrEventLogMaxSegmentAge(int defaultValue) {
+        return getInteger(ICCR_EVENT_LOG_MAX_SEGMENT_AGE_PROP, defaultValue);
+    }
+
+    // 0 keeps archived event log segments forever
+    public int getIccrEventLogRetentionDays(int defaultValue) {
+        return getInteger(ICCR_EVENT_LOG_RETENTION_PROP, defaultValue);
+    }
+
     public String getIccrDataDir() {
         return dataDir;
     }
@@ -257,6 +304,15 @@ public class PropertySource {
         throw new IllegalArgumentException("No value provided for " + key);
     }
 
+    public int getInteger(String key, int defaultValue) {
+        try {
+            return getInteger(key);
+        }
+        catch(IllegalArgumentException iae) {
+            return defaultValue;
+        }
+    }
+
     public float getFloat(String key) {
         String val = props.getProperty(key);
         if (val != null) {
@@ -288,27 +344,51 @@ public class PropertySource {
         }
     }
 
+    // Time in seconds
+    public int getIotaReadyTimeout(int defaultValue) {
+        return getInteger(IOTA_READY_TIMEOUT_PROP, defaultValue);
+    }
+
+    // Time in milliseconds, 0 only shares identical queries in flight
+    public int getIotaQueryCacheTtl(int defaultValue) {
+        return getInteger(IOTA_QUERY_CACHE_TTL_PROP, defaultValue);
+    }
+
+    // Regular expression, empty turns console.log watching off
+    public String getIotaReadyLogPattern(String defaultValue) {
+        String val = getString(IOTA_READY_LOG_PATTERN_PROP);
+        return val == null ? defaultValue : val.trim();
+    }
+
+    /**
+     * Lock free read of the parsed neighbor config. Each caller gets its own
+     * copies of the neighbors, free to modify.
+     */
     public IccrIotaNeighborsPropertyDto getIotaNeighbors() {
-        synchronized(SET_SYNC_OBJ) {
-            List<NeighborDto> nbrs = new ArrayList<>();
-            for (String id : getNeighborKeys()) {
-                try {
-                    nbrs.add(new NeighborDto(
-                            getString(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".key." + id),
-                            getString(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".uri." + id),
-                            getString(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".name." + id),
-                            getString(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".descr." + id),
-                            getBoolean(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".active." + id),
-                            getActivityDto(
-                                    PropertySource.IOTA_NEIGHBOR_PROP_PREFIX
-                                            + ".activity." + id)
-                            ));
-                } catch (Exception e) {
-                    System.out.println("getIotaNeighborsProperty exception: " + e.getLocalizedMessage());
-                }
+        List<NeighborDto> nbrs = new ArrayList<>();
+        for(NeighborDto nbr : nbrSnapshot) {
+            nbrs.add(new NeighborDto(nbr.getKey(), nbr.getUri(), nbr.getName(), nbr.getDescr(), nbr.isActive()));
+        }
+        return new IccrIotaNeighborsPropertyDto(PropertySource.IOTA_NEIGHBORS_PROP, nbrs);
+    }
+
+    // Parse the neighbor properties, called with SET_SYNC_OBJ held whenever they change
+    private void rebuildNeighborSnapshot() {
+        List<NeighborDto> nbrs = new ArrayList<>();
+        for (String id : getNeighborKeys()) {
+            try {
+                nbrs.add(new NeighborDto(
+                        getString(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".key." + id),
+                        getString(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".uri." + id),
+                        getString(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".name." + id),
+                        getString(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".descr." + id),
+                        getBoolean(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".active." + id)
+                        ));
+            } catch (Exception e) {
+                System.out.println("getIotaNeighborsProperty exception: " + e.getLocalizedMessage());
             }
-            return new IccrIotaNeighborsPropertyDto(PropertySource.IOTA_NEIGHBORS_PROP, nbrs);
         }
+        nbrSnapshot = Collections.unmodifiableList(nbrs);
     }
 
     public String getIotaStartCmd() {
@@ -403,6 +483,9 @@ public class PropertySource {
             System.out.println("failed to load iccr.properties from " + confDir);
             e.printStackTrace();
         }
+        synchronized(SET_SYNC_OBJ) {
+            rebuildNeighborSnapshot();
+        }
     }
 
     public boolean osIsMac() {
@@ -414,95 +497,131 @@ public class PropertySource {
     }
 
     public void removeProperty(String key) {
-        props.remove(key);
-        propWriter.clearProperty(key);
+        update(editor -> editor.remove(key));
+    }
+
+    /**
+     * Make a group of property changes and save them with a single write of
+     * iccr.properties, instead of one full rewrite per change.
+     */
+    public void update(Consumer<Editor> changes) {
+        synchronized(SET_SYNC_OBJ) {
+            BatchEditor editor = new BatchEditor();
+            changes.accept(editor);
+            if(editor.changes.isEmpty()) {
+                return;
+            }
+
+            boolean nbrsChanged = false;
+            for(Map.Entry<String, String> change : editor.changes.entrySet()) {
+                String key = change.getKey();
+                nbrsChanged |= key.startsWith(IOTA_NEIGHBOR_PROP_PREFIX);
+                if(change.getValue() == BatchEditor.REMOVED) {
+                    props.remove(key);
+                    propWriter.clearProperty(key);
+                }
+                else {
+                    props.setProperty(key, change.getValue());
+                    propWriter.setProperty(key, change.getValue());
+                }
+            }
+            if(nbrsChanged) {
+                rebuildNeighborSnapshot();
+            }
+            save();
+        }
+    }
+
+    /**
+     * Write the file to a temp file in the conf dir and rename it over iccr.properties,
+     * so a crash part way through never leaves a truncated config.
+     */
+    private void save() {
+        Path target = Paths.get(confFile);
+        Path tmp = Paths.get(confFile + ".tmp");
         try {
-            propWriter.save();
+            try(FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+                propWriter.save(out);
+                out.getFD().sync();
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
         }
         catch(Exception e) {
-            System.out.println("PropertySource remove prop exception saving PropertiesConfiguration: " + e.getLocalizedMessage());
+            System.out.println("PropertySource exception saving PropertiesConfiguration: " + e.getLocalizedMessage());
         }
     }
 
     public void setIotaNeighborsConfig(IccrIotaNeighborsPropertyDto nbrs) {
-        synchronized(SET_SYNC_OBJ) {
-            // First clear existing neighbors
-            clearNeighbors();
-
-            String nbrKeys = "";
-            String sep = "";
-            Properties seenKeys = new Properties();
-            String id;
-
-            if (nbrs.getNbrs() != null) {
-                for (NeighborDto nbr : nbrs.getNbrs()) {
-                    System.out.println("updated neighbor: " + nbr);
-                    id = nbr.getKey();
-                    if (seenKeys.containsKey(id)) {
-                        System.out.println("setIotaNeighborsConfig, ignoring duplicate nbr key: " + id);
-                        continue;
-                    }
-                    seenKeys.setProperty(id, "true");
-                    nbrKeys += sep + id;
-                    if (sep.isEmpty()) {
-                        sep = ",";
-                    }
-                    setProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".key." + id, nbr.getKey());
-                    setProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".uri." + id, nbr.getUri());
-                    if (nbr.getName() != null) {
-                        setProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".name." + id, nbr.getName());
-                    }
-                    else {
-                        setProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".name." + id, "");
-                    }
-                    if (nbr.getDescr() != null) {
-                        setProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".descr." + id, nbr.getDescr());
-                    }
-                    else {
-                        setProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".descr." + id, "");
-                    }
-                    setProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".active." + id, String.valueOf(nbr.isActive()).toLowerCase());
-                    if (nbr.getActivity() != null) {
-                        setActivityDto(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX
-                                + ".activity." + id, nbr.getActivity());
-                    }
-                    else {
-                        setProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".activity." + id, "");
-                    }
+        update(editor -> setIotaNeighborsConfig(editor, nbrs));
+    }
+
+    private void setIotaNeighborsConfig(Editor editor, IccrIotaNeighborsPropertyDto nbrs) {
+        // First clear existing neighbors
+        clearNeighbors(editor);
+
+        String nbrKeys = "";
+        String sep = "";
+        Properties seenKeys = new Properties();
+        String id;
+
+        if (nbrs.getNbrs() != null) {
+            for (NeighborDto nbr : nbrs.getNbrs()) {
+                System.out.println("updated neighbor: " + nbr);
+                id = nbr.getKey();
+                if (seenKeys.containsKey(id)) {
+                    System.out.println("setIotaNeighborsConfig, ignoring duplicate nbr key: " + id);
+                    continue;
                 }
+                seenKeys.setProperty(id, "true");
+                nbrKeys += sep + id;
+                if (sep.isEmpty()) {
+                    sep = ",";
+                }
+                editor.set(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".key." + id, nbr.getKey());
+                editor.set(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".uri." + id, nbr.getUri());
+                if (nbr.getName() != null) {
+                    editor.set(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".name." + id, nbr.getName());
+                }
+                else {
+                    editor.set(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".name." + id, "");
+                }
+                if (nbr.getDescr() != null) {
+                    editor.set(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".descr." + id, nbr.getDescr());
+                }
+                else {
+                    editor.set(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".descr." + id, "");
+                }
+                editor.set(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".active." + id, String.valueOf(nbr.isActive()).toLowerCase());
+                // Activity is kept in the persistence activity store, not here
             }
-            System.out.println("Updated nbr keys: " + nbrKeys);
-            setProperty(IOTA_NEIGHBORS_PROP, nbrKeys);
         }
+        System.out.println("Updated nbr keys: " + nbrKeys);
+        editor.set(IOTA_NEIGHBORS_PROP, nbrKeys);
     }
 
     public void setProperty(String key, Object value) {
-
-        props.setProperty(key, (String)value);
-        propWriter.setProperty(key, value);
-
-        try {
-            propWriter.save();
-        }
-        catch(Exception e) {
-            System.out.println("PropertySource set prop exception saving PropertiesConfiguration: " + e.getLocalizedMessage());
-        }
+        update(editor -> editor.set(key, value));
     }
 
-    private void clearNeighbors() {
+    private void clearNeighbors(Editor editor) {
         List<String> nbrKeys = getNeighborKeys();
         for(String id : nbrKeys) {
-            deleteNeighborById(id);
+            deleteNeighborById(editor, id);
         }
     }
 
-    private void deleteNeighborById(String id) {
-        removeProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".key." + id);
-        removeProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".uri." + id);
-        removeProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".name." + id);
-        removeProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".descr." + id);
-        removeProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".active." + id);
-        removeProperty(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".activity." + id);
+    private void deleteNeighborById(Editor editor, String id) {
+        editor.remove(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".key." + id);
+        editor.remove(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".uri." + id);
+        editor.remove(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".name." + id);
+        editor.remove(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".descr." + id);
+        editor.remove(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".active." + id);
+        editor.remove(PropertySource.IOTA_NEIGHBOR_PROP_PREFIX + ".activity." + id);
     }
 
 }
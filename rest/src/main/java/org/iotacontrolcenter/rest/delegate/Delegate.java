@@ -1,10 +1,12 @@
 package org.iotacontrolcenter.rest.delegate;
 
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang.StringUtils;
 import org.iotacontrolcenter.dto.ActionResponse;
 import org.iotacontrolcenter.dto.IccrIotaNeighborsPropertyDto;
 import org.iotacontrolcenter.dto.IotaGetNeighborsResponseDto;
@@ -12,6 +14,8 @@ import org.iotacontrolcenter.dto.IotaNeighborDto;
 import org.iotacontrolcenter.dto.NeighborDto;
 import org.iotacontrolcenter.iccr.agent.IccrActionFactory;
 import org.iotacontrolcenter.iota.agent.ActionFactory;
+import org.iotacontrolcenter.persistence.PersistenceService;
+import org.iotacontrolcenter.persistence.traffic.TrafficStore;
 import org.iotacontrolcenter.properties.source.PropertySource;
 
 import com.google.gson.Gson;
@@ -32,93 +36,27 @@ public class Delegate {
         }
     }
 
-    public static boolean isSameHost(String ip1, String ip2) {
-        //[2a01:4f8:190:32cc::2]
-        // and
-        // 2a01:4f8:190:32cc:0:0:0:2
-
-        if(ip1 == null || ip2 == null || ip1.isEmpty() | ip2.isEmpty()) {
-            // InetAddress.getByName() resolves null and blank strings as localhost
-            return false;
-        }
-
-        String normalIp1 = normalizeIp(ip1);
-        String normalIp2 = normalizeIp(ip2);
-
-        return normalIp1 != null && normalIp2 != null && normalIp1.equals(normalIp2);
-    }
-    public static boolean isSameNbr ( NeighborDto nbr, IotaNeighborDto iotaNbr) {
-        // Partially borrowed from ICCJ to match NeighborDto with the result of Iota's getNeighbors
-        // In our model, the nbr uri is something like this:
-        //         udp://fred.com:14265
-        //  or
-        //         udp://10.0.0.0:14265
-        //  or
-        //         udp://[2a01:4f8:190:32cc::2]:14265
-
-        // The problem: nbr coming from IOTA getNeighbors, the address is something like this:
-        //         fred.com/93.188.173.198:14265
-        //  or
-        //         /10.0.0.0:14265
-        //  or iv ipv6:
-        //         /2a01:4f8:190:32cc:0:0:0:2:14265
-        //  or soon, no embedded "/":
-        //         93.188.173.198:14265
-        String nbrUri = nbr.getUri();
-
-        int addrSepIdx = nbrUri.indexOf("://");
-        int portIdx = nbrUri.lastIndexOf(":");
-        if(addrSepIdx < 0) {
-            addrSepIdx = 0;
-        }
-        else {
-            addrSepIdx += 3;
-        }
-
-        String nbrHost = nbrUri.substring(addrSepIdx, portIdx);
-        String nbrPort = nbrUri.substring(portIdx);
-
-
-
-        String iotaUri = iotaNbr.getAddress();
-
-        portIdx = iotaUri.lastIndexOf(":");
-        String iotaPort = iotaUri.substring(portIdx);
-
-        addrSepIdx = iotaUri.indexOf("/");
-        String iotaAddr1 = addrSepIdx < 0 ? "" : iotaUri.substring(0, addrSepIdx);
-
-
-        int addr2StartIdx = addrSepIdx >= 0 ? addrSepIdx+1 : 0;
-        String iotaAddr2 = iotaUri.substring(addr2StartIdx, portIdx);
-
-        boolean samePort = StringUtils.isNotBlank(nbrPort) && StringUtils.equals(nbrPort, iotaPort);
-        boolean sameHost = isSameHost(nbrHost, iotaAddr2) || isSameHost(nbrHost, iotaAddr1);
-
-        return samePort && sameHost;
-
-    }
-    public static String normalizeIp (String input) {
-        String output = null;
-        try {
-            output = InetAddress.getByName(input).toString();
-        }
-        catch(UnknownHostException e) {
-            System.out.println("Swallowing an UnknownHostException. " +
-                    "Probably just means someone entered an invalid hostname for a neighbor. " + e);
-        }
-        return output;
-    }
-
-    private java.util.Timer iotaNeighborRefreshTimer, iotaActivityRefreshTimer;
+    public static final String NEIGHBOR_REFRESH_JOB = "iotaNeighborRefresh";
+    public static final String ACTIVITY_REFRESH_JOB = "iotaActivityRefresh";
+    public static final String TRAFFIC_FLUSH_JOB = "neighborTrafficFlush";
+    // Time in minutes
+    private static final int ACTIVITY_REFRESH_TIME = 1;
 
     private Integer nbrRefreshTime = null;
-    private Float   activityRefreshTime = null;
+
+    private Scheduler scheduler = Scheduler.getInstance();
+    private DnsResolver dnsResolver = DnsResolver.getInstance();
+    private NeighborIndex nbrIndex;
 
     private PropertySource propertySource = PropertySource.getInstance();
+    private PersistenceService persistenceService = PersistenceService.getInstance();
 
     private Delegate() {
         System.out.println("new Delegate");
+
+        // Recorded traffic is saved here, not on the threads recording it
+        scheduler.schedule(TRAFFIC_FLUSH_JOB, persistenceService::flushNeighborTraffic,
+                TrafficStore.FLUSH_INTERVAL_MS, TrafficStore.FLUSH_INTERVAL_MS);
     }
 
     public synchronized  void iccrActionDone(String action) {
@@ -134,15 +72,24 @@ public class Delegate {
 
     public synchronized  void iccrPropSet(String prop) {
         if(prop.equals(PropertySource.IOTA_NEIGHBORS_PROP)) {
+            prefetchNeighborHosts();
             restartNeighborRefresh();
             restartActivityRefresh();
         }
         else if(prop.equals(PropertySource.IOTA_NBR_REFRESH_TIME_PROP)) {
             Integer prevRefreshTimeMin = nbrRefreshTime;
-            if(propertySource.getIotaNeighborRefreshTime() == prevRefreshTimeMin) {
+            int refreshTimeMin = propertySource.getIotaNeighborRefreshTime();
+            if(prevRefreshTimeMin != null && refreshTimeMin == prevRefreshTimeMin) {
                 return;
             }
-            restartNeighborRefresh();
+            if(refreshTimeMin > 0 && scheduler.isScheduled(NEIGHBOR_REFRESH_JOB)) {
+                // Same job, new period
+                nbrRefreshTime = refreshTimeMin;
+                scheduler.reschedule(NEIGHBOR_REFRESH_JOB, TimeUnit.MINUTES.toMillis(refreshTimeMin));
+            }
+            else {
+                restartNeighborRefresh();
+            }
         }
     }
 
@@ -159,22 +106,33 @@ public class Delegate {
             IotaGetNeighborsResponseDto dto = null;
             IccrIotaNeighborsPropertyDto iccrNbrs = propertySource.getIotaNeighbors();
             int iotaNeighborRefreshTime           = propertySource.getIotaNeighborRefreshTime();
+            List<NeighborDto> updated = new ArrayList<>();
 
             try {
+                persistenceService.loadNeighborActivity(iccrNbrs.getNbrs());
+
                 Gson gson = new GsonBuilder().create();
                 dto = gson.fromJson(resp.getContent(), IotaGetNeighborsResponseDto.class);
 
+                Map<String, NeighborDto> byKey = new HashMap<>();
+                for(NeighborDto iccrNbr : iccrNbrs.getNbrs()) {
+                    byKey.put(iccrNbr.getKey(), iccrNbr);
+                }
+                NeighborIndex index = getNeighborIndex(iccrNbrs.getNbrs());
+
                 for( IotaNeighborDto iotaNbr : dto.getNeighbors()) {
-                    for ( NeighborDto iccrNbr : iccrNbrs.getNbrs()) {
-                        if( isSameNbr(iccrNbr, iotaNbr) ) {
-                            iccrNbr.setNumAt(iotaNbr.getNumberOfAllTransactions());
-                            iccrNbr.setNumIt(iotaNbr.getNumberOfInvalidTransactions());
-                            iccrNbr.setNumNt(iotaNbr.getNumberOfNewTransactions());
-
-                            // Update the Iota neighbor being sent to the client
-                            iotaNbr.setActivityPercentageDay(iccrNbr.getActivityPercentageOverLastDay());
-                            iotaNbr.setActivityPercentageWeek(iccrNbr.getActivityPercentageOverLastWeek());
-                        }
+                    for (String key : index.match(iotaNbr)) {
+                        NeighborDto iccrNbr = byKey.get(key);
+                        iccrNbr.setNumAt(iotaNbr.getNumberOfAllTransactions());
+                        iccrNbr.setNumIt(iotaNbr.getNumberOfInvalidTransactions());
+                        iccrNbr.setNumNt(iotaNbr.getNumberOfNewTransactions());
+                        persistenceService.recordNeighborTraffic(iccrNbr);
+
+                        // Update the Iota neighbor being sent to the client
+                        iotaNbr.setActivityPercentageDay(iccrNbr.getActivityPercentageOverLastDay());
+                        iotaNbr.setActivityPercentageWeek(iccrNbr.getActivityPercentageOverLastWeek());
+
+                        updated.add(iccrNbr);
                     }
                 }
             }
@@ -182,11 +140,30 @@ public class Delegate {
                 System.out.println(action + ", exception mapping json response: " + e);
             }
 
-            propertySource.setIotaNeighborsConfig(iccrNbrs);
+            // Only the activity changed, the neighbor config is left alone
+            for(NeighborDto nbr : updated) {
+                persistenceService.saveNeighborActivity(nbr);
+            }
         }
     }
 
 
+    // Rebuilt when the neighbor config or a resolved neighbor address changes
+    private NeighborIndex getNeighborIndex(List<NeighborDto> nbrs) {
+        nbrIndex = NeighborIndex.current(nbrIndex, nbrs, dnsResolver);
+        return nbrIndex;
+    }
+
+    // Have the neighbor addresses resolved before the first refresh needs them
+    private void prefetchNeighborHosts() {
+        try {
+            dnsResolver.prefetch(NeighborIndex.hostsOf(propertySource.getIotaNeighbors().getNbrs()));
+        }
+        catch(Exception e) {
+            System.out.println("prefetchNeighborHosts exception: " + e);
+        }
+    }
+
     public synchronized void startNeighborRefresh() {
         System.out.println("startNeighborRefresh");
 
@@ -198,12 +175,11 @@ public class Delegate {
             return;
         }
 
+        prefetchNeighborHosts();
         try {
-            if(iotaNeighborRefreshTimer == null) {
-                iotaNeighborRefreshTimer = new java.util.Timer();
-                iotaNeighborRefreshTimer.schedule(new RefreshIotaNeighborTimerTask(),
-                        nbrRefreshTime * 60 * 1000, nbrRefreshTime * 60 * 1000);
-            }
+            long refreshTimeMilli = TimeUnit.MINUTES.toMillis(nbrRefreshTime);
+            scheduler.schedule(NEIGHBOR_REFRESH_JOB, new RefreshIotaNeighborTask(),
+                    refreshTimeMilli, refreshTimeMilli);
         }
         catch(Exception e) {
             System.out.println("startTimers iota nbrs refresh exception: " + e);
@@ -213,26 +189,16 @@ public class Delegate {
     public synchronized void stopNeighborRefresh() {
         System.out.println("stopNeighborRefresh");
 
-        if(iotaNeighborRefreshTimer != null) {
-            iotaNeighborRefreshTimer.cancel();
-            iotaNeighborRefreshTimer = null;
-        }
+        scheduler.cancel(NEIGHBOR_REFRESH_JOB);
     }
 
     public synchronized void startActivityRefresh() {
         System.out.println("startActivityRefresh");
 
-        // refresh time in minutes
-        activityRefreshTime = 1f;
-
         try {
-            int refreshTimeMilli = Math.round(activityRefreshTime * 60 * 1000);
-            if (iotaActivityRefreshTimer == null) {
-                iotaActivityRefreshTimer = new java.util.Timer();
-                iotaActivityRefreshTimer.schedule(
-                        new RefreshIotaActivityTimerTask(),
-                        refreshTimeMilli, refreshTimeMilli);
-            }
+            long refreshTimeMilli = TimeUnit.MINUTES.toMillis(ACTIVITY_REFRESH_TIME);
+            scheduler.schedule(ACTIVITY_REFRESH_JOB, new RefreshIotaActivityTask(),
+                    refreshTimeMilli, refreshTimeMilli);
         }
         catch (Exception e) {
             System.out.println(
@@ -243,10 +209,7 @@ public class Delegate {
     public synchronized void stopActivityRefresh() {
         System.out.println("stopActivityRefresh");
 
-        if (iotaActivityRefreshTimer != null) {
-            iotaActivityRefreshTimer.cancel();
-            iotaActivityRefreshTimer = null;
-        }
+        scheduler.cancel(ACTIVITY_REFRESH_JOB);
     }
 
     public synchronized void restartNeighborRefresh() {
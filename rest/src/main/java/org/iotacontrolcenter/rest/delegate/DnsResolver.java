@@ -0,0 +1,282 @@
+package org.iotacontrolcenter.rest.delegate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves neighbor host names in the background so no refresh ever waits
+ * on DNS.
+ *
+ * Readers only see the cache: cached() returns the addresses last
+ * resolved for a host, at once, and queues a lookup on a small bounded
+ * pool if they are missing or older than the TTL. A failed lookup keeps
+ * the last known good addresses; a host that never resolved is
+ * remembered as unresolvable for a shorter time. The generation goes up
+ * whenever a host's addresses change, so users of the addresses know
+ * when to rebuild.
+ *
+ * IP literals are parsed, never looked up.
+ */
+public class DnsResolver {
+
+    public static final long TTL_MS = TimeUnit.MINUTES.toMillis(5);
+    public static final long NEGATIVE_TTL_MS = TimeUnit.SECONDS.toMillis(30);
+    public static final int THREADS = 2;
+    public static final int QUEUE_SIZE = 64;
+    private static final long SLOW_LOOKUP_MS = 1000;
+
+    private static DnsResolver instance;
+    private static Object SYNC_INST = new Object();
+    public static DnsResolver getInstance() {
+        synchronized (SYNC_INST) {
+            if(DnsResolver.instance == null) {
+                DnsResolver.instance = new DnsResolver();
+            }
+            return DnsResolver.instance;
+        }
+    }
+
+    // How host names are looked up, tests resolve without DNS
+    interface Lookup {
+        InetAddress[] getAllByName(String host) throws UnknownHostException;
+    }
+
+    private static class Entry {
+        final Set<String> addresses;
+        // When to look the host up again
+        final long refreshAt;
+        final long latencyMs;
+
+        Entry(Set<String> addresses, long refreshAt, long latencyMs) {
+            this.addresses = addresses;
+            this.refreshAt = refreshAt;
+            this.latencyMs = latencyMs;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Set<String>>> inFlight = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor pool;
+    private final AtomicLong generation = new AtomicLong();
+    private final Lookup lookup;
+    private final long ttlMs;
+    private final long negativeTtlMs;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+
+    private DnsResolver() {
+        this(InetAddress::getAllByName);
+    }
+
+    DnsResolver(Lookup lookup) {
+        this(lookup, TTL_MS, NEGATIVE_TTL_MS);
+    }
+
+    DnsResolver(Lookup lookup, long ttlMs, long negativeTtlMs) {
+        System.out.println("new DnsResolver");
+        this.lookup = lookup;
+        this.ttlMs = ttlMs;
+        this.negativeTtlMs = negativeTtlMs;
+        AtomicInteger threadNum = new AtomicInteger();
+        pool = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE),
+                r -> {
+                    Thread t = new Thread(r, "iccr-dns-" + threadNum.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * The addresses host last resolved to, empty if it has not been resolved
+     * yet or does not resolve. Never blocks; a missing or expired entry is
+     * looked up in the background.
+     */
+    public Set<String> cached(String host) {
+        String literal = normalizeLiteral(host);
+        if(literal != null) {
+            return Collections.singleton(literal);
+        }
+        if(host == null || host.isEmpty()) {
+            // InetAddress.getAllByName() resolves null and blank strings as localhost
+            return Collections.emptySet();
+        }
+
+        Entry e = entries.get(key(host));
+        if(e == null || e.refreshAt <= System.currentTimeMillis()) {
+            resolveAsync(host);
+        }
+        return e == null ? Collections.emptySet() : e.addresses;
+    }
+
+    /**
+     * Look host up in the background, the future completes with the
+     * addresses to use afterwards. Concurrent requests for a host share one
+     * lookup.
+     */
+    public CompletableFuture<Set<String>> resolveAsync(String host) {
+        String literal = normalizeLiteral(host);
+        if(literal != null) {
+            return CompletableFuture.completedFuture(Collections.singleton(literal));
+        }
+        if(host == null || host.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptySet());
+        }
+
+        String key = key(host);
+        CompletableFuture<Set<String>> mine = new CompletableFuture<>();
+        CompletableFuture<Set<String>> running = inFlight.putIfAbsent(key, mine);
+        if(running != null) {
+            return running;
+        }
+        try {
+            pool.execute(() -> {
+                Set<String> found = Collections.emptySet();
+                try {
+                    found = refresh(host);
+                }
+                finally {
+                    // Removed first, a caller woken by the result never joins this finished lookup
+                    inFlight.remove(key, mine);
+                    mine.complete(found);
+                }
+            });
+        }
+        catch(RejectedExecutionException ree) {
+            // Busy, the next reader asks again
+            inFlight.remove(key, mine);
+            Entry e = entries.get(key);
+            mine.complete(e == null ? Collections.emptySet() : e.addresses);
+        }
+        return mine;
+    }
+
+    /**
+     * Start looking up hosts not cached yet, e.g. when the neighbor config
+     * changes, so their addresses are there when first needed.
+     */
+    public void prefetch(Collection<String> hosts) {
+        for(String host : hosts) {
+            cached(host);
+        }
+    }
+
+    /**
+     * Goes up whenever the addresses of a host change.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public String getStats() {
+        long n = lookups.get();
+        return "hosts: " + entries.size() +
+                ", lookups: " + n +
+                ", failures: " + failures.get() +
+                ", avg latency: " + (n == 0 ? 0 : totalLatencyMs.get() / n) + " ms" +
+                ", max latency: " + maxLatencyMs.get() + " ms" +
+                ", queued: " + pool.getQueue().size();
+    }
+
+    /**
+     * Latency of the last lookup of host, -1 if it was never looked up.
+     */
+    public long getLatencyMs(String host) {
+        Entry e = host == null ? null : entries.get(key(host));
+        return e == null ? -1 : e.latencyMs;
+    }
+
+    /**
+     * The canonical text form of an IPv4 or IPv6 literal, with or without
+     * brackets, null if s is not one.
+     */
+    public static String normalizeLiteral(String s) {
+        if(s == null || s.isEmpty()) {
+            return null;
+        }
+        if(s.startsWith("[") && s.endsWith("]")) {
+            s = s.substring(1, s.length() - 1);
+        }
+        if(!isLiteral(s)) {
+            return null;
+        }
+        try {
+            // Literals are parsed without a lookup
+            return InetAddress.getByName(s).getHostAddress();
+        }
+        catch(UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private Set<String> refresh(String host) {
+        String key = key(host);
+        long start = System.nanoTime();
+        Set<String> addresses = null;
+        try {
+            Set<String> found = new LinkedHashSet<>();
+            Arrays.stream(lookup.getAllByName(host)).forEach(a -> found.add(a.getHostAddress()));
+            addresses = Collections.unmodifiableSet(found);
+        }
+        catch(UnknownHostException e) {
+            failures.incrementAndGet();
+            System.out.println("DnsResolver, cannot resolve " + host +
+                    ", probably an invalid neighbor host name: " + e.getLocalizedMessage());
+        }
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        lookups.incrementAndGet();
+        totalLatencyMs.addAndGet(latencyMs);
+        maxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+        if(latencyMs >= SLOW_LOOKUP_MS) {
+            System.out.println("DnsResolver, slow lookup of " + host + ": " + latencyMs + " ms");
+        }
+
+        long now = System.currentTimeMillis();
+        Entry prev = entries.get(key);
+        Entry next;
+        if(addresses != null) {
+            next = new Entry(addresses, now + ttlMs, latencyMs);
+        }
+        else if(prev != null && !prev.addresses.isEmpty()) {
+            // Keep the last known good addresses, try again sooner
+            next = new Entry(prev.addresses, now + negativeTtlMs, latencyMs);
+        }
+        else {
+            next = new Entry(Collections.emptySet(), now + negativeTtlMs, latencyMs);
+        }
+        entries.put(key, next);
+        if(prev == null ? !next.addresses.isEmpty() : !prev.addresses.equals(next.addresses)) {
+            generation.incrementAndGet();
+        }
+        return next.addresses;
+    }
+
+    private static String key(String host) {
+        return host.toLowerCase();
+    }
+
+    private static boolean isLiteral(String s) {
+        if(s.indexOf(':') >= 0) {
+            // Only IPv6 literals contain colons, host names never do
+            return s.matches("[0-9A-Fa-f:.%\\w]+");
+        }
+        return s.matches("\\d{1,3}(\\.\\d{1,3}){3}");
+    }
+}
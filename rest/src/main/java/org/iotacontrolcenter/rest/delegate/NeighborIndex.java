@@ -0,0 +1,165 @@
+package org.iotacontrolcenter.rest.delegate;
+
+import org.iotacontrolcenter.dto.IotaNeighborDto;
+import org.iotacontrolcenter.dto.NeighborDto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches the neighbors IRI reports to the configured ones by address.
+ *
+ * Built once per neighbor config: each configured URI is parsed and
+ * indexed by normalized IP and port, with host names taken from the
+ * DnsResolver's cache, never looked up here. Matching an IRI neighbor is
+ * then a hash lookup on the IP literal IRI reports. The index is rebuilt
+ * when the config or any resolved address changes, see current().
+ *
+ * Configured URIs look like
+ *         udp://fred.com:14265
+ *         udp://10.0.0.0:14265
+ *         udp://[2a01:4f8:190:32cc::2]:14265
+ * and IRI reports addresses like
+ *         fred.com/93.188.173.198:14265
+ *         /10.0.0.0:14265
+ *         /2a01:4f8:190:32cc:0:0:0:2:14265
+ *         93.188.173.198:14265
+ */
+public class NeighborIndex {
+
+    private final Map<String, List<String>> keysByAddress = new HashMap<>();
+    private final String signature;
+    private final long dnsGeneration;
+
+    public NeighborIndex(List<NeighborDto> nbrs, DnsResolver dns) {
+        signature = signatureOf(nbrs);
+        // Read before the addresses, a change while building forces a rebuild
+        dnsGeneration = dns.getGeneration();
+
+        for(NeighborDto nbr : nbrs) {
+            String host = hostOf(nbr.getUri());
+            if(host == null) {
+                continue;
+            }
+            String port = nbr.getUri().substring(nbr.getUri().lastIndexOf(":") + 1);
+
+            for(String ip : dns.cached(host)) {
+                keysByAddress.computeIfAbsent(key(ip, port), k -> new ArrayList<>()).add(nbr.getKey());
+            }
+        }
+    }
+
+    /**
+     * prev if it is still current for nbrs, otherwise a new index. The
+     * hosts are looked up in the cache every time, which is what starts
+     * their refresh once the TTL expires; a reused index would otherwise
+     * keep expired addresses for good.
+     */
+    public static NeighborIndex current(NeighborIndex prev, List<NeighborDto> nbrs, DnsResolver dns) {
+        dns.prefetch(hostsOf(nbrs));
+        if(prev == null || !prev.isCurrent(nbrs, dns.getGeneration())) {
+            return new NeighborIndex(nbrs, dns);
+        }
+        return prev;
+    }
+
+    /**
+     * The host part of a neighbor URI, null if it has none.
+     */
+    public static String hostOf(String uri) {
+        if(uri == null) {
+            return null;
+        }
+        int addrSepIdx = uri.indexOf("://");
+        addrSepIdx = addrSepIdx < 0 ? 0 : addrSepIdx + 3;
+        int portIdx = uri.lastIndexOf(":");
+        if(portIdx <= addrSepIdx) {
+            return null;
+        }
+        return uri.substring(addrSepIdx, portIdx);
+    }
+
+    /**
+     * The hosts of the neighbors' URIs, to prefetch their addresses.
+     */
+    public static List<String> hostsOf(List<NeighborDto> nbrs) {
+        List<String> hosts = new ArrayList<>();
+        for(NeighborDto nbr : nbrs) {
+            String host = hostOf(nbr.getUri());
+            if(host != null) {
+                hosts.add(host);
+            }
+        }
+        return hosts;
+    }
+
+    /**
+     * Keys of the configured neighbors at the address IRI reports, empty if
+     * none.
+     */
+    public List<String> match(IotaNeighborDto iotaNbr) {
+        String address = addressOf(iotaNbr);
+        if(address == null) {
+            return Collections.emptyList();
+        }
+        List<String> keys = keysByAddress.get(address);
+        return keys == null ? Collections.emptyList() : keys;
+    }
+
+    /**
+     * The normalized "ip|port" of the address IRI reports, null if it has
+     * none.
+     */
+    public static String addressOf(IotaNeighborDto iotaNbr) {
+        String address = iotaNbr.getAddress();
+        if(address == null) {
+            return null;
+        }
+        int portIdx = address.lastIndexOf(":");
+        if(portIdx < 0) {
+            return null;
+        }
+        // The IP follows the host name, if IRI gives one
+        String ip = DnsResolver.normalizeLiteral(address.substring(address.indexOf("/") + 1, portIdx));
+        if(ip == null) {
+            return null;
+        }
+        return key(ip, address.substring(portIdx + 1));
+    }
+
+    /**
+     * A URI IRI accepts for the address, e.g. to remove it, with the scheme
+     * of the configured URI it matched.
+     */
+    public static String uriOf(String address, String scheme) {
+        int sepIdx = address.lastIndexOf("|");
+        String ip = address.substring(0, sepIdx);
+        if(ip.indexOf(':') >= 0) {
+            ip = "[" + ip + "]";
+        }
+        return scheme + "://" + ip + ":" + address.substring(sepIdx + 1);
+    }
+
+    /**
+     * True if this index was built from these neighbors' URIs and no
+     * resolved address changed since.
+     */
+    public boolean isCurrent(List<NeighborDto> nbrs, long dnsGeneration) {
+        return this.dnsGeneration == dnsGeneration && signature.equals(signatureOf(nbrs));
+    }
+
+    private static String key(String ip, String port) {
+        return ip + "|" + port.trim();
+    }
+
+    private static String signatureOf(List<NeighborDto> nbrs) {
+        StringBuilder sb = new StringBuilder();
+        for(NeighborDto nbr : nbrs) {
+            sb.append(nbr.getKey()).append('=').append(nbr.getUri()).append('\n');
+        }
+        return sb.toString();
+    }
+}
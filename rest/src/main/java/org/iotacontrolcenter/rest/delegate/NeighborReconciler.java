@@ -0,0 +1,210 @@
+package org.iotacontrolcenter.rest.delegate;
+
+import org.iotacontrolcenter.dto.ActionResponse;
+import org.iotacontrolcenter.dto.IccrPropertyDto;
+import org.iotacontrolcenter.dto.IccrPropertyListDto;
+import org.iotacontrolcenter.dto.IotaGetNeighborsResponseDto;
+import org.iotacontrolcenter.dto.IotaNeighborDto;
+import org.iotacontrolcenter.dto.NeighborDto;
+import org.iotacontrolcenter.iota.agent.ActionFactory;
+import org.iotacontrolcenter.iota.agent.Agent;
+import org.iotacontrolcenter.properties.source.PropertySource;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Brings IRI's neighbors in line with the configured ones with as few
+ * calls as possible.
+ *
+ * IRI's current neighbors are fetched, never from the query cache, and
+ * matched to the config by address. Active configured neighbors IRI is not connected to are added,
+ * IRI neighbors ICCR is responsible for but that are no longer wanted are
+ * removed, everything else is left alone, so connections and their
+ * transaction counters survive a refresh.
+ *
+ * ICCR is responsible for the neighbors of the current and previous
+ * config, and for the addresses it saw them at. When a neighbor's host
+ * name moves to a new address IRI is still connected to the old one: that
+ * address no longer matches, so it is removed and the host name added
+ * again, which IRI resolves to the new address. Neighbors added to IRI
+ * some other way are never touched.
+ */
+public class NeighborReconciler {
+
+    private static final String DEFAULT_SCHEME = "udp";
+
+    private static NeighborReconciler instance;
+    private static Object SYNC_INST = new Object();
+    public static NeighborReconciler getInstance() {
+        synchronized (SYNC_INST) {
+            if(NeighborReconciler.instance == null) {
+                NeighborReconciler.instance = new NeighborReconciler();
+            }
+            return NeighborReconciler.instance;
+        }
+    }
+
+    private Agent agent = Agent.getInstance();
+    private DnsResolver dnsResolver = DnsResolver.getInstance();
+    private PropertySource propertySource = PropertySource.getInstance();
+
+    // Addresses of configured neighbors IRI was connected to at the last
+    // reconcile, "ip|port" to the scheme of the neighbor's URI
+    private Map<String, String> managed = new HashMap<>();
+
+    private NeighborReconciler() {
+        System.out.println("new NeighborReconciler");
+    }
+
+    /**
+     * What to change in IRI: the URIs to remove and add, and the addresses
+     * ICCR is responsible for afterwards.
+     */
+    static class Plan {
+        final List<String> toRemove = new ArrayList<>();
+        final List<String> toAdd = new ArrayList<>();
+        final Map<String, String> managed = new HashMap<>();
+        // Of the removed addresses, kept as managed if the remove fails
+        final Map<String, String> removedScheme = new HashMap<>();
+    }
+
+    /**
+     * Reconcile IRI's neighbors with the current config.
+     *
+     * @param prevNbrs the config before a change, IRI neighbors matching it
+     *                 are removed if no longer configured; may be empty
+     */
+    public synchronized ActionResponse reconcile(List<NeighborDto> prevNbrs) {
+        // A cached answer may predate the change being reconciled
+        agent.invalidateQueries();
+        ActionResponse resp = agent.action(ActionFactory.NEIGHBORS, null);
+        if(!resp.isSuccess()) {
+            System.out.println("NeighborReconciler, cannot get IRI neighbors: " + resp.getMsg());
+            return resp;
+        }
+
+        List<IotaNeighborDto> connected = connectedOf(resp.getContent());
+        Plan plan = plan(connected, propertySource.getIotaNeighbors().getNbrs(), prevNbrs, managed, dnsResolver);
+
+        System.out.println("NeighborReconciler, IRI neighbors: " + connected.size() +
+                ", to remove: " + plan.toRemove + ", to add: " + plan.toAdd);
+
+        boolean ok = true;
+        if(!plan.toRemove.isEmpty()) {
+            ActionResponse removed = runIotaAction(ActionFactory.REMOVENEIGHBORS, plan.toRemove);
+            if(!removed.isSuccess()) {
+                ok = false;
+                // Still ours, try again next time
+                plan.managed.putAll(plan.removedScheme);
+            }
+        }
+        if(!plan.toAdd.isEmpty()) {
+            ActionResponse added = runIotaAction(ActionFactory.ADDNEIGHBORS, plan.toAdd);
+            ok = ok && added.isSuccess();
+        }
+        managed = plan.managed;
+
+        return new ActionResponse(ok, "removed: " + plan.toRemove.size() + ", added: " + plan.toAdd.size());
+    }
+
+    /**
+     * The neighbors in IRI's getNeighbors answer.
+     */
+    static List<IotaNeighborDto> connectedOf(String json) {
+        Gson gson = new GsonBuilder().create();
+        IotaGetNeighborsResponseDto iotaNbrs = gson.fromJson(json, IotaGetNeighborsResponseDto.class);
+        return iotaNbrs == null || iotaNbrs.getNeighbors() == null ?
+                Collections.emptyList() : iotaNbrs.getNeighbors();
+    }
+
+    /**
+     * Match IRI's neighbors to the config.
+     *
+     * @param managed the addresses ICCR was responsible for after the last
+     *                reconcile, "ip|port" to scheme
+     */
+    static Plan plan(List<IotaNeighborDto> connected, List<NeighborDto> current, List<NeighborDto> prevNbrs,
+                     Map<String, String> managed, DnsResolver dnsResolver) {
+        List<NeighborDto> wanted = new ArrayList<>();
+        List<NeighborDto> known = new ArrayList<>(current);
+        if(prevNbrs != null) {
+            known.addAll(prevNbrs);
+        }
+        Map<String, String> uriByKey = new HashMap<>();
+        for(NeighborDto nbr : known) {
+            uriByKey.putIfAbsent(nbr.getKey(), nbr.getUri());
+        }
+        for(NeighborDto nbr : current) {
+            if(nbr.isActive()) {
+                wanted.add(nbr);
+            }
+        }
+
+        NeighborIndex wantedIndex = new NeighborIndex(wanted, dnsResolver);
+        NeighborIndex knownIndex = new NeighborIndex(known, dnsResolver);
+
+        Plan plan = new Plan();
+        Set<String> connectedKeys = new HashSet<>();
+
+        for(IotaNeighborDto iotaNbr : connected) {
+            String address = NeighborIndex.addressOf(iotaNbr);
+            if(address == null) {
+                continue;
+            }
+            List<String> keys = wantedIndex.match(iotaNbr);
+            if(!keys.isEmpty()) {
+                connectedKeys.addAll(keys);
+                plan.managed.put(address, schemeOf(uriByKey.get(keys.get(0))));
+                continue;
+            }
+
+            String scheme = managed.get(address);
+            List<String> knownKeys = knownIndex.match(iotaNbr);
+            if(scheme == null && !knownKeys.isEmpty()) {
+                scheme = schemeOf(uriByKey.get(knownKeys.get(0)));
+            }
+            if(scheme != null) {
+                // Ours but no longer wanted, or a host name's old address
+                plan.toRemove.add(NeighborIndex.uriOf(address, scheme));
+                plan.removedScheme.put(address, scheme);
+            }
+        }
+
+        // A host name not resolved yet matches nothing and is added again,
+        // IRI ignores neighbors it already has
+        for(NeighborDto nbr : wanted) {
+            if(!connectedKeys.contains(nbr.getKey())) {
+                plan.toAdd.add(nbr.getUri());
+            }
+        }
+        return plan;
+    }
+
+    private ActionResponse runIotaAction(String action, List<String> uris) {
+        IccrPropertyListDto props = new IccrPropertyListDto();
+        for(String uri : uris) {
+            props.addProperty(new IccrPropertyDto("uri", uri));
+        }
+        try {
+            return agent.action(action, props);
+        }
+        catch(Exception e) {
+            System.out.println("NeighborReconciler, " + action + " exception: " + e.getMessage());
+            return new ActionResponse(false, e.getLocalizedMessage());
+        }
+    }
+
+    private static String schemeOf(String uri) {
+        int sepIdx = uri == null ? -1 : uri.indexOf("://");
+        return sepIdx <= 0 ? DEFAULT_SCHEME : uri.substring(0, sepIdx);
+    }
+}
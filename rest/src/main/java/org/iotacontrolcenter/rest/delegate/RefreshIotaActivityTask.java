@@ -1,46 +1,25 @@
 package org.iotacontrolcenter.rest.delegate;
 
-import java.util.TimerTask;
 
 import org.iotacontrolcenter.dto.ActionResponse;
 import org.iotacontrolcenter.iota.agent.ActionFactory;
 import org.iotacontrolcenter.iota.agent.Agent;
 
-public class RefreshIotaActivityTimerTask extends TimerTask {
+// Run by the Scheduler, which never runs it twice at once
+public class RefreshIotaActivityTask implements Runnable {
 
     private Agent agent = Agent.getInstance();
-    private boolean isRunning = false;
-    private Object syncObj = new Object();
 
     private Delegate delegate = Delegate.getInstance();
 
     @Override
     public void run() {
-        if(isRunning()) {
-            return;
-        }
-        setIsRunning(true);
         try {
             ActionResponse resp = runIotaAction(ActionFactory.NEIGHBORS);
             delegate.iotaActionDone(ActionFactory.NEIGHBORS, resp);
         }
         catch(Exception e) {
         }
-        finally {
-            setIsRunning(false);
-        }
-    }
-
-    private boolean isRunning() {
-        synchronized (syncObj) {
-            return isRunning;
-        }
-    }
-
-    private void setIsRunning(boolean isRunning) {
-        synchronized (syncObj) {
-            this.isRunning = isRunning;
-        }
     }
 
     private ActionResponse runIotaAction(String action) {
@@ -52,20 +31,17 @@ public class RefreshIotaActivityTimerTask extends TimerTask {
         catch(IllegalArgumentException iae) {
             System.out.println("delegate runIotaAction illegal arg error: " + iae.getMessage());
             iae.printStackTrace();
-            resp.setSuccess(false);
-            resp.setMsg(iae.getLocalizedMessage());
+            resp = new ActionResponse(false, iae.getLocalizedMessage());
         }
         catch(IllegalStateException ise) {
             System.out.println("doIotaAction illegal state error: " + ise.getMessage());
             ise.printStackTrace();
-            resp.setSuccess(false);
-            resp.setMsg(ise.getLocalizedMessage());
+            resp = new ActionResponse(false, ise.getLocalizedMessage());
         }
         catch(Exception e) {
             System.out.println("doIotaAction server error: " + e.getMessage());
             e.printStackTrace();
-            resp.setSuccess(false);
-            resp.setMsg(e.getLocalizedMessage());
+            resp = new ActionResponse(false, e.getLocalizedMessage());
         }
         return resp;
     }
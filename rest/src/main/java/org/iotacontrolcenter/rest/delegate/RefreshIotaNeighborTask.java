@@ -0,0 +1,23 @@
+package org.iotacontrolcenter.rest.delegate;
+
+import java.util.Collections;
+
+
+// Run by the Scheduler, which never runs it twice at once
+public class RefreshIotaNeighborTask implements Runnable {
+
+    private NeighborReconciler reconciler = NeighborReconciler.getInstance();
+
+    @Override
+    public void run() {
+        System.out.println("delegate reconciling Iota neighbors");
+        try {
+            reconciler.reconcile(Collections.emptyList());
+        }
+        catch(Exception e) {
+            System.out.println("delegate reconcile Iota neighbors error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+}
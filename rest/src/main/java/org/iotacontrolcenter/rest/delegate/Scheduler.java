@@ -0,0 +1,281 @@
+package org.iotacontrolcenter.rest.delegate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs ICCR's periodic jobs on one small ScheduledExecutorService.
+ *
+ * Jobs run with a fixed delay: the next run is scheduled when the current
+ * one ends, so a job never overlaps itself, and a slow run pushes the next
+ * one back instead of queueing up runs. Each delay is jittered so jobs
+ * started together drift apart. A job that throws is logged and runs
+ * again next time. The period of a scheduled job can be changed in place.
+ *
+ * Cancelling a job leaves a run in progress to finish. A job scheduled under
+ * the same name meanwhile is chained after that run, so restarting a job
+ * never lets the old and the new one run at once.
+ */
+public class Scheduler {
+
+    public static final int THREADS = 2;
+    // Each delay is the period plus or minus up to this fraction of it
+    public static final double DEFAULT_JITTER = 0.1;
+
+    private static Scheduler instance;
+    private static Object SYNC_INST = new Object();
+    public static Scheduler getInstance() {
+        synchronized (SYNC_INST) {
+            if(Scheduler.instance == null) {
+                Scheduler.instance = new Scheduler();
+            }
+            return Scheduler.instance;
+        }
+    }
+
+    /**
+     * Run counts and timings of a job.
+     */
+    public static class JobStats {
+        public final String name;
+        public final long periodMs;
+        public final long runs;
+        public final long failures;
+        public final long lastStart;
+        public final long lastDurationMs;
+        public final long maxDurationMs;
+        public final String lastError;
+
+        JobStats(Job job) {
+            name = job.name;
+            periodMs = job.periodMs;
+            runs = job.runs;
+            failures = job.failures;
+            lastStart = job.lastStart;
+            lastDurationMs = job.lastDurationMs;
+            maxDurationMs = job.maxDurationMs;
+            lastError = job.lastError;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{period=" + periodMs + "ms, runs=" + runs + ", failures=" + failures +
+                    ", lastDuration=" + lastDurationMs + "ms, maxDuration=" + maxDurationMs + "ms" +
+                    (lastError == null ? "" : ", lastError=" + lastError) + "}";
+        }
+    }
+
+    // Fields are guarded by the job itself
+    private class Job implements Runnable {
+        final String name;
+        final Runnable task;
+        final double jitter;
+        long periodMs;
+        boolean cancelled = false;
+        boolean running = false;
+        ScheduledFuture<?> next;
+        // Scheduled under this name after this job was cancelled while running, started when the run ends
+        Job successor;
+        long successorDelayMs;
+
+        long runs = 0;
+        long failures = 0;
+        long lastStart = 0;
+        long lastDurationMs = 0;
+        long maxDurationMs = 0;
+        String lastError;
+
+        Job(String name, Runnable task, long periodMs, double jitter) {
+            this.name = name;
+            this.task = task;
+            this.periodMs = periodMs;
+            this.jitter = jitter;
+        }
+
+        @Override
+        public void run() {
+            synchronized(this) {
+                if(cancelled) {
+                    return;
+                }
+                running = true;
+                lastStart = System.currentTimeMillis();
+            }
+            long start = System.nanoTime();
+            String error = null;
+            try {
+                task.run();
+            }
+            catch(Throwable t) {
+                error = t.toString();
+                System.out.println("Scheduler, job " + name + " failed: " + t);
+                t.printStackTrace();
+            }
+            long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            synchronized(this) {
+                running = false;
+                runs++;
+                lastDurationMs = durationMs;
+                maxDurationMs = Math.max(maxDurationMs, durationMs);
+                if(error != null) {
+                    failures++;
+                    lastError = error;
+                }
+                if(!cancelled) {
+                    scheduleNext(periodMs);
+                }
+                else {
+                    draining.remove(name, this);
+                    if(successor != null) {
+                        synchronized(successor) {
+                            if(!successor.cancelled) {
+                                successor.scheduleNext(successorDelayMs);
+                            }
+                        }
+                        successor = null;
+                    }
+                }
+            }
+        }
+
+        // Called holding the job's lock
+        void scheduleNext(long delayMs) {
+            next = executor.schedule(this, jittered(delayMs, jitter), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    // Cancelled jobs whose last run has not ended yet
+    private final Map<String, Job> draining = new ConcurrentHashMap<>();
+
+    private Scheduler() {
+        System.out.println("new Scheduler");
+        AtomicInteger threadNum = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(THREADS, r -> {
+            Thread t = new Thread(r, "iccr-scheduler-" + threadNum.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // Cancelled runs are dropped from the queue at once instead of when due
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Run task every periodMs, the first time after initialDelayMs. Does
+     * nothing if a job with this name is already scheduled. If a cancelled
+     * job with this name is still running, initialDelayMs counts from the
+     * end of that run.
+     *
+     * @return false if the job was already scheduled
+     */
+    public synchronized boolean schedule(String name, Runnable task, long initialDelayMs, long periodMs) {
+        return schedule(name, task, initialDelayMs, periodMs, DEFAULT_JITTER);
+    }
+
+    public synchronized boolean schedule(String name, Runnable task, long initialDelayMs, long periodMs,
+                                         double jitter) {
+        if(periodMs <= 0) {
+            throw new IllegalArgumentException("Scheduler, period of " + name + " must be positive: " + periodMs);
+        }
+        if(jobs.containsKey(name)) {
+            return false;
+        }
+        Job job = new Job(name, task, periodMs, jitter);
+        jobs.put(name, job);
+        Job prev = draining.get(name);
+        if(prev != null) {
+            synchronized(prev) {
+                if(prev.running) {
+                    prev.successor = job;
+                    prev.successorDelayMs = initialDelayMs;
+                    System.out.println("Scheduler, scheduled " + name + " every " + periodMs +
+                            " ms, after the cancelled run ends");
+                    return true;
+                }
+            }
+        }
+        synchronized(job) {
+            job.scheduleNext(initialDelayMs);
+        }
+        System.out.println("Scheduler, scheduled " + name + " every " + periodMs + " ms");
+        return true;
+    }
+
+    /**
+     * Change a job's period. A run in progress finishes and the next one
+     * follows the new period; otherwise the pending run is moved to one new
+     * period from now.
+     *
+     * @return false if there is no such job
+     */
+    public synchronized boolean reschedule(String name, long periodMs) {
+        if(periodMs <= 0) {
+            throw new IllegalArgumentException("Scheduler, period of " + name + " must be positive: " + periodMs);
+        }
+        Job job = jobs.get(name);
+        if(job == null) {
+            return false;
+        }
+        synchronized(job) {
+            job.periodMs = periodMs;
+            if(!job.running && job.next != null && job.next.cancel(false)) {
+                job.scheduleNext(periodMs);
+            }
+        }
+        System.out.println("Scheduler, rescheduled " + name + " every " + periodMs + " ms");
+        return true;
+    }
+
+    /**
+     * Stop a job. A run in progress is left to finish, and a job scheduled
+     * under the same name before it does starts after it.
+     */
+    public synchronized boolean cancel(String name) {
+        Job job = jobs.remove(name);
+        if(job == null) {
+            return false;
+        }
+        synchronized(job) {
+            job.cancelled = true;
+            if(job.next != null) {
+                job.next.cancel(false);
+            }
+            if(job.running) {
+                draining.put(name, job);
+            }
+            System.out.println("Scheduler, cancelled " + new JobStats(job));
+        }
+        return true;
+    }
+
+    public boolean isScheduled(String name) {
+        return jobs.containsKey(name);
+    }
+
+    public JobStats getStats(String name) {
+        Job job = jobs.get(name);
+        if(job == null) {
+            return null;
+        }
+        synchronized(job) {
+            return new JobStats(job);
+        }
+    }
+
+    private static long jittered(long delayMs, double jitter) {
+        if(jitter <= 0 || delayMs <= 0) {
+            return Math.max(delayMs, 0);
+        }
+        long spread = (long)(delayMs * jitter);
+        if(spread <= 0) {
+            return delayMs;
+        }
+        return delayMs + ThreadLocalRandom.current().nextLong(-spread, spread + 1);
+    }
+}
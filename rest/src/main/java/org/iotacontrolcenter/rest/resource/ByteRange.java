@@ -0,0 +1,95 @@
+package org.iotacontrolcenter.rest.resource;
+
+/**
+ * A single HTTP byte range (RFC 7233), resolved against the current file size.
+ * Only the single range forms are supported: "bytes=first-last", "bytes=first-"
+ * and "bytes=-suffixLength".
+ */
+public class ByteRange {
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    private final long first;
+    private final long last;
+
+    private ByteRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    public static ByteRange full(long size) {
+        return new ByteRange(0L, size - 1);
+    }
+
+    /**
+     * Returns null if the header is absent, and throws IllegalArgumentException
+     * if the range is malformed or can't be satisfied.
+     */
+    public static ByteRange parse(String header, long size) {
+        if(header == null || header.trim().isEmpty()) {
+            return null;
+        }
+
+        String spec = header.trim();
+        if(!spec.startsWith(BYTES_UNIT) || spec.indexOf(',') >= 0) {
+            throw new IllegalArgumentException("Unsupported range: " + header);
+        }
+        spec = spec.substring(BYTES_UNIT.length()).trim();
+
+        int dash = spec.indexOf('-');
+        if(dash < 0) {
+            throw new IllegalArgumentException("Invalid range: " + header);
+        }
+
+        String firstStr = spec.substring(0, dash).trim();
+        String lastStr = spec.substring(dash + 1).trim();
+        long first;
+        long last;
+        try {
+            if(firstStr.isEmpty()) {
+                long suffix = Long.parseLong(lastStr);
+                if(suffix <= 0) {
+                    throw new IllegalArgumentException("Invalid range: " + header);
+                }
+                first = Math.max(0L, size - suffix);
+                last = size - 1;
+            }
+            else {
+                first = Long.parseLong(firstStr);
+                last = lastStr.isEmpty() ? size - 1 : Math.min(Long.parseLong(lastStr), size - 1);
+            }
+        }
+        catch(NumberFormatException nfe) {
+            throw new IllegalArgumentException("Invalid range: " + header);
+        }
+
+        if(first < 0 || first >= size || last < first) {
+            throw new IllegalArgumentException("Unsatisfiable range: " + header);
+        }
+        return new ByteRange(first, last);
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public long getLast() {
+        return last;
+    }
+
+    public long getLength() {
+        return last - first + 1;
+    }
+
+    public String toContentRange(long size) {
+        return "bytes " + first + "-" + last + "/" + size;
+    }
+
+    @Override
+    public String toString() {
+        return "ByteRange{" +
+                "first=" + first +
+                ", last=" + last +
+                '}';
+    }
+}
@@ -3,16 +3,22 @@ package org.iotacontrolcenter.rest.resource;
 import java.net.HttpURLConnection;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletionException;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.iotacontrolcenter.api.IccrService;
+import org.iotacontrolcenter.dto.ActionJobResponse;
 import org.iotacontrolcenter.dto.ActionResponse;
+import org.iotacontrolcenter.dto.EventLogResponse;
 import org.iotacontrolcenter.dto.IccrIotaNeighborsPropertyDto;
 import org.iotacontrolcenter.dto.IccrPropertyDto;
 import org.iotacontrolcenter.dto.IccrPropertyListDto;
 import org.iotacontrolcenter.dto.LogLinesResponse;
+import org.iotacontrolcenter.dto.NeighborTrafficResponse;
 import org.iotacontrolcenter.dto.SimpleResponse;
 import org.iotacontrolcenter.iccr.agent.IccrAgent;
 import org.iotacontrolcenter.iota.agent.ActionFactory;
@@ -22,9 +28,12 @@ import org.iotacontrolcenter.persistence.PersistenceService;
 import org.iotacontrolcenter.properties.locale.Localizer;
 import org.iotacontrolcenter.properties.source.PropertySource;
 import org.iotacontrolcenter.rest.delegate.Delegate;
+import org.iotacontrolcenter.rest.delegate.NeighborReconciler;
 
 public class IccrServiceImpl implements IccrService {
 
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
     private Agent agent = Agent.getInstance();
     private IccrAgent iccrAgent = IccrAgent.getInstance();
     private Localizer localizer = Localizer.getInstance();
@@ -140,6 +149,90 @@ public class IccrServiceImpl implements IccrService {
         return r.build();
     }
 
+    @Override
+    public Response submitIotaAction(HttpServletRequest request, String action, IccrPropertyListDto actionProps) {
+        if (!authorizedRequest(request)) {
+            return unauthorizedResponse(request);
+        }
+        System.out.println("submitIotaAction(" + action + ")");
+
+        try {
+            ActionJobResponse job = agent.submit(action, actionProps,
+                    resp -> delegate.iotaActionDone(action, resp));
+
+            return Response.status(HttpURLConnection.HTTP_ACCEPTED).
+                    header("Location", "/iccr/rs/iota/jobs/" + job.getId()).
+                    entity(job).
+                    build();
+        }
+        catch(Exception e) {
+            return iotaActionErrorResponse(action, e);
+        }
+    }
+
+    @Override
+    public Response getIotaActionJob(HttpServletRequest request, String id) {
+        if (!authorizedRequest(request)) {
+            return unauthorizedResponse(request);
+        }
+
+        ActionJobResponse job = agent.getJob(id);
+        if(job == null) {
+            return Response.status(HttpURLConnection.HTTP_NOT_FOUND).
+                    entity(new SimpleResponse(false, localizer.getLocalTextWithFixed("unknownActionJob", ": " + id))).
+                    build();
+        }
+        return Response.status(HttpURLConnection.HTTP_OK).entity(job).build();
+    }
+
+    @Override
+    public Response getIotaNeighborsTraffic(HttpServletRequest request, String since, String until) {
+        if(!authorizedRequest(request)) {
+            return unauthorizedResponse(request);
+        }
+        System.out.println("getIotaNeighborsTraffic, since => " + since + ", until => " + until);
+
+        return neighborTrafficResponse(null, since, until);
+    }
+
+    @Override
+    public Response getIotaNeighborTraffic(HttpServletRequest request, String key, String since, String until) {
+        if(!authorizedRequest(request)) {
+            return unauthorizedResponse(request);
+        }
+        System.out.println("getIotaNeighborTraffic, key => " + key + ", since => " + since + ", until => " + until);
+
+        if(key == null || key.isEmpty()) {
+            return Response.status(HttpURLConnection.HTTP_BAD_REQUEST).
+                    entity(new SimpleResponse(false, localizer.getLocalText("invalidRequestNoKey"))).
+                    build();
+        }
+        return neighborTrafficResponse(key, since, until);
+    }
+
+    // Served from the traffic store alone, the neighbor config is not read
+    private Response neighborTrafficResponse(String key, String since, String until) {
+        Response.ResponseBuilder r;
+        try {
+            NeighborTrafficResponse resp = persistenceService.queryNeighborTraffic(key, since, until);
+            if(resp == null) {
+                r = Response.status(HttpURLConnection.HTTP_NOT_FOUND).
+                        entity(new SimpleResponse(false, localizer.getLocalTextWithFixed("unknownNeighbor", ": " + key)));
+            }
+            else {
+                r = Response.status(resp.isSuccess() ? HttpURLConnection.HTTP_OK : HttpURLConnection.HTTP_BAD_REQUEST);
+                r.entity(resp);
+            }
+        }
+        catch(Exception e) {
+            System.out.println("neighborTrafficResponse exception: ");
+            e.printStackTrace();
+            r = Response.status(HttpURLConnection.HTTP_INTERNAL_ERROR).
+                    entity(new SimpleResponse(false, localizer.getLocalText("serverError") + ": " + e.getLocalizedMessage()));
+        }
+        return r.build();
+    }
+
     @Override
     public Response getConfigProperties(HttpServletRequest request) {
         if(!authorizedRequest(request)) {
@@ -175,7 +268,9 @@ public class IccrServiceImpl implements IccrService {
         IccrPropertyDto prop;
 
         if(key.equals(PropertySource.IOTA_NEIGHBORS_PROP)) {
-            prop = propSource.getIotaNeighbors();
+            IccrIotaNeighborsPropertyDto nbrs = propSource.getIotaNeighbors();
+            persistenceService.loadNeighborActivity(nbrs.getNbrs());
+            prop = nbrs;
         }
         else {
             prop = new IccrPropertyDto(key, propSource.getString(key));
@@ -224,16 +319,40 @@ public class IccrServiceImpl implements IccrService {
     }
 
     @Override
-    public Response getIccrEventLog(HttpServletRequest request) {
+    public Response getIccrEventLog(HttpServletRequest request,
+            String since,
+            String until,
+            String type,
+            Integer limit,
+            String cursor) {
         if(!authorizedRequest(request)) {
             return unauthorizedResponse(request);
         }
         Response.ResponseBuilder r = null;
 
         try {
-            List<String> log = persistenceService.getEventLog();
-            r = Response.status(HttpURLConnection.HTTP_OK);
-            r.entity(log);
+            if(since == null && until == null && type == null && limit == null && cursor == null) {
+                // Unfiltered, the whole log as a plain list
+                List<String> log = persistenceService.getEventLog();
+                r = Response.status(HttpURLConnection.HTTP_OK);
+                r.entity(log);
+            }
+            else {
+                System.out.println("getIccrEventLog, since => " + since + ", " +
+                        "until => " + until + ", " +
+                        "type => " + type + ", " +
+                        "limit => " + limit + ", " +
+                        "cursor => " + cursor);
+
+                EventLogResponse resp = persistenceService.queryEventLog(since, until, type, limit, cursor);
+                if(resp.isSuccess()) {
+                    r = Response.status(HttpURLConnection.HTTP_OK);
+                }
+                else {
+                    r = Response.status(HttpURLConnection.HTTP_BAD_REQUEST);
+                }
+                r.entity(resp);
+            }
         }
         catch(Exception e) {
             System.out.println("getIccrEventLog exception: ");
@@ -245,24 +364,70 @@ public class IccrServiceImpl implements IccrService {
         return r.build();
     }
 
+    @Override
+    public Response streamIccrEventLog(HttpServletRequest request, String range, boolean gzip) {
+        if(!authorizedRequest(request)) {
+            return unauthorizedResponse(request);
+        }
+        System.out.println("streamIccrEventLog, range => " + range + ", gzip => " + gzip);
+
+        try {
+            return streamLog("eventlog", persistenceService.getEventLogSize(),
+                    persistenceService::streamEventLog, range, gzip);
+        }
+        catch(Exception e) {
+            System.out.println("streamIccrEventLog exception: ");
+            e.printStackTrace();
+            return Response.status(HttpURLConnection.HTTP_INTERNAL_ERROR).
+                    entity(new SimpleResponse(false, localizer.getLocalText("serverError") + ": " + e.getLocalizedMessage())).
+                    type(MediaType.APPLICATION_JSON).
+                    build();
+        }
+    }
+
+    @Override
+    public Response streamIotaLog(HttpServletRequest request, String range, boolean gzip) {
+        if(!authorizedRequest(request)) {
+            return unauthorizedResponse(request);
+        }
+        System.out.println("streamIotaLog, range => " + range + ", gzip => " + gzip);
+
+        try {
+            return streamLog("iotalog", persistenceService.getIotaLogSize(),
+                    persistenceService::streamIotaLog, range, gzip);
+        }
+        catch(Exception e) {
+            System.out.println("streamIotaLog exception: ");
+            e.printStackTrace();
+            return Response.status(HttpURLConnection.HTTP_INTERNAL_ERROR).
+                    entity(new SimpleResponse(false, localizer.getLocalText("serverError") + ": " + e.getLocalizedMessage())).
+                    type(MediaType.APPLICATION_JSON).
+                    build();
+        }
+    }
+
     @Override
     public Response getIotaLog(HttpServletRequest request,
             String fileDirection,
             Long numLines,
             Long lastFileLength,
-            Long lastFilePosition) {
+            Long lastFilePosition,
+            Long firstLine,
+            Long page) {
         if(!authorizedRequest(request)) {
             return unauthorizedResponse(request);
         }
         System.out.println("getIotaLog, fileDirection => " + fileDirection + ", " +
                 "numLines => " + numLines + ", " +
                 "lastFileLength => " + lastFileLength + ", " +
-                "lastFilePosition => " + lastFilePosition);
+                "lastFilePosition => " + lastFilePosition + ", " +
+                "firstLine => " + firstLine + ", " +
+                "page => " + page);
 
         Response.ResponseBuilder r = null;
 
         try {
-            LogLinesResponse resp = persistenceService.getIotaLog(fileDirection, lastFilePosition, lastFileLength, numLines);
+            LogLinesResponse resp = persistenceService.getIotaLog(fileDirection, lastFilePosition, lastFileLength, numLines, firstLine, page);
             if(resp.isSuccess()) {
                 r = Response.status(HttpURLConnection.HTTP_OK);
             }
@@ -289,53 +454,69 @@ public class IccrServiceImpl implements IccrService {
         System.out.println("getIotaNbrsConfig");
         Response.ResponseBuilder r = Response.status(HttpURLConnection.HTTP_OK);
         IccrIotaNeighborsPropertyDto prop = propSource.getIotaNeighbors();
+        persistenceService.loadNeighborActivity(prop.getNbrs());
 
         r.entity(prop);
         return r.build();
     }
 
     @Override
-    public Response getIotaNeighbors(HttpServletRequest request, IccrPropertyListDto actionProps) {
-        return doIotaAction(request, ActionFactory.NEIGHBORS, actionProps);
+    public void getIotaNeighbors(HttpServletRequest request, IccrPropertyListDto actionProps,
+                                 AsyncResponse asyncResponse) {
+        doIotaActionAsync(request, ActionFactory.NEIGHBORS, actionProps, asyncResponse);
     }
 
     @Override
-    public Response getIotaNodeInfo(HttpServletRequest request) {
+    public void getIotaNodeInfo(HttpServletRequest request, AsyncResponse asyncResponse) {
+        doIotaActionAsync(request, ActionFactory.NODEINFO, null, asyncResponse);
+    }
+
+    // The request thread is released while IRI answers, the response is resumed from a callback thread
+    private void doIotaActionAsync(HttpServletRequest request, String action, IccrPropertyListDto actionProps,
+                                   AsyncResponse asyncResponse) {
         if (!authorizedRequest(request)) {
-            return unauthorizedResponse(request);
-        }
-        System.out.println("getIotaNodeInfo");
-        Response.ResponseBuilder r;
-        try {
-            ActionResponse resp = agent.action(ActionFactory.NODEINFO, null);
-            r = Response.status(HttpURLConnection.HTTP_OK);
-            r.entity(resp);
+            asyncResponse.resume(unauthorizedResponse(request));
+            return;
         }
-        catch(IllegalArgumentException iae) {
-            System.out.println("getIotaNodeInfo exception: ");
-            iae.printStackTrace();
+        System.out.println("doIotaActionAsync(" + action + ")");
 
-            // Message is already localized
-            r = Response.status(HttpURLConnection.HTTP_BAD_REQUEST).
-                    entity(new SimpleResponse(false, iae.getMessage()));
-        }
-        catch(IllegalStateException ise) {
-            System.out.println("getIotaNodeInfo exception: ");
-            ise.printStackTrace();
+        try {
+            agent.actionAsync(action, actionProps).whenCompleteAsync((resp, t) -> {
+                if(t != null) {
+                    asyncResponse.resume(iotaActionErrorResponse(action, t));
+                    return;
+                }
+                try {
+                    delegate.iotaActionDone(action, resp);
 
-            // Message is already localized
-            r = Response.status(HttpURLConnection.HTTP_BAD_REQUEST).
-                    entity(new SimpleResponse(false, ise.getMessage()));
+                    asyncResponse.resume(Response.status(HttpURLConnection.HTTP_OK).entity(resp).build());
+                }
+                catch(Exception e) {
+                    asyncResponse.resume(iotaActionErrorResponse(action, e));
+                }
+            }, agent.getCallbackExecutor());
         }
         catch(Exception e) {
-            System.out.println("getIotaNodeInfo exception: ");
-            e.printStackTrace();
+            asyncResponse.resume(iotaActionErrorResponse(action, e));
+        }
+    }
 
-            r = Response.status(HttpURLConnection.HTTP_INTERNAL_ERROR).
-                    entity(new SimpleResponse(false, localizer.getLocalText("serverError") + ": " + e.getLocalizedMessage()));
+    private Response iotaActionErrorResponse(String action, Throwable t) {
+        if(t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
         }
+        System.out.println(action + " exception: ");
+        t.printStackTrace();
 
-        return r.build();
+        if(t instanceof IllegalArgumentException || t instanceof IllegalStateException) {
+            // Message is already localized
+            return Response.status(HttpURLConnection.HTTP_BAD_REQUEST).
+                    entity(new SimpleResponse(false, t.getMessage())).
+                    build();
+        }
+        return Response.status(HttpURLConnection.HTTP_INTERNAL_ERROR).
+                entity(new SimpleResponse(false, localizer.getLocalText("serverError") + ": " + t.getLocalizedMessage())).
+                build();
     }
 
     @Override
@@ -355,9 +536,13 @@ public class IccrServiceImpl implements IccrService {
         System.out.println("updateConfigProperties");
 
         try {
+            propSource.update(editor -> {
+                for(IccrPropertyDto prop : properties.getProperties()) {
+                    System.out.println(prop.getKey() + " -> " + prop.getValue());
+                    editor.set(prop.getKey(), prop.getValue());
+                }
+            });
             for(IccrPropertyDto prop : properties.getProperties()) {
-                System.out.println(prop.getKey() + " -> " + prop.getValue());
-                propSource.setProperty(prop.getKey(), prop.getValue());
                 delegate.iccrPropSet(prop.getKey());
             }
             r = Response.status(HttpURLConnection.HTTP_OK);
@@ -428,32 +613,15 @@ public class IccrServiceImpl implements IccrService {
             return r.build();
         }
 
-        // If IOTA was active, need to update its nbrs list, we'll just remove all prev, then update config,
-        // then add all current
+        // If IOTA was active, its nbrs are reconciled with the new config afterwards,
+        // the prev config tells which of its nbrs ICCR had configured
         boolean wasActive = AgentUtil.isIotaActive();
-
-        if(wasActive) {
-
-            IccrIotaNeighborsPropertyDto prevNbrs = propSource.getIotaNeighbors();
-            if(prevNbrs != null && !prevNbrs.getNbrs().isEmpty()) {
-
-                System.out.println("updateIotaNbrsConfig: IOTA was active, removing neighbors");
-
-                try {
-                    ActionResponse resp1 = agent.action(ActionFactory.REMOVENEIGHBORS, null);
-                } catch (Exception e) {
-                    System.out.println("updateIotaNbrsConfig remove nbrs exception: ");
-                    e.printStackTrace();
-                }
-            }
-            else {
-                System.out.println("updateIotaNbrsConfig: IOTA was active, but no neighbors were configured");
-            }
-        }
+        IccrIotaNeighborsPropertyDto prevNbrs = wasActive ? propSource.getIotaNeighbors() : null;
 
         boolean ok = true;
         try {
             propSource.setIotaNeighborsConfig(prop);
+            persistenceService.retainNeighborActivity(propSource.getNeighborKeys());
 
             delegate.iccrPropSet(PropertySource.IOTA_NEIGHBORS_PROP);
 
@@ -469,13 +637,14 @@ public class IccrServiceImpl implements IccrService {
         }
 
         if(ok && wasActive) {
-            System.out.println("updateIotaNbrsConfig: IOTA was active, adding current neighbors");
+            System.out.println("updateIotaNbrsConfig: IOTA was active, reconciling neighbors");
 
             try {
-                ActionResponse resp2 = agent.action(ActionFactory.ADDNEIGHBORS, null);
+                ActionResponse resp = NeighborReconciler.getInstance().reconcile(prevNbrs == null ? null : prevNbrs.getNbrs());
+                System.out.println("updateIotaNbrsConfig reconcile nbrs: " + resp.getMsg());
             }
             catch(Exception e) {
-                System.out.println("updateIotaNbrsConfig add nbrs exception: ");
+                System.out.println("updateIotaNbrsConfig reconcile nbrs exception: ");
                 e.printStackTrace();
             }
         }
@@ -483,6 +652,43 @@ public class IccrServiceImpl implements IccrService {
         return r.build();
     }
 
+    // The size is fixed when the request arrives, so a growing log streams a consistent snapshot.
+    // A byte range is served uncompressed, gzip applies only to whole file downloads.
+    private Response streamLog(String name, long size, LogStreamingOutput.RangeWriter writer, String rangeHeader, boolean gzip) {
+        ByteRange range;
+        try {
+            range = ByteRange.parse(rangeHeader, size);
+        }
+        catch(IllegalArgumentException iae) {
+            return Response.status(HTTP_RANGE_NOT_SATISFIABLE).
+                    header("Content-Range", "bytes */" + size).
+                    entity(new SimpleResponse(false, iae.getMessage())).
+                    type(MediaType.APPLICATION_JSON).
+                    build();
+        }
+
+        Response.ResponseBuilder r;
+        if(range != null) {
+            r = Response.status(HttpURLConnection.HTTP_PARTIAL);
+            r.header("Content-Range", range.toContentRange(size));
+            r.header("Content-Length", range.getLength());
+            r.entity(new LogStreamingOutput(name, writer, range.getFirst(), range.getLength(), false));
+        }
+        else {
+            r = Response.status(HttpURLConnection.HTTP_OK);
+            if(gzip) {
+                r.header("Content-Encoding", "gzip");
+            }
+            else {
+                r.header("Content-Length", size);
+            }
+            r.entity(new LogStreamingOutput(name, writer, 0L, size, gzip));
+        }
+        r.header("Accept-Ranges", "bytes");
+        r.type(MediaType.TEXT_PLAIN);
+        return r.build();
+    }
+
     private boolean authorizedRequest(HttpServletRequest request) {
         String apiAccessKey = request.getHeader(ResourceUtil.API_ACCESS_KEY_PROP);
         return apiAccessKey != null && !apiAccessKey.isEmpty() && apiAccessKey.equals(propSource.getApiKey());
@@ -0,0 +1,51 @@
+package org.iotacontrolcenter.rest.resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Writes a byte range of a log straight to the response stream, optionally
+ * gzip compressed, so the log is never held in memory as a whole.
+ */
+public class LogStreamingOutput implements StreamingOutput {
+
+    public interface RangeWriter {
+        long write(OutputStream out, long start, long length) throws IOException;
+    }
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+    private final RangeWriter writer;
+    private final long start;
+    private final long length;
+    private final boolean gzip;
+
+    public LogStreamingOutput(String name, RangeWriter writer, long start, long length, boolean gzip) {
+        this.name = name;
+        this.writer = writer;
+        this.start = start;
+        this.length = length;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        long written;
+        if(gzip) {
+            GZIPOutputStream gzOut = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+            written = writer.write(gzOut, start, length);
+            gzOut.finish();
+        }
+        else {
+            written = writer.write(out, start, length);
+        }
+        out.flush();
+
+        System.out.println("streamed " + name + ": " + written + " bytes from " + start +
+                (gzip ? " (gzip)" : ""));
+    }
+}
@@ -0,0 +1,111 @@
+package org.iotacontrolcenter.rest.delegate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DnsResolverTest {
+
+    Map<String, String> hosts;
+    AtomicInteger lookups;
+    DnsResolver dns;
+
+    @Before
+    public void setUp() {
+        hosts = new HashMap<>();
+        lookups = new AtomicInteger();
+        dns = new DnsResolver(host -> {
+            lookups.incrementAndGet();
+            String ip = hosts.get(host);
+            if(ip == null) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[] { InetAddress.getByName(ip) };
+        });
+    }
+
+    @Test
+    public void testNormalizeIpv4() {
+        assertEquals("10.0.0.1", DnsResolver.normalizeLiteral("10.0.0.1"));
+        assertEquals("93.188.173.198", DnsResolver.normalizeLiteral("93.188.173.198"));
+    }
+
+    @Test
+    public void testNormalizeIpv6() {
+        String expected = "2a01:4f8:190:32cc:0:0:0:2";
+        assertEquals(expected, DnsResolver.normalizeLiteral("2a01:4f8:190:32cc::2"));
+        assertEquals(expected, DnsResolver.normalizeLiteral("[2a01:4f8:190:32cc::2]"));
+        assertEquals(expected, DnsResolver.normalizeLiteral("2a01:4f8:190:32cc:0:0:0:2"));
+        assertEquals(expected, DnsResolver.normalizeLiteral("2A01:04F8:0190:32CC::0002"));
+    }
+
+    @Test
+    public void testHostNamesAreNotLiterals() {
+        assertNull(DnsResolver.normalizeLiteral("fred.com"));
+        assertNull(DnsResolver.normalizeLiteral("10.0.0.1.example.com"));
+        assertNull(DnsResolver.normalizeLiteral(""));
+        assertNull(DnsResolver.normalizeLiteral(null));
+    }
+
+    @Test
+    public void testLiteralsAreNeverLookedUp() {
+        assertEquals(Collections.singleton("10.0.0.1"), dns.cached("10.0.0.1"));
+        assertEquals(Collections.singleton("2a01:4f8:190:32cc:0:0:0:2"), dns.cached("[2a01:4f8:190:32cc::2]"));
+        assertEquals(Collections.singleton("10.0.0.1"), dns.resolveAsync("10.0.0.1").join());
+        assertEquals(0, lookups.get());
+    }
+
+    @Test
+    public void testResolvedAddressesAreCached() {
+        hosts.put("fred.com", "93.188.173.198");
+        assertEquals(Collections.singleton("93.188.173.198"), dns.resolveAsync("fred.com").join());
+
+        assertEquals(Collections.singleton("93.188.173.198"), dns.cached("fred.com"));
+        assertEquals(Collections.singleton("93.188.173.198"), dns.cached("FRED.com"));
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void testFailedLookupKeepsLastGoodAddresses() {
+        hosts.put("fred.com", "93.188.173.198");
+        dns.resolveAsync("fred.com").join();
+        long generation = dns.getGeneration();
+
+        hosts.remove("fred.com");
+        assertEquals(Collections.singleton("93.188.173.198"), dns.resolveAsync("fred.com").join());
+        assertEquals(Collections.singleton("93.188.173.198"), dns.cached("fred.com"));
+        assertEquals(generation, dns.getGeneration());
+    }
+
+    @Test
+    public void testNeverResolvedHostHasNoAddresses() {
+        assertTrue(dns.resolveAsync("nowhere.invalid").join().isEmpty());
+        assertTrue(dns.cached("nowhere.invalid").isEmpty());
+    }
+
+    @Test
+    public void testGenerationFollowsAddressChanges() {
+        long generation = dns.getGeneration();
+        hosts.put("fred.com", "93.188.173.198");
+        dns.resolveAsync("fred.com").join();
+        assertEquals(generation + 1, dns.getGeneration());
+
+        // Same answer, same generation
+        dns.resolveAsync("fred.com").join();
+        assertEquals(generation + 1, dns.getGeneration());
+
+        hosts.put("fred.com", "93.188.173.199");
+        dns.resolveAsync("fred.com").join();
+        assertEquals(generation + 2, dns.getGeneration());
+    }
+}
@@ -0,0 +1,144 @@
+package org.iotacontrolcenter.rest.delegate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.iotacontrolcenter.dto.IotaNeighborDto;
+import org.iotacontrolcenter.dto.NeighborDto;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class NeighborIndexTest {
+
+    Map<String, String> hosts;
+    DnsResolver dns;
+
+    @Before
+    public void setUp() {
+        hosts = new HashMap<>();
+        dns = new DnsResolver(host -> {
+            String ip = hosts.get(host);
+            if(ip == null) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[] { InetAddress.getByName(ip) };
+        });
+    }
+
+    @Test
+    public void testAddressOfIriForms() {
+        assertEquals("93.188.173.198|14265", NeighborIndex.addressOf(iota("fred.com/93.188.173.198:14265")));
+        assertEquals("10.0.0.0|14265", NeighborIndex.addressOf(iota("/10.0.0.0:14265")));
+        assertEquals("93.188.173.198|14265", NeighborIndex.addressOf(iota("93.188.173.198:14265")));
+        assertEquals("2a01:4f8:190:32cc:0:0:0:2|14265",
+                NeighborIndex.addressOf(iota("/2a01:4f8:190:32cc:0:0:0:2:14265")));
+        assertNull(NeighborIndex.addressOf(iota("fred.com:14265")));
+        assertNull(NeighborIndex.addressOf(iota(null)));
+    }
+
+    @Test
+    public void testHostOf() {
+        assertEquals("fred.com", NeighborIndex.hostOf("udp://fred.com:14265"));
+        assertEquals("[2a01:4f8:190:32cc::2]", NeighborIndex.hostOf("udp://[2a01:4f8:190:32cc::2]:14265"));
+        assertEquals("10.0.0.1", NeighborIndex.hostOf("10.0.0.1:14265"));
+        assertNull(NeighborIndex.hostOf("udp://fred.com"));
+        assertNull(NeighborIndex.hostOf(null));
+    }
+
+    @Test
+    public void testUriOf() {
+        assertEquals("udp://10.0.0.1:14265", NeighborIndex.uriOf("10.0.0.1|14265", "udp"));
+        assertEquals("tcp://[2a01:4f8:190:32cc:0:0:0:2]:15600",
+                NeighborIndex.uriOf("2a01:4f8:190:32cc:0:0:0:2|15600", "tcp"));
+    }
+
+    @Test
+    public void testMatchesIpv4AndIpv6Literals() {
+        NeighborIndex index = new NeighborIndex(Arrays.asList(
+                nbr("a", "udp://10.0.0.1:14265"),
+                nbr("b", "udp://[2a01:4f8:190:32cc::2]:14265")), dns);
+
+        assertEquals(Collections.singletonList("a"), index.match(iota("/10.0.0.1:14265")));
+        assertEquals(Collections.singletonList("b"), index.match(iota("/2a01:4f8:190:32cc:0:0:0:2:14265")));
+        assertTrue(index.match(iota("/10.0.0.1:14266")).isEmpty());
+        assertTrue(index.match(iota("/10.0.0.2:14265")).isEmpty());
+    }
+
+    @Test
+    public void testMatchesResolvedHostNames() {
+        hosts.put("fred.com", "93.188.173.198");
+        dns.resolveAsync("fred.com").join();
+
+        NeighborIndex index = new NeighborIndex(Collections.singletonList(nbr("fred", "udp://fred.com:14265")), dns);
+
+        assertEquals(Collections.singletonList("fred"), index.match(iota("fred.com/93.188.173.198:14265")));
+        assertEquals(Collections.singletonList("fred"), index.match(iota("/93.188.173.198:14265")));
+    }
+
+    @Test
+    public void testIsCurrent() {
+        List<NeighborDto> nbrs = Collections.singletonList(nbr("fred", "udp://fred.com:14265"));
+        hosts.put("fred.com", "93.188.173.198");
+        dns.resolveAsync("fred.com").join();
+        NeighborIndex index = new NeighborIndex(nbrs, dns);
+
+        assertTrue(index.isCurrent(nbrs, dns.getGeneration()));
+        assertFalse(index.isCurrent(Collections.singletonList(nbr("fred", "udp://fred.com:14266")),
+                dns.getGeneration()));
+
+        // The host moved
+        hosts.put("fred.com", "93.188.173.199");
+        dns.resolveAsync("fred.com").join();
+        assertFalse(index.isCurrent(nbrs, dns.getGeneration()));
+    }
+
+    @Test
+    public void testReusedIndexFollowsExpiredAddresses() throws Exception {
+        // Every entry is expired at once, so each lookup in the cache starts a refresh
+        DnsResolver expiring = new DnsResolver(host -> {
+            String ip = hosts.get(host);
+            if(ip == null) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[] { InetAddress.getByName(ip) };
+        }, 0, 0);
+        List<NeighborDto> nbrs = Collections.singletonList(nbr("fred", "udp://fred.com:14265"));
+        hosts.put("fred.com", "93.188.173.198");
+        expiring.resolveAsync("fred.com").join();
+
+        NeighborIndex index = NeighborIndex.current(null, nbrs, expiring);
+        assertEquals(Collections.singletonList("fred"), index.match(iota("/93.188.173.198:14265")));
+        assertSame(index, NeighborIndex.current(index, nbrs, expiring));
+
+        hosts.put("fred.com", "93.188.173.199");
+        long deadline = System.currentTimeMillis() + 5000;
+        while(index.match(iota("/93.188.173.199:14265")).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            index = NeighborIndex.current(index, nbrs, expiring);
+        }
+        assertEquals(Collections.singletonList("fred"), index.match(iota("/93.188.173.199:14265")));
+        assertTrue(index.match(iota("/93.188.173.198:14265")).isEmpty());
+    }
+
+    static NeighborDto nbr(String key, String uri) {
+        return new NeighborDto(key, uri, key, "", true);
+    }
+
+    static IotaNeighborDto iota(String address) {
+        String json = address == null ? "{}" : "{\"address\":\"" + address + "\"}";
+        return new Gson().fromJson(json, IotaNeighborDto.class);
+    }
+}
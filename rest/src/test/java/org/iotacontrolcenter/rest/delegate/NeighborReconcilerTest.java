@@ -0,0 +1,139 @@
+package org.iotacontrolcenter.rest.delegate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.iotacontrolcenter.dto.NeighborDto;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class NeighborReconcilerTest {
+
+    Map<String, String> hosts;
+    DnsResolver dns;
+
+    @Before
+    public void setUp() {
+        hosts = new HashMap<>();
+        dns = new DnsResolver(host -> {
+            String ip = hosts.get(host);
+            if(ip == null) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[] { InetAddress.getByName(ip) };
+        });
+    }
+
+    @Test
+    public void testAddsAndRemovesTheDifference() {
+        List<NeighborDto> current = Arrays.asList(
+                nbr("a", "udp://10.0.0.1:14600", true),
+                nbr("b", "udp://10.0.0.2:14600", true),
+                nbr("c", "udp://10.0.0.3:14600", false));
+        List<NeighborDto> prev = Arrays.asList(
+                nbr("a", "udp://10.0.0.1:14600", true),
+                nbr("d", "tcp://10.0.0.4:15600", true));
+        String json = json("/10.0.0.1:14600", "/10.0.0.3:14600", "/10.0.0.4:15600", "/10.0.0.9:14600");
+
+        NeighborReconciler.Plan plan = NeighborReconciler.plan(NeighborReconciler.connectedOf(json),
+                current, prev, Collections.emptyMap(), dns);
+
+        // c is inactive, d no longer configured, 10.0.0.9 was not added by ICCR
+        assertEquals(set("udp://10.0.0.3:14600", "tcp://10.0.0.4:15600"), new HashSet<>(plan.toRemove));
+        assertEquals(Collections.singletonList("udp://10.0.0.2:14600"), plan.toAdd);
+        assertEquals(Collections.singletonMap("10.0.0.1|14600", "udp"), plan.managed);
+    }
+
+    @Test
+    public void testNothingToDoWhenInLine() {
+        List<NeighborDto> current = Arrays.asList(
+                nbr("a", "udp://10.0.0.1:14600", true),
+                nbr("b", "udp://[2a01:4f8:190:32cc::2]:14265", true));
+        String json = json("/10.0.0.1:14600", "/2a01:4f8:190:32cc:0:0:0:2:14265");
+
+        NeighborReconciler.Plan plan = NeighborReconciler.plan(NeighborReconciler.connectedOf(json),
+                current, null, Collections.emptyMap(), dns);
+
+        assertTrue(plan.toRemove.isEmpty());
+        assertTrue(plan.toAdd.isEmpty());
+        assertEquals(2, plan.managed.size());
+    }
+
+    @Test
+    public void testNoNeighborsInIri() {
+        List<NeighborDto> current = Collections.singletonList(nbr("a", "udp://10.0.0.1:14600", true));
+
+        NeighborReconciler.Plan plan = NeighborReconciler.plan(
+                NeighborReconciler.connectedOf("{\"duration\":1}"), current, null, Collections.emptyMap(), dns);
+
+        assertTrue(plan.toRemove.isEmpty());
+        assertEquals(Collections.singletonList("udp://10.0.0.1:14600"), plan.toAdd);
+    }
+
+    @Test
+    public void testHostNameMovedIsPeeredAgain() {
+        List<NeighborDto> current = Collections.singletonList(nbr("fred", "udp://fred.com:14265", true));
+        hosts.put("fred.com", "93.188.173.198");
+        dns.resolveAsync("fred.com").join();
+        String json = json("fred.com/93.188.173.198:14265");
+
+        NeighborReconciler.Plan first = NeighborReconciler.plan(NeighborReconciler.connectedOf(json),
+                current, null, Collections.emptyMap(), dns);
+        assertTrue(first.toRemove.isEmpty());
+        assertTrue(first.toAdd.isEmpty());
+
+        // IRI stays connected to the old address, only managed says it is ours
+        hosts.put("fred.com", "93.188.173.199");
+        dns.resolveAsync("fred.com").join();
+
+        NeighborReconciler.Plan second = NeighborReconciler.plan(NeighborReconciler.connectedOf(json),
+                current, null, first.managed, dns);
+        assertEquals(Collections.singletonList("udp://93.188.173.198:14265"), second.toRemove);
+        assertEquals(Collections.singletonList("udp://fred.com:14265"), second.toAdd);
+
+        // Without managed the old address is not known to be ours
+        NeighborReconciler.Plan unmanaged = NeighborReconciler.plan(NeighborReconciler.connectedOf(json),
+                current, null, Collections.emptyMap(), dns);
+        assertTrue(unmanaged.toRemove.isEmpty());
+    }
+
+    @Test
+    public void testUnresolvedHostNameIsAdded() {
+        List<NeighborDto> current = Collections.singletonList(nbr("fred", "udp://fred.com:14265", true));
+        String json = json("fred.com/93.188.173.198:14265");
+
+        NeighborReconciler.Plan plan = NeighborReconciler.plan(NeighborReconciler.connectedOf(json),
+                current, null, Collections.emptyMap(), dns);
+
+        assertTrue(plan.toRemove.isEmpty());
+        assertEquals(Collections.singletonList("udp://fred.com:14265"), plan.toAdd);
+    }
+
+    static NeighborDto nbr(String key, String uri, boolean active) {
+        return new NeighborDto(key, uri, key, "", active);
+    }
+
+    static String json(String... addresses) {
+        StringBuilder sb = new StringBuilder("{\"duration\":3,\"neighbors\":[");
+        for(int i = 0; i < addresses.length; i++) {
+            if(i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"address\":\"").append(addresses[i]).append("\",\"numberOfAllTransactions\":5}");
+        }
+        return sb.append("]}").toString();
+    }
+
+    static HashSet<String> set(String... items) {
+        return new HashSet<>(Arrays.asList(items));
+    }
+}
@@ -0,0 +1,106 @@
+package org.iotacontrolcenter.rest.delegate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SchedulerTest {
+
+    static final String JOB = "schedulerTestJob";
+    static final long LONG_PERIOD_MS = TimeUnit.HOURS.toMillis(1);
+
+    Scheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = Scheduler.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.cancel(JOB);
+    }
+
+    @Test
+    public void testRestartWaitsForTheCancelledRun() throws Exception {
+        CountDownLatch oldStarted = new CountDownLatch(1);
+        CountDownLatch releaseOld = new CountDownLatch(1);
+        CountDownLatch newStarted = new CountDownLatch(1);
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+
+        scheduler.schedule(JOB, () -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            oldStarted.countDown();
+            try {
+                releaseOld.await(10, TimeUnit.SECONDS);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            concurrent.decrementAndGet();
+        }, 0, LONG_PERIOD_MS, 0);
+        assertTrue(oldStarted.await(5, TimeUnit.SECONDS));
+
+        // Restart while the old run is still going
+        assertTrue(scheduler.cancel(JOB));
+        assertTrue(scheduler.schedule(JOB, () -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            newStarted.countDown();
+            concurrent.decrementAndGet();
+        }, 0, LONG_PERIOD_MS, 0));
+
+        assertFalse(newStarted.await(300, TimeUnit.MILLISECONDS));
+        releaseOld.countDown();
+        assertTrue(newStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, maxConcurrent.get());
+    }
+
+    @Test
+    public void testOnlyTheLastRestartRuns() throws Exception {
+        CountDownLatch oldStarted = new CountDownLatch(1);
+        CountDownLatch releaseOld = new CountDownLatch(1);
+        AtomicInteger firstRestartRuns = new AtomicInteger();
+        CountDownLatch lastStarted = new CountDownLatch(1);
+
+        scheduler.schedule(JOB, () -> {
+            oldStarted.countDown();
+            try {
+                releaseOld.await(10, TimeUnit.SECONDS);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 0, LONG_PERIOD_MS, 0);
+        assertTrue(oldStarted.await(5, TimeUnit.SECONDS));
+
+        scheduler.cancel(JOB);
+        scheduler.schedule(JOB, firstRestartRuns::incrementAndGet, 0, LONG_PERIOD_MS, 0);
+        scheduler.cancel(JOB);
+        scheduler.schedule(JOB, lastStarted::countDown, 0, LONG_PERIOD_MS, 0);
+
+        releaseOld.countDown();
+        assertTrue(lastStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(0, firstRestartRuns.get());
+    }
+
+    @Test
+    public void testScheduleWithNoRunInProgress() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+
+        assertTrue(scheduler.schedule(JOB, () -> { }, LONG_PERIOD_MS, LONG_PERIOD_MS));
+        assertFalse(scheduler.schedule(JOB, started::countDown, 0, LONG_PERIOD_MS));
+        assertTrue(scheduler.cancel(JOB));
+
+        assertTrue(scheduler.schedule(JOB, started::countDown, 0, LONG_PERIOD_MS, 0));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,82 @@
+package org.iotacontrolcenter.rest.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+    static final long SIZE = 1000;
+
+    @Test
+    public void testAbsentHeader() {
+        assertNull(ByteRange.parse(null, SIZE));
+        assertNull(ByteRange.parse("  ", SIZE));
+    }
+
+    @Test
+    public void testFirstLast() {
+        assertRange(0, 499, ByteRange.parse("bytes=0-499", SIZE));
+        assertRange(500, 999, ByteRange.parse(" bytes=500-999 ", SIZE));
+        // Past the end is cut to the end
+        assertRange(900, 999, ByteRange.parse("bytes=900-5000", SIZE));
+        assertEquals("bytes 0-499/1000", ByteRange.parse("bytes=0-499", SIZE).toContentRange(SIZE));
+    }
+
+    @Test
+    public void testOpenEnded() {
+        assertRange(100, 999, ByteRange.parse("bytes=100-", SIZE));
+        assertRange(999, 999, ByteRange.parse("bytes=999-", SIZE));
+        assertEquals(900, ByteRange.parse("bytes=100-", SIZE).getLength());
+    }
+
+    @Test
+    public void testSuffix() {
+        assertRange(900, 999, ByteRange.parse("bytes=-100", SIZE));
+        // Longer than the file is the whole file
+        assertRange(0, 999, ByteRange.parse("bytes=-5000", SIZE));
+    }
+
+    @Test
+    public void testUnsatisfiable() {
+        assertInvalid("bytes=1000-", SIZE);
+        assertInvalid("bytes=1000-1100", SIZE);
+        assertInvalid("bytes=500-100", SIZE);
+        assertInvalid("bytes=-0", SIZE);
+        assertInvalid("bytes=0-", 0);
+        assertInvalid("bytes=-100", 0);
+    }
+
+    @Test
+    public void testMalformed() {
+        assertInvalid("bytes=abc-", SIZE);
+        assertInvalid("bytes=100", SIZE);
+        assertInvalid("bytes=-", SIZE);
+        assertInvalid("items=0-100", SIZE);
+        // Multiple ranges are not supported
+        assertInvalid("bytes=0-1,5-6", SIZE);
+    }
+
+    @Test
+    public void testFull() {
+        assertRange(0, 999, ByteRange.full(SIZE));
+    }
+
+    private static void assertRange(long first, long last, ByteRange range) {
+        assertEquals(first, range.getFirst());
+        assertEquals(last, range.getLast());
+        assertEquals(last - first + 1, range.getLength());
+    }
+
+    private static void assertInvalid(String header, long size) {
+        try {
+            ByteRange.parse(header, size);
+            fail("expected '" + header + "' to be refused for size " + size);
+        }
+        catch(IllegalArgumentException e) {
+            // Refused
+        }
+    }
+}
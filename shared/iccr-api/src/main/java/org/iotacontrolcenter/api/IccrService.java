@@ -5,12 +5,15 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -47,6 +50,19 @@ public interface IccrService {
     Response doIotaAction(@Context HttpServletRequest request,
             @DefaultValue("") @PathParam("action") String action, IccrPropertyListDto actionProps);
 
+    @POST
+    @Path("/iota/jobs/{action}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    Response submitIotaAction(@Context HttpServletRequest request,
+            @DefaultValue("") @PathParam("action") String action, IccrPropertyListDto actionProps);
+
+    @GET
+    @Path("/iota/jobs/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response getIotaActionJob(@Context HttpServletRequest request,
+            @DefaultValue("") @PathParam("id") String id);
+
     @GET
     @Path("/app/config")
     @Produces(MediaType.APPLICATION_JSON)
@@ -73,7 +89,19 @@ public interface IccrService {
     @GET
     @Path("/app/eventlog")
     @Produces(MediaType.APPLICATION_JSON)
-    Response getIccrEventLog(@Context HttpServletRequest request);
+    Response getIccrEventLog(@Context HttpServletRequest request,
+            @QueryParam("since") String since,
+            @QueryParam("until") String until,
+            @QueryParam("type") String type,
+            @QueryParam("limit") Integer limit,
+            @QueryParam("cursor") String cursor);
+
+    @GET
+    @Path("/app/eventlog/stream")
+    @Produces(MediaType.TEXT_PLAIN)
+    Response streamIccrEventLog(@Context HttpServletRequest request,
+            @HeaderParam("Range") String range,
+            @DefaultValue("false") @QueryParam("gzip") boolean gzip);
 
     @GET
     @Path("/iota/log")
@@ -82,7 +110,16 @@ public interface IccrService {
             @QueryParam("fileDirection") String fileDirection,
             @QueryParam("numLines") Long numLines,
             @QueryParam("lastFileLength") Long lastFileLength,
-            @QueryParam("lastFilePosition") Long lastFilePosition);
+            @QueryParam("lastFilePosition") Long lastFilePosition,
+            @QueryParam("firstLine") Long firstLine,
+            @QueryParam("page") Long page);
+
+    @GET
+    @Path("/iota/log/stream")
+    @Produces(MediaType.TEXT_PLAIN)
+    Response streamIotaLog(@Context HttpServletRequest request,
+            @HeaderParam("Range") String range,
+            @DefaultValue("false") @QueryParam("gzip") boolean gzip);
 
     @GET
     @Path("/app/config/iota/nbrs")
@@ -92,12 +129,28 @@ public interface IccrService {
     @GET
     @Path("/iota/neighbors")
     @Produces(MediaType.APPLICATION_JSON)
-    Response getIotaNeighbors(@Context HttpServletRequest request, IccrPropertyListDto actionProps);
+    void getIotaNeighbors(@Context HttpServletRequest request, IccrPropertyListDto actionProps,
+            @Suspended AsyncResponse asyncResponse);
+
+    @GET
+    @Path("/iota/neighbors/traffic")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response getIotaNeighborsTraffic(@Context HttpServletRequest request,
+            @QueryParam("since") String since,
+            @QueryParam("until") String until);
+
+    @GET
+    @Path("/iota/neighbors/{key}/traffic")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response getIotaNeighborTraffic(@Context HttpServletRequest request,
+            @DefaultValue("") @PathParam("key") String key,
+            @QueryParam("since") String since,
+            @QueryParam("until") String until);
 
     @GET
     @Path("/iota/nodeinfo")
     @Produces(MediaType.APPLICATION_JSON)
-    Response getIotaNodeInfo(@Context HttpServletRequest request);
+    void getIotaNodeInfo(@Context HttpServletRequest request, @Suspended AsyncResponse asyncResponse);
 
     @PUT
     @Path("/app/config")
@@ -0,0 +1,105 @@
+package org.iotacontrolcenter.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * State of an action submitted to run in the background. Clients poll it
+ * by id until it is done, then find the action's own response in result.
+ * success stays true until the job is done and the action did not succeed.
+ */
+public class ActionJobResponse extends SimpleResponse {
+
+    public static final String QUEUED = "queued";
+    public static final String RUNNING = "running";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+
+    private String id;
+    private String action;
+    private String state;
+    private long submitted;
+    private long started;
+    private long finished;
+    private ActionResponse result;
+
+    public ActionJobResponse() {
+        super();
+    }
+
+    public ActionJobResponse(boolean success, String msg) {
+        super(success, msg);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public void setAction(String action) {
+        this.action = action;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    // Times are milliseconds since the epoch, 0 if not reached yet
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public void setSubmitted(long submitted) {
+        this.submitted = submitted;
+    }
+
+    public long getStarted() {
+        return started;
+    }
+
+    public void setStarted(long started) {
+        this.started = started;
+    }
+
+    public long getFinished() {
+        return finished;
+    }
+
+    public void setFinished(long finished) {
+        this.finished = finished;
+    }
+
+    public ActionResponse getResult() {
+        return result;
+    }
+
+    public void setResult(ActionResponse result) {
+        this.result = result;
+    }
+
+    @JsonIgnore
+    public boolean isDone() {
+        return DONE.equals(state) || FAILED.equals(state);
+    }
+
+    @Override
+    public String toString() {
+        return "ActionJobResponse{" +
+                "id=" + id +
+                ", action=" + action +
+                ", state=" + state +
+                ", success=" + isSuccess() +
+                ", msg=" + getMsg() +
+                '}';
+    }
+}
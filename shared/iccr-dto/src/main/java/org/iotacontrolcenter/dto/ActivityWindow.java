@@ -0,0 +1,144 @@
+package org.iotacontrolcenter.dto;
+
+import java.util.Arrays;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Counts of a neighbor's active ticks over the last day and the last week,
+ * kept up to date as ticks are recorded so the activity percentages need
+ * neither a mask nor a pass over the bitmap.
+ *
+ * The ticks of the last week are held in a ring of bits, one per tick.
+ * Moving to a new tick adds the tick that just ended to both counts and
+ * takes out the ticks that left each window. The windows are the ticks
+ * before the current one, as for the bitmap percentages: a tick counts
+ * once it is over.
+ *
+ * Built once from the activity bitmap, which stays the persisted history.
+ * Shared between copies of a neighbor, so thread safe.
+ */
+public class ActivityWindow {
+
+    private final int dayTicks;
+    private final int weekTicks;
+    private final int capacity;
+    private final long[] bits;
+
+    // The current tick, counted once the next one starts
+    private int at;
+    private int dayCount = 0;
+    private int weekCount = 0;
+
+    /**
+     * @param history  the activity bitmap, ticks of the last week are read
+     * @param nowTick  the current tick
+     */
+    public ActivityWindow(int dayTicks, int weekTicks, RoaringBitmap history, int nowTick) {
+        if(dayTicks <= 0 || weekTicks < dayTicks) {
+            throw new IllegalArgumentException("ActivityWindow, invalid window: day " + dayTicks + ", week " + weekTicks);
+        }
+        this.dayTicks = dayTicks;
+        this.weekTicks = weekTicks;
+        // The week before the current tick, and the current tick
+        this.capacity = weekTicks + 1;
+        this.bits = new long[(capacity + 63) / 64];
+        this.at = nowTick;
+
+        for(int tick = nowTick - weekTicks; tick <= nowTick; tick++) {
+            if(history.contains(tick)) {
+                set(tick);
+                if(tick < nowTick) {
+                    count(tick);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record an active tick. Ticks older than the week are ignored.
+     */
+    public synchronized void add(int tick) {
+        advance(tick);
+        if(tick < at - weekTicks || isSet(tick)) {
+            return;
+        }
+        set(tick);
+        if(tick < at) {
+            // Recorded late, already in the windows
+            count(tick);
+        }
+    }
+
+    /**
+     * Active ticks of the dayTicks before nowTick.
+     */
+    public synchronized int getDayCount(int nowTick) {
+        advance(nowTick);
+        return dayCount;
+    }
+
+    /**
+     * Active ticks of the weekTicks before nowTick.
+     */
+    public synchronized int getWeekCount(int nowTick) {
+        advance(nowTick);
+        return weekCount;
+    }
+
+    private void advance(int nowTick) {
+        if(nowTick <= at) {
+            return;
+        }
+        if(nowTick - at > weekTicks) {
+            // Idle for more than a week, nothing is left in either window
+            Arrays.fill(bits, 0);
+            dayCount = 0;
+            weekCount = 0;
+            at = nowTick;
+            return;
+        }
+        while(at < nowTick) {
+            if(isSet(at)) {
+                dayCount++;
+                weekCount++;
+            }
+            at++;
+            if(isSet(at - dayTicks - 1)) {
+                dayCount--;
+            }
+            int leftWeek = at - weekTicks - 1;
+            if(isSet(leftWeek)) {
+                weekCount--;
+                // Its slot is the new current tick's
+                clear(leftWeek);
+            }
+        }
+    }
+
+    private void count(int tick) {
+        weekCount++;
+        if(tick >= at - dayTicks) {
+            dayCount++;
+        }
+    }
+
+    private boolean isSet(int tick) {
+        int slot = slot(tick);
+        return (bits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private void set(int tick) {
+        int slot = slot(tick);
+        bits[slot >>> 6] |= 1L << slot;
+    }
+
+    private void clear(int tick) {
+        int slot = slot(tick);
+        bits[slot >>> 6] &= ~(1L << slot);
+    }
+
+    private int slot(int tick) {
+        return Math.floorMod(tick, capacity);
+    }
+}
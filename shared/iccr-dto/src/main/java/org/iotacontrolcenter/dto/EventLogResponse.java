@@ -0,0 +1,34 @@
+package org.iotacontrolcenter.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EventLogResponse extends SimpleResponse {
+
+    private List<String> events = new ArrayList<>();
+    private String nextCursor;
+
+    public EventLogResponse() {
+        super();
+    }
+
+    public EventLogResponse(boolean success, String msg) {
+        super(success, msg);
+    }
+
+    public List<String> getEvents() {
+        return events;
+    }
+
+    public void setEvents(List<String> events) {
+        this.events = events;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
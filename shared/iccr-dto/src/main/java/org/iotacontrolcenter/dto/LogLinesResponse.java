@@ -8,6 +8,8 @@ public class LogLinesResponse extends SimpleResponse {
     private List<String> lines = new ArrayList<>();
     private Long lastFilePosition;
     private Long lastFileSize;
+    private Long firstLine;
+    private Long totalLines;
 
     public LogLinesResponse() {
         super();
@@ -44,4 +46,20 @@ public class LogLinesResponse extends SimpleResponse {
     public void setLastFileSize(Long lastFileSize) {
         this.lastFileSize = lastFileSize;
     }
+
+    public Long getFirstLine() {
+        return firstLine;
+    }
+
+    public void setFirstLine(Long firstLine) {
+        this.firstLine = firstLine;
+    }
+
+    public Long getTotalLines() {
+        return totalLines;
+    }
+
+    public void setTotalLines(Long totalLines) {
+        this.totalLines = totalLines;
+    }
 }
@@ -1,6 +1,5 @@
 package org.iotacontrolcenter.dto;
 
-import java.time.Duration;
 import java.time.Period;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
@@ -8,6 +7,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.roaringbitmap.RoaringBitmap;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
@@ -28,6 +28,9 @@ public class NeighborDto {
     @JsonDeserialize(using = ActivityDtoDeserializer.class)
     private ActivityDto activity = new ActivityDto();
 
+    // Rolling counts of the activity, built from it when first needed
+    private ActivityWindow activityWindow;
+
     private int iotaNeighborRefreshTime = 1;
 
     // Length in real time of a tick (minutes)
@@ -76,15 +79,8 @@ public class NeighborDto {
         this.activity = new ActivityDto();
     }
 
-    private int calcActivityPercentageOverPeriod(ZonedDateTime start,
-            ZonedDateTime end) {
-        
-        RoaringBitmap mask = generateMask(start, end);
-        int cardinality = RoaringBitmap.andCardinality(this.activity, mask);
-
-        Duration duration = Duration.between(start, end);
-        return (int) (100 * cardinality
-                / (duration.toMinutes() / iotaActivityGranularity));
+    private int calcActivityPercentage(int activeTicks, long minutes) {
+        return (int) (100 * activeTicks / (minutes / iotaActivityGranularity));
     }
 
     public static ZonedDateTime currentDateTime() {
@@ -122,17 +118,28 @@ public class NeighborDto {
     }
 
     public int getActivityPercentageOverLastDay() {
-        ZonedDateTime now = currentDateTime();
-        ZonedDateTime dayAgo = now.minus(Period.ofDays(1));
-
-        return calcActivityPercentageOverPeriod(dayAgo, now);
+        return calcActivityPercentage(getActivityWindow().getDayCount(getCurrentTick()),
+                TimeUnit.DAYS.toMinutes(1));
     }
 
     public int getActivityPercentageOverLastWeek() {
-        ZonedDateTime now = currentDateTime();
-        ZonedDateTime weekAgo = now.minus(Period.ofWeeks(1));
-
-        return calcActivityPercentageOverPeriod(weekAgo, now);
+        return calcActivityPercentage(getActivityWindow().getWeekCount(getCurrentTick()),
+                TimeUnit.DAYS.toMinutes(7));
+    }
+
+    /**
+     * The rolling day and week counts of the activity, built from the
+     * activity bitmap if none was set.
+     */
+    @JsonIgnore
+    public ActivityWindow getActivityWindow() {
+        if (activityWindow == null) {
+            activityWindow = new ActivityWindow(
+                    (int) (TimeUnit.DAYS.toMinutes(1) / iotaActivityGranularity),
+                    (int) (TimeUnit.DAYS.toMinutes(7) / iotaActivityGranularity),
+                    activity, getCurrentTick());
+        }
+        return activityWindow;
     }
 
     public long getActivityRealTimeLength() {
@@ -208,6 +215,16 @@ public class NeighborDto {
 
     public void setActivity(ActivityDto activity) {
         this.activity = activity;
+        this.activityWindow = null;
+    }
+
+    /**
+     * Use counts kept for this neighbor's activity elsewhere, e.g. shared
+     * by every copy of the neighbor, instead of building them. Set after
+     * the activity.
+     */
+    public void setActivityWindow(ActivityWindow activityWindow) {
+        this.activityWindow = activityWindow;
     }
 
     public void setDescr(String descr) {
@@ -232,7 +249,9 @@ public class NeighborDto {
 
     private void updateActivity() {
         // Record current activity
-        this.activity.add(this.getCurrentTick());
+        int tick = this.getCurrentTick();
+        this.activity.add(tick);
+        this.getActivityWindow().add(tick);
 
         // Check if we need to trim
         if (this.activity.getLongCardinality() > trimTrigger) {
@@ -246,6 +265,8 @@ public class NeighborDto {
                 .withMinute(0).withSecond(0).withNano(0);
 
         RoaringBitmap mask = generateMask(start, now);
+        // Keep the current tick, it was just recorded
+        mask.add(this.getTickAtTime(now));
 
         this.activity.and(mask);
     }
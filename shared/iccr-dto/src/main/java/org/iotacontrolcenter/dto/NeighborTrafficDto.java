@@ -0,0 +1,173 @@
+package org.iotacontrolcenter.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A neighbor's transactions over a time window: the totals, the rates per
+ * minute and the samples they were summed from.
+ *
+ * Samples are per minute for recent windows and per hour for older ones,
+ * see resolution. Minutes without a sample (IRI down, neighbor not
+ * connected) are left out, and rates are over the part of the window
+ * since the neighbor's first sample.
+ */
+public class NeighborTrafficDto {
+
+    public static final String MINUTE = "minute";
+    public static final String HOUR = "hour";
+
+    private String key;
+    private long since;
+    private long until;
+    private String resolution;
+    private long allTx;
+    private long newTx;
+    private long invalidTx;
+    private double allPerMinute;
+    private double newPerMinute;
+    private double invalidPerMinute;
+    // Share of all transactions that were invalid, 0 to 1
+    private double invalidRatio;
+    private List<TrafficSampleDto> samples = new ArrayList<>();
+
+    public NeighborTrafficDto() {
+    }
+
+    public NeighborTrafficDto(String key, long since, long until, String resolution) {
+        this.key = key;
+        this.since = since;
+        this.until = until;
+        this.resolution = resolution;
+    }
+
+    /**
+     * Add a sample to the totals, then compute the rates with setRates.
+     */
+    public void addSample(TrafficSampleDto sample) {
+        samples.add(sample);
+        allTx += sample.getAllTx();
+        newTx += sample.getNewTx();
+        invalidTx += sample.getInvalidTx();
+    }
+
+    /**
+     * Rates of the totals over the given number of minutes.
+     */
+    public void setRates(double minutes) {
+        allPerMinute = minutes > 0 ? allTx / minutes : 0;
+        newPerMinute = minutes > 0 ? newTx / minutes : 0;
+        invalidPerMinute = minutes > 0 ? invalidTx / minutes : 0;
+        invalidRatio = allTx > 0 ? (double)invalidTx / allTx : 0;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public long getSince() {
+        return since;
+    }
+
+    public void setSince(long since) {
+        this.since = since;
+    }
+
+    public long getUntil() {
+        return until;
+    }
+
+    public void setUntil(long until) {
+        this.until = until;
+    }
+
+    public String getResolution() {
+        return resolution;
+    }
+
+    public void setResolution(String resolution) {
+        this.resolution = resolution;
+    }
+
+    public long getAllTx() {
+        return allTx;
+    }
+
+    public void setAllTx(long allTx) {
+        this.allTx = allTx;
+    }
+
+    public long getNewTx() {
+        return newTx;
+    }
+
+    public void setNewTx(long newTx) {
+        this.newTx = newTx;
+    }
+
+    public long getInvalidTx() {
+        return invalidTx;
+    }
+
+    public void setInvalidTx(long invalidTx) {
+        this.invalidTx = invalidTx;
+    }
+
+    public double getAllPerMinute() {
+        return allPerMinute;
+    }
+
+    public void setAllPerMinute(double allPerMinute) {
+        this.allPerMinute = allPerMinute;
+    }
+
+    public double getNewPerMinute() {
+        return newPerMinute;
+    }
+
+    public void setNewPerMinute(double newPerMinute) {
+        this.newPerMinute = newPerMinute;
+    }
+
+    public double getInvalidPerMinute() {
+        return invalidPerMinute;
+    }
+
+    public void setInvalidPerMinute(double invalidPerMinute) {
+        this.invalidPerMinute = invalidPerMinute;
+    }
+
+    public double getInvalidRatio() {
+        return invalidRatio;
+    }
+
+    public void setInvalidRatio(double invalidRatio) {
+        this.invalidRatio = invalidRatio;
+    }
+
+    public List<TrafficSampleDto> getSamples() {
+        return samples;
+    }
+
+    public void setSamples(List<TrafficSampleDto> samples) {
+        this.samples = samples;
+    }
+
+    @Override
+    public String toString() {
+        return "NeighborTrafficDto{" +
+                "key='" + key + '\'' +
+                ", since=" + since +
+                ", until=" + until +
+                ", resolution='" + resolution + '\'' +
+                ", allTx=" + allTx +
+                ", newTx=" + newTx +
+                ", invalidTx=" + invalidTx +
+                ", samples=" + samples.size() +
+                '}';
+    }
+}
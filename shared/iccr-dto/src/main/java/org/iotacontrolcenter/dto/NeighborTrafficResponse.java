@@ -0,0 +1,25 @@
+package org.iotacontrolcenter.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class NeighborTrafficResponse extends SimpleResponse {
+
+    private List<NeighborTrafficDto> neighbors = new ArrayList<>();
+
+    public NeighborTrafficResponse() {
+        super();
+    }
+
+    public NeighborTrafficResponse(boolean success, String msg) {
+        super(success, msg);
+    }
+
+    public List<NeighborTrafficDto> getNeighbors() {
+        return neighbors;
+    }
+
+    public void setNeighbors(List<NeighborTrafficDto> neighbors) {
+        this.neighbors = neighbors;
+    }
+}
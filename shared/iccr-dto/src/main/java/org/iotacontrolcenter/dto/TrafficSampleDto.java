@@ -0,0 +1,65 @@
+package org.iotacontrolcenter.dto;
+
+/**
+ * Transactions a neighbor sent in one minute or one hour, starting at time
+ * (epoch milliseconds).
+ */
+public class TrafficSampleDto {
+
+    private long time;
+    private long allTx;
+    private long newTx;
+    private long invalidTx;
+
+    public TrafficSampleDto() {
+    }
+
+    public TrafficSampleDto(long time, long allTx, long newTx, long invalidTx) {
+        this.time = time;
+        this.allTx = allTx;
+        this.newTx = newTx;
+        this.invalidTx = invalidTx;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public long getAllTx() {
+        return allTx;
+    }
+
+    public void setAllTx(long allTx) {
+        this.allTx = allTx;
+    }
+
+    public long getNewTx() {
+        return newTx;
+    }
+
+    public void setNewTx(long newTx) {
+        this.newTx = newTx;
+    }
+
+    public long getInvalidTx() {
+        return invalidTx;
+    }
+
+    public void setInvalidTx(long invalidTx) {
+        this.invalidTx = invalidTx;
+    }
+
+    @Override
+    public String toString() {
+        return "TrafficSampleDto{" +
+                "time=" + time +
+                ", allTx=" + allTx +
+                ", newTx=" + newTx +
+                ", invalidTx=" + invalidTx +
+                '}';
+    }
+}
@@ -0,0 +1,81 @@
+package org.iotacontrolcenter.dto;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActivityWindowTest {
+
+    static final int DAY = 96;
+    static final int WEEK = 672;
+    static final int NOW = 100000;
+
+    ActivityDto history;
+
+    @Before
+    public void setUp() {
+        history = new ActivityDto();
+        // Active for the last day, and for one tick five days ago
+        history.add(NOW - DAY, NOW);
+        history.add(NOW - 5 * DAY);
+        // Older than a week, ignored
+        history.add(NOW - WEEK - 10);
+    }
+
+    @Test
+    public void testCountsFromHistory() {
+        ActivityWindow window = new ActivityWindow(DAY, WEEK, history, NOW);
+
+        assertEquals(DAY, window.getDayCount(NOW));
+        assertEquals(DAY + 1, window.getWeekCount(NOW));
+    }
+
+    @Test
+    public void testCurrentTickCountsOnceOver() {
+        ActivityWindow window = new ActivityWindow(DAY, WEEK, history, NOW);
+
+        window.add(NOW);
+        assertEquals(DAY, window.getDayCount(NOW));
+
+        // The oldest tick of the day leaves as NOW enters
+        assertEquals(DAY, window.getDayCount(NOW + 1));
+        assertEquals(DAY + 2, window.getWeekCount(NOW + 1));
+    }
+
+    @Test
+    public void testTicksLeaveTheWindows() {
+        ActivityWindow window = new ActivityWindow(DAY, WEEK, history, NOW);
+
+        assertEquals(0, window.getDayCount(NOW + DAY));
+        assertEquals(DAY + 1, window.getWeekCount(NOW + DAY));
+
+        // The tick five days ago has left the week
+        assertEquals(DAY, window.getWeekCount(NOW + 2 * DAY + 1));
+        assertEquals(0, window.getWeekCount(NOW + WEEK));
+    }
+
+    @Test
+    public void testIdleForMoreThanAWeek() {
+        ActivityWindow window = new ActivityWindow(DAY, WEEK, history, NOW);
+
+        assertEquals(0, window.getDayCount(NOW + 2 * WEEK));
+        assertEquals(0, window.getWeekCount(NOW + 2 * WEEK));
+
+        window.add(NOW + 2 * WEEK);
+        assertEquals(1, window.getDayCount(NOW + 2 * WEEK + 1));
+    }
+
+    @Test
+    public void testLateAndRepeatedTicks() {
+        ActivityWindow window = new ActivityWindow(DAY, WEEK, new ActivityDto(), NOW);
+
+        window.add(NOW - 3);
+        window.add(NOW - 3);
+        window.add(NOW - 2 * DAY);
+        window.add(NOW - WEEK - 1);
+
+        assertEquals(1, window.getDayCount(NOW));
+        assertEquals(2, window.getWeekCount(NOW));
+    }
+}
@@ -0,0 +1,63 @@
+package org.iotacontrolcenter.dto;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class NeighborTrafficDtoTest {
+
+    NeighborTrafficDto traffic;
+
+    @Before
+    public void setUp() {
+        traffic = new NeighborTrafficDto("nbr1", 0, 600000, NeighborTrafficDto.MINUTE);
+        traffic.addSample(new TrafficSampleDto(0, 100, 20, 5));
+        traffic.addSample(new TrafficSampleDto(60000, 60, 10, 3));
+        traffic.addSample(new TrafficSampleDto(120000, 40, 10, 2));
+    }
+
+    @Test
+    public void testAddSampleSumsTotals() {
+        assertEquals(200, traffic.getAllTx());
+        assertEquals(40, traffic.getNewTx());
+        assertEquals(10, traffic.getInvalidTx());
+        assertEquals(3, traffic.getSamples().size());
+    }
+
+    @Test
+    public void testSetRates() {
+        traffic.setRates(10);
+
+        assertEquals(20.0, traffic.getAllPerMinute(), 0.0001);
+        assertEquals(4.0, traffic.getNewPerMinute(), 0.0001);
+        assertEquals(1.0, traffic.getInvalidPerMinute(), 0.0001);
+        assertEquals(0.05, traffic.getInvalidRatio(), 0.0001);
+    }
+
+    @Test
+    public void testSetRatesWithoutHistory() {
+        NeighborTrafficDto empty = new NeighborTrafficDto("nbr2", 0, 600000, NeighborTrafficDto.HOUR);
+        empty.setRates(0);
+
+        assertEquals(0.0, empty.getAllPerMinute(), 0.0001);
+        assertEquals(0.0, empty.getInvalidRatio(), 0.0001);
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        traffic.setRates(10);
+        ObjectMapper mapper = new ObjectMapper();
+
+        NeighborTrafficDto read = mapper.readValue(mapper.writeValueAsString(traffic), NeighborTrafficDto.class);
+
+        assertEquals(traffic.getKey(), read.getKey());
+        assertEquals(traffic.getResolution(), read.getResolution());
+        assertEquals(traffic.getAllTx(), read.getAllTx());
+        assertEquals(traffic.getInvalidRatio(), read.getInvalidRatio(), 0.0001);
+        assertEquals(3, read.getSamples().size());
+        assertEquals(60, read.getSamples().get(1).getAllTx());
+    }
+}